@@ -0,0 +1,98 @@
+package org.xmlcml.cml.converters.reaction.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.converters.reaction.core.BinaryReactionReader;
+import org.xmlcml.cml.converters.reaction.core.BinaryReactionWriter;
+import org.xmlcml.cml.converters.reaction.core.RecordHandler;
+import org.xmlcml.cml.converters.reaction.rdf.RDFConverter;
+
+/**
+ * rebuilding every record from the binary format against parsing the
+ * same records from the RDF text they were converted from.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BinaryReloadBenchmark {
+
+    @Param({ "1000", "100000" })
+    int records;
+
+    @Param({ SyntheticCorpus.DATA, SyntheticCorpus.RXN })
+    String kind;
+
+    File rdfFile;
+    File binaryFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        rdfFile = File.createTempFile("bench", ".rdf");
+        SyntheticCorpus.writeRdf(rdfFile, records, kind);
+        binaryFile = File.createTempFile("bench", ".cmlr");
+        FileOutputStream fos = new FileOutputStream(binaryFile);
+        try {
+            BinaryReactionWriter writer = new BinaryReactionWriter(fos);
+            new RDFConverter().read(rdfFile, writer);
+            writer.finish();
+        } finally {
+            fos.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        rdfFile.delete();
+        binaryFile.delete();
+    }
+
+    @Benchmark
+    public int parse(final Blackhole blackhole) throws IOException {
+        LineNumberReader br = new LineNumberReader(new FileReader(rdfFile));
+        try {
+            return new RDFConverter().read(br, new RecordHandler() {
+                public void handle(CMLElement record) {
+                    blackhole.consume(record);
+                }
+            });
+        } finally {
+            br.close();
+        }
+    }
+
+    @Benchmark
+    public int reload(Blackhole blackhole) throws IOException {
+        BinaryReactionReader reader = new BinaryReactionReader(binaryFile);
+        try {
+            for (CMLElement record : reader) {
+                blackhole.consume(record);
+            }
+            return reader.size();
+        } finally {
+            reader.close();
+        }
+    }
+}
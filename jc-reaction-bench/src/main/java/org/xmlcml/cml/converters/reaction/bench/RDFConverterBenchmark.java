@@ -0,0 +1,65 @@
+package org.xmlcml.cml.converters.reaction.bench;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.concurrent.TimeUnit;
+
+import nu.xom.Document;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlcml.cml.converters.reaction.rdf.RDFConverter;
+
+/**
+ * RDFConverter.read over whole RDfiles from 1 to 1M records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RDFConverterBenchmark {
+
+    @Param({ "1", "1000", "100000", "1000000" })
+    int records;
+
+    @Param({ SyntheticCorpus.DATA, SyntheticCorpus.RXN })
+    String kind;
+
+    File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("bench", ".rdf");
+        SyntheticCorpus.writeRdf(file, records, kind);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Document read() throws IOException {
+        LineNumberReader br = new LineNumberReader(new FileReader(file));
+        try {
+            return new RDFConverter().read(br);
+        } finally {
+            br.close();
+        }
+    }
+}
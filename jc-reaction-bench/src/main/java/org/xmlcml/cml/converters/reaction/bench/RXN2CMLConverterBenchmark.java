@@ -0,0 +1,52 @@
+package org.xmlcml.cml.converters.reaction.bench;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import nu.xom.Document;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlcml.cml.converters.reaction.rxn.RXN2CMLConverter;
+
+/**
+ * RXN2CMLConverter.read on a single in-memory rxnfile.
+ * 
+ * V2000 counts are three columns wide, so structure size tops out at 999
+ * atoms per molecule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RXN2CMLConverterBenchmark {
+
+    @Param({ "1", "10", "100", "999" })
+    int atoms;
+
+    String rxn;
+
+    @Setup
+    public void setUp() {
+        rxn = SyntheticCorpus.rxn(atoms);
+    }
+
+    @Benchmark
+    public Document read() throws IOException {
+        return new RXN2CMLConverter("bench").read(
+                new LineNumberReader(new StringReader(rxn)));
+    }
+}
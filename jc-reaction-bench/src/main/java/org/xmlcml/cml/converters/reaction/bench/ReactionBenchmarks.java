@@ -0,0 +1,31 @@
+package org.xmlcml.cml.converters.reaction.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * runs the reaction converter benchmarks with the GC profiler attached, so
+ * that every result carries ops/s together with allocation rate
+ * (gc.alloc.rate and gc.alloc.rate.norm).
+ * 
+ * The module is only built with the bench profile: "mvn -Pbench package".
+ * Usage: java -jar target/benchmarks.jar [JMH options], e.g.
+ * "RDFConverterBenchmark -p records=1000" to run a single size.
+ */
+public class ReactionBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            builder.include(ReactionBenchmarks.class.getPackage().getName() + ".*");
+        }
+        builder.addProfiler(GCProfiler.class);
+        Options options = builder.build();
+        new Runner(options).run();
+    }
+}
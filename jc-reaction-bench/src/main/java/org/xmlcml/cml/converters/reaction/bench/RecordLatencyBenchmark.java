@@ -0,0 +1,97 @@
+package org.xmlcml.cml.converters.reaction.bench;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.converters.reaction.kegg.KEGGConverter;
+import org.xmlcml.cml.converters.reaction.rdf.RDFConverter;
+import org.xmlcml.cml.element.CMLReaction;
+
+/**
+ * per-record latency distribution (p50/p99/p99.9 in the SampleTime report)
+ * using the streaming iterators, which parse exactly one record per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordLatencyBenchmark {
+
+    private static final int RECORDS = 10000;
+
+    @Param({ SyntheticCorpus.DATA, SyntheticCorpus.RXN })
+    String kind;
+
+    File rdfFile;
+    File keggFile;
+    LineNumberReader rdfReader;
+    LineNumberReader keggReader;
+    Iterator<CMLElement> rdfIterator;
+    Iterator<CMLReaction> keggIterator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        rdfFile = File.createTempFile("bench", ".rdf");
+        SyntheticCorpus.writeRdf(rdfFile, RECORDS, kind);
+        keggFile = File.createTempFile("bench", ".kegg");
+        SyntheticCorpus.writeKegg(keggFile, RECORDS);
+        openRdf();
+        openKegg();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        rdfReader.close();
+        keggReader.close();
+        rdfFile.delete();
+        keggFile.delete();
+    }
+
+    @Benchmark
+    public CMLElement rdfRecord() throws IOException {
+        if (!rdfIterator.hasNext()) {
+            rdfReader.close();
+            openRdf();
+        }
+        return rdfIterator.next();
+    }
+
+    @Benchmark
+    public CMLReaction keggRecord() throws IOException {
+        if (!keggIterator.hasNext()) {
+            keggReader.close();
+            openKegg();
+        }
+        return keggIterator.next();
+    }
+
+    private void openRdf() throws IOException {
+        rdfReader = new LineNumberReader(new FileReader(rdfFile));
+        rdfIterator = new RDFConverter().iterator(rdfReader);
+    }
+
+    private void openKegg() throws IOException {
+        keggReader = new LineNumberReader(new FileReader(keggFile));
+        keggIterator = new KEGGConverter().iterator(keggReader);
+    }
+}
@@ -0,0 +1,127 @@
+package org.xmlcml.cml.converters.reaction.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * writes synthetic RXN, RDF and KEGG inputs of a given size so that the
+ * benchmarks do not depend on licensed data.
+ * 
+ * Structures are simple carbon chains with every atom mapped, which is the
+ * worst case for the atom-mapping code.
+ */
+public class SyntheticCorpus {
+
+    /** RDF records holding only $DTYPE/$DATUM data */
+    public static final String DATA = "data";
+
+    /** RDF records holding an embedded rxnfile as well as data */
+    public static final String RXN = "rxn";
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * @param atoms atoms in each of the reactant and the product (max 999)
+     * @return single-reaction rxnfile
+     */
+    public static String rxn(int atoms) {
+        StringBuilder sb = new StringBuilder();
+        appendRxn(sb, atoms, "synthetic");
+        return sb.toString();
+    }
+
+    /**
+     * write an RDfile.
+     * 
+     * @param file
+     * @param records
+     * @param kind {@link #DATA} or {@link #RXN}
+     * @throws IOException
+     */
+    public static void writeRdf(File file, int records, String kind) throws IOException {
+        Writer w = new BufferedWriter(new FileWriter(file));
+        try {
+            w.write("$RDFILE 1\n");
+            w.write("$DATM 10/17/91 10:41\n");
+            StringBuilder sb = new StringBuilder();
+            for (int i = 1; i <= records; i++) {
+                sb.setLength(0);
+                if (RXN.equals(kind)) {
+                    sb.append("$RFMT $RIREG ").append(i).append('\n');
+                    appendRxn(sb, 12, "reaction " + i);
+                } else {
+                    sb.append("$RIREG ").append(i).append('\n');
+                }
+                sb.append("$DTYPE ROOT:YIELD\n");
+                sb.append("$DATUM ").append(i % 100).append(".0\n");
+                sb.append("$DTYPE ROOT:SOLVENT\n");
+                sb.append("$DATUM water\n");
+                sb.append("$DTYPE ROOT:REFERENCE\n");
+                sb.append("$DATUM A G Repin, Y Y Makarov-Zemlyanskii,\n");
+                sb.append("Zur Russ Fiz-Chim, 44. p. 2360, 1974\n");
+                w.write(sb.toString());
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * write a KEGG REACTION flat file.
+     * 
+     * @param file
+     * @param entries
+     * @throws IOException
+     */
+    public static void writeKegg(File file, int entries) throws IOException {
+        Writer w = new BufferedWriter(new FileWriter(file));
+        try {
+            for (int i = 1; i <= entries; i++) {
+                w.write(String.format("ENTRY       R%05d\n", i % 100000));
+                w.write("NAME        Pyrophosphate phosphohydrolase\n");
+                w.write("DEFINITION  Pyrophosphate + H2O <=> 2 Orthophosphate\n");
+                w.write("EQUATION    C00013 + C00001 <=> 2 C00009\n");
+                w.write("PATHWAY     PATH: MAP00190  Oxidative phosphorylation\n");
+                w.write("ENZYME      3.6.1.1\n");
+                w.write("///\n");
+            }
+        } finally {
+            w.close();
+        }
+    }
+
+    static void appendRxn(StringBuilder sb, int atoms, String comment) {
+        sb.append("$RXN\n");
+        sb.append('\n');
+        sb.append("      SYNTH     0000000000\n");
+        sb.append(comment).append('\n');
+        sb.append("  1  1\n");
+        sb.append("$MOL\n");
+        appendMolfile(sb, atoms, 0.0);
+        sb.append("$MOL\n");
+        appendMolfile(sb, atoms, 5.0);
+    }
+
+    static void appendMolfile(StringBuilder sb, int atoms, double xOffset) {
+        sb.append('\n');
+        sb.append("  -SYNTH-  00000000002D\n");
+        sb.append('\n');
+        int bonds = atoms - 1;
+        sb.append(String.format("%3d%3d  0  0  0  0  0  0  0  0999 V2000\n",
+                atoms, bonds));
+        for (int i = 1; i <= atoms; i++) {
+            sb.append(String.format(Locale.US,
+                    "%10.4f%10.4f%10.4f %-3s 0  0  0  0  0  0  0  0  0%3d  0  0\n",
+                    xOffset + 0.75 * i, (i % 2) * 0.5, 0.0, "C", i));
+        }
+        for (int i = 1; i <= bonds; i++) {
+            sb.append(String.format("%3d%3d  1  0  0  0  0\n", i, i + 1));
+        }
+        sb.append("M  END\n");
+    }
+}
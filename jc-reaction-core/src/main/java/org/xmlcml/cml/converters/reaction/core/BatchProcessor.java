@@ -0,0 +1,179 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * converts a batch of files on a bounded pool of worker threads.
+ * 
+ * Each file is converted independently: an exception from one file is
+ * logged and counted but does not stop the rest of the batch. The work
+ * queue is bounded, and when it is full the submitting thread converts
+ * the next file itself, so a very large directory never queues more than a
+ * few tasks per worker.
+ * 
+ * With a {@link Quarantine} each failing file is also copied aside with
+ * the reason it failed.
+ */
+public class BatchProcessor {
+
+    final static Logger logger = Logger.getLogger(BatchProcessor.class.getName());
+
+    /** tasks queued per worker before the caller starts doing work itself */
+    private static final int QUEUE_FACTOR = 4;
+
+    /**
+     * converts a single file. Implementations must close every stream they
+     * open and must be safe to call from several threads at once.
+     */
+    public interface Job {
+        /**
+         * @param file
+         * @throws Exception
+         */
+        void convert(File file) throws Exception;
+    }
+
+    private int threadCount;
+    private Quarantine quarantine;
+    private AtomicInteger succeeded = new AtomicInteger();
+    private AtomicInteger failed = new AtomicInteger();
+    private long elapsedNanos;
+
+    /**
+     * @param threadCount number of workers; values less than 1 use one
+     *            worker per available processor
+     */
+    public BatchProcessor(int threadCount) {
+        this.threadCount = (threadCount < 1) ?
+                Runtime.getRuntime().availableProcessors() : threadCount;
+    }
+
+    /**
+     * convert all files and wait for them to finish.
+     * 
+     * @param files
+     * @param job
+     * @throws InterruptedException
+     */
+    public void process(List<File> files, final Job job) throws InterruptedException {
+        succeeded.set(0);
+        failed.set(0);
+        long start = System.nanoTime();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount,
+                threadCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threadCount * QUEUE_FACTOR),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            for (final File file : files) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            job.convert(file);
+                            succeeded.incrementAndGet();
+                        } catch (Throwable t) {
+                            failed.incrementAndGet();
+                            if (quarantine == null) {
+                                logger.log(Level.SEVERE, "Failed to convert "
+                                        + file + ": " + t, t);
+                            } else {
+                                quarantine(file, t);
+                            }
+                        }
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // keep waiting; every task has been submitted
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+        logger.info(getSummary());
+    }
+
+    /* copy a failed file aside; a failure here is logged, not thrown */
+    private void quarantine(File file, Throwable t) {
+        try {
+            File copy = quarantine.add(file, t);
+            logger.warning("Failed to convert " + file + ": " + t
+                    + "; copied to " + copy);
+        } catch (IOException ioe) {
+            logger.log(Level.SEVERE, "Failed to convert " + file + ": " + t
+                    + "; cannot quarantine it: " + ioe, t);
+        }
+    }
+
+    /**
+     * Sets where files that fail are copied
+     * 
+     * @param quarantine
+     *            null (the default) only logs failures
+     */
+    public void setQuarantine(Quarantine quarantine) {
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Gets where files that fail are copied
+     * 
+     * @return The quarantine value
+     */
+    public Quarantine getQuarantine() {
+        return quarantine;
+    }
+
+    /**
+     * @return number of workers
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @return files converted without error in the last batch
+     */
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    /**
+     * @return files that failed in the last batch
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return wall-clock time of the last batch in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000L;
+    }
+
+    /**
+     * @return files per second over the last batch
+     */
+    public double getThroughput() {
+        int total = succeeded.get() + failed.get();
+        return (elapsedNanos == 0) ? 0.0 : total * 1.0e9 / elapsedNanos;
+    }
+
+    /**
+     * @return one-line report of the last batch
+     */
+    public String getSummary() {
+        return "Converted " + succeeded.get() + " files (" + failed.get()
+                + " failed) in " + getElapsedMillis() + " ms with "
+                + threadCount + " threads: "
+                + String.format("%.1f", getThroughput()) + " files/s";
+    }
+}
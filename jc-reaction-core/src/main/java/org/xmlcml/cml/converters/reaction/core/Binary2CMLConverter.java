@@ -0,0 +1,87 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import nu.xom.Document;
+import nu.xom.Element;
+
+import org.xmlcml.cml.converters.MimeType;
+import org.xmlcml.cml.converters.cml.CMLCommon;
+
+/**
+ * converts the binary reaction format back to CML.
+ */
+public class Binary2CMLConverter extends ReactionConverter {
+
+    public static final String REG_MESSAGE = "binary reaction to CML conversion";
+
+    /**
+     * read every record into a document.
+     * 
+     * @param file
+     * @param root container for the records, such as a CMLReactionList
+     * @return document
+     * @throws IOException
+     */
+    public Document read(File file, Element root) throws IOException {
+        long start = ConversionMetrics.start(metrics);
+        BinaryReactionReader reader = new BinaryReactionReader(file);
+        try {
+            for (int i = 0; i < reader.size(); i++) {
+                root.appendChild(reader.getRecord(i));
+            }
+            ConversionMetrics.count(metrics, ConversionMetrics.Counter.RECORDS,
+                    reader.size());
+        } finally {
+            reader.close();
+        }
+        ConversionMetrics.stop(metrics, ConversionMetrics.Stage.DOM, start);
+        ConversionMetrics.count(metrics, ConversionMetrics.Counter.BYTES,
+                file.length());
+        return new Document(root);
+    }
+
+    /**
+     * write every record as CML, one at a time, without building a
+     * document.
+     * 
+     * @param file
+     * @param root container for the records, such as a CMLReactionList
+     * @param os not closed
+     * @return number of records
+     * @throws IOException
+     */
+    public int convert(File file, Element root, OutputStream os)
+            throws IOException {
+        BinaryReactionReader reader = new BinaryReactionReader(file);
+        try {
+            long start = ConversionMetrics.start(metrics);
+            StreamingCMLWriter writer = new StreamingCMLWriter(os, root);
+            reader.read(writer);
+            writer.endDocument();
+            ConversionMetrics.stop(metrics,
+                    ConversionMetrics.Stage.SERIALIZE, start);
+            ConversionMetrics.count(metrics, ConversionMetrics.Counter.RECORDS,
+                    writer.getCount());
+            ConversionMetrics.count(metrics, ConversionMetrics.Counter.BYTES,
+                    file.length());
+            return writer.getCount();
+        } finally {
+            reader.close();
+        }
+    }
+
+    public MimeType getInputType() {
+        return ReactionModule.BINARY_TYPE;
+    }
+
+    public MimeType getOutputType() {
+        return CMLCommon.CML_TYPE;
+    }
+
+    public String getDescription() {
+        return REG_MESSAGE;
+    }
+}
@@ -0,0 +1,44 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xmlcml.cml.converters.Converter;
+import org.xmlcml.cml.converters.MimeType;
+
+/**
+ * the binary reaction converters, which belong to no input format.
+ *
+ * The module is not listed in any META-INF/jumbo-converters, so the
+ * default registry holds only the format modules; an application that
+ * wants CML2BinaryConverter and Binary2CMLConverter registered lists this
+ * class in its own META-INF/jumbo-converters.
+ */
+public class BinaryModule extends ReactionModule {
+
+    public BinaryModule() {
+    	super();
+    }
+
+    public String getPrefix() {
+    	return "cmlr";
+    }
+
+	public List<Converter> getConverterList() {
+		if (converterList == null) {
+			converterList = new ArrayList<Converter>();
+	        converterList.add(new CML2BinaryConverter());
+	        converterList.add(new Binary2CMLConverter());
+		}
+		return converterList;
+    }
+
+	public List<MimeType> getMimeTypeList() {
+		if (mimeTypeList == null) {
+			mimeTypeList = new ArrayList<MimeType>();
+			mimeTypeList.add(BINARY_TYPE);
+		}
+		return mimeTypeList;
+	}
+
+}
@@ -0,0 +1,411 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nu.xom.Attribute;
+import nu.xom.Element;
+import nu.xom.Text;
+
+import org.xmlcml.cml.base.CMLElement;
+
+/**
+ * reads a file written by {@link BinaryReactionWriter}, rebuilding records
+ * only when they are asked for.
+ *
+ * Opening maps the file and reads the trailer and the positions of the
+ * strings; no record is decoded and no string is created until it is
+ * needed. {@link #getRecord(int)} then decodes a single record from its
+ * offset, so any record can be fetched without reading those before it.
+ *
+ * Elements are rebuilt as the CML element classes they were written from
+ * (a "reaction" as a CMLReaction) and attributes are set through the
+ * element's own setters, so the records behave as if they had just been
+ * parsed. Attributes without a setter are added as plain attributes.
+ *
+ * Elements and attributes keep the namespace URI and prefix they were
+ * written with; an element whose name and namespace are not those of a CML
+ * element class is rebuilt as a plain Element. Only files of
+ * {@link BinaryReactionWriter#VERSION} are read.
+ *
+ * The file is mapped in overlapping windows, so files larger than 2 GB
+ * can be read; a record or string too long to lie within one window is
+ * mapped on its own when it is read.
+ *
+ * The reader may be shared between threads; each call decodes from its
+ * own view of the file.
+ */
+public class BinaryReactionReader implements Iterable<CMLElement> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String ELEMENT_PACKAGE = "org.xmlcml.cml.element.CML";
+    private static final Object NO_SETTER = new Object();
+    private static final Object NO_CLASS = new Object();
+
+    /* start of one window to the next; each maps twice this, so that
+       anything up to this long starting within it is wholly mapped */
+    static final int WINDOW = 1 << 29;
+
+    private static final ConcurrentHashMap<String, Object> CONSTRUCTORS = new ConcurrentHashMap<String, Object>();
+    private static final ConcurrentHashMap<Class<?>, Setters> SETTERS = new ConcurrentHashMap<Class<?>, Setters>();
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long size;
+    private int window;
+    private ByteBuffer[] windows;
+    private int count;
+    private long stringStart;
+    private long offsetStart;
+    private long[] stringOffsets;
+    private String[] strings;
+
+    /**
+     * @param file
+     * @throws IOException if the file is not in the binary format
+     */
+    public BinaryReactionReader(File file) throws IOException {
+        this(file, WINDOW);
+    }
+
+    /* window is only changed by tests */
+    BinaryReactionReader(File file, int window) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        this.size = channel.size();
+        this.window = window;
+        if (size < BinaryReactionWriter.MAGIC.length + 1
+                + BinaryReactionWriter.TRAILER_LENGTH) {
+            close();
+            throw new IOException("Not a binary reaction file: " + file);
+        }
+        windows = new ByteBuffer[(int) ((size + window - 1) / window)];
+        for (int k = 0; k < windows.length; k++) {
+            long start = (long) k * window;
+            windows[k] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.min(size - start, 2L * window));
+        }
+        if (!hasMagic(0) || !hasMagic(size - 4)) {
+            close();
+            throw new IOException("Not a binary reaction file: " + file);
+        }
+        int version = at(4, 5).get();
+        if (version != BinaryReactionWriter.VERSION) {
+            close();
+            throw new IOException("Unsupported binary reaction version "
+                    + version + ": " + file);
+        }
+        ByteBuffer trailer = at(size - BinaryReactionWriter.TRAILER_LENGTH,
+                size);
+        stringStart = trailer.getLong();
+        offsetStart = trailer.getLong();
+        count = trailer.getInt();
+
+        long position = stringStart;
+        ByteBuffer b = at(position, Math.min(position + 5, offsetStart));
+        int n = readVarint(b);
+        position += b.position();
+        stringOffsets = new long[n];
+        strings = new String[n];
+        for (int i = 0; i < n; i++) {
+            stringOffsets[i] = position;
+            b = at(position, Math.min(position + 5, offsetStart));
+            int length = readVarint(b);
+            position += b.position() + length;
+        }
+    }
+
+    /**
+     * @return number of records
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * decode one record.
+     *
+     * @param i ordinal, from 0
+     * @return reaction or molecule, not attached to any document
+     */
+    public CMLElement getRecord(int i) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Record " + i + " of " + count);
+        }
+        long start = offset(i);
+        ByteBuffer b = at(start, (i + 1 < count) ? offset(i + 1) : stringStart);
+        if (b.get() != BinaryReactionWriter.ELEMENT) {
+            throw new RuntimeException("Corrupt binary reaction record " + i);
+        }
+        return (CMLElement) readElement(b);
+    }
+
+    /**
+     * @return the records in file order, each decoded as it is reached
+     */
+    public Iterator<CMLElement> iterator() {
+        return new Iterator<CMLElement>() {
+            int next = 0;
+
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            public CMLElement next() {
+                if (next >= count) {
+                    throw new NoSuchElementException();
+                }
+                return getRecord(next++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * pass every record to the handler in file order.
+     *
+     * @param handler
+     * @return number of records
+     * @throws IOException
+     */
+    public int read(RecordHandler handler) throws IOException {
+        for (int i = 0; i < count; i++) {
+            handler.handle(getRecord(i));
+        }
+        return count;
+    }
+
+    /**
+     * release the file. Records already decoded remain usable.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private long offset(int i) {
+        return at(offsetStart + 8L * i, offsetStart + 8L * i + 8).getLong();
+    }
+
+    /*
+     * the bytes from start to end, positioned at 0: a view of the window
+     * holding them, or a mapping of their own if no window holds them all
+     */
+    private ByteBuffer at(long start, long end) {
+        int k = (int) (start / window);
+        long windowStart = (long) k * window;
+        if (end - windowStart <= windows[k].limit()) {
+            ByteBuffer b = windows[k].duplicate();
+            b.position((int) (start - windowStart));
+            b.limit((int) (end - windowStart));
+            return b.slice();
+        }
+        if (end - start > Integer.MAX_VALUE) {
+            throw new RuntimeException("Binary reaction item too large: "
+                    + (end - start));
+        }
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end
+                    - start);
+        } catch (IOException ioe) {
+            throw new RuntimeException("Cannot map binary reaction file: "
+                    + ioe, ioe);
+        }
+    }
+
+    private boolean hasMagic(long position) {
+        ByteBuffer b = at(position, position + BinaryReactionWriter.MAGIC.length);
+        for (int i = 0; i < BinaryReactionWriter.MAGIC.length; i++) {
+            if (b.get(i) != BinaryReactionWriter.MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Element readElement(ByteBuffer b) {
+        String name = readString(b);
+        String prefix = readString(b);
+        String uri = readString(b);
+        Element element = newElement(name, prefix, uri);
+        int attributeCount = readVarint(b);
+        for (int i = 0; i < attributeCount; i++) {
+            String attribute = readString(b);
+            int kind = b.get();
+            if ((kind & BinaryReactionWriter.NAMESPACED) != 0) {
+                // always a string, set as a plain attribute
+                String attributePrefix = readString(b);
+                String attributeURI = readString(b);
+                element.addAttribute(new Attribute(attributePrefix + ":"
+                        + attribute, attributeURI, readString(b)));
+            } else if (kind == BinaryReactionWriter.DOUBLE_VALUE) {
+                setAttribute(element, attribute, double.class, Double
+                        .longBitsToDouble(b.getLong()));
+            } else if (kind == BinaryReactionWriter.INT_VALUE) {
+                int n = readVarint(b);
+                setAttribute(element, attribute, int.class, (n >>> 1) ^ -(n & 1));
+            } else {
+                setAttribute(element, attribute, String.class, readString(b));
+            }
+        }
+        while (true) {
+            int kind = b.get();
+            if (kind == BinaryReactionWriter.END) {
+                break;
+            } else if (kind == BinaryReactionWriter.ELEMENT) {
+                element.appendChild(readElement(b));
+            } else if (kind == BinaryReactionWriter.TEXT) {
+                element.appendChild(new Text(readString(b)));
+            } else if (kind == BinaryReactionWriter.INLINE_TEXT) {
+                element.appendChild(new Text(readUTF8(b)));
+            } else {
+                throw new RuntimeException("Corrupt binary reaction node: " + kind);
+            }
+        }
+        return element;
+    }
+
+    /* string ids are decoded once and kept */
+    private String readString(ByteBuffer b) {
+        int id = readVarint(b);
+        String s = strings[id];
+        if (s == null) {
+            long end = (id + 1 < stringOffsets.length) ? stringOffsets[id + 1]
+                    : offsetStart;
+            s = readUTF8(at(stringOffsets[id], end));
+            strings[id] = s;
+        }
+        return s;
+    }
+
+    private static String readUTF8(ByteBuffer b) {
+        byte[] bytes = new byte[readVarint(b)];
+        b.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static int readVarint(ByteBuffer b) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            int next = b.get();
+            value |= (next & 0x7f) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    /*
+     * "reactantList" is made as a CMLReactantList, if it is in the namespace
+     * of that class; otherwise as a plain Element
+     */
+    private static Element newElement(String name, String prefix, String uri) {
+        Object constructor = CONSTRUCTORS.get(name);
+        try {
+            if (constructor == null) {
+                try {
+                    constructor = Class.forName(
+                            ELEMENT_PACKAGE
+                                    + Character.toUpperCase(name.charAt(0))
+                                    + name.substring(1)).getConstructor();
+                } catch (ClassNotFoundException e) {
+                    constructor = NO_CLASS;
+                }
+                CONSTRUCTORS.put(name, constructor);
+            }
+            if (constructor != NO_CLASS) {
+                Element element = (Element) ((Constructor<?>) constructor)
+                        .newInstance();
+                if (element.getNamespaceURI().equals(uri)) {
+                    if (!element.getNamespacePrefix().equals(prefix)) {
+                        element.setNamespacePrefix(prefix);
+                    }
+                    return element;
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot create CML element " + name
+                    + ": " + e);
+        }
+        return new Element((prefix.length() == 0) ? name : prefix + ":"
+                + name, uri);
+    }
+
+    private static void setAttribute(Element element, String name,
+            Class<?> type, Object value) {
+        Setters setters = SETTERS.get(element.getClass());
+        if (setters == null) {
+            setters = new Setters();
+            SETTERS.put(element.getClass(), setters);
+        }
+        Object setter = setters.find(element.getClass(), name, type);
+        if (setter == NO_SETTER) {
+            element.addAttribute(new Attribute(name, value.toString()));
+            return;
+        }
+        Method method = (Method) setter;
+        if (method.getParameterTypes()[0] == String[].class) {
+            value = ((String) value).trim().split("\\s+");
+        }
+        try {
+            method.invoke(element, value);
+        } catch (InvocationTargetException e) {
+            throw new RuntimeException("Cannot set " + name + " to " + value
+                    + ": " + e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Cannot set " + name + ": " + e);
+        }
+    }
+
+    /* setters of one element class, looked up once per attribute and type */
+    private static class Setters {
+
+        private ConcurrentHashMap<String, Object> strings = new ConcurrentHashMap<String, Object>();
+        private ConcurrentHashMap<String, Object> doubles = new ConcurrentHashMap<String, Object>();
+        private ConcurrentHashMap<String, Object> ints = new ConcurrentHashMap<String, Object>();
+
+        Object find(Class<?> elementClass, String name, Class<?> type) {
+            ConcurrentHashMap<String, Object> map = (type == String.class) ? strings
+                    : (type == double.class) ? doubles : ints;
+            Object setter = map.get(name);
+            if (setter == null) {
+                String methodName = "set" + Character.toUpperCase(name.charAt(0))
+                        + name.substring(1);
+                setter = lookup(elementClass, methodName, type);
+                if (setter == null && type == String.class) {
+                    setter = lookup(elementClass, methodName, String[].class);
+                }
+                if (setter == null) {
+                    setter = NO_SETTER;
+                }
+                map.put(name, setter);
+            }
+            return setter;
+        }
+
+        private static Method lookup(Class<?> elementClass, String methodName,
+                Class<?> type) {
+            try {
+                return elementClass.getMethod(methodName, type);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nu.xom.Attribute;
+import nu.xom.Element;
+import nu.xom.Node;
+import nu.xom.Text;
+
+import org.xmlcml.cml.base.CMLElement;
+
+/**
+ * writes records (reactions or molecules) in the compact binary format
+ * read back by {@link BinaryReactionReader}.
+ *
+ * <pre>
+ * header   "CMLR" version
+ * records  one element tree each
+ * strings  varint count, then varint UTF-8 length and bytes for each
+ * offsets  8-byte start of each record
+ * trailer  8-byte start of strings, 8-byte start of offsets,
+ *          4-byte record count, "CMLR"
+ * </pre>
+ *
+ * An element is its kind byte, the ids of its name, namespace prefix and
+ * namespace URI, its attributes and its children, ended by {@link #END}.
+ * An attribute is the id of its name and a value kind byte; if the kind
+ * has the {@link #NAMESPACED} bit set, the ids of its prefix and namespace
+ * URI follow before the value. Names, attribute values and short text
+ * are written once to the string table and referred to by varint id, so
+ * species ids, element symbols, titles and conventions repeated across a
+ * file cost one or two bytes each. Coordinates, counts and charges are
+ * stored as numbers when that gives back the same attribute value.
+ *
+ * Records are written as they are handed over, so like StreamingCMLWriter
+ * this holds only the current record, the string table and the offsets.
+ * Call {@link #finish()} after the last record.
+ */
+public class BinaryReactionWriter implements RecordHandler {
+
+    /** first and last bytes of a file */
+    public static final byte[] MAGIC = { 'C', 'M', 'L', 'R' };
+
+    /** format version; the reader rejects any other */
+    public static final int VERSION = 2;
+
+    /** bytes after the offset table */
+    public static final int TRAILER_LENGTH = 8 + 8 + 4 + 4;
+
+    static final int END = 0;
+    static final int ELEMENT = 1;
+    static final int TEXT = 2;
+    static final int INLINE_TEXT = 3;
+
+    static final int STRING_VALUE = 0;
+    static final int DOUBLE_VALUE = 1;
+    static final int INT_VALUE = 2;
+
+    /** set on the value kind of an attribute in a namespace */
+    static final int NAMESPACED = 0x10;
+
+    /** longer text is written in place rather than interned */
+    static final int MAX_INTERNED_TEXT = 64;
+
+    private static final String DOUBLE_ATTRIBUTES = " x2 y2 x3 y3 z3 count ";
+    private static final String INT_ATTRIBUTES = " formalCharge isotopeNumber hydrogenCount spinMultiplicity ";
+
+    private OutputStream os;
+    private long position;
+    private Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    private List<String> strings = new ArrayList<String>();
+    private long[] offsets = new long[1024];
+    private int count;
+    private boolean finished;
+
+    /**
+     * writes the header.
+     *
+     * @param os not closed by the writer
+     * @throws IOException
+     */
+    public BinaryReactionWriter(OutputStream os) throws IOException {
+        this.os = new BufferedOutputStream(os);
+        writeBytes(MAGIC);
+        writeByte(VERSION);
+    }
+
+    /**
+     * write a record.
+     *
+     * @param record
+     * @throws IOException
+     */
+    public void handle(CMLElement record) throws IOException {
+        write(record);
+    }
+
+    /**
+     * write a record.
+     *
+     * @param record
+     * @throws IOException
+     */
+    public void write(Element record) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Writer already finished");
+        }
+        if (count == offsets.length) {
+            long[] grown = new long[2 * count];
+            System.arraycopy(offsets, 0, grown, 0, count);
+            offsets = grown;
+        }
+        offsets[count++] = position;
+        writeElement(record);
+    }
+
+    /**
+     * write the string table, offsets and trailer, and flush. The stream
+     * is not closed.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        long stringStart = position;
+        writeVarint(strings.size());
+        for (String s : strings) {
+            byte[] bytes = s.getBytes("UTF-8");
+            writeVarint(bytes.length);
+            writeBytes(bytes);
+        }
+        long offsetStart = position;
+        for (int i = 0; i < count; i++) {
+            writeLong(offsets[i]);
+        }
+        writeLong(stringStart);
+        writeLong(offsetStart);
+        writeInt(count);
+        writeBytes(MAGIC);
+        os.flush();
+        finished = true;
+    }
+
+    /**
+     * @return records written so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    private void writeElement(Element element) throws IOException {
+        writeByte(ELEMENT);
+        writeString(element.getLocalName());
+        writeString(element.getNamespacePrefix());
+        writeString(element.getNamespaceURI());
+        int attributeCount = element.getAttributeCount();
+        writeVarint(attributeCount);
+        for (int i = 0; i < attributeCount; i++) {
+            Attribute attribute = element.getAttribute(i);
+            String name = attribute.getLocalName();
+            String value = attribute.getValue();
+            writeString(name);
+            if (attribute.getNamespaceURI().length() > 0) {
+                writeByte(STRING_VALUE | NAMESPACED);
+                writeString(attribute.getNamespacePrefix());
+                writeString(attribute.getNamespaceURI());
+                writeString(value);
+            } else if (DOUBLE_ATTRIBUTES.indexOf(" " + name + " ") != -1
+                    && isDouble(value)) {
+                writeByte(DOUBLE_VALUE);
+                writeLong(Double.doubleToLongBits(Double.parseDouble(value)));
+            } else if (INT_ATTRIBUTES.indexOf(" " + name + " ") != -1
+                    && isInt(value)) {
+                writeByte(INT_VALUE);
+                int n = Integer.parseInt(value);
+                writeVarint((n << 1) ^ (n >> 31));
+            } else {
+                writeByte(STRING_VALUE);
+                writeString(value);
+            }
+        }
+        for (int i = 0; i < element.getChildCount(); i++) {
+            Node child = element.getChild(i);
+            if (child instanceof Element) {
+                writeElement((Element) child);
+            } else if (child instanceof Text) {
+                String text = child.getValue();
+                if (text.length() <= MAX_INTERNED_TEXT) {
+                    writeByte(TEXT);
+                    writeString(text);
+                } else {
+                    writeByte(INLINE_TEXT);
+                    byte[] bytes = text.getBytes("UTF-8");
+                    writeVarint(bytes.length);
+                    writeBytes(bytes);
+                }
+            }
+            // comments and processing instructions are not kept
+        }
+        writeByte(END);
+    }
+
+    /* numbers are only stored if they give back the same text */
+    private static boolean isDouble(String value) {
+        try {
+            return Double.toString(Double.parseDouble(value)).equals(value);
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
+    private static boolean isInt(String value) {
+        try {
+            return Integer.toString(Integer.parseInt(value)).equals(value);
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(s, id);
+            strings.add(s);
+        }
+        writeVarint(id);
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private void writeInt(int value) throws IOException {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            writeByte(value >>> shift);
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (value >>> shift));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        os.write(b);
+        position++;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        os.write(bytes);
+        position += bytes.length;
+    }
+}
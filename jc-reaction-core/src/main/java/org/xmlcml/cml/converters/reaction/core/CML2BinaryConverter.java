@@ -0,0 +1,58 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import nu.xom.Element;
+
+import org.xmlcml.cml.converters.MimeType;
+import org.xmlcml.cml.converters.cml.CMLCommon;
+
+/**
+ * converts CML to the binary reaction format.
+ * 
+ * Each child element of the root (each reaction of a reactionList, each
+ * record of a cml container) becomes one record. Converters that read
+ * record by record can write the format directly by passing a
+ * BinaryReactionWriter as their RecordHandler.
+ */
+public class CML2BinaryConverter extends ReactionConverter {
+
+    public static final String REG_MESSAGE = "CML to binary reaction conversion";
+
+    /**
+     * write the children of root as records.
+     * 
+     * @param root
+     * @param os not closed
+     * @return number of records
+     * @throws IOException
+     */
+    public int convert(Element root, OutputStream os) throws IOException {
+        long start = ConversionMetrics.start(metrics);
+        BinaryReactionWriter writer = new BinaryReactionWriter(os);
+        for (int i = 0; i < root.getChildCount(); i++) {
+            if (root.getChild(i) instanceof Element) {
+                writer.write((Element) root.getChild(i));
+            }
+        }
+        writer.finish();
+        ConversionMetrics.stop(metrics, ConversionMetrics.Stage.SERIALIZE,
+                start);
+        ConversionMetrics.count(metrics, ConversionMetrics.Counter.RECORDS,
+                writer.getCount());
+        return writer.getCount();
+    }
+
+    public MimeType getInputType() {
+        return CMLCommon.CML_TYPE;
+    }
+
+    public MimeType getOutputType() {
+        return ReactionModule.BINARY_TYPE;
+    }
+
+    public String getDescription() {
+        return REG_MESSAGE;
+    }
+}
@@ -0,0 +1,191 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nu.xom.Document;
+
+/**
+ * a bounded cache of converted documents, keyed on a hash of the input
+ * bytes, for callers that are given the same input again and again.
+ *
+ * Entries are evicted least recently used first once either the number of
+ * entries or their total weight passes its limit. The weight of an entry
+ * is chosen by the caller; the size of the input is a fair proxy for the
+ * size of the document built from it.
+ *
+ * The cache keeps its own copy of each document and hands out a new deep
+ * copy on every hit, so callers may change what they get back without
+ * affecting the cache or each other. The copy is made outside the lock.
+ *
+ * Keys are SHA-256 digests of the input and of every option that changes
+ * the output (see {@link #key(String, byte[])}). Inputs may come from
+ * anywhere, so a weak hash that could be made to collide would let one
+ * input be answered with the document of another.
+ */
+public class ConversionCache {
+
+    private int maxEntries;
+    private long maxWeight;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * @param maxEntries
+     *            most documents held
+     * @param maxWeight
+     *            most total weight held; a document heavier than this is
+     *            not cached
+     */
+    public ConversionCache(int maxEntries, long maxWeight) {
+        if (maxEntries < 1 || maxWeight < 1) {
+            throw new IllegalArgumentException("Cache limits must be positive: "
+                    + maxEntries + ", " + maxWeight);
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * digest an input for use as a key.
+     *
+     * @param salt
+     *            every option besides the input that changes the output,
+     *            such as the converter and the id it assigns; may be null
+     * @param input
+     * @return hex SHA-256 digest of salt and input
+     */
+    public static String key(String salt, byte[] input) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+            if (salt != null) {
+                digest.update(salt.getBytes("UTF-8"));
+            }
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new RuntimeException("SHA-256 not available", nsae);
+        } catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException("UTF-8 not available", uee);
+        }
+        /* separates the salt from the input */
+        digest.update((byte) 0);
+        byte[] bytes = digest.digest(input);
+        StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            sb.append(Character.forDigit((bytes[i] >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(bytes[i] & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param key
+     * @return a new copy of the cached document, or null on a miss
+     */
+    public Document get(String key) {
+        Document cached;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            cached = entry.document;
+        }
+        return new Document(cached);
+    }
+
+    /**
+     * cache a copy of a document, evicting others as needed.
+     *
+     * @param key
+     * @param document
+     *            not changed or kept by the cache
+     * @param weight
+     *            for example the length of the input
+     */
+    public void put(String key, Document document, long weight) {
+        if (weight > maxWeight) {
+            return;
+        }
+        Entry entry = new Entry(new Document(document), weight);
+        synchronized (this) {
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                this.weight -= old.weight;
+            }
+            this.weight += weight;
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet()
+                    .iterator();
+            while (entries.size() > maxEntries || this.weight > maxWeight) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                this.weight -= eldest.weight;
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * remove all entries. The counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * @return number of documents held
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return total weight of the documents held
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return lookups that returned a document
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return lookups that did not
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return documents removed to stay within the limits
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private static class Entry {
+
+        Document document;
+        long weight;
+
+        Entry(Document document, long weight) {
+            this.document = document;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+/**
+ * a failure to convert an input, with the line of the input at which the
+ * parse stopped.
+ *
+ * The converters wrap whatever their parse throws, so that the line is
+ * carried as a value rather than only in the text of the message. The
+ * message is that of the cause.
+ */
+public class ConversionException extends RuntimeException {
+
+    private int lineNumber;
+
+    /**
+     * @param cause
+     * @param lineNumber
+     *            line at which the parse stopped, from 1; less than 1 if not
+     *            known
+     */
+    public ConversionException(Throwable cause, int lineNumber) {
+        super(cause.getMessage(), cause);
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * @return line at which the parse stopped, or less than 1 if not known
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @param cause
+     * @return line of the first ConversionException in the cause chain, or
+     *         -1
+     */
+    public static int lineNumber(Throwable cause) {
+        for (Throwable t = cause; t != null; t = t.getCause()) {
+            if (t instanceof ConversionException) {
+                return ((ConversionException) t).getLineNumber();
+            }
+        }
+        return -1;
+    }
+}
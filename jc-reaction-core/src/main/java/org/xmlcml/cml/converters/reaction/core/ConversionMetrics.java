@@ -0,0 +1,233 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * timings and counts of conversions, for finding where the time goes.
+ *
+ * The time spent in each {@link Stage} is summed in nanoseconds, and the
+ * records, atoms, bytes and errors seen are counted. One instance may be
+ * shared by any number of converters and threads; updates are lock-free.
+ * It can be registered as a JMX MBean with {@link #register(String)}, or
+ * read directly.
+ *
+ * Converters hold a null reference when no metrics are wanted, and call
+ * the static methods here, which do nothing (and do not read the clock)
+ * for null. The cost on the hot path when disabled is one null test per
+ * stage.
+ */
+public class ConversionMetrics implements ConversionMetricsMBean {
+
+    /** parts of a conversion that are timed */
+    public enum Stage {
+        /** RXN header and counts; the fields of a KEGG entry */
+        HEADER,
+        /** molfiles, including the atoms and bonds built from them */
+        MOLECULE,
+        /** checking atom maps and building the map */
+        ATOM_MAP,
+        /** RDF data fields, including structures embedded in them */
+        DATA,
+        /**
+         * building CML from fields already read (KEGG equations). Other
+         * converters build elements as they read, within the stages above.
+         */
+        DOM,
+        /** writing records to a handler or file */
+        SERIALIZE
+    }
+
+    /** things counted */
+    public enum Counter {
+        /** records converted */
+        RECORDS,
+        /** atoms read */
+        ATOMS,
+        /** bytes of input */
+        BYTES,
+        /** records or files that failed */
+        ERRORS
+    }
+
+    /** JMX domain used by register() */
+    public static final String DOMAIN = "org.xmlcml.cml.converters.reaction";
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private AtomicLongArray nanos = new AtomicLongArray(STAGES.length);
+    private AtomicLongArray calls = new AtomicLongArray(STAGES.length);
+    private AtomicLongArray counts = new AtomicLongArray(COUNTERS.length);
+
+    /**
+     * @param metrics
+     *            may be null
+     * @return start time for stop(), or 0 if metrics is null
+     */
+    public static long start(ConversionMetrics metrics) {
+        return (metrics == null) ? 0 : System.nanoTime();
+    }
+
+    /**
+     * add the time since start to a stage. The time returned can start the
+     * next stage, so consecutive stages read the clock once each.
+     *
+     * @param metrics
+     *            may be null
+     * @param stage
+     * @param start
+     *            from start() or an earlier stop()
+     * @return the time now, or 0 if metrics is null
+     */
+    public static long stop(ConversionMetrics metrics, Stage stage, long start) {
+        if (metrics == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        metrics.add(stage, now - start);
+        return now;
+    }
+
+    /**
+     * @param metrics
+     *            may be null
+     * @param counter
+     * @param n
+     */
+    public static void count(ConversionMetrics metrics, Counter counter, long n) {
+        if (metrics != null) {
+            metrics.counts.addAndGet(counter.ordinal(), n);
+        }
+    }
+
+    /**
+     * @param stage
+     * @param elapsed
+     *            nanoseconds
+     */
+    public void add(Stage stage, long elapsed) {
+        nanos.addAndGet(stage.ordinal(), elapsed);
+        calls.incrementAndGet(stage.ordinal());
+    }
+
+    /**
+     * @param stage
+     * @return total nanoseconds spent in the stage
+     */
+    public long getNanos(Stage stage) {
+        return nanos.get(stage.ordinal());
+    }
+
+    /**
+     * @param stage
+     * @return number of times the stage was timed
+     */
+    public long getCalls(Stage stage) {
+        return calls.get(stage.ordinal());
+    }
+
+    /**
+     * @param counter
+     * @return count
+     */
+    public long get(Counter counter) {
+        return counts.get(counter.ordinal());
+    }
+
+    /**
+     * set every time and count to zero.
+     */
+    public void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            nanos.set(i, 0);
+            calls.set(i, 0);
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * register with the platform MBean server.
+     *
+     * @param name
+     *            distinguishes this instance, for example the converter
+     * @return name to unregister it by
+     * @throws JMException
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(DOMAIN
+                + ":type=ConversionMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                objectName);
+        return objectName;
+    }
+
+    /**
+     * @param objectName
+     *            from register()
+     * @throws JMException
+     */
+    public static void unregister(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    public long getRecords() {
+        return get(Counter.RECORDS);
+    }
+
+    public long getAtoms() {
+        return get(Counter.ATOMS);
+    }
+
+    public long getBytes() {
+        return get(Counter.BYTES);
+    }
+
+    public long getErrors() {
+        return get(Counter.ERRORS);
+    }
+
+    public long getHeaderNanos() {
+        return getNanos(Stage.HEADER);
+    }
+
+    public long getMoleculeNanos() {
+        return getNanos(Stage.MOLECULE);
+    }
+
+    public long getAtomMapNanos() {
+        return getNanos(Stage.ATOM_MAP);
+    }
+
+    public long getDataNanos() {
+        return getNanos(Stage.DATA);
+    }
+
+    public long getDomNanos() {
+        return getNanos(Stage.DOM);
+    }
+
+    public long getSerializeNanos() {
+        return getNanos(Stage.SERIALIZE);
+    }
+
+    /**
+     * @return counts, then milliseconds per stage
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Counter counter : COUNTERS) {
+            sb.append(counter).append('=').append(get(counter)).append(' ');
+        }
+        for (Stage stage : STAGES) {
+            sb.append(stage).append('=').append(getNanos(stage) / 1000000L)
+                    .append("ms ");
+        }
+        return sb.toString().trim();
+    }
+}
@@ -0,0 +1,62 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+/**
+ * JMX view of {@link ConversionMetrics}. Times are in nanoseconds.
+ */
+public interface ConversionMetricsMBean {
+
+    /**
+     * @return records converted
+     */
+    long getRecords();
+
+    /**
+     * @return atoms read
+     */
+    long getAtoms();
+
+    /**
+     * @return bytes of input
+     */
+    long getBytes();
+
+    /**
+     * @return records or files that failed
+     */
+    long getErrors();
+
+    /**
+     * @return time reading headers
+     */
+    long getHeaderNanos();
+
+    /**
+     * @return time reading molfiles
+     */
+    long getMoleculeNanos();
+
+    /**
+     * @return time mapping atoms
+     */
+    long getAtomMapNanos();
+
+    /**
+     * @return time reading RDF data fields
+     */
+    long getDataNanos();
+
+    /**
+     * @return time building CML from fields already read
+     */
+    long getDomNanos();
+
+    /**
+     * @return time writing records
+     */
+    long getSerializeNanos();
+
+    /**
+     * set every time and count to zero
+     */
+    void reset();
+}
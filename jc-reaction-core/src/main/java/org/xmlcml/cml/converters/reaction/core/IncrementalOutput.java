@@ -0,0 +1,206 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.logging.Logger;
+
+import nu.xom.Document;
+
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.base.CMLSerializer;
+
+/**
+ * a directory of converted records, one CML file per record, that is
+ * brought up to date with a new release of its source file by converting
+ * only the records that changed.
+ *
+ * The directory holds a {@link RecordManifest} of the raw records it was
+ * last built from. A converter's incremental update hashes every raw
+ * record and calls {@link #put(String, long)}; only if
+ * {@link #isChanged(String)} is the record parsed and passed to
+ * {@link #write(String, CMLElement)}. {@link #finish()} then deletes the
+ * files of records that have gone and saves the new manifest. The manifest
+ * is written last, so an interrupted update is simply done again.
+ *
+ * The manifest records the source only, not the converter settings; delete
+ * it (or the directory) after changing filters or options.
+ */
+public class IncrementalOutput {
+
+    private static Logger logger = Logger.getLogger(IncrementalOutput.class
+            .getName());
+
+    /** name of the manifest in the output directory */
+    public static final String MANIFEST = "manifest.tsv";
+
+    /** appended to the key of a record to give its file name */
+    public static final String SUFFIX = ".cml";
+
+    private static final String HEX = "0123456789ABCDEF";
+
+    private File directory;
+    private RecordManifest previous;
+    private RecordManifest current = new RecordManifest();
+    private int added;
+    private int changed;
+    private int unchanged;
+    private int removed;
+    private boolean finished;
+
+    /**
+     * @param directory
+     *            created if it does not exist; without a manifest every
+     *            record counts as added
+     * @throws IOException
+     */
+    public IncrementalOutput(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create output directory: "
+                    + directory);
+        }
+        File manifest = new File(directory, MANIFEST);
+        previous = manifest.exists() ? RecordManifest.read(manifest)
+                : new RecordManifest();
+    }
+
+    /**
+     * record the hash of the next raw record.
+     *
+     * @param key
+     *            record id; made unique if it has been seen before
+     * @param hash
+     *            from RecordManifest.hashLine
+     * @return the key to pass to isChanged() and write()
+     */
+    public String put(String key, long hash) {
+        key = current.put(key, hash);
+        if (previous.contains(key, hash)) {
+            unchanged++;
+        } else if (previous.containsKey(key)) {
+            changed++;
+        } else {
+            added++;
+        }
+        return key;
+    }
+
+    /**
+     * @param key
+     *            as returned by put()
+     * @return true if the record is new or differs from the last run, so
+     *         must be converted
+     */
+    public boolean isChanged(String key) {
+        Long hash = current.getHash(key);
+        return hash == null || !previous.contains(key, hash);
+    }
+
+    /**
+     * write (or replace) the file of a record.
+     *
+     * @param key
+     *            as returned by put()
+     * @param record
+     *            null if the record was not converted (for example because
+     *            a filter rejected it); any earlier file is then deleted
+     * @throws IOException
+     */
+    public void write(String key, CMLElement record) throws IOException {
+        File file = getFile(key);
+        if (record == null) {
+            file.delete();
+            return;
+        }
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            new CMLSerializer(fos).write(new Document(record));
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * delete the files of records not seen in this run and save the
+     * manifest.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                getFile(key).delete();
+                removed++;
+            }
+        }
+        current.write(new File(directory, MANIFEST));
+        finished = true;
+        logger.info("Updated " + directory + ": " + added + " added, "
+                + changed + " changed, " + removed + " removed, " + unchanged
+                + " unchanged");
+    }
+
+    /**
+     * file of a record. Letters, digits, '.', '_' and '-' are kept and
+     * every other character is written as %XX for each byte of its UTF-8
+     * form, so distinct keys give distinct names.
+     *
+     * @param key
+     * @return file holding the converted record
+     */
+    public File getFile(String key) {
+        StringBuilder name = new StringBuilder(key.length() + SUFFIX.length());
+        byte[] bytes;
+        try {
+            bytes = key.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException("UTF-8 not available", uee);
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            int c = bytes[i] & 0xff;
+            boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '.' || c == '_'
+                    || c == '-';
+            if (safe) {
+                name.append((char) c);
+            } else {
+                name.append('%').append(HEX.charAt(c >> 4)).append(
+                        HEX.charAt(c & 0xf));
+            }
+        }
+        return new File(directory, name.append(SUFFIX).toString());
+    }
+
+    /**
+     * @return records not in the last run
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    /**
+     * @return records whose contents differ from the last run
+     */
+    public int getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return records identical to the last run, not converted
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return records of the last run no longer present; set by finish()
+     */
+    public int getRemoved() {
+        return removed;
+    }
+}
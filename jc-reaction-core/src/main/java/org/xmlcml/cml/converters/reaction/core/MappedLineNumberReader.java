@@ -0,0 +1,497 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * a LineNumberReader over a memory-mapped file.
+ * 
+ * Lines are found by scanning the mapped bytes for '\n', '\r' or "\r\n", as
+ * LineNumberReader does, and a String is only built when a line is actually
+ * returned by readLine(). Lines that are pure ASCII (almost all of an MDL or
+ * KEGG file) are turned into Strings without a CharsetDecoder; other lines
+ * are decoded with the charset given to the constructor, which must be one
+ * that encodes ASCII as single bytes (UTF-8, ISO-8859-1, the platform
+ * default on most systems), since line ends and markers are found as bytes.
+ * 
+ * Callers that only need to test or discard a line can use
+ * {@link #lineStartsWith(String)}, {@link #peek()} and {@link #skipLine()},
+ * which never create Strings. The static {@link #skipLine(LineNumberReader)}
+ * uses the fast path when given a mapped reader and falls back to
+ * readLine() otherwise, so converters can call it on any reader.
+ * 
+ * The file is mapped in windows (64 MB by default) so files larger than
+ * 2 GB can be read; a window is remapped at the start of the line that
+ * crosses its end. Byte offsets from {@link #getPosition()} can be passed
+ * back to {@link #seek(long)} for random access. {@link #duplicate()} gives
+ * further readers over the same mapping, so that several threads can read
+ * one file that has been mapped once.
+ * 
+ * The character methods read() and read(char[], int, int) return single
+ * bytes as ISO-8859-1 characters whatever the charset, with each line end
+ * read as one '\n'; they are for ASCII input. mark() and reset() are not
+ * supported.
+ */
+public class MappedLineNumberReader extends LineNumberReader {
+
+    /** */
+    public static final int DEFAULT_WINDOW = 64 * 1024 * 1024;
+
+    /** files smaller than this are read through a plain LineNumberReader by open() */
+    public static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private Charset charset;
+    private long size;
+    private int window;
+    private MappedByteBuffer buffer;
+    private long bufferStart;
+    private long position;
+    private int lineNumber;
+    private char[] chars = new char[256];
+    private LineView view = new LineView();
+
+    /**
+     * map a file using the platform default charset for non-ASCII lines,
+     * as FileReader would.
+     * 
+     * @param file
+     * @throws IOException
+     */
+    public MappedLineNumberReader(File file) throws IOException {
+        this(file, Charset.defaultCharset(), DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param file
+     * @param charset used for lines that contain non-ASCII bytes
+     * @param window bytes mapped at a time
+     * @throws IOException
+     */
+    public MappedLineNumberReader(File file, Charset charset, int window)
+            throws IOException {
+        super(new StringReader(""));
+        this.raf = new RandomAccessFile(file, "r");
+        this.channel = raf.getChannel();
+        this.charset = charset;
+        this.size = channel.size();
+        this.window = window;
+        map(0);
+    }
+
+    /* a reader over the mapping of another, from the start of the file */
+    private MappedLineNumberReader(MappedLineNumberReader source) {
+        super(new StringReader(""));
+        this.channel = source.channel;
+        this.charset = source.charset;
+        this.size = source.size;
+        this.window = source.window;
+        this.buffer = source.buffer;
+        this.bufferStart = source.bufferStart;
+    }
+
+    /**
+     * a new reader over the same file, at its start, with its own position
+     * and line number. The window this reader has mapped is shared rather
+     * than mapped again; a duplicate that moves outside it maps its own.
+     * Closing a duplicate does not close the file, so this reader must stay
+     * open until its duplicates are finished with.
+     * 
+     * @return reader
+     */
+    public MappedLineNumberReader duplicate() {
+        return new MappedLineNumberReader(this);
+    }
+
+    /**
+     * open a file for line reading: mapped when it is large, buffered
+     * otherwise (mapping has a fixed cost that small files do not repay).
+     * 
+     * @param file
+     * @return reader
+     * @throws IOException
+     */
+    public static LineNumberReader open(File file) throws IOException {
+        if (file.length() >= MAP_THRESHOLD) {
+            return new MappedLineNumberReader(file);
+        }
+        return new LineNumberReader(new InputStreamReader(new FileInputStream(file)));
+    }
+
+    /**
+     * skip a line of any LineNumberReader, without building a String if
+     * the reader is mapped.
+     * 
+     * @param br
+     * @return false at end of input
+     * @throws IOException
+     */
+    public static boolean skipLine(LineNumberReader br) throws IOException {
+        if (br instanceof MappedLineNumberReader) {
+            return ((MappedLineNumberReader) br).skipLine();
+        }
+        return br.readLine() != null;
+    }
+
+    private void map(long start) throws IOException {
+        long length = Math.min(window, size - start);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        bufferStart = start;
+    }
+
+    /* make sure the byte at pos is mapped; false if pos is at EOF */
+    private boolean ensureMapped(long pos) throws IOException {
+        if (pos >= size) {
+            return false;
+        }
+        if (pos < bufferStart || pos >= bufferStart + buffer.limit()) {
+            map(pos);
+        }
+        return true;
+    }
+
+    /*
+     * offset of the '\n' or '\r' ending the line at position (or size if the
+     * last line has none). Remaps so that the whole line and its terminator
+     * lie in the buffer.
+     */
+    private long findEndOfLine() throws IOException {
+        while (true) {
+            int from = (int) (position - bufferStart);
+            int limit = buffer.limit();
+            long bufferEnd = bufferStart + limit;
+            for (int i = from; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    return bufferStart + i;
+                }
+                if (b == '\r') {
+                    if (i + 1 < limit || bufferEnd >= size) {
+                        return bufferStart + i;
+                    }
+                    // the '\n' of a "\r\n" may be in the next window
+                    break;
+                }
+            }
+            if (bufferEnd >= size) {
+                return size;
+            }
+            if (position == bufferStart) {
+                // line longer than the window
+                window = (int) Math.min(Integer.MAX_VALUE, 2L * window);
+            }
+            map(position);
+        }
+    }
+
+    /* offset of the line after the terminator at eol, from findEndOfLine() */
+    private long nextLine(long eol) {
+        if (eol >= size) {
+            return size;
+        }
+        int i = (int) (eol - bufferStart);
+        if (buffer.get(i) == '\r' && eol + 1 < size
+                && buffer.get(i + 1) == '\n') {
+            return eol + 2;
+        }
+        return eol + 1;
+    }
+
+    /**
+     * @return next line without terminator, or null at end of file
+     * @throws IOException
+     */
+    public String readLine() throws IOException {
+        if (!ensureMapped(position)) {
+            return null;
+        }
+        long eol = findEndOfLine();
+        int start = (int) (position - bufferStart);
+        int end = (int) (eol - bufferStart);
+        String line = decode(start, end);
+        position = nextLine(eol);
+        lineNumber++;
+        return line;
+    }
+
+    /* ASCII bytes from start as chars, in a reused array */
+    private char[] ascii(int start, int length) {
+        if (chars.length < length) {
+            chars = new char[Math.max(length, 2 * chars.length)];
+        }
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) buffer.get(start + i);
+        }
+        return chars;
+    }
+
+    private String decode(int start, int end) {
+        int length = end - start;
+        if (chars.length < length) {
+            chars = new char[Math.max(length, 2 * chars.length)];
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(start + i);
+            if (b < 0) {
+                byte[] bytes = new byte[length];
+                for (int j = 0; j < length; j++) {
+                    bytes[j] = buffer.get(start + j);
+                }
+                return new String(bytes, charset);
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * advance past the next line without building a String.
+     * 
+     * @return false at end of file
+     * @throws IOException
+     */
+    public boolean skipLine() throws IOException {
+        if (!ensureMapped(position)) {
+            return false;
+        }
+        long eol = findEndOfLine();
+        position = nextLine(eol);
+        lineNumber++;
+        return true;
+    }
+
+    /**
+     * does the next line start with the (ASCII) marker? Nothing is consumed.
+     * 
+     * @param marker such as "$DTYPE"
+     * @return true if it does
+     * @throws IOException
+     */
+    public boolean lineStartsWith(String marker) throws IOException {
+        int length = marker.length();
+        if (position + length > size) {
+            return false;
+        }
+        if (position < bufferStart
+                || position + length > bufferStart + buffer.limit()) {
+            map(position);
+        }
+        int start = (int) (position - bufferStart);
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != (byte) marker.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * read the next line as a view onto the mapped bytes, without copying
+     * it. The view is reused and is only valid until the next read; call
+     * toString() on it to keep the text. A line with non-ASCII bytes is
+     * returned decoded, as a String, so that its characters are the same as
+     * readLine() would give.
+     * 
+     * @return view of the line without terminator, or null at end of file
+     * @throws IOException
+     */
+    public CharSequence readLineView() throws IOException {
+        if (!ensureMapped(position)) {
+            return null;
+        }
+        long eol = findEndOfLine();
+        int start = (int) (position - bufferStart);
+        int end = (int) (eol - bufferStart);
+        CharSequence line = view;
+        view.start = start;
+        view.length = end - start;
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) < 0) {
+                line = decode(start, end);
+                break;
+            }
+        }
+        position = nextLine(eol);
+        lineNumber++;
+        return line;
+    }
+
+    /**
+     * read a line from any LineNumberReader as a CharSequence; a reusable
+     * view if the reader is mapped, otherwise the String from readLine().
+     * 
+     * @param br
+     * @return line, or null at end of input
+     * @throws IOException
+     */
+    public static CharSequence readLineView(LineNumberReader br) throws IOException {
+        if (br instanceof MappedLineNumberReader) {
+            return ((MappedLineNumberReader) br).readLineView();
+        }
+        return br.readLine();
+    }
+
+    /**
+     * @return the next byte without consuming it, or -1 at end of file
+     * @throws IOException
+     */
+    public int peek() throws IOException {
+        if (!ensureMapped(position)) {
+            return -1;
+        }
+        return buffer.get((int) (position - bufferStart)) & 0xff;
+    }
+
+    /**
+     * @return byte offset of the next unread byte (the start of the next
+     *         line after readLine() or skipLine())
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * move to a byte offset, normally one returned by getPosition(). The
+     * line number is not known after a seek and is set to 0.
+     * 
+     * @param offset
+     * @throws IOException
+     */
+    public void seek(long offset) throws IOException {
+        seek(offset, 0);
+    }
+
+    /**
+     * move to a byte offset whose line number is known.
+     * 
+     * @param offset
+     * @param lineNumber number of lines before offset
+     * @throws IOException
+     */
+    public void seek(long offset, int lineNumber) throws IOException {
+        if (offset < 0 || offset > size) {
+            throw new IOException("Seek outside file: " + offset);
+        }
+        position = offset;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * @return size of the file in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    public int read() throws IOException {
+        if (!ensureMapped(position)) {
+            return -1;
+        }
+        int c = buffer.get((int) (position - bufferStart)) & 0xff;
+        position++;
+        if (c == '\r') {
+            if (ensureMapped(position)
+                    && buffer.get((int) (position - bufferStart)) == '\n') {
+                position++;
+            }
+            c = '\n';
+        }
+        if (c == '\n') {
+            lineNumber++;
+        }
+        return c;
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len) {
+            int c = read();
+            if (c == -1) {
+                break;
+            }
+            cbuf[off + n++] = (char) c;
+        }
+        return (n == 0) ? -1 : n;
+    }
+
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && read() != -1) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    public boolean ready() {
+        return position < size;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public void setLineNumber(int lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    public void close() throws IOException {
+        buffer = null;
+        if (raf != null) {
+            // not a duplicate
+            channel.close();
+            raf.close();
+        }
+    }
+
+    /* view of an ASCII line of the current buffer */
+    private class LineView implements CharSequence {
+        int start;
+        int length;
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index: " + index);
+            }
+            return (char) (buffer.get(start + index) & 0xff);
+        }
+
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > length || from > to) {
+                throw new IndexOutOfBoundsException(from + "-" + to);
+            }
+            return new String(ascii(start + from, to - from), 0, to - from);
+        }
+
+        public String toString() {
+            return new String(ascii(start, length), 0, length);
+        }
+    }
+}
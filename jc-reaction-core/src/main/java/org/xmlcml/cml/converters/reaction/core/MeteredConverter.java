@@ -0,0 +1,31 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+/**
+ * base of the format readers that are not AbstractConverters (RDF, KEGG and
+ * RXN), holding their metrics as {@link ReactionConverter} does for the
+ * registered converters.
+ */
+public abstract class MeteredConverter {
+
+    protected ConversionMetrics metrics;
+
+    /**
+     * Sets where the timings and counts of conversions are recorded. One
+     * ConversionMetrics may be shared by several converters.
+     * 
+     * @param metrics
+     *            null (the default) records nothing
+     */
+    public void setMetrics(ConversionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets where the timings and counts of conversions are recorded
+     * 
+     * @return The metrics value
+     */
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
+}
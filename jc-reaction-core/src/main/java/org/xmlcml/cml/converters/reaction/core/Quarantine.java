@@ -0,0 +1,251 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+/**
+ * a dead-letter directory for the inputs a batch could not convert.
+ *
+ * Each failing file, or the raw bytes of each failing record, is copied
+ * into the directory and described by one row of a CSV manifest:
+ *
+ * <pre>
+ * file,record,line,exception,message,copy
+ * </pre>
+ *
+ * where record is the serial number of the record in its file from 0 (empty
+ * for a whole file), line is the line at which the parse failed (empty if
+ * not known) and copy is the name of the copy in the directory: the name of
+ * the file for a whole file and name.record-N for record N, with _2, _3,
+ * ... appended if that name is already taken. Copies are byte for byte.
+ * The line of a whole file comes from a {@link ConversionException} in the
+ * chain of its cause; exception and message are then those of the
+ * exception it wraps. Rows are flushed as they are written, so the
+ * manifest is complete up to the last failure even if the run is killed,
+ * and the bad inputs can be fixed and converted on their own without
+ * running the batch again.
+ *
+ * A quarantine may be shared by several threads. The manifest is appended
+ * to if it already exists.
+ */
+public class Quarantine {
+
+    /** name of the manifest in the quarantine directory */
+    public static final String MANIFEST = "manifest.csv";
+
+    /** first line of a new manifest */
+    public static final String HEADER =
+            "file,record,line,exception,message,copy";
+
+    private File directory;
+    private Writer manifest;
+    private int count;
+
+    /**
+     * @param directory
+     *            created if it does not exist
+     * @throws IOException
+     */
+    public Quarantine(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create quarantine directory: "
+                    + directory);
+        }
+        File file = new File(directory, MANIFEST);
+        boolean exists = file.exists();
+        manifest = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file, true), "UTF-8"));
+        if (!exists) {
+            manifest.write(HEADER);
+            manifest.write('\n');
+            manifest.flush();
+        }
+    }
+
+    /**
+     * copy a whole file that failed and record why.
+     *
+     * @param file
+     * @param cause
+     * @return the copy
+     * @throws IOException
+     */
+    public synchronized File add(File file, Throwable cause) throws IOException {
+        File copy = newFile(file.getName());
+        InputStream is = new FileInputStream(file);
+        try {
+            OutputStream os = new FileOutputStream(copy);
+            try {
+                byte[] buffer = new byte[8192];
+                while (true) {
+                    int n = is.read(buffer);
+                    if (n == -1) {
+                        break;
+                    }
+                    os.write(buffer, 0, n);
+                }
+            } finally {
+                os.close();
+            }
+        } finally {
+            is.close();
+        }
+        writeRow(file.getPath(), -1, ConversionException.lineNumber(cause),
+                cause, copy);
+        return copy;
+    }
+
+    /**
+     * copy the raw text of one record that failed and record why.
+     *
+     * @param file
+     *            the record came from
+     * @param record
+     *            serial number of the record in the file, from 0
+     * @param line
+     *            at which the parse failed or the record starts; less than 1
+     *            if not known
+     * @param raw
+     *            bytes of the record as they were in the file
+     * @param cause
+     * @return the copy
+     * @throws IOException
+     */
+    public synchronized File add(File file, int record, int line, byte[] raw,
+            Throwable cause) throws IOException {
+        File copy = newFile(file.getName() + ".record-" + record);
+        OutputStream os = new FileOutputStream(copy);
+        try {
+            os.write(raw);
+        } finally {
+            os.close();
+        }
+        writeRow(file.getPath(), record, line, cause, copy);
+        return copy;
+    }
+
+    /**
+     * copy the span of one record that failed, read back from its file by
+     * byte offset, and record why.
+     *
+     * @param file
+     *            the record came from
+     * @param record
+     *            serial number of the record in the file, from 0
+     * @param line
+     *            first line of the record, from 1
+     * @param offset
+     *            byte offset of the record, as given by
+     *            MappedLineNumberReader.getPosition()
+     * @param endOffset
+     *            byte offset of the end of the record
+     * @param cause
+     * @return the copy
+     * @throws IOException
+     *             also if the offsets are not known (less than 0)
+     */
+    public File add(File file, int record, int line, long offset,
+            long endOffset, Throwable cause) throws IOException {
+        if (offset < 0 || endOffset < offset) {
+            throw new IOException("No byte offsets for record " + record
+                    + " of " + file + "; read it through a MappedLineNumberReader");
+        }
+        return add(file, record, line, readSpan(file, offset, endOffset), cause);
+    }
+
+    private static byte[] readSpan(File file, long offset, long endOffset)
+            throws IOException {
+        byte[] bytes = new byte[(int) (endOffset - offset)];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(offset);
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * close the manifest.
+     *
+     * @throws IOException
+     */
+    public synchronized void close() throws IOException {
+        manifest.close();
+    }
+
+    /**
+     * @return quarantine directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return inputs added since this quarantine was opened
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /* name, or name_2, name_3, ... if it is taken */
+    private File newFile(String name) {
+        File file = new File(directory, name);
+        for (int i = 2; file.exists(); i++) {
+            file = new File(directory, name + "_" + i);
+        }
+        return file;
+    }
+
+    private void writeRow(String path, int record, int line, Throwable cause,
+            File copy) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        appendField(sb, path).append(',');
+        if (record >= 0) {
+            sb.append(record);
+        }
+        sb.append(',');
+        if (line > 0) {
+            sb.append(line);
+        }
+        sb.append(',');
+        Throwable reason = cause;
+        if (reason instanceof ConversionException && reason.getCause() != null) {
+            reason = reason.getCause();
+        }
+        appendField(sb, reason.getClass().getName()).append(',');
+        appendField(sb, (reason.getMessage() == null) ? "" : reason
+                .getMessage()).append(',');
+        appendField(sb, copy.getName()).append('\n');
+        manifest.write(sb.toString());
+        manifest.flush();
+        count++;
+    }
+
+    /* quoted, with quotes doubled, if it holds a comma, quote or newline */
+    private static StringBuilder appendField(StringBuilder sb, String field) {
+        if (field.indexOf(',') == -1 && field.indexOf('"') == -1
+                && field.indexOf('\n') == -1 && field.indexOf('\r') == -1) {
+            return sb.append(field);
+        }
+        sb.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        return sb.append('"');
+    }
+}
@@ -1,10 +1,32 @@
-package org.xmlcml.cml.converters.reaction.core;
-
-import org.xmlcml.cml.converters.AbstractConverter;
-
-public abstract class ReactionConverter extends AbstractConverter {
-
-	public ReactionConverter() {
-		super();
-	}
-}
+package org.xmlcml.cml.converters.reaction.core;
+
+import org.xmlcml.cml.converters.AbstractConverter;
+
+public abstract class ReactionConverter extends AbstractConverter {
+
+	protected ConversionMetrics metrics;
+
+	public ReactionConverter() {
+		super();
+	}
+
+	/**
+	 * Sets where the timings and counts of conversions are recorded. One
+	 * ConversionMetrics may be shared by several converters.
+	 * 
+	 * @param metrics
+	 *            null (the default) records nothing
+	 */
+	public void setMetrics(ConversionMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Gets where the timings and counts of conversions are recorded
+	 * 
+	 * @return The metrics value
+	 */
+	public ConversionMetrics getMetrics() {
+		return metrics;
+	}
+}
@@ -1,14 +1,19 @@
-package org.xmlcml.cml.converters.reaction.core;
-
-import org.xmlcml.cml.converters.AbstractConverterModule;
-
-/**
- * @author pm286
- */
-public abstract class ReactionModule extends AbstractConverterModule {
-
-    public ReactionModule() {
-    	super();
-    }
-
-}
+package org.xmlcml.cml.converters.reaction.core;
+
+import org.xmlcml.cml.converters.AbstractConverterModule;
+import org.xmlcml.cml.converters.MimeType;
+import org.xmlcml.cml.converters.MimeType.ObjectType;
+
+/**
+ * @author pm286
+ */
+public abstract class ReactionModule extends AbstractConverterModule {
+
+	/** records written by BinaryReactionWriter */
+	public static final MimeType BINARY_TYPE = new MimeType("chemical/x-cml-reaction-binary", ObjectType.BYTES, "cmlr");
+
+    public ReactionModule() {
+    	super();
+    }
+
+}
@@ -0,0 +1,22 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.IOException;
+
+import org.xmlcml.cml.base.CMLElement;
+
+/**
+ * receives records (reactions or molecules) one at a time as a streaming
+ * reader parses them, so that the whole file never needs to be held in a
+ * single document.
+ */
+public interface RecordHandler {
+
+    /**
+     * called once for each complete record. The record is not attached to
+     * any document and may be kept, appended elsewhere or discarded.
+     * 
+     * @param record
+     * @throws IOException
+     */
+    void handle(CMLElement record) throws IOException;
+}
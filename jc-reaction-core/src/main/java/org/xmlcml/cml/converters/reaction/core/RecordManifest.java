@@ -0,0 +1,186 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * checksums of the raw records of a source file, keyed on a record id.
+ *
+ * A record is hashed with 64-bit FNV-1a over the UTF-16 characters of its
+ * lines, each followed by '\n', so the hash does not depend on the line
+ * terminators of the file. Non-ASCII characters are hashed as they were
+ * decoded, so a file read with a different charset may hash differently;
+ * the converters read with the platform default charset. Comparing the
+ * manifest of one release of a file with that of the next shows which
+ * records were added, changed or removed without converting any of them.
+ *
+ * The manifest is saved as text, one "key TAB hash" line per record in
+ * file order, so that two manifests can also be compared with diff.
+ */
+public class RecordManifest {
+
+    /** FNV-1a 64-bit offset basis */
+    public static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /** FNV-1a 64-bit prime */
+    public static final long FNV_PRIME = 0x100000001b3L;
+
+    private Map<String, Long> hashes = new LinkedHashMap<String, Long>();
+
+    /**
+     * add a line to a hash.
+     *
+     * @param hash
+     *            FNV_OFFSET for the first line of a record
+     * @param line
+     *            without terminator
+     * @return hash including the line and a '\n'
+     */
+    public static long hashLine(long hash, CharSequence line) {
+        for (int i = 0; i < line.length(); i++) {
+            hash ^= line.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash ^= '\n';
+        hash *= FNV_PRIME;
+        return hash;
+    }
+
+    /**
+     * record the hash of a record. A key already present is made unique by
+     * appending "_2", "_3" ... so that records sharing an id (or with
+     * identical contents, if keyed on the hash) are all kept.
+     *
+     * @param key
+     * @param hash
+     * @return the key used
+     */
+    public String put(String key, long hash) {
+        String unique = key;
+        for (int i = 2; hashes.containsKey(unique); i++) {
+            unique = key + "_" + i;
+        }
+        hashes.put(unique, hash);
+        return unique;
+    }
+
+    /**
+     * @param key
+     * @return true if the manifest has a record with this key and hash
+     */
+    public boolean contains(String key, long hash) {
+        Long h = hashes.get(key);
+        return h != null && h.longValue() == hash;
+    }
+
+    /**
+     * @param key
+     * @return true if the manifest has a record with this key
+     */
+    public boolean containsKey(String key) {
+        return hashes.containsKey(key);
+    }
+
+    /**
+     * @param key
+     * @return hash of the record, or null if there is none with this key
+     */
+    public Long getHash(String key) {
+        return hashes.get(key);
+    }
+
+    /**
+     * @return keys in the order they were added
+     */
+    public Set<String> keySet() {
+        return hashes.keySet();
+    }
+
+    /**
+     * @return number of records
+     */
+    public int size() {
+        return hashes.size();
+    }
+
+    /**
+     * @param hash
+     * @return hash as 16 hex digits, as written to the manifest
+     */
+    public static String toHex(long hash) {
+        String hex = Long.toHexString(hash);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    /**
+     * save the manifest.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"));
+        try {
+            for (Map.Entry<String, Long> entry : hashes.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(toHex(entry.getValue()));
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * load a manifest saved by {@link #write(File)}.
+     *
+     * @param file
+     * @return manifest
+     * @throws IOException
+     *             if a line is not "key TAB hash"
+     */
+    public static RecordManifest read(File file) throws IOException {
+        RecordManifest manifest = new RecordManifest();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            int lineNumber = 0;
+            while (true) {
+                String line = reader.readLine();
+                if (line == null) {
+                    break;
+                }
+                lineNumber++;
+                int tab = line.lastIndexOf('\t');
+                if (tab == -1 || line.length() - tab != 17) {
+                    throw new IOException("Bad manifest line: " + line
+                            + " (line: " + lineNumber + ")");
+                }
+                long hash;
+                try {
+                    hash = (Long.parseLong(line.substring(tab + 1, tab + 9), 16) << 32)
+                            | Long.parseLong(line.substring(tab + 9), 16);
+                } catch (NumberFormatException nfe) {
+                    throw new IOException("Bad manifest hash: " + line
+                            + " (line: " + lineNumber + ")");
+                }
+                manifest.hashes.put(line.substring(0, tab), hash);
+            }
+        } finally {
+            reader.close();
+        }
+        return manifest;
+    }
+}
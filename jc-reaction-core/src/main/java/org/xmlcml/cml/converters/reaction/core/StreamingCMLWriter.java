@@ -0,0 +1,105 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import nu.xom.Element;
+
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.base.CMLSerializer;
+
+/**
+ * writes a CML document record by record, without holding the whole tree.
+ *
+ * The converters' streaming read methods hand each record (reaction or
+ * molecule) to a RecordHandler as soon as it has been parsed; this handler
+ * serializes it at once and lets it go. Only the root element and the
+ * current record are ever in memory.
+ *
+ * It is a CMLSerializer and writes each record through the same
+ * protected Serializer methods that CMLSerializer.write(Document) uses for
+ * the children of the root. Each record is attached to the root while it
+ * is written so namespace declarations are inherited exactly as they are
+ * in the full tree. The bytes are therefore identical to building a
+ * document with the same root and records and calling write(Document).
+ *
+ * Call {@link #endDocument()} after the last record; it writes the root
+ * end tag and flushes, but does not close the stream.
+ */
+public class StreamingCMLWriter extends CMLSerializer implements RecordHandler {
+
+    private Element root;
+    private boolean declared;
+    private boolean started;
+    private boolean ended;
+    private int count;
+
+    /**
+     * @param os
+     * @param root empty container, such as a CMLCml or CMLReactionList;
+     *            records are added to it only while being written
+     */
+    public StreamingCMLWriter(OutputStream os, Element root) {
+        super(os);
+        this.root = root;
+    }
+
+    /**
+     * write a record as the next child of the root.
+     *
+     * @param record not attached to any parent
+     * @throws IOException
+     */
+    public void handle(CMLElement record) throws IOException {
+        if (ended) {
+            throw new IllegalStateException("Document already ended");
+        }
+        if (!started) {
+            declare();
+            writeStartTag(root);
+            started = true;
+        }
+        root.appendChild(record);
+        try {
+            write(record);
+        } finally {
+            record.detach();
+        }
+        count++;
+    }
+
+    /**
+     * close the root element and flush the output.
+     *
+     * @throws IOException
+     */
+    public void endDocument() throws IOException {
+        if (ended) {
+            return;
+        }
+        if (started) {
+            writeEndTag(root);
+        } else {
+            // no records: an empty root, as the serializer writes it
+            declare();
+            write(root);
+        }
+        breakLine();
+        flush();
+        ended = true;
+    }
+
+    /**
+     * @return records written so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    private void declare() throws IOException {
+        if (!declared) {
+            writeXMLDeclaration();
+            declared = true;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * collects a multi-line field (an RDF $DATUM, a KEGG continuation) in
+ * linear time, with a cap on the text held in memory.
+ *
+ * Text is appended to a reusable StringBuilder. When the field grows past
+ * the limit either the rest of it is dropped (TRUNCATE) or the whole field
+ * is written to a temporary file and the rest streamed after it (SPILL). In
+ * both cases the first limit characters remain available from
+ * {@link #finish()}, so one huge record costs at most limit characters of
+ * heap.
+ *
+ * An accumulator holds the state of one field at a time and is not
+ * thread-safe; parsers keep one per parse context.
+ */
+public class TextAccumulator {
+
+    /** what to do with text beyond the limit */
+    public enum Overflow {
+        /** drop it */
+        TRUNCATE,
+        /** write the whole field to a temporary file */
+        SPILL
+    }
+
+    /** default limit in characters */
+    public static final int DEFAULT_LIMIT = 1024 * 1024;
+
+    /** prefix of spill file names */
+    public static final String SPILL_PREFIX = "datum";
+
+    private int limit;
+    private Overflow overflow;
+    private File spillDirectory;
+    private StringBuilder builder = new StringBuilder();
+    private long length;
+    private boolean truncated;
+    private File spillFile;
+    private Writer spill;
+
+    /**
+     * truncate at DEFAULT_LIMIT.
+     */
+    public TextAccumulator() {
+        this(DEFAULT_LIMIT, Overflow.TRUNCATE, null);
+    }
+
+    /**
+     * @param limit characters held in memory
+     * @param overflow what to do beyond the limit
+     * @param spillDirectory for spill files; null for the system temporary
+     *            directory
+     */
+    public TextAccumulator(int limit, Overflow overflow, File spillDirectory) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("negative limit: " + limit);
+        }
+        this.limit = limit;
+        this.overflow = overflow;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * start a new field. Any spill file of the previous field is kept.
+     *
+     * @param text first part of the field
+     * @throws IOException
+     */
+    public void start(CharSequence text) throws IOException {
+        closeSpill();
+        builder.setLength(0);
+        length = 0;
+        truncated = false;
+        spillFile = null;
+        append(text);
+    }
+
+    /**
+     * append a separator and a continuation.
+     *
+     * @param separator such as a newline or space
+     * @param text
+     * @throws IOException if the spill file cannot be written
+     */
+    public void append(String separator, CharSequence text) throws IOException {
+        append(separator);
+        append(text);
+    }
+
+    /**
+     * @param text
+     * @throws IOException if the spill file cannot be written
+     */
+    public void append(CharSequence text) throws IOException {
+        int n = text.length();
+        if (spill != null) {
+            spill.append(text);
+        } else if (builder.length() + n <= limit) {
+            builder.append(text);
+        } else if (overflow == Overflow.SPILL) {
+            openSpill();
+            spill.append(text);
+            builder.append(text, 0, limit - builder.length());
+        } else {
+            if (!truncated) {
+                builder.append(text, 0, limit - builder.length());
+                truncated = true;
+            }
+            return;
+        }
+        length += n;
+    }
+
+    /**
+     * end the field, closing any spill file.
+     *
+     * @return the field, or its first limit characters if it overflowed
+     * @throws IOException
+     */
+    public String finish() throws IOException {
+        closeSpill();
+        return builder.toString();
+    }
+
+    /**
+     * @return length of the field so far, including text spilled but not
+     *         text dropped
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return true if text has been dropped from the current field
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return true if the current field has been written to a file
+     */
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * @return file holding the whole of the current field, or null
+     */
+    public File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * @return characters held in memory
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return what happens beyond the limit
+     */
+    public Overflow getOverflow() {
+        return overflow;
+    }
+
+    private void openSpill() throws IOException {
+        spillFile = File.createTempFile(SPILL_PREFIX, ".txt", spillDirectory);
+        spill = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+                spillFile), "UTF-8"));
+        spill.append(builder);
+    }
+
+    private void closeSpill() throws IOException {
+        if (spill != null) {
+            Writer w = spill;
+            spill = null;
+            w.close();
+        }
+    }
+}
@@ -1,4 +1,4 @@
-/** 
-Spectrum module
-*/
+/** 
+Spectrum module
+*/
 package org.xmlcml.cml.converters.reaction.core;
\ No newline at end of file
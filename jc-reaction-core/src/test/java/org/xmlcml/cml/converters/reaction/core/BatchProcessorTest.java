@@ -0,0 +1,81 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BatchProcessorTest {
+
+	static List<File> files(File directory, int n) throws IOException {
+		directory.mkdirs();
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < n; i++) {
+			File file = new File(directory, "f" + i + ".rxn");
+			FileWriter writer = new FileWriter(file);
+			writer.write("file " + i + "\n");
+			writer.close();
+			files.add(file);
+		}
+		return files;
+	}
+
+	static void delete(File directory) {
+		for (File file : directory.listFiles()) {
+			if (file.isDirectory()) {
+				delete(file);
+			} else {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testFailuresIsolated() throws Exception {
+		File directory = File.createTempFile("batch", "");
+		directory.delete();
+		try {
+			List<File> files = files(new File(directory, "in"), 100);
+			final Set<String> converted = Collections
+					.synchronizedSet(new HashSet<String>());
+			Quarantine quarantine = new Quarantine(new File(directory,
+					"quarantine"));
+			BatchProcessor processor = new BatchProcessor(4);
+			processor.setQuarantine(quarantine);
+			processor.process(files, new BatchProcessor.Job() {
+				public void convert(File file) throws Exception {
+					if (file.getName().startsWith("f1")) {
+						throw new IOException("bad " + file.getName());
+					}
+					converted.add(file.getName());
+				}
+			});
+			quarantine.close();
+			// f1 and f10..f19
+			Assert.assertEquals(11, processor.getFailed());
+			Assert.assertEquals(89, processor.getSucceeded());
+			Assert.assertEquals(89, converted.size());
+			Assert.assertEquals(11, quarantine.getCount());
+			Assert.assertTrue(new File(quarantine.getDirectory(), "f15.rxn")
+					.exists());
+			Assert.assertEquals(4, processor.getThreadCount());
+
+			processor.process(files.subList(0, 1), new BatchProcessor.Job() {
+				public void convert(File file) {
+				}
+			});
+			Assert.assertEquals(0, processor.getFailed());
+			Assert.assertEquals(1, processor.getSucceeded());
+		} finally {
+			delete(directory);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import nu.xom.Attribute;
+import nu.xom.Element;
+import nu.xom.Text;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLName;
+import org.xmlcml.cml.element.CMLProduct;
+import org.xmlcml.cml.element.CMLProductList;
+import org.xmlcml.cml.element.CMLReactant;
+import org.xmlcml.cml.element.CMLReactantList;
+import org.xmlcml.cml.element.CMLReaction;
+
+public class BinaryReactionReaderTest {
+
+	static CMLMolecule molecule(String id, String name, double count) {
+		CMLMolecule mol = new CMLMolecule();
+		CMLName cname = new CMLName();
+		cname.setXMLContent(name);
+		cname.setConvention("KEGG");
+		mol.addName(cname);
+		mol.setId(id);
+		mol.setCount(count);
+		return mol;
+	}
+
+	static CMLReaction reaction(int i) {
+		CMLReaction reaction = new CMLReaction();
+		reaction.setId("R" + i);
+		CMLReactantList reactantList = new CMLReactantList();
+		reaction.addReactantList(reactantList);
+		CMLReactant reactant = new CMLReactant();
+		reactant.addMolecule(molecule("C00001", "H2O", 1.0));
+		reactantList.addReactant(reactant);
+		CMLProductList productList = new CMLProductList();
+		reaction.addProductList(productList);
+		CMLProduct product = new CMLProduct();
+		product.addMolecule(molecule("C0000" + (i % 10), "product " + i, 2.0));
+		productList.addProduct(product);
+		return reaction;
+	}
+
+	static File write(int n) throws IOException {
+		File file = File.createTempFile("reactions", ".cmlr");
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			BinaryReactionWriter writer = new BinaryReactionWriter(fos);
+			for (int i = 0; i < n; i++) {
+				writer.handle(reaction(i));
+			}
+			writer.finish();
+			Assert.assertEquals(n, writer.getCount());
+		} finally {
+			fos.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File file = write(25);
+		BinaryReactionReader reader = new BinaryReactionReader(file);
+		try {
+			Assert.assertEquals(25, reader.size());
+			int i = 0;
+			for (CMLElement record : reader) {
+				Assert.assertTrue(record instanceof CMLReaction);
+				Assert.assertEquals(reaction(i).toXML(), record.toXML());
+				i++;
+			}
+			Assert.assertEquals(25, i);
+		} finally {
+			reader.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testRandomAccess() throws IOException {
+		File file = write(100);
+		BinaryReactionReader reader = new BinaryReactionReader(file);
+		try {
+			Assert.assertEquals(reaction(73).toXML(), reader.getRecord(73).toXML());
+			Assert.assertEquals(reaction(0).toXML(), reader.getRecord(0).toXML());
+		} finally {
+			reader.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testSmallWindows() throws IOException {
+		// records and strings straddle the windows, as in a file over 2 GB
+		File file = write(100);
+		BinaryReactionReader reader = new BinaryReactionReader(file, 64);
+		try {
+			Assert.assertEquals(100, reader.size());
+			for (int i = 0; i < 100; i++) {
+				Assert.assertEquals(reaction(i).toXML(), reader.getRecord(i).toXML());
+			}
+		} finally {
+			reader.close();
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testNamespaces() throws IOException {
+		CMLReaction reaction = reaction(1);
+		Element extra = new Element("foo:extra", "http://example.org/foo");
+		extra.addAttribute(new Attribute("foo:kind", "http://example.org/foo",
+				"test"));
+		extra.appendChild(new Text("text"));
+		reaction.appendChild(extra);
+		reaction.addAttribute(new Attribute("xml:lang",
+				"http://www.w3.org/XML/1998/namespace", "en"));
+		File file = File.createTempFile("reactions", ".cmlr");
+		FileOutputStream fos = new FileOutputStream(file);
+		try {
+			BinaryReactionWriter writer = new BinaryReactionWriter(fos);
+			writer.write(reaction);
+			writer.finish();
+		} finally {
+			fos.close();
+		}
+		BinaryReactionReader reader = new BinaryReactionReader(file);
+		try {
+			Assert.assertEquals(reaction.toXML(), reader.getRecord(0).toXML());
+		} finally {
+			reader.close();
+			file.delete();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotBinary() throws IOException {
+		File file = File.createTempFile("reactions", ".cml");
+		FileWriter writer = new FileWriter(file);
+		writer.write("<cml xmlns='http://www.xml-cml.org/schema'/>\n");
+		writer.close();
+		try {
+			new BinaryReactionReader(file);
+		} finally {
+			file.delete();
+		}
+	}
+}
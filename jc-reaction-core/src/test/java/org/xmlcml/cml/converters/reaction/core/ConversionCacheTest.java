@@ -0,0 +1,64 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import nu.xom.Document;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLReaction;
+
+public class ConversionCacheTest {
+
+	static byte[] input(int i) {
+		return ("$RXN " + i).getBytes();
+	}
+
+	static void put(ConversionCache cache, int i, long weight) {
+		byte[] input = input(i);
+		cache.put(ConversionCache.key(null, input),
+				new Document(new CMLReaction()), weight);
+	}
+
+	static boolean contains(ConversionCache cache, int i) {
+		byte[] input = input(i);
+		return cache.get(ConversionCache.key(null, input)) != null;
+	}
+
+	@Test
+	public void testKey() {
+		Assert.assertEquals(ConversionCache.key("a", input(1)),
+				ConversionCache.key("a", input(1)));
+		Assert.assertFalse(ConversionCache.key("a", input(1)).equals(
+				ConversionCache.key("b", input(1))));
+		Assert.assertFalse(ConversionCache.key("a", input(1)).equals(
+				ConversionCache.key("a", input(2))));
+		Assert.assertEquals(64, ConversionCache.key(null, input(1)).length());
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		ConversionCache cache = new ConversionCache(2, 100);
+		put(cache, 1, 1);
+		put(cache, 2, 1);
+		Assert.assertTrue(contains(cache, 1));
+		put(cache, 3, 1);
+		Assert.assertFalse(contains(cache, 2));
+		Assert.assertTrue(contains(cache, 1));
+		Assert.assertTrue(contains(cache, 3));
+		Assert.assertEquals(3, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	public void testWeight() {
+		ConversionCache cache = new ConversionCache(10, 10);
+		put(cache, 1, 4);
+		put(cache, 2, 4);
+		put(cache, 3, 4);
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(8, cache.getWeight());
+		put(cache, 4, 11);
+		Assert.assertFalse(contains(cache, 4));
+		Assert.assertEquals(2, cache.size());
+	}
+}
@@ -0,0 +1,57 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConversionMetricsTest {
+
+	@Test
+	public void testDisabled() {
+		long start = ConversionMetrics.start(null);
+		Assert.assertEquals(0, start);
+		Assert.assertEquals(0, ConversionMetrics.stop(null,
+				ConversionMetrics.Stage.HEADER, start));
+		ConversionMetrics.count(null, ConversionMetrics.Counter.RECORDS, 1);
+	}
+
+	@Test
+	public void testStagesAndCounters() {
+		ConversionMetrics metrics = new ConversionMetrics();
+		long start = ConversionMetrics.start(metrics);
+		long next = ConversionMetrics.stop(metrics,
+				ConversionMetrics.Stage.HEADER, start);
+		ConversionMetrics.stop(metrics, ConversionMetrics.Stage.MOLECULE,
+				next);
+		metrics.add(ConversionMetrics.Stage.MOLECULE, 5);
+		ConversionMetrics.count(metrics, ConversionMetrics.Counter.ATOMS, 12);
+		ConversionMetrics.count(metrics, ConversionMetrics.Counter.ATOMS, 3);
+		Assert.assertEquals(1, metrics.getCalls(ConversionMetrics.Stage.HEADER));
+		Assert.assertEquals(next - start, metrics.getHeaderNanos());
+		Assert.assertEquals(2, metrics
+				.getCalls(ConversionMetrics.Stage.MOLECULE));
+		Assert.assertTrue(metrics.getMoleculeNanos() >= 5);
+		Assert.assertEquals(15, metrics.getAtoms());
+		Assert.assertEquals(0, metrics.getSerializeNanos());
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getAtoms());
+		Assert.assertEquals(0, metrics.getMoleculeNanos());
+	}
+
+	@Test
+	public void testRegister() throws JMException {
+		ConversionMetrics metrics = new ConversionMetrics();
+		ConversionMetrics.count(metrics, ConversionMetrics.Counter.RECORDS, 7);
+		ObjectName name = metrics.register("test");
+		try {
+			Assert.assertEquals(7L, ManagementFactory.getPlatformMBeanServer()
+					.getAttribute(name, "Records"));
+		} finally {
+			ConversionMetrics.unregister(name);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MappedLineNumberReaderTest {
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File write(String content) throws IOException {
+		File file = File.createTempFile("mapped", ".txt");
+		file.deleteOnExit();
+		OutputStream os = new FileOutputStream(file);
+		try {
+			os.write(content.getBytes(UTF8));
+		} finally {
+			os.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void testReadLines() throws IOException {
+		File file = write("$RDFILE 1\r\n$DATM 10/17/91\r\n\r\nlast");
+		MappedLineNumberReader br = new MappedLineNumberReader(file, UTF8, 8);
+		try {
+			Assert.assertTrue(br.lineStartsWith("$RDFILE"));
+			Assert.assertFalse(br.lineStartsWith("$DATM"));
+			Assert.assertEquals("$RDFILE 1", br.readLine());
+			Assert.assertEquals('$', br.peek());
+			Assert.assertTrue(br.skipLine());
+			Assert.assertEquals(2, br.getLineNumber());
+			Assert.assertEquals("", br.readLine());
+			Assert.assertEquals("last", br.readLine().toString());
+			Assert.assertNull(br.readLine());
+			Assert.assertFalse(br.skipLine());
+			Assert.assertEquals(-1, br.peek());
+		} finally {
+			br.close();
+		}
+	}
+
+	@Test
+	public void testSeekAndView() throws IOException {
+		File file = write("first\nsecond line longer than window\nthird\n");
+		MappedLineNumberReader br = new MappedLineNumberReader(file, UTF8, 4);
+		try {
+			br.readLine();
+			long offset = br.getPosition();
+			Assert.assertEquals(6, offset);
+			Assert.assertEquals("second line longer than window", br.readLine());
+			Assert.assertEquals("third", br.readLineView().toString());
+			br.seek(offset, 1);
+			CharSequence view = br.readLineView();
+			Assert.assertEquals(30, view.length());
+			Assert.assertEquals("line", view.subSequence(7, 11).toString());
+			Assert.assertEquals(2, br.getLineNumber());
+		} finally {
+			br.close();
+		}
+	}
+
+	@Test
+	public void testNonAscii() throws IOException {
+		File file = write("caf\u00e9\nplain\n");
+		MappedLineNumberReader br = new MappedLineNumberReader(file, UTF8, 1024);
+		try {
+			Assert.assertEquals("caf\u00e9", br.readLine());
+			Assert.assertEquals("plain", br.readLine());
+		} finally {
+			br.close();
+		}
+	}
+
+	@Test
+	public void testCarriageReturns() throws IOException {
+		// the "\r\n" after "two" straddles the 8 byte window
+		File file = write("one\rtwo\r\nthree\r");
+		MappedLineNumberReader br = new MappedLineNumberReader(file, UTF8, 8);
+		try {
+			Assert.assertEquals("one", br.readLine());
+			Assert.assertEquals("two", br.readLineView().toString());
+			Assert.assertEquals(9, br.getPosition());
+			Assert.assertEquals("three", br.readLine());
+			Assert.assertNull(br.readLine());
+			Assert.assertEquals(3, br.getLineNumber());
+			br.seek(0);
+			while (br.read() != -1) {
+			}
+			Assert.assertEquals(3, br.getLineNumber());
+		} finally {
+			br.close();
+		}
+	}
+
+	@Test
+	public void testNonAsciiView() throws IOException {
+		File file = write("caf\u00e9\n");
+		MappedLineNumberReader br = new MappedLineNumberReader(file, UTF8, 1024);
+		try {
+			CharSequence view = br.readLineView();
+			Assert.assertEquals(4, view.length());
+			Assert.assertEquals('\u00e9', view.charAt(3));
+		} finally {
+			br.close();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class QuarantineTest {
+
+	@Test
+	public void testLineNumber() {
+		Assert.assertEquals(12, ConversionException.lineNumber(
+				new ConversionException(new RuntimeException("x"), 12)));
+		Assert.assertEquals(7, ConversionException.lineNumber(
+				new RuntimeException("wrapped", new ConversionException(
+						new RuntimeException("bad atom (line: 9)"), 7))));
+		Assert.assertEquals(-1, ConversionException.lineNumber(
+				new RuntimeException("bad atom (line: 9)")));
+	}
+
+	@Test
+	public void testAdd() throws IOException {
+		File directory = File.createTempFile("quarantine", "");
+		directory.delete();
+		File input = File.createTempFile("bad", ".rxn");
+		input.deleteOnExit();
+		Writer writer = new FileWriter(input);
+		writer.write("$RXN\n");
+		writer.close();
+		Quarantine quarantine = new Quarantine(directory);
+		File copy = quarantine.add(input, new ConversionException(
+				new RuntimeException("No target for 3, 4"), 9));
+		quarantine.add(input, 2, 40, "$RFMT\n".getBytes("UTF-8"),
+				new IllegalStateException());
+		File again = quarantine.add(input, 2, 40, "$RFMT\n"
+				.getBytes("UTF-8"), new IllegalStateException());
+		quarantine.close();
+		Assert.assertEquals(3, quarantine.getCount());
+		Assert.assertEquals(input.getName() + ".record-2_2", again.getName());
+		Assert.assertEquals(input.length(), copy.length());
+		BufferedReader br = new BufferedReader(new FileReader(new File(
+				directory, Quarantine.MANIFEST)));
+		try {
+			Assert.assertEquals(Quarantine.HEADER, br.readLine());
+			Assert.assertEquals(input.getPath()
+					+ ",,9,java.lang.RuntimeException,"
+					+ "\"No target for 3, 4\"," + input.getName(), br
+					.readLine());
+			Assert.assertEquals(input.getPath()
+					+ ",2,40,java.lang.IllegalStateException,,"
+					+ input.getName() + ".record-2", br.readLine());
+			Assert.assertEquals(input.getPath()
+					+ ",2,40,java.lang.IllegalStateException,,"
+					+ input.getName() + ".record-2_2", br.readLine());
+			Assert.assertNull(br.readLine());
+		} finally {
+			br.close();
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testAddSpan() throws IOException {
+		File directory = File.createTempFile("quarantine", "");
+		directory.delete();
+		File input = File.createTempFile("bad", ".rdf");
+		input.deleteOnExit();
+		Writer writer = new FileWriter(input);
+		writer.write("one\r\ntwo\r\nthr\u00e9e\r\nfour\r\n");
+		writer.close();
+		Quarantine quarantine = new Quarantine(directory);
+		try {
+			File copy = quarantine.add(input, 0, 2, 5, 5 + 12,
+					new RuntimeException());
+			byte[] bytes = new byte[12];
+			FileInputStream fis = new FileInputStream(copy);
+			Assert.assertEquals(12, fis.read(bytes));
+			fis.close();
+			byte[] expected = new byte[12];
+			RandomAccessFile raf = new RandomAccessFile(input, "r");
+			raf.seek(5);
+			raf.readFully(expected);
+			raf.close();
+			Assert.assertArrayEquals(expected, bytes);
+			try {
+				quarantine.add(input, 1, 2, -1, -1, new RuntimeException());
+				Assert.fail("no offsets");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			quarantine.close();
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+}
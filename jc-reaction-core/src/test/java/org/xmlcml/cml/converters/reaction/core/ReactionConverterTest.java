@@ -1,10 +1,10 @@
-package org.xmlcml.cml.converters.reaction.core;
-
-import org.junit.Test;
-
-public class ReactionConverterTest {
-
-	@Test
-	public void testReactionConverter() {
-	}
-}
+package org.xmlcml.cml.converters.reaction.core;
+
+import org.junit.Test;
+
+public class ReactionConverterTest {
+
+	@Test
+	public void testReactionConverter() {
+	}
+}
@@ -0,0 +1,76 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import nu.xom.Document;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.base.CMLSerializer;
+import org.xmlcml.cml.element.CMLCml;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLProduct;
+import org.xmlcml.cml.element.CMLProductList;
+import org.xmlcml.cml.element.CMLReaction;
+
+public class StreamingCMLWriterTest {
+
+	static CMLReaction reaction(int i) {
+		CMLReaction reaction = new CMLReaction();
+		reaction.setId("R" + i);
+		reaction.setTitle("reaction & <" + i + ">");
+		CMLProductList productList = new CMLProductList();
+		reaction.addProductList(productList);
+		CMLProduct product = new CMLProduct();
+		CMLMolecule molecule = new CMLMolecule();
+		molecule.setId("m" + i);
+		product.addMolecule(molecule);
+		productList.addProduct(product);
+		return reaction;
+	}
+
+	/* bytes of the document with n records serialized as a whole */
+	static byte[] serialize(int n) throws IOException {
+		CMLCml cml = new CMLCml();
+		for (int i = 0; i < n; i++) {
+			cml.appendChild(reaction(i));
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new CMLSerializer(baos).write(new Document(cml));
+		return baos.toByteArray();
+	}
+
+	static byte[] stream(int n) throws IOException {
+		CMLCml cml = new CMLCml();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		StreamingCMLWriter writer = new StreamingCMLWriter(baos, cml);
+		for (int i = 0; i < n; i++) {
+			CMLReaction reaction = reaction(i);
+			writer.handle(reaction);
+			Assert.assertNull(reaction.getParent());
+		}
+		writer.endDocument();
+		writer.endDocument();
+		Assert.assertEquals(n, writer.getCount());
+		Assert.assertEquals(0, cml.getChildCount());
+		return baos.toByteArray();
+	}
+
+	@Test
+	public void testSameBytesAsDocument() throws IOException {
+		for (int n : new int[] { 0, 1, 5 }) {
+			byte[] expected = serialize(n);
+			Assert.assertTrue(expected.length > 0);
+			Assert.assertArrayEquals(expected, stream(n));
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testHandleAfterEnd() throws IOException {
+		StreamingCMLWriter writer = new StreamingCMLWriter(
+				new ByteArrayOutputStream(), new CMLCml());
+		writer.endDocument();
+		writer.handle(reaction(0));
+	}
+}
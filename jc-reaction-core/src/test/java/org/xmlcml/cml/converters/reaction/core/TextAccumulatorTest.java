@@ -0,0 +1,58 @@
+package org.xmlcml.cml.converters.reaction.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TextAccumulatorTest {
+
+	@Test
+	public void testAppend() throws IOException {
+		TextAccumulator text = new TextAccumulator();
+		text.start("first");
+		text.append("\n", "second");
+		text.append("\n", "third");
+		Assert.assertEquals("first\nsecond\nthird", text.finish());
+		Assert.assertFalse(text.isTruncated());
+		text.start("again");
+		Assert.assertEquals("again", text.finish());
+	}
+
+	@Test
+	public void testTruncate() throws IOException {
+		TextAccumulator text = new TextAccumulator(8,
+				TextAccumulator.Overflow.TRUNCATE, null);
+		text.start("abcde");
+		text.append(" ", "fghij");
+		text.append(" ", "klm");
+		Assert.assertTrue(text.isTruncated());
+		Assert.assertFalse(text.isSpilled());
+		Assert.assertEquals("abcde fg", text.finish());
+	}
+
+	@Test
+	public void testSpill() throws IOException {
+		TextAccumulator text = new TextAccumulator(8,
+				TextAccumulator.Overflow.SPILL, null);
+		text.start("abcde");
+		text.append(" ", "fghij");
+		text.append(" ", "klm");
+		Assert.assertEquals("abcde fg", text.finish());
+		Assert.assertTrue(text.isSpilled());
+		Assert.assertEquals(15, text.length());
+		File file = text.getSpillFile();
+		BufferedReader br = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try {
+			Assert.assertEquals("abcde fghij klm", br.readLine());
+		} finally {
+			br.close();
+			file.delete();
+		}
+	}
+}
@@ -1,314 +1,871 @@
-package org.xmlcml.cml.converters.reaction.kegg;
-
-import java.io.EOFException;
-
-import java.io.IOException;
-import java.io.LineNumberReader;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.logging.Logger;
-
-import nu.xom.Document;
-
-import org.xmlcml.cml.base.CMLConstants;
-import org.xmlcml.cml.element.CMLMolecule;
-import org.xmlcml.cml.element.CMLName;
-import org.xmlcml.cml.element.CMLProduct;
-import org.xmlcml.cml.element.CMLProductList;
-import org.xmlcml.cml.element.CMLReactant;
-import org.xmlcml.cml.element.CMLReactantList;
-import org.xmlcml.cml.element.CMLReaction;
-import org.xmlcml.cml.element.CMLReactionList;
-
-/**
- * convert KEGG files.
- * 
- * @author pmr
- * 
- */
-public class KEGGConverter implements CMLConstants {
-
-    final static Logger logger = Logger
-            .getLogger(KEGGConverter.class.getName());
-
-    /** */
-    public final static String KEGG = "KEGG";
-
-    /** */
-    public final static String K_ENTRY = "ENTRY";
-
-    /** */
-    public final static String K_NAME = "NAME";
-
-    /** */
-    public final static String K_DEFINITION = "DEFINITION";
-
-    /** */
-    public final static String K_EQUATION = "EQUATION";
-
-    /** */
-    public final static String K_PATHWAY = "PATHWAY";
-
-    /** */
-    public final static String K_ENZYME = "ENZYME";
-
-    /** */
-    public final static String K_SLASH3 = "///";
-
-    /** */
-    public final static String BLANK12 = "            ";
-
-    String id;
-
-    int nProducts;
-
-    int nReactants;
-
-    CMLReaction reaction;
-
-    String line = null;
-
-    Document doc;
-
-    /**
-     * read KEGG.
-     * 
-     * @param br
-     * @return document
-     * @throws RuntimeException
-     * @throws IOException
-     */
-    public Document read(LineNumberReader br) throws RuntimeException, IOException {
-        CMLReactionList reactionList = new CMLReactionList();
-        doc = new Document(reactionList);
-
-        while (true) {
-            try {
-                CMLReaction reaction = readKEGGEntry(br);
-                if (reaction == null) {
-                    break;
-                }
-                reactionList.addReaction(reaction);
-            } catch (EOFException eof) {
-                break;
-            } catch (IOException ioe) {
-                throw new IOException(S_EMPTY + ioe + "at line: "
-                        + br.getLineNumber());
-            } catch (RuntimeException cmle) {
-                cmle.printStackTrace();
-                throw new RuntimeException(S_EMPTY + cmle + "at line: "
-                        + br.getLineNumber());
-            }
-        }
-        return doc;
-    }
-
-    private CMLReaction readKEGGEntry(LineNumberReader br) throws RuntimeException,
-            IOException {
-        /*
-         * ENTRY R00004 NAME Pyrophosphate phosphohydrolase DEFINITION
-         * Pyrophosphate + H2O <=> 2 Orthophosphate EQUATION C00013 + C00001 <=>
-         * 2 C00009 PATHWAY PATH: MAP00190 Oxidative phosphorylation ENZYME
-         * 3.6.1.1 ///
-         */
-        line = br.readLine();
-        if (line == null || line.equals(S_EMPTY)) {
-            return null;
-        }
-        if (!line.startsWith(K_ENTRY)) {
-            throw new RuntimeException("line: " + br.getLineNumber()
-                    + "; expected " + K_ENTRY + "; found: " + line);
-        }
-        CMLReaction reaction = new CMLReaction();
-        String id = line.substring(K_ENTRY.length()).trim();
-        reaction.setId(id);
-        // optional name
-        line = br.readLine();
-        if (line == null || line.equals(S_EMPTY)) {
-            return null;
-        }
-        if (line.startsWith(K_NAME)) {
-            String name = line.substring(K_NAME.length()).trim();
-            name += readOverflow(br);
-            CMLName cname = new CMLName();
-            cname.setXMLContent(name);
-            reaction.addName(cname);
-        }
-        // definition
-        if (line == null || line.equals(S_EMPTY)) {
-            return null;
-        }
-        if (!line.startsWith(K_DEFINITION)) {
-            throw new RuntimeException("line: " + br.getLineNumber()
-                    + "; expected " + K_DEFINITION + "; found: " + line);
-        }
-        String definition = line.substring(K_DEFINITION.length()).trim();
-        definition += readOverflow(br);
-        // equation
-        if (line == null || line.equals(S_EMPTY)) {
-            return null;
-        }
-        if (!line.startsWith(K_EQUATION)) {
-            throw new RuntimeException("line: " + br.getLineNumber()
-                    + "; expected " + K_EQUATION + "; found: " + line);
-        }
-        String equation = line.substring(K_EQUATION.length()).trim();
-        equation += readOverflow(br);
-        // pathway
-        String pathway = null;
-        if (line == null || line.equals(S_EMPTY)) {
-            return null;
-        }
-        if (line.startsWith(K_PATHWAY)) {
-            pathway = line.substring(K_EQUATION.length()).trim();
-            pathway += readOverflow(br);
-        }
-        // enzyme
-        String enzyme = null;
-        if (line == null || line.equals(S_EMPTY)) {
-            return null;
-        }
-        if (line.startsWith(K_ENZYME)) {
-            enzyme = line.substring(K_ENZYME.length()).trim();
-            enzyme += readOverflow(br);
-        }
-        // ///
-        if (line == null || line.equals(S_EMPTY)) {
-            return null;
-        }
-        if (!line.startsWith(K_SLASH3)) {
-            throw new RuntimeException("line: " + br.getLineNumber()
-                    + "; expected " + K_SLASH3 + "; found: " + line);
-        }
-        logger.info(S_PERIOD);
-        KEGGReaction defReaction = new KEGGReaction(definition);
-        KEGGReaction eqnReaction = new KEGGReaction(equation);
-        CMLReactantList reactantList = new CMLReactantList();
-        reaction.addReactantList(reactantList);
-        CMLProductList productList = new CMLProductList();
-        reaction.addProductList(productList);
-
-        if (defReaction.rVector.size() != eqnReaction.rVector.size()
-                || defReaction.pVector.size() != eqnReaction.pVector.size()) {
-            logger.severe("Inconsistent def/eqn: " + definition + "#"
-                    + equation);
-        } else {
-            for (int i = 0; i < defReaction.rVector.size(); i++) {
-                KEGGSpecies defR = defReaction.rVector.get(i);
-                KEGGSpecies eqnR = eqnReaction.rVector.get(i);
-                if (defR.count != eqnR.count) {
-                    logger.severe("Bad counts: " + definition + "#" + equation);
-                }
-                CMLMolecule mol = new CMLMolecule();
-                CMLName name = new CMLName();
-                name.setXMLContent(defR.name);
-                name.setConvention(KEGG);
-                mol.addName(name);
-                mol.setId(eqnR.name);
-                mol.setCount(defR.count);
-                CMLReactant reactant = new CMLReactant();
-                reactant.addMolecule(mol);
-                reactantList.addReactant(reactant);
-            }
-            for (int i = 0; i < defReaction.pVector.size(); i++) {
-                KEGGSpecies defP = defReaction.pVector.get(i);
-                KEGGSpecies eqnP = eqnReaction.pVector.get(i);
-                if (defP.count != eqnP.count) {
-                    logger.severe("Bad counts: " + definition + "#" + equation);
-                }
-                CMLMolecule mol = new CMLMolecule();
-                CMLName name = new CMLName();
-                name.setXMLContent(defP.name);
-                name.setConvention(KEGG);
-                mol.addName(name);
-                mol.setId(eqnP.name);
-                mol.setCount(defP.count);
-                CMLProduct product = new CMLProduct();
-                product.addMolecule(mol);
-                productList.addProduct(product);
-            }
-        }
-        return reaction;
-    }
-
-    // kludgy; sets line to latest value
-    private String readOverflow(LineNumberReader br) throws IOException {
-        String extension = S_EMPTY;
-        while (true) {
-            line = br.readLine();
-            if (line == null || line.equals(S_EMPTY)) {
-                return extension;
-            }
-            if (!line.startsWith(BLANK12)) {
-                return extension;
-            }
-            extension += S_SPACE + line.trim();
-        }
-    }
-}
-
-class KEGGReaction implements CMLConstants {
-
-    List<KEGGSpecies> pVector;
-
-    List<KEGGSpecies> rVector;
-
-    /**
-     * constructor
-     * 
-     * @param s
-     */
-    public KEGGReaction(String s) {
-        int idx = s.indexOf("<=>");
-        if (idx == -1) {
-            KEGGConverter.logger.severe("No <=> in: " + s);
-        }
-        String rString = s.substring(0, idx).trim();
-        rVector = split(rString);
-        String pString = s.substring(idx + "<=>".length()).trim();
-        pVector = split(pString);
-    }
-
-    List<KEGGSpecies> split(String s) {
-        List<KEGGSpecies> v = new ArrayList<KEGGSpecies>();
-        String f = S_EMPTY;
-        while (true) {
-            int idx = s.indexOf(" + ");
-            if (idx == -1) {
-                f = s;
-            } else {
-                f = s.substring(0, idx);
-                s = s.substring(idx + "<=>".length());
-            }
-            KEGGSpecies ks = new KEGGSpecies(f);
-            v.add(ks);
-            if (idx == -1) {
-                break;
-            }
-        }
-        return v;
-    }
-}
-
-class KEGGSpecies implements CMLConstants {
-    int count = 1;
-
-    String name;
-
-    /**
-     * constructor
-     * 
-     * @param s
-     */
-    public KEGGSpecies(String s) {
-        s = s.trim() + S_SPACE;
-        int idx = s.indexOf(S_SPACE);
-        try {
-            count = Integer.parseInt(s.substring(0, idx));
-            s = s.substring(idx);
-        } catch (NumberFormatException nfe) {
-            count = 1;
-        }
-        name = s.trim();
-    }
-}
+package org.xmlcml.cml.converters.reaction.kegg;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringTokenizer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import nu.xom.Document;
+
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.cml.converters.reaction.core.BinaryReactionWriter;
+import org.xmlcml.cml.converters.reaction.core.ConversionMetrics;
+import org.xmlcml.cml.converters.reaction.core.MeteredConverter;
+import org.xmlcml.cml.converters.reaction.core.IncrementalOutput;
+import org.xmlcml.cml.converters.reaction.core.MappedLineNumberReader;
+import org.xmlcml.cml.converters.reaction.core.Quarantine;
+import org.xmlcml.cml.converters.reaction.core.RecordHandler;
+import org.xmlcml.cml.converters.reaction.core.RecordManifest;
+import org.xmlcml.cml.converters.reaction.core.TextAccumulator;
+import org.xmlcml.cml.element.CMLCml;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLName;
+import org.xmlcml.cml.element.CMLProduct;
+import org.xmlcml.cml.element.CMLProductList;
+import org.xmlcml.cml.element.CMLReactant;
+import org.xmlcml.cml.element.CMLReactantList;
+import org.xmlcml.cml.element.CMLReaction;
+import org.xmlcml.cml.element.CMLReactionList;
+
+/**
+ * convert KEGG files.
+ * 
+ * @author pmr
+ * 
+ */
+public class KEGGConverter extends MeteredConverter implements CMLConstants {
+
+    final static Logger logger = Logger
+            .getLogger(KEGGConverter.class.getName());
+
+    /** */
+    public final static String KEGG = "KEGG";
+
+    /** */
+    public final static String K_ENTRY = "ENTRY";
+
+    /** */
+    public final static String K_NAME = "NAME";
+
+    /** */
+    public final static String K_DEFINITION = "DEFINITION";
+
+    /** */
+    public final static String K_EQUATION = "EQUATION";
+
+    /** */
+    public final static String K_PATHWAY = "PATHWAY";
+
+    /** */
+    public final static String K_ENZYME = "ENZYME";
+
+    /** */
+    public final static String K_SLASH3 = "///";
+
+    /** */
+    public final static String BLANK12 = "            ";
+
+    String id;
+
+    int fieldLimit = TextAccumulator.DEFAULT_LIMIT;
+
+    KEGGEntryFilter entryFilter;
+
+    KEGGSpeciesDictionary speciesDictionary;
+
+    boolean moleculeRefs;
+
+    KEGGReactionIndex reactionIndex;
+
+    Quarantine quarantine;
+
+    /**
+     * Sets a filter on the raw fields of each entry. It is called before
+     * DEFINITION and EQUATION are split and before any CML is built;
+     * rejected entries are skipped by every read method.
+     * 
+     * @param entryFilter
+     *            null (the default) converts every entry
+     */
+    public void setEntryFilter(KEGGEntryFilter entryFilter) {
+        this.entryFilter = entryFilter;
+    }
+
+    /**
+     * Gets the filter on raw entries
+     * 
+     * @return The entryFilter value
+     */
+    public KEGGEntryFilter getEntryFilter() {
+        return entryFilter;
+    }
+
+    /**
+     * Sets a dictionary in which compound ids and names are interned by every
+     * read. A dictionary shared between reads or converters interns across
+     * all of them, and keeps every compound it has seen until it is
+     * discarded.
+     * 
+     * @param speciesDictionary
+     *            null (the default) gives each read a dictionary of its own
+     */
+    public void setSpeciesDictionary(KEGGSpeciesDictionary speciesDictionary) {
+        this.speciesDictionary = speciesDictionary;
+    }
+
+    /**
+     * Gets the dictionary shared by every read
+     * 
+     * @return The speciesDictionary value
+     */
+    public KEGGSpeciesDictionary getSpeciesDictionary() {
+        return speciesDictionary;
+    }
+
+    /**
+     * Sets whether each compound is written once. If true, reactants and
+     * products hold a molecule with only ref and count, and the molecules
+     * themselves are written once per read: read(br) returns a cml root
+     * holding a moleculeList before the reactionList, and read(br, handler)
+     * passes each molecule to the handler before the first reaction that
+     * refers to it. readReaction(br) and iterator(br) give only the
+     * reactions; their molecules are in the species dictionary, if one has
+     * been set.
+     * 
+     * @param moleculeRefs
+     *            default false, a full molecule in every reactant and product
+     */
+    public void setMoleculeRefs(boolean moleculeRefs) {
+        this.moleculeRefs = moleculeRefs;
+    }
+
+    /**
+     * Gets whether each compound is written once
+     * 
+     * @return The moleculeRefs value
+     */
+    public boolean isMoleculeRefs() {
+        return moleculeRefs;
+    }
+
+    /**
+     * Sets an index to be filled as entries are parsed. Every reaction
+     * built, by any read method, is added to it.
+     * 
+     * @param reactionIndex
+     *            null (the default) for no index
+     */
+    public void setReactionIndex(KEGGReactionIndex reactionIndex) {
+        this.reactionIndex = reactionIndex;
+    }
+
+    /**
+     * Gets the index filled as entries are parsed
+     * 
+     * @return The reactionIndex value
+     */
+    public KEGGReactionIndex getReactionIndex() {
+        return reactionIndex;
+    }
+
+    /**
+     * Sets the number of characters kept of a multi-line field; the rest is
+     * dropped with a warning
+     * 
+     * @param fieldLimit
+     *            default TextAccumulator.DEFAULT_LIMIT
+     */
+    public void setFieldLimit(int fieldLimit) {
+        this.fieldLimit = fieldLimit;
+    }
+
+    /**
+     * Gets the number of characters kept of a multi-line field
+     * 
+     * @return The fieldLimit value
+     */
+    public int getFieldLimit() {
+        return fieldLimit;
+    }
+
+    /**
+     * Sets where entries that fail are copied. With a quarantine, read(File)
+     * and writeBinary copy each entry that cannot be parsed into it, with
+     * the reason, and carry on with the next entry; reads from a reader
+     * still stop at the first bad entry.
+     * 
+     * @param quarantine
+     *            null (the default) for none
+     */
+    public void setQuarantine(Quarantine quarantine) {
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Gets where entries that fail are copied
+     * 
+     * @return The quarantine value
+     */
+    public Quarantine getQuarantine() {
+        return quarantine;
+    }
+
+    /**
+     * read KEGG.
+     * 
+     * @param br
+     * @return document
+     * @throws RuntimeException
+     * @throws IOException
+     */
+    public Document read(LineNumberReader br) throws RuntimeException, IOException {
+        return read(newContext(br));
+    }
+
+    private Document read(KEGGContext context) throws RuntimeException,
+            IOException {
+        CMLReactionList reactionList = new CMLReactionList();
+        Set<String> speciesIds = new LinkedHashSet<String>();
+
+        while (true) {
+            CMLReaction reaction = readReaction(context, speciesIds);
+            if (reaction == null) {
+                break;
+            }
+            reactionList.addReaction(reaction);
+        }
+        if (!moleculeRefs) {
+            return new Document(reactionList);
+        }
+        CMLCml cml = new CMLCml();
+        cml.appendChild(context.dictionary.createMoleculeList(speciesIds));
+        cml.appendChild(reactionList);
+        return new Document(cml);
+    }
+
+    /**
+     * read KEGG from file. Large files are memory-mapped.
+     * 
+     * @param file
+     * @return document
+     * @throws RuntimeException
+     * @throws IOException
+     */
+    public Document read(File file) throws RuntimeException, IOException {
+        ConversionMetrics.count(metrics, ConversionMetrics.Counter.BYTES,
+                file.length());
+        LineNumberReader lnr = open(file);
+        try {
+            KEGGContext context = newContext(lnr);
+            context.file = file;
+            return read(context);
+        } finally {
+            lnr.close();
+        }
+    }
+
+    /**
+     * read KEGG entries and pass each reaction to the handler as soon as its
+     * /// terminator has been read. No document or reaction list is built;
+     * with a StreamingCMLWriter over a CMLReactionList root the output is
+     * the same as serializing read(br). With molecule references each
+     * molecule is handed over once, just before the first reaction that
+     * refers to it; only reactions are counted.
+     * 
+     * @param br
+     * @param handler
+     * @return number of reactions read
+     * @throws RuntimeException
+     * @throws IOException
+     */
+    public int read(LineNumberReader br, RecordHandler handler)
+            throws RuntimeException, IOException {
+        int count = 0;
+        Set<String> emitted = new HashSet<String>();
+        List<String> speciesIds = new ArrayList<String>();
+        KEGGContext context = newContext(br);
+        while (true) {
+            speciesIds.clear();
+            CMLReaction reaction = readReaction(context, speciesIds);
+            if (reaction == null) {
+                break;
+            }
+            long start = ConversionMetrics.start(metrics);
+            for (String speciesId : speciesIds) {
+                if (emitted.add(speciesId)) {
+                    handler.handle(context.dictionary
+                            .createMolecule(speciesId));
+                }
+            }
+            handler.handle(reaction);
+            ConversionMetrics.stop(metrics, ConversionMetrics.Stage.SERIALIZE,
+                    start);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * convert a KEGG file to the binary reaction format and save an index of
+     * it alongside, in KEGGReactionIndex.getIndexFile(out). The reactions are
+     * written first, so the ordinals in the index are their record numbers;
+     * with molecule references the molecules follow the last reaction.
+     * 
+     * If no index has been set a new one is used for this call only; an
+     * index that is set must be empty, and is filled by the call.
+     * 
+     * @param in
+     *            KEGG REACTION file
+     * @param out
+     *            binary file
+     * @return number of reactions written
+     * @throws RuntimeException
+     * @throws IOException
+     */
+    public int writeBinary(File in, File out) throws RuntimeException,
+            IOException {
+        if (reactionIndex != null && reactionIndex.size() != 0) {
+            throw new IllegalStateException("Index already holds "
+                    + reactionIndex.size()
+                    + " reactions; its ordinals would not match " + out);
+        }
+        Set<String> speciesIds = new LinkedHashSet<String>();
+        LineNumberReader lnr = open(in);
+        KEGGContext context = newContext(lnr);
+        context.file = in;
+        if (context.index == null) {
+            context.index = new KEGGReactionIndex();
+        }
+        FileOutputStream fos = new FileOutputStream(out);
+        try {
+            BinaryReactionWriter writer = new BinaryReactionWriter(fos);
+            while (true) {
+                CMLReaction reaction = readReaction(context, speciesIds);
+                if (reaction == null) {
+                    break;
+                }
+                writer.handle(reaction);
+            }
+            int count = writer.getCount();
+            for (String speciesId : speciesIds) {
+                writer.handle(context.dictionary.createMolecule(speciesId));
+            }
+            writer.finish();
+            context.index.write(KEGGReactionIndex.getIndexFile(out));
+            return count;
+        } finally {
+            fos.close();
+            lnr.close();
+        }
+    }
+
+    /**
+     * bring a directory of converted reactions up to date with a KEGG file,
+     * converting only entries added or changed since the last update.
+     * 
+     * Each entry, from ENTRY to ///, is hashed as it is skipped over and
+     * keyed on its ENTRY id; only entries whose hash differs from the
+     * manifest in the directory are parsed. Each file holds one reaction; with molecule
+     * references its molecules are only in the species dictionary, if one
+     * has been set.
+     * 
+     * @param in
+     *            KEGG REACTION file
+     * @param directory
+     *            one CML file per reaction, and the manifest
+     * @return counts of added, changed, unchanged and removed entries
+     * @throws RuntimeException
+     * @throws IOException
+     */
+    public IncrementalOutput update(File in, File directory)
+            throws RuntimeException, IOException {
+        IncrementalOutput output = new IncrementalOutput(directory);
+        MappedLineNumberReader br = new MappedLineNumberReader(in);
+        KEGGContext context = newContext(br);
+        try {
+            while (true) {
+                long start = br.getPosition();
+                int lineNumber = br.getLineNumber();
+                String line = br.readLine();
+                if (line == null || line.equals(S_EMPTY)) {
+                    break;
+                }
+                if (!line.startsWith(K_ENTRY)) {
+                    throw new RuntimeException("line: " + br.getLineNumber()
+                            + "; expected " + K_ENTRY + "; found: " + line);
+                }
+                String key = new StringTokenizer(line.substring(K_ENTRY
+                        .length())
+                        + S_SPACE).nextToken();
+                long hash = RecordManifest.hashLine(RecordManifest.FNV_OFFSET,
+                        line);
+                while (true) {
+                    boolean last = br.lineStartsWith(K_SLASH3);
+                    CharSequence view = br.readLineView();
+                    if (view == null) {
+                        break;
+                    }
+                    hash = RecordManifest.hashLine(hash, view);
+                    if (last) {
+                        break;
+                    }
+                }
+                key = output.put(key, hash);
+                if (output.isChanged(key)) {
+                    long end = br.getPosition();
+                    int endLineNumber = br.getLineNumber();
+                    br.seek(start, lineNumber);
+                    output.write(key, readOneEntry(context));
+                    br.seek(end, endLineNumber);
+                }
+            }
+            output.finish();
+        } finally {
+            br.close();
+        }
+        return output;
+    }
+
+    /* the reaction of the entry at the reader, or null if it is filtered out */
+    private CMLReaction readOneEntry(KEGGContext context)
+            throws RuntimeException, IOException {
+        KEGGEntry entry = readEntry(context);
+        if (entry == null
+                || (entryFilter != null && !entryFilter.accept(entry))) {
+            return null;
+        }
+        return buildReaction(entry, context, null);
+    }
+
+    /**
+     * iterate over KEGG entries one reaction at a time.
+     * 
+     * Each reaction is parsed only when requested and is not attached to any
+     * document.
+     * 
+     * @param br
+     * @return iterator
+     */
+    public Iterator<CMLReaction> iterator(LineNumberReader br) {
+        return new KEGGReactionIterator(this, br);
+    }
+
+    /**
+     * read the next KEGG entry.
+     * 
+     * @param br
+     * @return reaction or null at end of input
+     * @throws RuntimeException
+     * @throws IOException
+     */
+    public CMLReaction readReaction(LineNumberReader br) throws RuntimeException,
+            IOException {
+        return readReaction(newContext(br), null);
+    }
+
+    /*
+     * the state of one read: the shared dictionary or a new one, and the
+     * index if one is set
+     */
+    KEGGContext newContext(LineNumberReader br) {
+        return new KEGGContext(br, fieldLimit,
+                (speciesDictionary == null) ? new KEGGSpeciesDictionary()
+                        : speciesDictionary, reactionIndex);
+    }
+
+    /*
+     * adds the compound ids referred to, if any, to speciesIds; package
+     * access for the iterator, which keeps one context for all its entries
+     */
+    CMLReaction readReaction(KEGGContext context,
+            Collection<String> speciesIds) throws RuntimeException,
+            IOException {
+        LineNumberReader br = context.br;
+        while (true) {
+            try {
+                return readKEGGEntry(context, speciesIds);
+            } catch (EOFException eof) {
+                return null;
+            } catch (IOException ioe) {
+                throw new IOException(S_EMPTY + ioe + "at line: "
+                        + br.getLineNumber());
+            } catch (RuntimeException cmle) {
+                ConversionMetrics.count(metrics,
+                        ConversionMetrics.Counter.ERRORS, 1);
+                if (quarantine == null || context.file == null) {
+                    logger.log(Level.SEVERE, "Bad KEGG entry at line: "
+                            + br.getLineNumber(), cmle);
+                    throw new RuntimeException(S_EMPTY + cmle + "at line: "
+                            + br.getLineNumber(), cmle);
+                }
+                quarantine(context, cmle);
+            }
+        }
+    }
+
+    /* quarantined entries are copied by byte offset, which needs a mapping */
+    private LineNumberReader open(File file) throws IOException {
+        return (quarantine != null) ? new MappedLineNumberReader(file)
+                : MappedLineNumberReader.open(file);
+    }
+
+    /* skip the rest of a bad entry and copy it to the quarantine */
+    private void quarantine(KEGGContext context, RuntimeException cause)
+            throws IOException {
+        while (context.line != null && !context.line.startsWith(K_SLASH3)) {
+            context.readLine();
+        }
+        try {
+            File copy = quarantine.add(context.file, context.record,
+                    context.startLine, context.startOffset, context.position(),
+                    cause);
+            logger.warning("Skipped bad KEGG entry at line "
+                    + context.startLine + ": " + cause + "; copied to " + copy);
+        } catch (IOException ioe) {
+            logger.log(Level.SEVERE, "Skipped bad KEGG entry at line "
+                    + context.startLine + "; cannot quarantine it: " + ioe,
+                    cause);
+        }
+    }
+
+    private CMLReaction readKEGGEntry(KEGGContext context,
+            Collection<String> speciesIds) throws RuntimeException,
+            IOException {
+        while (true) {
+            long start = ConversionMetrics.start(metrics);
+            context.startEntry();
+            KEGGEntry entry = readEntry(context);
+            start = ConversionMetrics.stop(metrics,
+                    ConversionMetrics.Stage.HEADER, start);
+            if (entry == null) {
+                return null;
+            }
+            if (entryFilter == null || entryFilter.accept(entry)) {
+                CMLReaction reaction = buildReaction(entry, context,
+                        speciesIds);
+                ConversionMetrics.stop(metrics, ConversionMetrics.Stage.DOM,
+                        start);
+                return reaction;
+            }
+        }
+    }
+
+    /* the raw fields of the next entry, or null at end of input */
+    private KEGGEntry readEntry(KEGGContext context) throws RuntimeException,
+            IOException {
+        LineNumberReader br = context.br;
+        /*
+         * ENTRY R00004 NAME Pyrophosphate phosphohydrolase DEFINITION
+         * Pyrophosphate + H2O <=> 2 Orthophosphate EQUATION C00013 + C00001 <=>
+         * 2 C00009 PATHWAY PATH: MAP00190 Oxidative phosphorylation ENZYME
+         * 3.6.1.1 ///
+         */
+        context.readLine();
+        if (context.line == null || context.line.equals(S_EMPTY)) {
+            return null;
+        }
+        if (!context.line.startsWith(K_ENTRY)) {
+            throw new RuntimeException("line: " + br.getLineNumber()
+                    + "; expected " + K_ENTRY + "; found: " + context.line);
+        }
+        KEGGEntry entry = new KEGGEntry(context.line.substring(
+                K_ENTRY.length()).trim());
+        // optional name
+        context.readLine();
+        if (context.line == null || context.line.equals(S_EMPTY)) {
+            return null;
+        }
+        if (context.line.startsWith(K_NAME)) {
+            entry.name = readOverflow(context,
+                    context.line.substring(K_NAME.length()).trim());
+        }
+        // definition
+        if (context.line == null || context.line.equals(S_EMPTY)) {
+            return null;
+        }
+        if (!context.line.startsWith(K_DEFINITION)) {
+            throw new RuntimeException("line: " + br.getLineNumber()
+                    + "; expected " + K_DEFINITION + "; found: " + context.line);
+        }
+        entry.definition = readOverflow(context,
+                context.line.substring(K_DEFINITION.length()).trim());
+        // equation
+        if (context.line == null || context.line.equals(S_EMPTY)) {
+            return null;
+        }
+        if (!context.line.startsWith(K_EQUATION)) {
+            throw new RuntimeException("line: " + br.getLineNumber()
+                    + "; expected " + K_EQUATION + "; found: " + context.line);
+        }
+        entry.equation = readOverflow(context,
+                context.line.substring(K_EQUATION.length()).trim());
+        // pathway
+        if (context.line == null || context.line.equals(S_EMPTY)) {
+            return null;
+        }
+        if (context.line.startsWith(K_PATHWAY)) {
+            entry.pathway = readOverflow(context,
+                    context.line.substring(K_EQUATION.length()).trim());
+        }
+        // enzyme
+        if (context.line == null || context.line.equals(S_EMPTY)) {
+            return null;
+        }
+        if (context.line.startsWith(K_ENZYME)) {
+            entry.enzyme = readOverflow(context,
+                    context.line.substring(K_ENZYME.length()).trim());
+        }
+        // ///
+        if (context.line == null || context.line.equals(S_EMPTY)) {
+            return null;
+        }
+        if (!context.line.startsWith(K_SLASH3)) {
+            throw new RuntimeException("line: " + br.getLineNumber()
+                    + "; expected " + K_SLASH3 + "; found: " + context.line);
+        }
+        return entry;
+    }
+
+    /* the expensive part: split the equations and build the CML */
+    private CMLReaction buildReaction(KEGGEntry entry, KEGGContext context,
+            Collection<String> speciesIds) {
+        KEGGSpeciesDictionary dictionary = context.dictionary;
+        CMLReaction reaction = new CMLReaction();
+        reaction.setId(entry.getId());
+        if (entry.getName() != null) {
+            CMLName cname = new CMLName();
+            cname.setXMLContent(entry.getName());
+            reaction.addName(cname);
+        }
+        String definition = entry.getDefinition();
+        String equation = entry.getEquation();
+        ConversionMetrics.count(metrics, ConversionMetrics.Counter.RECORDS, 1);
+        KEGGReaction defReaction = new KEGGReaction(definition);
+        KEGGReaction eqnReaction = new KEGGReaction(equation);
+        if (context.index != null) {
+            context.index.addReaction(entry.getId(),
+                    compoundIds(eqnReaction.rVector, dictionary),
+                    compoundIds(eqnReaction.pVector, dictionary),
+                    entry.getEnzyme());
+        }
+        CMLReactantList reactantList = new CMLReactantList();
+        reaction.addReactantList(reactantList);
+        CMLProductList productList = new CMLProductList();
+        reaction.addProductList(productList);
+
+        if (defReaction.rVector.size() != eqnReaction.rVector.size()
+                || defReaction.pVector.size() != eqnReaction.pVector.size()) {
+            logger.severe("Inconsistent def/eqn: " + definition + "#"
+                    + equation);
+        } else {
+            for (int i = 0; i < defReaction.rVector.size(); i++) {
+                KEGGSpecies defR = defReaction.rVector.get(i);
+                KEGGSpecies eqnR = eqnReaction.rVector.get(i);
+                if (defR.count != eqnR.count) {
+                    logger.severe("Bad counts: " + definition + "#" + equation);
+                }
+                CMLReactant reactant = new CMLReactant();
+                reactant.addMolecule(createSpecies(defR, eqnR, dictionary,
+                        speciesIds));
+                reactantList.addReactant(reactant);
+            }
+            for (int i = 0; i < defReaction.pVector.size(); i++) {
+                KEGGSpecies defP = defReaction.pVector.get(i);
+                KEGGSpecies eqnP = eqnReaction.pVector.get(i);
+                if (defP.count != eqnP.count) {
+                    logger.severe("Bad counts: " + definition + "#" + equation);
+                }
+                CMLProduct product = new CMLProduct();
+                product.addMolecule(createSpecies(defP, eqnP, dictionary,
+                        speciesIds));
+                productList.addProduct(product);
+            }
+        }
+        return reaction;
+    }
+
+    private List<String> compoundIds(List<KEGGSpecies> species,
+            KEGGSpeciesDictionary dictionary) {
+        List<String> ids = new ArrayList<String>(species.size());
+        for (KEGGSpecies s : species) {
+            ids.add(dictionary.intern(s.name));
+        }
+        return ids;
+    }
+
+    /* name from the definition, id from the equation */
+    private CMLMolecule createSpecies(KEGGSpecies def, KEGGSpecies eqn,
+            KEGGSpeciesDictionary dictionary, Collection<String> speciesIds) {
+        String id = dictionary.addSpecies(eqn.name, def.name);
+        CMLMolecule mol = new CMLMolecule();
+        if (moleculeRefs) {
+            mol.setRef(id);
+            if (speciesIds != null) {
+                speciesIds.add(id);
+            }
+        } else {
+            CMLName name = new CMLName();
+            name.setXMLContent(dictionary.intern(def.name));
+            name.setConvention(KEGG);
+            mol.addName(name);
+            mol.setId(id);
+        }
+        mol.setCount(def.count);
+        return mol;
+    }
+
+    // kludgy; sets context.line to latest value
+    private String readOverflow(KEGGContext context, String first)
+            throws IOException {
+        TextAccumulator text = context.text;
+        text.start(first);
+        while (true) {
+            context.readLine();
+            if (context.line == null || context.line.equals(S_EMPTY)) {
+                break;
+            }
+            if (!context.line.startsWith(BLANK12)) {
+                break;
+            }
+            text.append(S_SPACE, context.line.trim());
+        }
+        if (text.isTruncated()) {
+            logger.warning("Truncated field at " + fieldLimit
+                    + " characters (line: " + context.br.getLineNumber()
+                    + S_RBRAK);
+        }
+        return text.finish();
+    }
+}
+
+class KEGGReaction implements CMLConstants {
+
+    List<KEGGSpecies> pVector;
+
+    List<KEGGSpecies> rVector;
+
+    /**
+     * constructor
+     * 
+     * @param s
+     */
+    public KEGGReaction(String s) {
+        int idx = s.indexOf("<=>");
+        if (idx == -1) {
+            KEGGConverter.logger.severe("No <=> in: " + s);
+        }
+        String rString = s.substring(0, idx).trim();
+        rVector = split(rString);
+        String pString = s.substring(idx + "<=>".length()).trim();
+        pVector = split(pString);
+    }
+
+    List<KEGGSpecies> split(String s) {
+        List<KEGGSpecies> v = new ArrayList<KEGGSpecies>();
+        String f = S_EMPTY;
+        while (true) {
+            int idx = s.indexOf(" + ");
+            if (idx == -1) {
+                f = s;
+            } else {
+                f = s.substring(0, idx);
+                s = s.substring(idx + "<=>".length());
+            }
+            KEGGSpecies ks = new KEGGSpecies(f);
+            v.add(ks);
+            if (idx == -1) {
+                break;
+            }
+        }
+        return v;
+    }
+}
+
+class KEGGSpecies implements CMLConstants {
+    int count = 1;
+
+    String name;
+
+    /**
+     * constructor
+     * 
+     * @param s
+     */
+    public KEGGSpecies(String s) {
+        s = s.trim() + S_SPACE;
+        int idx = s.indexOf(S_SPACE);
+        try {
+            count = Integer.parseInt(s.substring(0, idx));
+            s = s.substring(idx);
+        } catch (NumberFormatException nfe) {
+            count = 1;
+        }
+        name = s.trim();
+    }
+}
+
+/**
+ * the state of one read: the line read ahead while parsing each entry, and
+ * where compounds and reactions are recorded
+ */
+class KEGGContext {
+
+    LineNumberReader br;
+
+    String line;
+
+    TextAccumulator text;
+
+    KEGGSpeciesDictionary dictionary;
+
+    KEGGReactionIndex index;
+
+    /* the file being read, if known; entries can then be quarantined */
+    File file;
+
+    /* serial number from 0, first line and byte offset of the entry */
+    int record = -1;
+
+    int startLine;
+
+    long startOffset;
+
+    KEGGContext(LineNumberReader br, int fieldLimit,
+            KEGGSpeciesDictionary dictionary, KEGGReactionIndex index) {
+        this.br = br;
+        this.dictionary = dictionary;
+        this.index = index;
+        this.text = new TextAccumulator(fieldLimit,
+                TextAccumulator.Overflow.TRUNCATE, null);
+    }
+
+    String readLine() throws IOException {
+        line = br.readLine();
+        return line;
+    }
+
+    void startEntry() {
+        record++;
+        startLine = br.getLineNumber() + 1;
+        startOffset = position();
+    }
+
+    /* byte offset in a mapped file, otherwise -1 */
+    long position() {
+        if (br instanceof MappedLineNumberReader) {
+            return ((MappedLineNumberReader) br).getPosition();
+        }
+        return -1;
+    }
+}
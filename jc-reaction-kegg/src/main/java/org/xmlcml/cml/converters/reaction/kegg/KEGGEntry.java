@@ -0,0 +1,65 @@
+package org.xmlcml.cml.converters.reaction.kegg;
+
+/**
+ * the unparsed fields of a KEGG REACTION entry, as seen by a
+ * KEGGEntryFilter. Continuation lines are joined with single spaces;
+ * optional fields that are absent are null.
+ */
+public class KEGGEntry {
+
+    String id;
+    String name;
+    String definition;
+    String equation;
+    String pathway;
+    String enzyme;
+
+    /**
+     * @param id from ENTRY
+     */
+    public KEGGEntry(String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return ENTRY, such as "R00004"
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return NAME or null
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return DEFINITION
+     */
+    public String getDefinition() {
+        return definition;
+    }
+
+    /**
+     * @return EQUATION
+     */
+    public String getEquation() {
+        return equation;
+    }
+
+    /**
+     * @return PATHWAY or null
+     */
+    public String getPathway() {
+        return pathway;
+    }
+
+    /**
+     * @return ENZYME (EC numbers separated by spaces) or null
+     */
+    public String getEnzyme() {
+        return enzyme;
+    }
+}
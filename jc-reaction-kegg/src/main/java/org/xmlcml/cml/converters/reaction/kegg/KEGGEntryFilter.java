@@ -0,0 +1,16 @@
+package org.xmlcml.cml.converters.reaction.kegg;
+
+/**
+ * decides from its raw fields whether a KEGG entry is converted.
+ * 
+ * Set with {@link KEGGConverter#setEntryFilter(KEGGEntryFilter)}. A
+ * rejected entry costs only the reading of its lines.
+ */
+public interface KEGGEntryFilter {
+
+    /**
+     * @param entry unparsed fields
+     * @return true if the entry is to be converted
+     */
+    boolean accept(KEGGEntry entry);
+}
@@ -0,0 +1,295 @@
+package org.xmlcml.cml.converters.reaction.kegg;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * finds KEGG reactions by compound and by EC number without scanning them.
+ *
+ * Set on a KEGGConverter, the index is filled as entries are parsed: each
+ * reaction gets the next ordinal, and the ordinal is posted under every
+ * compound id on either side of its EQUATION and every EC number in its
+ * ENZYME field. The ordinal is the position of the reaction among those
+ * read with this index, which is its position in the reactionList from
+ * {@link KEGGConverter#read(java.io.LineNumberReader)} and its record
+ * number in a file written by {@link KEGGConverter#writeBinary(File, File)}.
+ *
+ * Postings are int arrays in ascending order, so a query is one hash
+ * lookup and an array copy. The index is saved next to the binary file
+ * (see {@link #getIndexFile(File)}) and loaded again with
+ * {@link #read(File)}.
+ *
+ * KEGG equations are written left to right but are reversible, so
+ * "reactant" and "product" refer to the side of the equation only.
+ */
+public class KEGGReactionIndex {
+
+    /** appended to the name of the binary file */
+    public static final String SUFFIX = ".kidx";
+
+    private static final int MAGIC = 0x4b494458; // "KIDX"
+    private static final int VERSION = 1;
+    private static final int[] NONE = new int[0];
+
+    private String[] ids = new String[1024];
+    private int count;
+    private Map<String, Postings> reactants = new HashMap<String, Postings>();
+    private Map<String, Postings> products = new HashMap<String, Postings>();
+    private Map<String, Postings> enzymes = new HashMap<String, Postings>();
+
+    /**
+     * @param binaryFile
+     * @return the file the index of binaryFile is kept in
+     */
+    public static File getIndexFile(File binaryFile) {
+        return new File(binaryFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * post a reaction under its compounds and EC numbers.
+     *
+     * @param id
+     *            ENTRY, such as "R00004"
+     * @param reactantIds
+     *            compound ids on the left of EQUATION
+     * @param productIds
+     *            compound ids on the right of EQUATION
+     * @param enzyme
+     *            ENZYME field, EC numbers separated by spaces; may be null
+     * @return ordinal of the reaction
+     */
+    public int addReaction(String id, Collection<String> reactantIds,
+            Collection<String> productIds, String enzyme) {
+        if (count == ids.length) {
+            String[] grown = new String[2 * count];
+            System.arraycopy(ids, 0, grown, 0, count);
+            ids = grown;
+        }
+        int ordinal = count++;
+        ids[ordinal] = id;
+        for (String compound : reactantIds) {
+            post(reactants, compound, ordinal);
+        }
+        for (String compound : productIds) {
+            post(products, compound, ordinal);
+        }
+        if (enzyme != null) {
+            for (String ec : enzyme.trim().split("\\s+")) {
+                if (ec.length() > 0) {
+                    post(enzymes, ec, ordinal);
+                }
+            }
+        }
+        return ordinal;
+    }
+
+    /**
+     * @return number of reactions
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param ordinal
+     * @return ENTRY of the reaction
+     */
+    public String getReactionId(int ordinal) {
+        if (ordinal < 0 || ordinal >= count) {
+            throw new IndexOutOfBoundsException("Reaction " + ordinal + " of "
+                    + count);
+        }
+        return ids[ordinal];
+    }
+
+    /**
+     * @param compound
+     *            such as "C00031"
+     * @return ordinals of reactions with the compound on the left, ascending
+     */
+    public int[] getReactionsWithReactant(String compound) {
+        return get(reactants, compound);
+    }
+
+    /**
+     * @param compound
+     * @return ordinals of reactions with the compound on the right, ascending
+     */
+    public int[] getReactionsWithProduct(String compound) {
+        return get(products, compound);
+    }
+
+    /**
+     * @param compound
+     * @return ordinals of reactions with the compound on either side,
+     *         ascending and without repeats
+     */
+    public int[] getReactionsWithCompound(String compound) {
+        Postings r = reactants.get(compound);
+        Postings p = products.get(compound);
+        if (r == null) {
+            return get(products, compound);
+        } else if (p == null) {
+            return get(reactants, compound);
+        }
+        int[] union = new int[r.size + p.size];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < r.size || j < p.size) {
+            int next;
+            if (j == p.size || (i < r.size && r.ordinals[i] < p.ordinals[j])) {
+                next = r.ordinals[i++];
+            } else if (i == r.size || p.ordinals[j] < r.ordinals[i]) {
+                next = p.ordinals[j++];
+            } else {
+                next = r.ordinals[i++];
+                j++;
+            }
+            union[n++] = next;
+        }
+        return (n == union.length) ? union : Arrays.copyOf(union, n);
+    }
+
+    /**
+     * @param ec
+     *            EC number, such as "3.6.1.1"
+     * @return ordinals of reactions listing the EC number, ascending
+     */
+    public int[] getReactionsWithEnzyme(String ec) {
+        return get(enzymes, ec);
+    }
+
+    /**
+     * save the index.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                dos.writeUTF(ids[i]);
+            }
+            write(dos, reactants);
+            write(dos, products);
+            write(dos, enzymes);
+        } finally {
+            dos.close();
+        }
+    }
+
+    /**
+     * load an index saved by {@link #write(File)}. Reactions may be added
+     * to it as to a new index.
+     *
+     * @param file
+     * @return index
+     * @throws IOException
+     *             if the file is not an index
+     */
+    public static KEGGReactionIndex read(File file) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        try {
+            if (dis.readInt() != MAGIC) {
+                throw new IOException("Not a KEGG reaction index: " + file);
+            }
+            int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported KEGG reaction index version "
+                        + version + ": " + file);
+            }
+            KEGGReactionIndex index = new KEGGReactionIndex();
+            index.count = dis.readInt();
+            index.ids = new String[Math.max(index.count, 1)];
+            for (int i = 0; i < index.count; i++) {
+                index.ids[i] = dis.readUTF();
+            }
+            read(dis, index.reactants);
+            read(dis, index.products);
+            read(dis, index.enzymes);
+            return index;
+        } finally {
+            dis.close();
+        }
+    }
+
+    private static void post(Map<String, Postings> map, String key, int ordinal) {
+        Postings postings = map.get(key);
+        if (postings == null) {
+            postings = new Postings(4);
+            map.put(key, postings);
+        }
+        postings.add(ordinal);
+    }
+
+    private static int[] get(Map<String, Postings> map, String key) {
+        Postings postings = map.get(key);
+        return (postings == null) ? NONE : Arrays.copyOf(postings.ordinals,
+                postings.size);
+    }
+
+    private static void write(DataOutputStream dos, Map<String, Postings> map)
+            throws IOException {
+        dos.writeInt(map.size());
+        for (Map.Entry<String, Postings> entry : map.entrySet()) {
+            Postings postings = entry.getValue();
+            dos.writeUTF(entry.getKey());
+            dos.writeInt(postings.size);
+            for (int i = 0; i < postings.size; i++) {
+                dos.writeInt(postings.ordinals[i]);
+            }
+        }
+    }
+
+    private static void read(DataInputStream dis, Map<String, Postings> map)
+            throws IOException {
+        int keys = dis.readInt();
+        for (int k = 0; k < keys; k++) {
+            String key = dis.readUTF();
+            int size = dis.readInt();
+            Postings postings = new Postings(Math.max(size, 1));
+            for (int i = 0; i < size; i++) {
+                postings.add(dis.readInt());
+            }
+            map.put(key, postings);
+        }
+    }
+
+    /* ascending ordinals; a reaction naming a compound twice is posted once */
+    private static class Postings {
+
+        int[] ordinals;
+        int size;
+
+        Postings(int capacity) {
+            ordinals = new int[capacity];
+        }
+
+        void add(int ordinal) {
+            if (size > 0 && ordinals[size - 1] == ordinal) {
+                return;
+            }
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, 2 * size);
+            }
+            ordinals[size++] = ordinal;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.xmlcml.cml.converters.reaction.kegg;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.xmlcml.cml.element.CMLReaction;
+
+/**
+ * pulls reactions from a KEGG REACTION flat file one entry at a time.
+ * 
+ * Created by {@link KEGGConverter#iterator(LineNumberReader)}. Each entry
+ * is parsed only when asked for and yielded as soon as its /// terminator
+ * has been read.
+ * 
+ * IOExceptions are rethrown as RuntimeExceptions as Iterator cannot throw
+ * checked exceptions.
+ */
+public class KEGGReactionIterator implements Iterator<CMLReaction> {
+
+    private KEGGConverter converter;
+    private KEGGContext context;
+    private CMLReaction next;
+    private boolean finished;
+
+    KEGGReactionIterator(KEGGConverter converter, LineNumberReader br) {
+        this.converter = converter;
+        this.context = converter.newContext(br);
+    }
+
+    /**
+     * @return true if another reaction is available
+     */
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            try {
+                next = converter.readReaction(context, null);
+            } catch (IOException ioe) {
+                throw new RuntimeException("Cannot read KEGG entry at line: "
+                        + context.br.getLineNumber(), ioe);
+            }
+            if (next == null) {
+                finished = true;
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * @return the next reaction
+     */
+    public CMLReaction next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more KEGG entries");
+        }
+        CMLReaction reaction = next;
+        next = null;
+        return reaction;
+    }
+
+    /**
+     * not supported.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+}
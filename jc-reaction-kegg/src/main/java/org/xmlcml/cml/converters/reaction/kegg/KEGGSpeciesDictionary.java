@@ -0,0 +1,125 @@
+package org.xmlcml.cml.converters.reaction.kegg;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLMoleculeList;
+import org.xmlcml.cml.element.CMLName;
+
+/**
+ * the compounds seen while converting KEGG REACTION entries, keyed on the
+ * compound id from EQUATION (such as "C00001").
+ *
+ * KEGG has a few thousand compounds but every reaction names two or more of
+ * them, so the same ids and names turn up many thousands of times in a full
+ * conversion. The dictionary keeps one copy of each id and name string and
+ * remembers the DEFINITION name first seen for each id, so that a molecule
+ * can be written once and referred to by id from reactants and products.
+ *
+ * By default each read has a dictionary of its own. One set on converters
+ * with setSpeciesDictionary is shared by all their reads, which may run on
+ * several threads at once, and grows with every new compound until it is
+ * discarded.
+ */
+public class KEGGSpeciesDictionary {
+
+    /* stands for a null name, which the map cannot hold */
+    private static final String NO_NAME = new String();
+
+    private ConcurrentMap<String, String> strings =
+            new ConcurrentHashMap<String, String>();
+
+    private ConcurrentMap<String, String> names =
+            new ConcurrentHashMap<String, String>();
+
+    /**
+     * the single copy of s held by this dictionary
+     *
+     * @param s
+     * @return s or an equal string seen before; null if s is null
+     */
+    public String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        String interned = strings.putIfAbsent(s, s);
+        return (interned == null) ? s : interned;
+    }
+
+    /**
+     * record a species. The name is kept only the first time the id is seen;
+     * KEGG definitions sometimes name the same compound differently.
+     *
+     * @param id
+     *            compound id from EQUATION
+     * @param name
+     *            name from DEFINITION
+     * @return the interned id
+     */
+    public String addSpecies(String id, String name) {
+        id = intern(id);
+        if (!names.containsKey(id)) {
+            names.putIfAbsent(id, (name == null) ? NO_NAME : intern(name));
+        }
+        return id;
+    }
+
+    /**
+     * @param id
+     * @return name first seen for the compound, or null if unknown
+     */
+    public String getName(String id) {
+        String name = names.get(id);
+        return (name == NO_NAME) ? null : name;
+    }
+
+    /**
+     * @return number of distinct compound ids
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * the molecule for a compound, with its id and KEGG name, as referred to
+     * by the reactants and products built with molecule references.
+     *
+     * @param id
+     * @return new molecule, not attached to any document
+     * @throws RuntimeException
+     *             if the id has not been added
+     */
+    public CMLMolecule createMolecule(String id) {
+        String name = names.get(id);
+        if (name == null) {
+            throw new RuntimeException("Unknown KEGG compound: " + id);
+        }
+        if (name == NO_NAME) {
+            name = null;
+        }
+        CMLMolecule mol = new CMLMolecule();
+        if (name != null) {
+            CMLName cname = new CMLName();
+            cname.setXMLContent(name);
+            cname.setConvention(KEGGConverter.KEGG);
+            mol.addName(cname);
+        }
+        mol.setId(intern(id));
+        return mol;
+    }
+
+    /**
+     * @param ids
+     *            compound ids in the order the molecules are wanted
+     * @return list with one new molecule for each id
+     */
+    public CMLMoleculeList createMoleculeList(Collection<String> ids) {
+        CMLMoleculeList moleculeList = new CMLMoleculeList();
+        for (String id : ids) {
+            moleculeList.addMolecule(createMolecule(id));
+        }
+        return moleculeList;
+    }
+}
@@ -1,24 +1,255 @@
-package org.xmlcml.cml.converters.reaction.kegg;
-
-import java.io.IOException;
-
-
-import org.junit.Ignore;
-import org.junit.Test;
-import org.xmlcml.cml.converters.reaction.rxn.RXN2CMLConverter;
-import org.xmlcml.cml.converters.testutils.JumboConvertersRegressionSuite;
-
-public class KEGG2CMLConverterTest {
-
-	@Test
-	public void testDummy() {
-		
-	}
-	
-   @Test
-   @Ignore
-   public void testConvertToXMLElement() throws IOException {
-       JumboConvertersRegressionSuite.run("cdx/cdx", "cdx", "cdx.xml",
-                            new RXN2CMLConverter());
-   }
-}
+package org.xmlcml.cml.converters.reaction.kegg;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import nu.xom.Element;
+
+import org.junit.Assert;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.converters.reaction.core.BinaryReactionReader;
+import org.xmlcml.cml.converters.reaction.core.IncrementalOutput;
+import org.xmlcml.cml.converters.reaction.core.Quarantine;
+import org.xmlcml.cml.converters.reaction.core.RecordHandler;
+import org.xmlcml.cml.converters.reaction.rxn.RXN2CMLConverter;
+import org.xmlcml.cml.converters.testutils.JumboConvertersRegressionSuite;
+import org.xmlcml.cml.element.CMLReaction;
+
+public class KEGG2CMLConverterTest {
+
+	static final String ENTRIES = "ENTRY       R00004\n"
+			+ "DEFINITION  Pyrophosphate + H2O <=> 2 Orthophosphate\n"
+			+ "EQUATION    C00013 + C00001 <=> 2 C00009\n"
+			+ "ENZYME      3.6.1.1\n"
+			+ "///\n"
+			+ "ENTRY       R00005\n"
+			+ "DEFINITION  Urea-1-carboxylate + H2O <=> 2 CO2 + 2 NH3\n"
+			+ "EQUATION    C01010 + C00001 <=> 2 C00011 + 2 C00014\n"
+			+ "///\n";
+
+	@Test
+	public void testDummy() {
+		
+	}
+
+	@Test
+	public void testMoleculeRefs() throws IOException {
+		KEGGConverter converter = new KEGGConverter();
+		converter.setMoleculeRefs(true);
+		Assert.assertNull(converter.getSpeciesDictionary());
+		converter.setSpeciesDictionary(new KEGGSpeciesDictionary());
+		Element cml = converter.read(
+				new LineNumberReader(new StringReader(ENTRIES))).getRootElement();
+		Assert.assertEquals("cml", cml.getLocalName());
+		Element moleculeList = (Element) cml.getChild(0);
+		Assert.assertEquals(6, moleculeList.getChildCount());
+		Assert.assertEquals(6, converter.getSpeciesDictionary().size());
+		Assert.assertEquals("H2O", converter.getSpeciesDictionary().getName("C00001"));
+		Element reactionList = (Element) cml.getChild(1);
+		Assert.assertEquals(2, reactionList.getChildCount());
+		String second = reactionList.getChild(1).toXML();
+		Assert.assertTrue(second, second.indexOf("ref=\"C00001\"") != -1);
+		Assert.assertEquals(-1, second.indexOf("H2O"));
+	}
+
+	@Test
+	public void testDictionaryPerRead() throws IOException {
+		KEGGConverter converter = new KEGGConverter();
+		converter.setMoleculeRefs(true);
+		for (int i = 0; i < 2; i++) {
+			Element cml = converter.read(
+					new LineNumberReader(new StringReader(ENTRIES))).getRootElement();
+			Assert.assertEquals(6, ((Element) cml.getChild(0)).getChildCount());
+		}
+		Assert.assertNull(converter.getSpeciesDictionary());
+	}
+	
+	@Test
+	public void testIterator() throws IOException {
+		KEGGConverter converter = new KEGGConverter();
+		Element reactionList = converter.read(
+				new LineNumberReader(new StringReader(ENTRIES))).getRootElement();
+		Assert.assertEquals(2, reactionList.getChildCount());
+		Iterator<CMLReaction> iterator = converter.iterator(new LineNumberReader(
+				new StringReader(ENTRIES)));
+		for (int i = 0; i < 2; i++) {
+			Assert.assertTrue(iterator.hasNext());
+			CMLReaction reaction = iterator.next();
+			Assert.assertNull(reaction.getParent());
+			Assert.assertEquals(reactionList.getChild(i).toXML(), reaction.toXML());
+		}
+		Assert.assertFalse(iterator.hasNext());
+		try {
+			iterator.next();
+			Assert.fail("next() past the last entry");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	static List<String> handle(KEGGConverter converter) throws IOException {
+		final List<String> records = new ArrayList<String>();
+		int count = converter.read(new LineNumberReader(new StringReader(ENTRIES)),
+				new RecordHandler() {
+					public void handle(CMLElement record) {
+						records.add(record.getLocalName() + " "
+								+ record.getAttributeValue("id"));
+					}
+				});
+		Assert.assertEquals(2, count);
+		return records;
+	}
+
+	@Test
+	public void testHandler() throws IOException {
+		Assert.assertEquals(Arrays.asList("reaction R00004", "reaction R00005"),
+				handle(new KEGGConverter()));
+	}
+
+	@Test
+	public void testHandlerMoleculeRefs() throws IOException {
+		KEGGConverter converter = new KEGGConverter();
+		converter.setMoleculeRefs(true);
+		// each molecule once, just before the first reaction using it
+		Assert.assertEquals(Arrays.asList("molecule C00013", "molecule C00001",
+				"molecule C00009", "reaction R00004", "molecule C01010",
+				"molecule C00011", "molecule C00014", "reaction R00005"),
+				handle(converter));
+	}
+
+	@Test
+	public void testEntryFilter() throws IOException {
+		KEGGConverter converter = new KEGGConverter();
+		converter.setEntryFilter(new KEGGEntryFilter() {
+			public boolean accept(KEGGEntry entry) {
+				return entry.getEquation().indexOf("C00014") != -1;
+			}
+		});
+		Element reactionList = converter.read(
+				new LineNumberReader(new StringReader(ENTRIES))).getRootElement();
+		Assert.assertEquals(1, reactionList.getChildCount());
+		Assert.assertEquals("R00005", ((Element) reactionList.getChild(0))
+				.getAttributeValue("id"));
+	}
+
+   @Test
+   @Ignore
+   public void testConvertToXMLElement() throws IOException {
+       JumboConvertersRegressionSuite.run("cdx/cdx", "cdx", "cdx.xml",
+                            new RXN2CMLConverter());
+   }
+
+	@Test
+	public void testReactionIndex() throws IOException {
+		File in = File.createTempFile("kegg", ".txt");
+		File out = File.createTempFile("kegg", ".cmlr");
+		FileWriter writer = new FileWriter(in);
+		writer.write(ENTRIES);
+		writer.close();
+		try {
+			KEGGConverter converter = new KEGGConverter();
+			Assert.assertEquals(2, converter.writeBinary(in, out));
+			Assert.assertNull(converter.getReactionIndex());
+			Assert.assertEquals(2, converter.writeBinary(in, out));
+			KEGGReactionIndex index = KEGGReactionIndex.read(
+					KEGGReactionIndex.getIndexFile(out));
+			Assert.assertArrayEquals(new int[] { 0, 1 },
+					index.getReactionsWithReactant("C00001"));
+			Assert.assertArrayEquals(new int[] { 1 },
+					index.getReactionsWithCompound("C00014"));
+			Assert.assertEquals(0, index.getReactionsWithProduct("C00001").length);
+			Assert.assertArrayEquals(new int[] { 0 },
+					index.getReactionsWithEnzyme("3.6.1.1"));
+			BinaryReactionReader reader = new BinaryReactionReader(out);
+			try {
+				Assert.assertEquals(index.getReactionId(1),
+						reader.getRecord(1).getAttributeValue("id"));
+			} finally {
+				reader.close();
+			}
+		} finally {
+			in.delete();
+			out.delete();
+			KEGGReactionIndex.getIndexFile(out).delete();
+		}
+	}
+
+	static File write(String s) throws IOException {
+		File file = File.createTempFile("kegg", ".txt");
+		FileWriter writer = new FileWriter(file);
+		writer.write(s);
+		writer.close();
+		return file;
+	}
+
+	@Test
+	public void testQuarantine() throws IOException {
+		String bad = "ENTRY       R00009\n"
+				+ "DEFINITION  Nothing\n"
+				+ "EQUATION    C00001\n"
+				+ "///\n";
+		File in = write(ENTRIES.replace("ENTRY       R00005", bad
+				+ "ENTRY       R00005"));
+		File directory = File.createTempFile("kegg", "");
+		directory.delete();
+		Quarantine quarantine = new Quarantine(directory);
+		try {
+			KEGGConverter converter = new KEGGConverter();
+			converter.setQuarantine(quarantine);
+			Element reactionList = converter.read(in).getRootElement();
+			Assert.assertEquals(2, reactionList.getChildCount());
+			Assert.assertEquals(1, quarantine.getCount());
+			File copy = new File(directory, in.getName() + ".record-1");
+			Assert.assertEquals(bad.length(), copy.length());
+		} finally {
+			quarantine.close();
+			in.delete();
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testUpdate() throws IOException {
+		File directory = File.createTempFile("kegg", "");
+		directory.delete();
+		File first = write(ENTRIES);
+		File second = write(ENTRIES.replace("R00004", "R00006").replace(
+				"2 NH3", "2 Ammonia"));
+		try {
+			IncrementalOutput output = new KEGGConverter().update(first, directory);
+			Assert.assertEquals(2, output.getAdded());
+			Assert.assertTrue(output.getFile("R00004").exists());
+			output = new KEGGConverter().update(second, directory);
+			Assert.assertEquals(1, output.getAdded());
+			Assert.assertEquals(1, output.getChanged());
+			Assert.assertEquals(0, output.getUnchanged());
+			Assert.assertEquals(1, output.getRemoved());
+			Assert.assertFalse(output.getFile("R00004").exists());
+			output = new KEGGConverter().update(second, directory);
+			Assert.assertEquals(2, output.getUnchanged());
+			Assert.assertEquals("a%2Fb%25_.cml", output.getFile("a/b%_").getName());
+			Assert.assertFalse(output.getFile("a/b").equals(output.getFile("a_b")));
+		} finally {
+			first.delete();
+			second.delete();
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * chooses which $DTYPE fields of an RDfile are converted.
+ *
+ * Patterns are $DTYPE names in which '*' matches any run of characters and
+ * '?' any single character; other characters (including the brackets of
+ * "ROOT:REFERENCES(1):REFERENCE") match themselves, and case is ignored.
+ * A field is accepted if it matches an include pattern (or there are none)
+ * and matches no exclude pattern. For example
+ *
+ * <pre>
+ * new DataTypeFilter().include(&quot;*:YIELD&quot;).include(&quot;*SOLVENT*&quot;)
+ * </pre>
+ *
+ * The filter applies to every $DTYPE, including those whose $DATUM is an
+ * embedded $MFMT or $RXN, so structures must be included explicitly if
+ * they are wanted.
+ */
+public class DataTypeFilter {
+
+    private List<Pattern> includes = new ArrayList<Pattern>();
+    private List<Pattern> excludes = new ArrayList<Pattern>();
+
+    /**
+     * convert fields whose name matches pattern.
+     *
+     * @param pattern
+     * @return this
+     */
+    public DataTypeFilter include(String pattern) {
+        includes.add(compile(pattern));
+        return this;
+    }
+
+    /**
+     * skip fields whose name matches pattern.
+     *
+     * @param pattern
+     * @return this
+     */
+    public DataTypeFilter exclude(String pattern) {
+        excludes.add(compile(pattern));
+        return this;
+    }
+
+    /**
+     * @param dtype name from a $DTYPE line
+     * @return true if the field is to be converted
+     */
+    public boolean accept(CharSequence dtype) {
+        if (!includes.isEmpty() && !matches(includes, dtype)) {
+            return false;
+        }
+        return !matches(excludes, dtype);
+    }
+
+    private static boolean matches(List<Pattern> patterns, CharSequence dtype) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(dtype).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Pattern compile(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > start) {
+                    regex.append(Pattern.quote(glob.substring(start, i)));
+                }
+                regex.append((c == '*') ? ".*" : ".");
+                start = i + 1;
+            }
+        }
+        if (start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(start)));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE
+                | Pattern.DOTALL);
+    }
+}
@@ -0,0 +1,62 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+
+import org.xmlcml.cml.converters.reaction.core.MappedLineNumberReader;
+import org.xmlcml.cml.converters.reaction.core.TextAccumulator;
+
+/**
+ * state of a single RDF read: the reader, the line read ahead of the
+ * next record and the accumulator for multi-line datums.
+ *
+ * Records are found by reading one line beyond the end of the previous
+ * record, so that line has to be carried from one record to the next. It
+ * is kept here rather than in the converter so that one RDFConverter can
+ * be shared by several threads, each reading its own file.
+ *
+ * The line number and byte offset of that line, and the serial number of
+ * the record last started, are kept with it so that a corrupt record can be
+ * reported and skipped.
+ */
+class RDFContext {
+
+    LineNumberReader br;
+    MappedLineNumberReader mapped;
+    String line;
+    int lineNumber;
+    long lineOffset = -1;
+    int record = -1;
+    TextAccumulator text;
+
+    /**
+     * @param br
+     */
+    RDFContext(LineNumberReader br) {
+        this.br = br;
+        if (br instanceof MappedLineNumberReader) {
+            mapped = (MappedLineNumberReader) br;
+        }
+    }
+
+    /**
+     * read the next line into line.
+     *
+     * @return line, or null at end of input
+     * @throws IOException
+     */
+    String readLine() throws IOException {
+        lineOffset = position();
+        line = br.readLine();
+        lineNumber = br.getLineNumber();
+        return line;
+    }
+
+    /**
+     * @return byte offset of the next unread line, or -1 if the reader is
+     *         not mapped
+     */
+    long position() {
+        return (mapped == null) ? -1 : mapped.getPosition();
+    }
+}
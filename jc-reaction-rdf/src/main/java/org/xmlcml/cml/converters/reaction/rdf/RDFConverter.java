@@ -1,661 +1,1395 @@
-package org.xmlcml.cml.converters.reaction.rdf;
-
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.LineNumberReader;
-import java.io.Writer;
-import java.util.StringTokenizer;
-import java.util.logging.Logger;
-
-import nu.xom.Document;
-import nu.xom.Element;
-
-import org.xmlcml.cml.base.CMLConstants;
-import org.xmlcml.cml.base.CMLElement;
-import org.xmlcml.cml.base.CMLSerializer;
-import org.xmlcml.cml.converters.reaction.rxn.RXNConverter;
-import org.xmlcml.cml.element.CMLCml;
-import org.xmlcml.cml.element.CMLMolecule;
-import org.xmlcml.cml.element.CMLName;
-import org.xmlcml.cml.element.CMLProduct;
-import org.xmlcml.cml.element.CMLProductList;
-import org.xmlcml.cml.element.CMLProperty;
-import org.xmlcml.cml.element.CMLPropertyList;
-import org.xmlcml.cml.element.CMLReactant;
-import org.xmlcml.cml.element.CMLReactantList;
-import org.xmlcml.cml.element.CMLReaction;
-import org.xmlcml.cml.element.CMLScalar;
-
-/**
- * class to read and write RDFiles
- * 
- * This is not a complete implementation; moreover there are formats I don't
- * understand
- * 
- * The following came out of ISISBASE, and this implemntation is derived from
- * it... $RDFILE 1 $DATM 12/11/2002 16:25:3 $RIREG 1 $DTYPE
- * ROOT:SUBSTRATES(1):SUBSTRATE STRUCTURE $DATUM $MFMT
- * 
- * -ISIS- 12110216252D
- * 
- * 3 2 0 0 0 0 0 0 0 0999 V2000 2.4042 -0.2458 0.0000 N 0 0 0 0 0 0 0 0 0 0 0 0
- * 3.1186 0.1667 0.0000 O 0 0 0 0 0 0 0 0 0 0 0 0 1.6897 0.1667 0.0000 O 0 0 0 0
- * 0 0 0 0 0 0 0 0 1 2 1 0 0 0 0 1 3 2 0 0 0 0 M END $DTYPE
- * ROOT:PRODUCTS(1):PRODUCT STRUCTURE $DATUM $MFMT ... though I am not sure
- * whether it is documented.
- * 
- * @author (C) P. Murray-Rust, 1996, 1998, 2000
- */
-
-public class RDFConverter implements CMLConstants {
-
-    final static Logger logger = Logger.getLogger(RDFConverter.class.getName());
-
-    /** */
-    public final static String _RXN = "$RXN";
-
-    /** */
-    public final static String RFMT = "$RFMT";
-
-    /** */
-    public final static String RDFILE = "$RDFILE";
-
-    /** */
-    public final static String RIREG = "$RIREG";
-
-    /** */
-    public final static String REREG = "$REREG";
-
-    /** */
-    public final static String DTYPE = "$DTYPE";
-
-    /** */
-    public final static String DATUM = "$DATUM";
-
-    /** */
-    public final static String MFMT = "$MFMT";
-
-    /** */
-    public final static String MIREG = "$MIREG";
-
-    /** */
-    public final static String MEREG = "$MEREG";
-
-    /** */
-    public final static String PRODUCT = "PRODUCT";
-
-    /** */
-    public final static String REACTANT = "REACTANT";
-
-    /** */
-    public final static String SUBSTRATE = "SUBSTRATE";
-
-    /** */
-    public final static String RDF = "$RDF";
-
-    LineNumberReader br;
-
-    CMLCml cml;
-
-    String line;
-
-    String id;
-
-    CMLReaction reaction;
-
-    Document doc; // overrides abstractConverter doc
-
-    CMLMolecule mol;
-
-    /**
-     * constructor.
-     */
-    public RDFConverter() {
-        this(S_EMPTY);
-    }
-
-    /**
-     * constructor.
-     * 
-     * @param id
-     */
-    public RDFConverter(String id) {
-        this.id = id;
-    }
-
-    /**
-     * Current version
-     * 
-     * @return version
-     */
-    public String getVersion() {
-        return "V2000";
-    }
-
-    /**
-     * read from lineReader.
-     * 
-     * @param br
-     * @throws IOException
-     * @throws RuntimeException
-     * @return document
-     */
-    public Document read(LineNumberReader br) throws RuntimeException, IOException {
-        /*
-         * CTfile Formats (August 2002) Page 40 Chapter 8: RDfiles An RDfile
-         * (reaction-data file) consists of a set of editable ?records.? Each
-         * record defines a molecule or reaction, and its associated data. An
-         * example RDfile incorporating the rxnfile described in Chapter 7 is
-         * shown later in this chapter. The format for an RDfile is:
-         * 
-         * [RDFile Header] [Molecule or reaction identifier] [Data-field
-         * identifier] [Data] where: d is repeated for each data item r is
-         * repeated for each reaction or molecule Each logical line in an RDfile
-         * starts with a keyword in column 1 of a physical line. One or more
-         * blanks separate the first argument (if any) from the keyword. The
-         * blanks are ignored when the line is read. After the first argument,
-         * blanks are significant. An argument longer than 80 characters breaks
-         * at column 80 and continues in column 1 of the next line. (The
-         * argument may continue on additional lines up to the physical limits
-         * on text length imposed by the database.) The RDfile must not contain
-         * any blank lines except as part of embedded molfiles, rxnfiles, or
-         * data. An identifier separates records. RDfile Header Line 1: $RDFILE
-         * 1: The [RDfile Header] must occur at the beginning of the physical
-         * file and identifies the file as an RDfile. The version stamp ?1? is
-         * intended for future expansion of the format. Line 2: $DATM: Date/time
-         * (M/D/Y, H:m) stamp. This line is treated as a comment and ignored
-         * when the program is read. Molecule and Reaction Identifiers A
-         * [Molecule or Reaction Identifier] defines the start of each complete
-         * record in an RDfile. The form of a molecule identifier must be one of
-         * the following: $MFMT [$MIREG internal-regno [$MEREG external-regno]]
-         * embedded molfile $MIREG internal-regno $MEREG external-regno where: 
-         * $MFMT defines a molecule by specifying its connection table as a
-         * molfile  $MIREG internal-regno is the internal registry number
-         * (sequence number in the database) of the molecule  $MEREG
-         * external-regno is the external registry number of the molecule (any
-         * uniquely identifying character string known to the database, for
-         * example, CAS number)  Square brackets ( [] ) enclose optional
-         * parameters  An embedded molfile (see Chapter 4) follows immediately
-         * after the $MFMT line The forms of a reaction identifier closely
-         * parallel that of a molecule: d *r CTfile Formats (August 2002) Page
-         * 41 $RFMT [$RIREG internal-regno [$REREG external-regno]] embedded
-         * rxnfile $RIREG internal-regno $REREG external-regno where:  $RFMT
-         * defines a reaction by specifying its description as a rxnfile 
-         * $RIREG internal-regno is the internal registry number (sequence
-         * number in the database) of the reaction  $REREG external-regno is
-         * the external registry number of the reaction (any uniquely
-         * identifying character string known to the database)  Square
-         * brackets ( [ ] ) enclose optional parameters  An embedded rxnfile
-         * (see Chapter 7) follows immediately after the $RFMT line Data-field
-         * Identifier The [Data-field Identifier] specifies the name of a data
-         * field in the database. The format is: $DTYPE field name Data Data
-         * associated with a field follows the field name on the next line and
-         * has the form: $DATUM datum The format of datum depends upon the data
-         * type of the field as defined in the database. For example: integer,
-         * real number, real range, text, molecule regno. For fields whose data
-         * type is ?molecule regno,? the datum must specify a molecule and, with
-         * the exception noted below, use one of the formats defined above for a
-         * molecular identifier. For example: $DATUM $MFMT embedded molfile
-         * $DATUM $MEREG external-regno $DATUM $MIREG internal-regno In
-         * addition, the following special format is accepted: $DATUM
-         * molecule-identifier Here, molecule-identifier acts in the same way as
-         * external-regno in that it can be any text string known to the
-         * database that uniquely identifies a molecule. (It is usually
-         * associated with a data field different from the external-regno.)
-         * CTfile Formats (August 2002) Page 42 Figure 15 - Example of a
-         * reaction RDfile
-         * 
-         * $RDFILE 1 $DATM 10/17/91 10:41 $RFMT $RIREG 7439 $RXN
-         * 
-         * REACCS81 101791141 7439
-         * 
-         * 2 1 $MOL
-         * 
-         * REACCS8110179110412D 1 0.00380 0.0000 315
-         * 
-         * 4 3 0 0 0 0 0 0 0 0 0 ... 1 4 1 0 0 0 4 $MOL
-         * 
-         * REACCS8110179110412D 1 0.00371 0.0000 8
-         * 
-         * 6 6 0 0 0 0 0 0 0 0 0 ... 5 6 2 0 0 0 2 $MOL
-         * 
-         * REACCS8110179110412D 1 0.00374 0.0000 255
-         * 
-         * 9 9 0 0 0 0 0 0 0 0 0 ... 6 9 2 0 0 0 2 $DTYPE
-         * rxn:VARIATION(1):rxnTEXT(1) $DATUM CrC13 $DTYPE
-         * rxn:VARIATION(1):LITTEXT(1) $DATUM A G Repin, Y Y
-         * Makarov-Zemlyanskii, Zur Russ Fiz-Chim, 44. p. 2360, 1974
-         * 
-         * $DTYPE rxn:VARIATION(1):CATALYST(1):REGNO $DATUM $MFMT $MIREG 688
-         * 
-         * REACCS8110179110412D 1 0.00371 0.0000 0
-         * 
-         * 4 3 0 0 0 0 0 0 0 0 0 ... 1 4 1 0 0 0 0 $DTYPE
-         * rxn:VARIATION(1):PRODUCT(1):YIELD $DATUM 70.0
-         * 
-         * $RFMT $RIREG 8410 $RXN
-         * 
-         * REACCS81 1017911041 8410
-         * 
-         * 
-         * 2 1 $MOL ... Rxnfile Header # Reactants, # Products Molfile for first
-         * reactant Molfile for second reactant Molfile for product RDfile
-         * Header Mol/Rxn identifier Data block for reaction Start of next
-         * record
-         */
-        cml = new CMLCml();
-        doc = new Document(cml);
-
-        readFileHeader(br);
-        line = br.readLine();
-        while (true) {
-            Element ab = readMoleculeOrReaction(br);
-            if (ab == null) {
-                break;
-            }
-            cml.appendChild(ab);
-        }
-
-        // end of input
-        return (Document) doc;
-    }
-
-    /**
-     * read document.
-     * 
-     * @param doc
-     * @param br
-     * @exception RuntimeException
-     * @exception IOException
-     * @return document
-     */
-    public Document read(Document doc, LineNumberReader br)
-            throws RuntimeException, IOException {
-        // return read((CMLDocument) doc, br);
-        return read(br);
-    }
-
-    // public CMLDocument read(CMLDocument doc, LineNumberReader br) throws
-
-    /*
-     * 
-     * $RDFILE 1 $DATM 12/11/2002 16:25:3
-     */
-    /*
-     * Line 1: $RDFILE 1: The [RDfile Header] must occur at the beginning of the
-     * physical file and identifies the file as an RDfile. The version stamp ?1?
-     * is intended for future expansion of the format. Line 2: $DATM: Date/time
-     * (M/D/Y, H:m) stamp. This line is treated as a comment and ignored when
-     * the program is read.
-     */
-    CMLElement readMoleculeOrReaction(LineNumberReader br) throws IOException,
-            RuntimeException {
-
-        /*
-         * identifier must be one of the following: $MFMT [$MIREG internal-regno
-         * [$MEREG external-regno]] embedded molfile $MIREG internal-regno
-         * $MEREG external-regno where:  $MFMT defines a molecule by
-         * specifying its connection table as a molfile  $MIREG internal-regno
-         * is the internal registry number (sequence number in the database) of
-         * the molecule  $MEREG external-regno is the external registry number
-         * of the molecule (any uniquely identifying character string known to
-         * the database, for example, CAS number)  Square brackets ( [] )
-         * enclose optional parameters  An embedded molfile (see Chapter 4)
-         * follows immediately after the $MFMT line The forms of a reaction
-         * identifier closely parallel that of a molecule: d *r CTfile Formats
-         * (August 2002) Page 41 $RFMT [$RIREG internal-regno [$REREG
-         * external-regno]] embedded rxnfile $RIREG internal-regno $REREG
-         * external-regno where:  $RFMT defines a reaction by specifying its
-         * description as a rxnfile  $RIREG internal-regno is the internal
-         * registry number (sequence number in the database) of the reaction 
-         * $REREG external-regno is the external registry number of the reaction
-         * (any uniquely identifying character string known to the database) 
-         * Square brackets ( [ ] ) enclose optional parameters  An embedded
-         * rxnfile (see Chapter 7) follows immediately after the $RFMT line
-         * Data-field Identifier
-         */
-        // logger.info("RMOR"+line);
-        if (line == null) {
-            return null;
-        }
-        if (line.startsWith(MFMT) || line.startsWith(MIREG)
-                || line.startsWith(MEREG)) {
-            return readMolecule(br);
-        } else if (line.startsWith(RFMT) || line.startsWith(RIREG)
-                || line.startsWith(REREG)) {
-            return readReaction(br);
-        } else {
-            throw new RuntimeException("Corrupt RDF entry: " + line + " (line: "
-                    + br.getLineNumber() + S_RBRAK);
-        }
-    }
-
-    /*
-     * $RIREG 1 $DTYPE ROOT:UNIQUE IDENTIFIER $DATUM 1 $DTYPE ROOT:EC NUMBER
-     * $DATUM 1.7.99.3 $DTYPE ROOT:PDB CODE $DATUM 1nid $DTYPE ROOT:ENZYME NAME
-     * $DATUM Nitrite Reductase (Copper containing) $DTYPE
-     * ROOT:SUBSTRATES(1):SUBSTRATE NUMBER $DATUM 1 $DTYPE
-     * ROOT:SUBSTRATES(1):SUBSTRATE STRUCTURE $DATUM $MFMT
-     * 
-     * -ISIS- 12160210312D
-     * 
-     * 3 2 0 0 0 0 0 0 0 0999 V2000 2.4042 -0.2458 0.0000 N 0 0 0 0 0 0 0 0 0 0
-     * 0 0 3.1186 0.1667 0.0000 O 0 0 0 0 0 0 0 0 0 0 0 0 1.6897 0.1667 0.0000 O
-     * 0 0 0 0 0 0 0 0 0 0 0 0 1 2 1 0 0 0 0 1 3 2 0 0 0 0 M END $DTYPE
-     * ROOT:SUBSTRATES(1):SUBSTRATE NAME $DATUM Nitrous Acid $DTYPE
-     * ROOT:PRODUCTS(1):PRODUCT NUMBER $DATUM 1 $DTYPE ROOT:PRODUCTS(1):PRODUCT
-     * STRUCTURE $DATUM $MFMT
-     * 
-     * -ISIS- 12160210312D
-     * 
-     * 2 1 0 0 0 0 0 0 0 0999 V2000 1.9667 -8.4625 0.0000 N 0 0 0 0 0 0 0 0 0 0
-     * 0 0 2.6811 -8.0500 0.0000 O 0 0 0 0 0 0 0 0 0 0 0 0 1 2 2 0 0 0 0 M END
-     * $DTYPE ROOT:PRODUCTS(1):PRODUCT_NAME $DATUM Nitric Oxide $DTYPE
-     * ROOT:REACTION STAGES(1):REACTION STAGES $DATUM 1 $DTYPE
-     * ROOT:REFERENCES(1):REFERENCE NUMBER $DATUM 1 $DTYPE
-     * ROOT:REFERENCES(1):REFERENCE $DATUM Boulanger et al. JBC 275 (31)
-     * 23957-23964 (2000) $RIREG 2 ...
-     */
-    CMLMolecule readMolecule(LineNumberReader br) throws RuntimeException,
-            IOException {
-        StringTokenizer st = new StringTokenizer(line);
-        String keyw = st.nextToken();
-        if (keyw.equals(MIREG)) {
-            mol = new CMLMolecule();
-            if (st.countTokens() == 1) {
-                mol.setRef(line);
-            } else {
-                logger.severe("Bad " + MIREG + S_SPACE + line);
-            }
-        } else if (line.startsWith(MEREG)) {
-            line = line.substring(MEREG.length()).trim();
-            mol = new CMLMolecule();
-            if (st.countTokens() == 1) {
-                String tok = st.nextToken();
-                mol.setRef(tok);
-                mol.setConvention("external");
-            } else {
-                logger.severe("Bad " + MEREG + S_SPACE + line);
-            }
-        } else if (keyw.equals(MFMT)) {
-            // mol = new MDLConverter().readMolecule(doc, br); // FIXME
-
-            if (st.countTokens() >= 2) {
-                if (st.nextToken().equals(MIREG)) {
-                    mol.setRef(st.nextToken());
-                }
-            }
-            if (st.countTokens() >= 2) {
-                if (st.nextToken().equals(MEREG)) {
-                    CMLName name = new CMLName();
-                    name.setConvention("external");
-                    name.setXMLContent(st.nextToken());
-                    mol.addName(name);
-                }
-            }
-        }
-        readData(br, mol);
-        return mol;
-    }
-
-    CMLReaction readReaction(LineNumberReader br) throws RuntimeException,
-            IOException {
-        StringTokenizer st = new StringTokenizer(line);
-        String keyw = st.nextToken();
-        if (keyw.equals(RIREG)) {
-            reaction = new CMLReaction();
-            if (st.hasMoreTokens()) {
-                String tok = st.nextToken();
-                logger.info("RIREG: " + tok);
-                reaction.setId("r" + tok);
-            } else {
-                logger.severe("Bad " + RIREG + S_SPACE + line);
-            }
-        } else if (keyw.equals(REREG)) {
-            reaction = new CMLReaction();
-            if (st.countTokens() == 1) {
-                reaction.setRef(line);
-                reaction.setConvention("external");
-            } else {
-                logger.severe("Bad " + RIREG + S_SPACE + line);
-            }
-        } else if (keyw.equals(RFMT)) {
-            reaction = new RXNConverter().readReaction(doc, br);
-        } else if (keyw.equals(MFMT)) {
-            // mol = new MDLConverter().readMolecule(doc, br); //FIXME
-            if (st.countTokens() >= 2) {
-                if (st.nextToken().equals(RIREG)) {
-                    mol.setRef(st.nextToken());
-                }
-            }
-            if (st.countTokens() >= 2) {
-                if (st.nextToken().equals(REREG)) {
-                    CMLName name = new CMLName();
-                    name.setConvention("external");
-                    name.setXMLContent(st.nextToken());
-                    mol.addName(name);
-                }
-            }
-        }
-        readData(br, reaction);
-        return reaction;
-    }
-
-    // not sure which of these can contain data
-
-    void readData(LineNumberReader br, Element ab) throws IOException,
-            RuntimeException {
-        CMLPropertyList propertyList = null;
-
-        line = br.readLine();
-        while (true) {
-            if (line == null) {
-                break;
-            }
-            if (line.startsWith(MFMT) || line.startsWith(MIREG)
-                    || line.startsWith(MEREG) || line.startsWith(RFMT)
-                    || line.startsWith(RIREG) || line.startsWith(REREG)) {
-                break;
-            } else if (line.startsWith(DTYPE)) {
-                String dtype = line.substring(DTYPE.length() + 1).trim();
-                line = br.readLine();
-                if (!line.startsWith(DATUM)) {
-                    throw new RuntimeException("Expected " + DATUM + " at " + line);
-                }
-                String datum = line.substring(DATUM.length() + 1).trim();
-                if (datum.startsWith(_RXN)) {
-                    CMLReaction rxn = new RXNConverter().readReaction(doc, br);
-                    ab.appendChild(rxn);
-                    line = br.readLine();
-                } else if (datum.startsWith(MFMT)) {
-                    // mol = new MDLConverter().readMolecule(doc, br); // FIXME
-                    CMLReaction reaction = (CMLReaction) ab;
-                    if (isReactant(dtype)) {
-                        CMLReactantList reactantList = new CMLReactantList();
-                        reaction.addReactantList(reactantList);
-                        CMLReactant reactant = new CMLReactant();
-                        reactantList.addReactant(reactant);
-                        reactant.addMolecule(mol);
-                    } else {
-                        CMLProductList productList = new CMLProductList();
-                        reaction.addProductList(productList);
-                        CMLProduct product = new CMLProduct();
-                        productList.addProduct(product);
-                        product.addMolecule(mol);
-                    }
-                    line = br.readLine();
-                } else {
-                    if (propertyList == null) {
-                        propertyList = (CMLPropertyList) new CMLPropertyList();
-                        if (ab instanceof CMLMolecule) {
-                            ((CMLMolecule) ab).addPropertyList(propertyList);
-                        }
-                        if (ab instanceof CMLReaction) {
-                            ((CMLReaction) ab).addPropertyList(propertyList);
-                        }
-                    }
-                    CMLScalar scalar = new CMLScalar();
-                    scalar.setTitle(dtype);
-                    while (true) {
-                        line = br.readLine();
-                        if (line == null || line.charAt(0) == '$') {
-                            break;
-                        }
-                        datum += CMLElement.S_NL + line;
-                    }
-
-                    scalar.setXMLContent(datum);
-                    CMLProperty property = new CMLProperty();
-                    propertyList.addProperty(property);
-                    property.appendChild(scalar);
-                }
-            } else {
-                throw new RuntimeException("Unrecognised line reading $DTYPE "
-                        + line);
-            }
-        }
-    }
-
-    /* really horrible, but we don't know the database schema */
-    boolean isReactant(String dtype) {
-        if (dtype.toLowerCase().indexOf("substrate structure") != -1) {
-            return true;
-        }
-        if (dtype.toLowerCase().indexOf("product structure") != -1) {
-            return false;
-        }
-        return true;
-    }
-
-    /**
-     * read start of file.
-     * 
-     * @param br
-     * @throws IOException
-     * @throws RuntimeException
-     */
-    protected void readFileHeader(LineNumberReader br) throws IOException,
-            RuntimeException {
-
-        /**
-         * this could be all sorts of stuff... ------RIREG format-----------
-         * $RDFILE 1 $DATM 12/11/2002 16:25:3 $RIREG 1 ... $RIREG 2 ...
-         * ------------------- --
-         */
-        line = br.readLine();
-        if (line == null) {
-            throw new RuntimeException("Empty RDF file");
-        }
-        if (!line.startsWith(RDFILE)) {
-            throw new IOException("non-RDF: RDF file must start with '"
-                    + RDFILE + "'");
-        }
-        line = br.readLine();
-        if (line == null) {
-            throw new RuntimeException("Corrupt RDF file");
-        }
-        if (!line.startsWith("$DATM ")) {
-            throw new RuntimeException("non-RDF " + line);
-        }
-    }
-
-    /*--
-     void output(Writer writer, CMLList list)
-     throws RuntimeException, IOException {
-
-     }
-     --*/
-    /**
-     * outputs CML as an RDF if possible. NYI
-     * 
-     * @param writer
-     *            to output it to
-     * @throws RuntimeException
-     * @throws IOException
-     * @return string
-     */
-    public String output(Writer writer) throws RuntimeException, IOException {
-        return null;
-    }
-
-    /**
-     * NYI
-     * 
-     * @param writer
-     *            DOCUMENT ME!
-     * @return DOCUMENT ME!
-     * @throws RuntimeException
-     *             DOCUMENT ME!
-     * @throws IOException
-     *             DOCUMENT ME!
-     */
-    public String writeData(Writer writer) throws RuntimeException, IOException {
-        return null;
-    }
-
-    /**
-     * main.
-     * 
-     * @param args
-     */
-    public static void main(String[] args) {
-        if (args.length == 0) {
-            logger
-                    .info("Usage: org.xmlcml.legacy.reaction.RDFConverter [options]");
-            logger.info("        -IN inputFile (RDF)");
-            logger.info("        -OUT outputFile (CML)");
-            logger.info("        -ID id");
-            System.exit(0);
-        }
-        int i = 0;
-        String infile = S_EMPTY;
-        String outfile = S_EMPTY;
-        String id = S_EMPTY;
-        while (i < args.length) {
-            if (1 == 2) {
-                ;
-            } else if (args[i].equalsIgnoreCase("-ID")) {
-                id = args[++i];
-                i++;
-            } else if (args[i].equalsIgnoreCase("-IN")) {
-                infile = args[++i];
-                i++;
-            } else if (args[i].equalsIgnoreCase("-OUT")) {
-                outfile = args[++i];
-                i++;
-            } else {
-                logger.severe("Unknown arg: " + args[i]);
-                i++;
-            }
-        }
-        Document doc = null;
-        try {
-            if (!infile.equals(S_EMPTY)) {
-                LineNumberReader lnr = new LineNumberReader(new FileReader(
-                        infile));
-                RDFConverter rdf = new RDFConverter(id);
-                doc = (Document) rdf.read(lnr);
-            }
-            // if (!id.equals(S_EMPTY)) {
-            // CMLReaction reaction = (CMLReaction) doc.getDocumentElement();
-            // reaction.setId(id);
-            // }
-            if (!outfile.equals(S_EMPTY)) {
-                FileOutputStream fos = new FileOutputStream(outfile);
-                CMLSerializer serializer = new CMLSerializer(fos);
-                serializer.write(doc);
-                fos.close();
-            } else {
-                ;
-                // PMRDOMUtil.debug(doc);
-            }
-
-        } catch (IOException ioe) {
-            logger.info("IOEXception: " + ioe);
-        } catch (RuntimeException cmle) {
-            logger.info("CMLEXception: " + cmle);
-            cmle.printStackTrace();
-        }
-    }
-}
+package org.xmlcml.cml.converters.reaction.rdf;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.StringTokenizer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import nu.xom.Document;
+import nu.xom.Element;
+
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.converters.reaction.core.BinaryReactionWriter;
+import org.xmlcml.cml.converters.reaction.core.ConversionMetrics;
+import org.xmlcml.cml.converters.reaction.core.MeteredConverter;
+import org.xmlcml.cml.converters.reaction.core.IncrementalOutput;
+import org.xmlcml.cml.converters.reaction.core.MappedLineNumberReader;
+import org.xmlcml.cml.converters.reaction.core.Quarantine;
+import org.xmlcml.cml.converters.reaction.core.RecordHandler;
+import org.xmlcml.cml.converters.reaction.core.RecordManifest;
+import org.xmlcml.cml.converters.reaction.core.StreamingCMLWriter;
+import org.xmlcml.cml.converters.reaction.core.TextAccumulator;
+import org.xmlcml.cml.converters.reaction.rxn.AtomMapListener;
+import org.xmlcml.cml.converters.reaction.rxn.AtomMapReport;
+import org.xmlcml.cml.converters.reaction.rxn.MolfileReader;
+import org.xmlcml.cml.converters.reaction.rxn.RXNConverter;
+import org.xmlcml.cml.converters.reaction.rxn.ReactionSmilesWriter;
+import org.xmlcml.cml.element.CMLCml;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLName;
+import org.xmlcml.cml.element.CMLProduct;
+import org.xmlcml.cml.element.CMLProductList;
+import org.xmlcml.cml.element.CMLProperty;
+import org.xmlcml.cml.element.CMLPropertyList;
+import org.xmlcml.cml.element.CMLReactant;
+import org.xmlcml.cml.element.CMLReactantList;
+import org.xmlcml.cml.element.CMLReaction;
+import org.xmlcml.cml.element.CMLScalar;
+
+/**
+ * class to read and write RDFiles
+ * 
+ * This is not a complete implementation; moreover there are formats I don't
+ * understand
+ * 
+ * The following came out of ISISBASE, and this implemntation is derived from
+ * it... $RDFILE 1 $DATM 12/11/2002 16:25:3 $RIREG 1 $DTYPE
+ * ROOT:SUBSTRATES(1):SUBSTRATE STRUCTURE $DATUM $MFMT
+ * 
+ * -ISIS- 12110216252D
+ * 
+ * 3 2 0 0 0 0 0 0 0 0999 V2000 2.4042 -0.2458 0.0000 N 0 0 0 0 0 0 0 0 0 0 0 0
+ * 3.1186 0.1667 0.0000 O 0 0 0 0 0 0 0 0 0 0 0 0 1.6897 0.1667 0.0000 O 0 0 0 0
+ * 0 0 0 0 0 0 0 0 1 2 1 0 0 0 0 1 3 2 0 0 0 0 M END $DTYPE
+ * ROOT:PRODUCTS(1):PRODUCT STRUCTURE $DATUM $MFMT ... though I am not sure
+ * whether it is documented.
+ * 
+ * @author (C) P. Murray-Rust, 1996, 1998, 2000
+ */
+
+public class RDFConverter extends MeteredConverter implements CMLConstants {
+
+    final static Logger logger = Logger.getLogger(RDFConverter.class.getName());
+
+    /** */
+    public final static String _RXN = "$RXN";
+
+    /** */
+    public final static String RFMT = "$RFMT";
+
+    /** */
+    public final static String RDFILE = "$RDFILE";
+
+    /** */
+    public final static String RIREG = "$RIREG";
+
+    /** */
+    public final static String REREG = "$REREG";
+
+    /** */
+    public final static String DTYPE = "$DTYPE";
+
+    /** */
+    public final static String DATUM = "$DATUM";
+
+    /** */
+    public final static String MFMT = "$MFMT";
+
+    /** */
+    public final static String MIREG = "$MIREG";
+
+    /** */
+    public final static String MEREG = "$MEREG";
+
+    /** */
+    public final static String PRODUCT = "PRODUCT";
+
+    /** */
+    public final static String REACTANT = "REACTANT";
+
+    /** */
+    public final static String SUBSTRATE = "SUBSTRATE";
+
+    /** */
+    public final static String RDF = "$RDF";
+
+    /** lines that start a record (and so end the data of the previous one) */
+    final static String[] RECORD_STARTS = { RFMT, MFMT, RIREG, REREG, MIREG,
+            MEREG, };
+
+    String id;
+
+    MolfileReader molfileReader = new MolfileReader();
+
+    RXNConverter rxnConverter = new RXNConverter();
+
+    int datumLimit = TextAccumulator.DEFAULT_LIMIT;
+
+    TextAccumulator.Overflow datumOverflow = TextAccumulator.Overflow.TRUNCATE;
+
+    File spillDirectory;
+
+    DataTypeFilter dataTypeFilter;
+
+    RDFRecordFilter recordFilter;
+
+    boolean skipCorrupt;
+
+    RDFCorruptRecordListener corruptRecordListener;
+
+    /**
+     * constructor.
+     */
+    public RDFConverter() {
+        this(S_EMPTY);
+    }
+
+    /**
+     * constructor.
+     * 
+     * @param id
+     */
+    public RDFConverter(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Current version
+     * 
+     * @return version
+     */
+    public String getVersion() {
+        return "V2000";
+    }
+
+    /**
+     * Sets the number of characters of a $DATUM kept in memory
+     * 
+     * @param datumLimit
+     *            default TextAccumulator.DEFAULT_LIMIT
+     */
+    public void setDatumLimit(int datumLimit) {
+        this.datumLimit = datumLimit;
+    }
+
+    /**
+     * Gets the number of characters of a $DATUM kept in memory
+     * 
+     * @return The datumLimit value
+     */
+    public int getDatumLimit() {
+        return datumLimit;
+    }
+
+    /**
+     * Sets what happens to a $DATUM longer than the limit: TRUNCATE (the
+     * default) drops the rest; SPILL writes the whole datum to a file named
+     * by the ref of its property.
+     * 
+     * @param datumOverflow
+     */
+    public void setDatumOverflow(TextAccumulator.Overflow datumOverflow) {
+        this.datumOverflow = datumOverflow;
+    }
+
+    /**
+     * Gets what happens to a $DATUM longer than the limit
+     * 
+     * @return The datumOverflow value
+     */
+    public TextAccumulator.Overflow getDatumOverflow() {
+        return datumOverflow;
+    }
+
+    /**
+     * Sets the directory for spilled datums
+     * 
+     * @param spillDirectory
+     *            null (the default) for the system temporary directory
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Gets the directory for spilled datums
+     * 
+     * @return The spillDirectory value
+     */
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets the $DTYPE fields to convert. Other fields are skipped without
+     * being parsed; with a memory-mapped reader their lines are not even
+     * decoded.
+     * 
+     * @param dataTypeFilter
+     *            null (the default) converts every field
+     */
+    public void setDataTypeFilter(DataTypeFilter dataTypeFilter) {
+        this.dataTypeFilter = dataTypeFilter;
+    }
+
+    /**
+     * Gets the $DTYPE fields to convert
+     * 
+     * @return The dataTypeFilter value
+     */
+    public DataTypeFilter getDataTypeFilter() {
+        return dataTypeFilter;
+    }
+
+    /**
+     * Sets a filter on whole records. Each record is first scanned for its
+     * identifier and text data; only records the filter accepts are parsed
+     * into CML. Rejected records are left out of read() and iterator().
+     * 
+     * @param recordFilter
+     *            null (the default) converts every record
+     */
+    public void setRecordFilter(RDFRecordFilter recordFilter) {
+        this.recordFilter = recordFilter;
+    }
+
+    /**
+     * Gets the filter on whole records
+     * 
+     * @return The recordFilter value
+     */
+    public RDFRecordFilter getRecordFilter() {
+        return recordFilter;
+    }
+
+    /**
+     * Sets whether records that cannot be parsed are skipped. If true, a
+     * record that throws while being parsed is dropped, reading resumes at
+     * the next $RFMT, $MFMT or registry line and the span skipped is passed
+     * to the corrupt record listener. This applies to read(), iterator(),
+     * update() and RDFParallelReader, but not to readRecord().
+     * 
+     * @param skipCorrupt
+     *            default false, stop at the first corrupt record
+     */
+    public void setSkipCorrupt(boolean skipCorrupt) {
+        this.skipCorrupt = skipCorrupt;
+    }
+
+    /**
+     * Gets whether records that cannot be parsed are skipped
+     * 
+     * @return The skipCorrupt value
+     */
+    public boolean isSkipCorrupt() {
+        return skipCorrupt;
+    }
+
+    /**
+     * Sets a listener for the records skipped with skipCorrupt
+     * 
+     * @param corruptRecordListener
+     *            null (the default) logs a warning for each
+     */
+    public void setCorruptRecordListener(
+            RDFCorruptRecordListener corruptRecordListener) {
+        this.corruptRecordListener = corruptRecordListener;
+    }
+
+    /**
+     * Gets the listener for skipped records
+     * 
+     * @return The corruptRecordListener value
+     */
+    public RDFCorruptRecordListener getCorruptRecordListener() {
+        return corruptRecordListener;
+    }
+
+    /**
+     * Sets where the timings and counts of conversions are recorded; passed
+     * to the RXN converter of each record. One ConversionMetrics may also be
+     * shared by the threads of an RDFParallelReader.
+     * 
+     * @param metrics
+     *            null (the default) records nothing
+     */
+    public void setMetrics(ConversionMetrics metrics) {
+        super.setMetrics(metrics);
+        rxnConverter.setMetrics(metrics);
+    }
+
+    /**
+     * Sets what is done with a reaction whose atom map has problems; passed
+     * to the RXN converter of each record.
+     * 
+     * @param atomMapPolicy
+     *            default FAIL
+     */
+    public void setAtomMapPolicy(AtomMapReport.Policy atomMapPolicy) {
+        rxnConverter.setAtomMapPolicy(atomMapPolicy);
+    }
+
+    /**
+     * Sets a listener for the atom-map problems of each reaction
+     * 
+     * @param atomMapListener
+     *            null (the default) for none
+     */
+    public void setAtomMapListener(AtomMapListener atomMapListener) {
+        rxnConverter.setAtomMapListener(atomMapListener);
+    }
+
+    /**
+     * read from lineReader.
+     * 
+     * @param br
+     * @throws IOException
+     * @throws RuntimeException
+     * @return document
+     */
+    public Document read(LineNumberReader br) throws RuntimeException, IOException {
+        /*
+         * CTfile Formats (August 2002) Page 40 Chapter 8: RDfiles An RDfile
+         * (reaction-data file) consists of a set of editable ?records.? Each
+         * record defines a molecule or reaction, and its associated data. An
+         * example RDfile incorporating the rxnfile described in Chapter 7 is
+         * shown later in this chapter. The format for an RDfile is:
+         * 
+         * [RDFile Header] [Molecule or reaction identifier] [Data-field
+         * identifier] [Data] where: d is repeated for each data item r is
+         * repeated for each reaction or molecule Each logical line in an RDfile
+         * starts with a keyword in column 1 of a physical line. One or more
+         * blanks separate the first argument (if any) from the keyword. The
+         * blanks are ignored when the line is read. After the first argument,
+         * blanks are significant. An argument longer than 80 characters breaks
+         * at column 80 and continues in column 1 of the next line. (The
+         * argument may continue on additional lines up to the physical limits
+         * on text length imposed by the database.) The RDfile must not contain
+         * any blank lines except as part of embedded molfiles, rxnfiles, or
+         * data. An identifier separates records. RDfile Header Line 1: $RDFILE
+         * 1: The [RDfile Header] must occur at the beginning of the physical
+         * file and identifies the file as an RDfile. The version stamp ?1? is
+         * intended for future expansion of the format. Line 2: $DATM: Date/time
+         * (M/D/Y, H:m) stamp. This line is treated as a comment and ignored
+         * when the program is read. Molecule and Reaction Identifiers A
+         * [Molecule or Reaction Identifier] defines the start of each complete
+         * record in an RDfile. The form of a molecule identifier must be one of
+         * the following: $MFMT [$MIREG internal-regno [$MEREG external-regno]]
+         * embedded molfile $MIREG internal-regno $MEREG external-regno where: 
+         * $MFMT defines a molecule by specifying its connection table as a
+         * molfile  $MIREG internal-regno is the internal registry number
+         * (sequence number in the database) of the molecule  $MEREG
+         * external-regno is the external registry number of the molecule (any
+         * uniquely identifying character string known to the database, for
+         * example, CAS number)  Square brackets ( [] ) enclose optional
+         * parameters  An embedded molfile (see Chapter 4) follows immediately
+         * after the $MFMT line The forms of a reaction identifier closely
+         * parallel that of a molecule: d *r CTfile Formats (August 2002) Page
+         * 41 $RFMT [$RIREG internal-regno [$REREG external-regno]] embedded
+         * rxnfile $RIREG internal-regno $REREG external-regno where:  $RFMT
+         * defines a reaction by specifying its description as a rxnfile 
+         * $RIREG internal-regno is the internal registry number (sequence
+         * number in the database) of the reaction  $REREG external-regno is
+         * the external registry number of the reaction (any uniquely
+         * identifying character string known to the database)  Square
+         * brackets ( [ ] ) enclose optional parameters  An embedded rxnfile
+         * (see Chapter 7) follows immediately after the $RFMT line Data-field
+         * Identifier The [Data-field Identifier] specifies the name of a data
+         * field in the database. The format is: $DTYPE field name Data Data
+         * associated with a field follows the field name on the next line and
+         * has the form: $DATUM datum The format of datum depends upon the data
+         * type of the field as defined in the database. For example: integer,
+         * real number, real range, text, molecule regno. For fields whose data
+         * type is ?molecule regno,? the datum must specify a molecule and, with
+         * the exception noted below, use one of the formats defined above for a
+         * molecular identifier. For example: $DATUM $MFMT embedded molfile
+         * $DATUM $MEREG external-regno $DATUM $MIREG internal-regno In
+         * addition, the following special format is accepted: $DATUM
+         * molecule-identifier Here, molecule-identifier acts in the same way as
+         * external-regno in that it can be any text string known to the
+         * database that uniquely identifies a molecule. (It is usually
+         * associated with a data field different from the external-regno.)
+         * CTfile Formats (August 2002) Page 42 Figure 15 - Example of a
+         * reaction RDfile
+         * 
+         * $RDFILE 1 $DATM 10/17/91 10:41 $RFMT $RIREG 7439 $RXN
+         * 
+         * REACCS81 101791141 7439
+         * 
+         * 2 1 $MOL
+         * 
+         * REACCS8110179110412D 1 0.00380 0.0000 315
+         * 
+         * 4 3 0 0 0 0 0 0 0 0 0 ... 1 4 1 0 0 0 4 $MOL
+         * 
+         * REACCS8110179110412D 1 0.00371 0.0000 8
+         * 
+         * 6 6 0 0 0 0 0 0 0 0 0 ... 5 6 2 0 0 0 2 $MOL
+         * 
+         * REACCS8110179110412D 1 0.00374 0.0000 255
+         * 
+         * 9 9 0 0 0 0 0 0 0 0 0 ... 6 9 2 0 0 0 2 $DTYPE
+         * rxn:VARIATION(1):rxnTEXT(1) $DATUM CrC13 $DTYPE
+         * rxn:VARIATION(1):LITTEXT(1) $DATUM A G Repin, Y Y
+         * Makarov-Zemlyanskii, Zur Russ Fiz-Chim, 44. p. 2360, 1974
+         * 
+         * $DTYPE rxn:VARIATION(1):CATALYST(1):REGNO $DATUM $MFMT $MIREG 688
+         * 
+         * REACCS8110179110412D 1 0.00371 0.0000 0
+         * 
+         * 4 3 0 0 0 0 0 0 0 0 0 ... 1 4 1 0 0 0 0 $DTYPE
+         * rxn:VARIATION(1):PRODUCT(1):YIELD $DATUM 70.0
+         * 
+         * $RFMT $RIREG 8410 $RXN
+         * 
+         * REACCS81 1017911041 8410
+         * 
+         * 
+         * 2 1 $MOL ... Rxnfile Header # Reactants, # Products Molfile for first
+         * reactant Molfile for second reactant Molfile for product RDfile
+         * Header Mol/Rxn identifier Data block for reaction Start of next
+         * record
+         */
+        CMLCml cml = new CMLCml();
+        Document doc = new Document(cml);
+
+        readFileHeader(br);
+        RDFContext context = new RDFContext(br);
+        context.readLine();
+        while (true) {
+            Element ab = readNextRecord(context);
+            if (ab == null) {
+                break;
+            }
+            cml.appendChild(ab);
+        }
+
+        // end of input
+        return (Document) doc;
+    }
+
+    /**
+     * read from file. Large files are memory-mapped.
+     * 
+     * @param file
+     * @throws IOException
+     * @throws RuntimeException
+     * @return document
+     */
+    public Document read(File file) throws RuntimeException, IOException {
+        ConversionMetrics.count(metrics, ConversionMetrics.Counter.BYTES,
+                file.length());
+        LineNumberReader lnr = open(file);
+        try {
+            return read(lnr);
+        } finally {
+            lnr.close();
+        }
+    }
+
+    /*
+     * a skipped record is reported with its byte offsets, which only a
+     * mapping gives, so the file is always mapped while a listener is set
+     */
+    private LineNumberReader open(File file) throws IOException {
+        return (corruptRecordListener != null) ? new MappedLineNumberReader(
+                file) : MappedLineNumberReader.open(file);
+    }
+
+    /**
+     * read records and pass each to the handler as soon as it is parsed. No
+     * document is built; with a StreamingCMLWriter over a CMLCml root the
+     * output is the same as serializing read(br).
+     * 
+     * @param br
+     * @param handler
+     * @return number of records
+     * @throws IOException
+     * @throws RuntimeException
+     */
+    public int read(LineNumberReader br, RecordHandler handler)
+            throws RuntimeException, IOException {
+        readFileHeader(br);
+        RDFContext context = new RDFContext(br);
+        context.readLine();
+        int count = 0;
+        while (true) {
+            CMLElement record = readNextRecord(context);
+            if (record == null) {
+                break;
+            }
+            long start = ConversionMetrics.start(metrics);
+            handler.handle(record);
+            ConversionMetrics.stop(metrics, ConversionMetrics.Stage.SERIALIZE,
+                    start);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * read records from a file and pass each to the handler.
+     * 
+     * @param file
+     * @param handler
+     * @return number of records
+     * @throws IOException
+     * @throws RuntimeException
+     */
+    public int read(File file, RecordHandler handler) throws RuntimeException,
+            IOException {
+        ConversionMetrics.count(metrics, ConversionMetrics.Counter.BYTES,
+                file.length());
+        LineNumberReader lnr = open(file);
+        try {
+            return read(lnr, handler);
+        } finally {
+            lnr.close();
+        }
+    }
+
+    /**
+     * read document.
+     * 
+     * @param doc
+     * @param br
+     * @exception RuntimeException
+     * @exception IOException
+     * @return document
+     */
+    public Document read(Document doc, LineNumberReader br)
+            throws RuntimeException, IOException {
+        // return read((CMLDocument) doc, br);
+        return read(br);
+    }
+
+    /**
+     * iterate over the records of an RDfile one at a time.
+     *
+     * The file header is read immediately; each call to next() then parses
+     * a single $RFMT/$MFMT (or registry) record. Records are not attached to
+     * any document, so the caller may keep or discard each one and memory
+     * does not grow with the size of the file.
+     *
+     * @param br
+     * @return iterator over CMLReaction and CMLMolecule records
+     * @throws IOException
+     * @throws RuntimeException
+     */
+    public Iterator<CMLElement> iterator(LineNumberReader br)
+            throws RuntimeException, IOException {
+        readFileHeader(br);
+        RDFContext context = new RDFContext(br);
+        context.readLine();
+        return new RDFRecordIterator(this, context);
+    }
+
+    /**
+     * read one record of an indexed RDfile.
+     *
+     * The reader is moved to the start of the record and only that record
+     * is parsed, so any record of a large file can be fetched without
+     * reading those before it. Line numbers in error messages are those of
+     * the whole file.
+     *
+     * @param br reader over the file that was indexed
+     * @param index from {@link RDFIndex#build(File)} or {@link RDFIndex#open(File)}
+     * @param record serial number from 0
+     * @return CMLReaction or CMLMolecule (not attached to any document)
+     * @throws IOException
+     * @throws RuntimeException
+     */
+    public CMLElement readRecord(MappedLineNumberReader br, RDFIndex index,
+            int record) throws RuntimeException, IOException {
+        return readMoleculeOrReaction(seek(br, index, record));
+    }
+
+    /**
+     * bring a directory of converted records up to date with an RDfile,
+     * converting only records added or changed since the last update.
+     * 
+     * Each record (from its $RFMT, $MFMT or registry line to the start of
+     * the next) is hashed without being parsed. Records are keyed on their
+     * registry number, or on their hash if they have none, in which case a
+     * changed record counts as one removed and one added. The records in
+     * the file are found with {@link RDFIndex#open(File)}.
+     * 
+     * @param file RDfile
+     * @param directory one CML file per record, and the manifest
+     * @return counts of added, changed, unchanged and removed records
+     * @throws IOException
+     * @throws RuntimeException
+     */
+    public IncrementalOutput update(File file, File directory)
+            throws RuntimeException, IOException {
+        RDFIndex index = RDFIndex.open(file);
+        IncrementalOutput output = new IncrementalOutput(directory);
+        MappedLineNumberReader br = new MappedLineNumberReader(file);
+        try {
+            for (int i = 0; i < index.size(); i++) {
+                long end = (i + 1 < index.size()) ? index.getOffset(i + 1)
+                        : br.size();
+                br.seek(index.getOffset(i), index.getLineNumber(i));
+                long hash = RecordManifest.FNV_OFFSET;
+                while (br.getPosition() < end) {
+                    hash = RecordManifest.hashLine(hash, br.readLineView());
+                }
+                long registryNumber = index.getRegistryNumber(i);
+                String key = output.put(
+                        (registryNumber == RDFIndex.NO_REGISTRY) ? "h"
+                                + RecordManifest.toHex(hash) : Long
+                                .toString(registryNumber), hash);
+                if (output.isChanged(key)) {
+                    output.write(key, readRecoveringRecord(seek(br, index,
+                            i)));
+                }
+            }
+            output.finish();
+        } finally {
+            br.close();
+        }
+        return output;
+    }
+
+    /* position a new context at the start of a record */
+    RDFContext seek(MappedLineNumberReader br, RDFIndex index, int record)
+            throws IOException {
+        br.seek(index.getOffset(record), index.getLineNumber(record));
+        RDFContext context = new RDFContext(br);
+        context.readLine();
+        context.record = record - 1;
+        return context;
+    }
+
+    // public CMLDocument read(CMLDocument doc, LineNumberReader br) throws
+
+    /*
+     * 
+     * $RDFILE 1 $DATM 12/11/2002 16:25:3
+     */
+    /*
+     * Line 1: $RDFILE 1: The [RDfile Header] must occur at the beginning of the
+     * physical file and identifies the file as an RDfile. The version stamp ?1?
+     * is intended for future expansion of the format. Line 2: $DATM: Date/time
+     * (M/D/Y, H:m) stamp. This line is treated as a comment and ignored when
+     * the program is read.
+     */
+    /* next record accepted by the record filter, or null at end of input */
+    CMLElement readNextRecord(RDFContext context) throws IOException,
+            RuntimeException {
+        while (context.line != null) {
+            CMLElement record = readRecoveringRecord(context);
+            if (record != null) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * as readFilteredRecord, but with skipCorrupt a record that throws is
+     * reported, context.line is moved on to the next record start and null
+     * is returned.
+     */
+    CMLElement readRecoveringRecord(RDFContext context) throws IOException,
+            RuntimeException {
+        context.record++;
+        String identifier = context.line;
+        int lineNumber = context.lineNumber;
+        long offset = context.lineOffset;
+        try {
+            CMLElement record = readFilteredRecord(context);
+            if (record != null) {
+                ConversionMetrics.count(metrics,
+                        ConversionMetrics.Counter.RECORDS, 1);
+            }
+            return record;
+        } catch (RuntimeException e) {
+            ConversionMetrics.count(metrics, ConversionMetrics.Counter.ERRORS,
+                    1);
+            if (!skipCorrupt) {
+                throw e;
+            }
+            resynchronize(context, lineNumber);
+            int endLineNumber = (context.line == null) ? context.br
+                    .getLineNumber() : context.lineNumber - 1;
+            long endOffset = (context.line == null) ? context.position()
+                    : context.lineOffset;
+            RDFCorruptRecord corrupt = new RDFCorruptRecord(identifier,
+                    context.record, lineNumber, endLineNumber, offset,
+                    endOffset, e);
+            if (corruptRecordListener != null) {
+                corruptRecordListener.corrupt(corrupt);
+            } else {
+                logger.warning(corrupt.toString());
+            }
+            return null;
+        }
+    }
+
+    /*
+     * after a parse failure in the record starting at startLine, leave
+     * context.line at the start of the next record. If the parse had
+     * already read up to it nothing is skipped. A mapped reader skips lines
+     * on its bytes without decoding them.
+     */
+    void resynchronize(RDFContext context, int startLine) throws IOException {
+        if (context.line != null && context.lineNumber > startLine
+                && context.lineNumber == context.br.getLineNumber()
+                && isRecordStart(context.line)) {
+            return;
+        }
+        if (context.mapped != null) {
+            MappedLineNumberReader br = context.mapped;
+            while (br.peek() != -1
+                    && !(br.peek() == '$' && RDFIndex.isRecordStart(br))) {
+                br.skipLine();
+            }
+            context.readLine();
+        } else {
+            while (context.readLine() != null && !isRecordStart(context.line)) {
+                // skip
+            }
+        }
+    }
+
+    /*
+     * the record at context.line, or null if the record filter rejects it.
+     * Either way context.line is left at the start of the next record.
+     */
+    CMLElement readFilteredRecord(RDFContext context) throws IOException,
+            RuntimeException {
+        if (recordFilter == null || context.line == null) {
+            return readMoleculeOrReaction(context);
+        }
+        String identifier = context.line;
+        int lineNumber = context.br.getLineNumber();
+        if (context.br instanceof MappedLineNumberReader) {
+            // scan, then seek back to parse in place
+            MappedLineNumberReader br = (MappedLineNumberReader) context.br;
+            long position = br.getPosition();
+            long offset = context.lineOffset;
+            if (!recordFilter.accept(scanRecord(context, null))) {
+                return null;
+            }
+            br.seek(position, lineNumber);
+            context.line = identifier;
+            context.lineNumber = lineNumber;
+            context.lineOffset = offset;
+            return readMoleculeOrReaction(context);
+        }
+        /*
+         * a plain reader cannot go back, so parse a copy of the record. The
+         * copy must be whole, so past datumLimit it always spills to a file
+         */
+        TextAccumulator replay = new TextAccumulator(datumLimit,
+                TextAccumulator.Overflow.SPILL, spillDirectory);
+        replay.start(S_EMPTY);
+        try {
+            if (!recordFilter.accept(scanRecord(context, replay))) {
+                return null;
+            }
+            String text = replay.finish();
+            LineNumberReader copy = new LineNumberReader(
+                    replay.isSpilled() ? new InputStreamReader(
+                            new FileInputStream(replay.getSpillFile()),
+                            "UTF-8") : new StringReader(text));
+            try {
+                copy.setLineNumber(lineNumber);
+                RDFContext recordContext = new RDFContext(copy);
+                recordContext.line = identifier;
+                recordContext.lineNumber = lineNumber;
+                recordContext.text = context.text;
+                return readMoleculeOrReaction(recordContext);
+            } finally {
+                copy.close();
+            }
+        } finally {
+            replay.finish();
+            if (replay.isSpilled()) {
+                replay.getSpillFile().delete();
+            }
+        }
+    }
+
+    /*
+     * read the identifier and text data of the record at context.line
+     * without building any CML, leaving context.line at the next record.
+     * Lines of a mapped reader are read as views; only $DTYPE names and
+     * text data become Strings. If replay is not null the record's lines are
+     * appended to it.
+     */
+    RDFRawRecord scanRecord(RDFContext context, TextAccumulator replay)
+            throws IOException {
+        RDFRawRecord record = new RDFRawRecord(context.line);
+        // never spill while scanning; the filter only needs the start
+        TextAccumulator text = new TextAccumulator(datumLimit,
+                TextAccumulator.Overflow.TRUNCATE, null);
+        String dtype = null;
+        boolean expectDatum = false;
+        boolean inText = false;
+        while (true) {
+            long offset = context.position();
+            CharSequence line = MappedLineNumberReader.readLineView(context.br);
+            if (line == null || isRecordStart(line)) {
+                if (inText) {
+                    record.addDatum(dtype, text.finish());
+                }
+                context.line = (line == null) ? null : line.toString();
+                context.lineNumber = context.br.getLineNumber();
+                context.lineOffset = offset;
+                return record;
+            }
+            if (replay != null) {
+                replay.append(line);
+                replay.append(S_NL);
+            }
+            if (inText) {
+                if (line.length() == 0 || line.charAt(0) != '$') {
+                    text.append(S_NL, line);
+                    continue;
+                }
+                record.addDatum(dtype, text.finish());
+                inText = false;
+            }
+            if (startsWith(line, DTYPE)) {
+                dtype = line.subSequence(DTYPE.length(), line.length())
+                        .toString().trim();
+                expectDatum = true;
+            } else if (expectDatum) {
+                expectDatum = false;
+                if (startsWith(line, DATUM)) {
+                    String datum = line.subSequence(DATUM.length(),
+                            line.length()).toString().trim();
+                    if (datum.startsWith(_RXN) || datum.startsWith(MFMT)) {
+                        record.addDatum(dtype, datum);
+                    } else {
+                        text.start(datum);
+                        inText = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isRecordStart(CharSequence line) {
+        for (String start : RECORD_STARTS) {
+            if (startsWith(line, start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(CharSequence line, String prefix) {
+        if (line.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    CMLElement readMoleculeOrReaction(RDFContext context) throws IOException,
+            RuntimeException {
+
+        /*
+         * identifier must be one of the following: $MFMT [$MIREG internal-regno
+         * [$MEREG external-regno]] embedded molfile $MIREG internal-regno
+         * $MEREG external-regno where:  $MFMT defines a molecule by
+         * specifying its connection table as a molfile  $MIREG internal-regno
+         * is the internal registry number (sequence number in the database) of
+         * the molecule  $MEREG external-regno is the external registry number
+         * of the molecule (any uniquely identifying character string known to
+         * the database, for example, CAS number)  Square brackets ( [] )
+         * enclose optional parameters  An embedded molfile (see Chapter 4)
+         * follows immediately after the $MFMT line The forms of a reaction
+         * identifier closely parallel that of a molecule: d *r CTfile Formats
+         * (August 2002) Page 41 $RFMT [$RIREG internal-regno [$REREG
+         * external-regno]] embedded rxnfile $RIREG internal-regno $REREG
+         * external-regno where:  $RFMT defines a reaction by specifying its
+         * description as a rxnfile  $RIREG internal-regno is the internal
+         * registry number (sequence number in the database) of the reaction 
+         * $REREG external-regno is the external registry number of the reaction
+         * (any uniquely identifying character string known to the database) 
+         * Square brackets ( [ ] ) enclose optional parameters  An embedded
+         * rxnfile (see Chapter 7) follows immediately after the $RFMT line
+         * Data-field Identifier
+         */
+        // logger.info("RMOR"+line);
+        if (context.line == null) {
+            return null;
+        }
+        if (context.line.startsWith(MFMT) || context.line.startsWith(MIREG)
+                || context.line.startsWith(MEREG)) {
+            return readMolecule(context);
+        } else if (context.line.startsWith(RFMT) || context.line.startsWith(RIREG)
+                || context.line.startsWith(REREG)) {
+            return readReaction(context);
+        } else {
+            throw new RuntimeException("Corrupt RDF entry: " + context.line + " (line: "
+                    + context.br.getLineNumber() + S_RBRAK);
+        }
+    }
+
+    /*
+     * $RIREG 1 $DTYPE ROOT:UNIQUE IDENTIFIER $DATUM 1 $DTYPE ROOT:EC NUMBER
+     * $DATUM 1.7.99.3 $DTYPE ROOT:PDB CODE $DATUM 1nid $DTYPE ROOT:ENZYME NAME
+     * $DATUM Nitrite Reductase (Copper containing) $DTYPE
+     * ROOT:SUBSTRATES(1):SUBSTRATE NUMBER $DATUM 1 $DTYPE
+     * ROOT:SUBSTRATES(1):SUBSTRATE STRUCTURE $DATUM $MFMT
+     * 
+     * -ISIS- 12160210312D
+     * 
+     * 3 2 0 0 0 0 0 0 0 0999 V2000 2.4042 -0.2458 0.0000 N 0 0 0 0 0 0 0 0 0 0
+     * 0 0 3.1186 0.1667 0.0000 O 0 0 0 0 0 0 0 0 0 0 0 0 1.6897 0.1667 0.0000 O
+     * 0 0 0 0 0 0 0 0 0 0 0 0 1 2 1 0 0 0 0 1 3 2 0 0 0 0 M END $DTYPE
+     * ROOT:SUBSTRATES(1):SUBSTRATE NAME $DATUM Nitrous Acid $DTYPE
+     * ROOT:PRODUCTS(1):PRODUCT NUMBER $DATUM 1 $DTYPE ROOT:PRODUCTS(1):PRODUCT
+     * STRUCTURE $DATUM $MFMT
+     * 
+     * -ISIS- 12160210312D
+     * 
+     * 2 1 0 0 0 0 0 0 0 0999 V2000 1.9667 -8.4625 0.0000 N 0 0 0 0 0 0 0 0 0 0
+     * 0 0 2.6811 -8.0500 0.0000 O 0 0 0 0 0 0 0 0 0 0 0 0 1 2 2 0 0 0 0 M END
+     * $DTYPE ROOT:PRODUCTS(1):PRODUCT_NAME $DATUM Nitric Oxide $DTYPE
+     * ROOT:REACTION STAGES(1):REACTION STAGES $DATUM 1 $DTYPE
+     * ROOT:REFERENCES(1):REFERENCE NUMBER $DATUM 1 $DTYPE
+     * ROOT:REFERENCES(1):REFERENCE $DATUM Boulanger et al. JBC 275 (31)
+     * 23957-23964 (2000) $RIREG 2 ...
+     */
+    CMLMolecule readMolecule(RDFContext context) throws RuntimeException,
+            IOException {
+        StringTokenizer st = new StringTokenizer(context.line);
+        String keyw = st.nextToken();
+        CMLMolecule mol = null;
+        if (keyw.equals(MIREG)) {
+            mol = new CMLMolecule();
+            if (st.countTokens() == 1) {
+                mol.setRef(context.line);
+            } else {
+                logger.severe("Bad " + MIREG + S_SPACE + context.line);
+            }
+        } else if (context.line.startsWith(MEREG)) {
+            context.line = context.line.substring(MEREG.length()).trim();
+            mol = new CMLMolecule();
+            if (st.countTokens() == 1) {
+                String tok = st.nextToken();
+                mol.setRef(tok);
+                mol.setConvention("external");
+            } else {
+                logger.severe("Bad " + MEREG + S_SPACE + context.line);
+            }
+        } else if (keyw.equals(MFMT)) {
+            long start = ConversionMetrics.start(metrics);
+            mol = molfileReader.read(context.br, null);
+            if (metrics != null) {
+                ConversionMetrics.stop(metrics,
+                        ConversionMetrics.Stage.MOLECULE, start);
+                ConversionMetrics.count(metrics,
+                        ConversionMetrics.Counter.ATOMS, mol.getAtomCount());
+            }
+
+            if (st.countTokens() >= 2) {
+                if (st.nextToken().equals(MIREG)) {
+                    mol.setRef(st.nextToken());
+                }
+            }
+            if (st.countTokens() >= 2) {
+                if (st.nextToken().equals(MEREG)) {
+                    CMLName name = new CMLName();
+                    name.setConvention("external");
+                    name.setXMLContent(st.nextToken());
+                    mol.addName(name);
+                }
+            }
+        }
+        long start = ConversionMetrics.start(metrics);
+        readData(context, mol);
+        ConversionMetrics.stop(metrics, ConversionMetrics.Stage.DATA, start);
+        return mol;
+    }
+
+    CMLReaction readReaction(RDFContext context) throws RuntimeException,
+            IOException {
+        StringTokenizer st = new StringTokenizer(context.line);
+        String keyw = st.nextToken();
+        CMLReaction reaction = null;
+        if (keyw.equals(RIREG)) {
+            reaction = new CMLReaction();
+            if (st.hasMoreTokens()) {
+                String tok = st.nextToken();
+                reaction.setId("r" + tok);
+            } else {
+                logger.severe("Bad " + RIREG + S_SPACE + context.line);
+            }
+        } else if (keyw.equals(REREG)) {
+            reaction = new CMLReaction();
+            if (st.countTokens() == 1) {
+                reaction.setRef(context.line);
+                reaction.setConvention("external");
+            } else {
+                logger.severe("Bad " + RIREG + S_SPACE + context.line);
+            }
+        } else if (keyw.equals(RFMT)) {
+            reaction = rxnConverter.readReaction(context.br);
+        }
+        long start = ConversionMetrics.start(metrics);
+        readData(context, reaction);
+        ConversionMetrics.stop(metrics, ConversionMetrics.Stage.DATA, start);
+        return reaction;
+    }
+
+    // not sure which of these can contain data
+
+    void readData(RDFContext context, Element ab) throws IOException,
+            RuntimeException {
+        CMLPropertyList propertyList = null;
+
+        context.readLine();
+        while (true) {
+            if (context.line == null) {
+                break;
+            }
+            if (context.line.startsWith(MFMT) || context.line.startsWith(MIREG)
+                    || context.line.startsWith(MEREG) || context.line.startsWith(RFMT)
+                    || context.line.startsWith(RIREG) || context.line.startsWith(REREG)) {
+                break;
+            } else if (context.line.startsWith(DTYPE)) {
+                String dtype = context.line.substring(DTYPE.length() + 1).trim();
+                if (dataTypeFilter != null && !dataTypeFilter.accept(dtype)) {
+                    skipDatum(context);
+                    continue;
+                }
+                context.readLine();
+                if (!context.line.startsWith(DATUM)) {
+                    throw new RuntimeException("Expected " + DATUM + " at " + context.line);
+                }
+                String datum = context.line.substring(DATUM.length() + 1).trim();
+                if (datum.startsWith(_RXN)) {
+                    CMLReaction rxn = rxnConverter.readReaction(context.br);
+                    ab.appendChild(rxn);
+                    context.readLine();
+                } else if (datum.startsWith(MFMT)) {
+                    CMLMolecule mol = molfileReader.read(context.br, null);
+                    CMLReaction reaction = (CMLReaction) ab;
+                    if (isReactant(dtype)) {
+                        CMLReactantList reactantList = new CMLReactantList();
+                        reaction.addReactantList(reactantList);
+                        CMLReactant reactant = new CMLReactant();
+                        reactantList.addReactant(reactant);
+                        reactant.addMolecule(mol);
+                    } else {
+                        CMLProductList productList = new CMLProductList();
+                        reaction.addProductList(productList);
+                        CMLProduct product = new CMLProduct();
+                        productList.addProduct(product);
+                        product.addMolecule(mol);
+                    }
+                    context.readLine();
+                } else {
+                    if (propertyList == null) {
+                        propertyList = (CMLPropertyList) new CMLPropertyList();
+                        if (ab instanceof CMLMolecule) {
+                            ((CMLMolecule) ab).addPropertyList(propertyList);
+                        }
+                        if (ab instanceof CMLReaction) {
+                            ((CMLReaction) ab).addPropertyList(propertyList);
+                        }
+                    }
+                    CMLScalar scalar = new CMLScalar();
+                    scalar.setTitle(dtype);
+                    TextAccumulator text = getAccumulator(context);
+                    text.start(datum);
+                    while (true) {
+                        context.readLine();
+                        if (context.line == null || (context.line.length() > 0
+                                && context.line.charAt(0) == '$')) {
+                            break;
+                        }
+                        text.append(CMLElement.S_NL, context.line);
+                    }
+
+                    scalar.setXMLContent(text.finish());
+                    CMLProperty property = new CMLProperty();
+                    propertyList.addProperty(property);
+                    property.appendChild(scalar);
+                    if (text.isSpilled()) {
+                        property.setRef(text.getSpillFile().getPath());
+                    } else if (text.isTruncated()) {
+                        logger.warning("Truncated " + dtype + " at " + datumLimit
+                                + " characters (line: "
+                                + context.br.getLineNumber() + S_RBRAK);
+                    }
+                }
+            } else {
+                throw new RuntimeException("Unrecognised line reading $DTYPE "
+                        + context.line);
+            }
+        }
+    }
+
+    /*
+     * skip the $DATUM after an unwanted $DTYPE, whether text, $MFMT or $RXN,
+     * leaving context.line at the next $DTYPE or record. A mapped reader
+     * tests and skips lines on its bytes without decoding them.
+     */
+    void skipDatum(RDFContext context) throws IOException {
+        if (context.br instanceof MappedLineNumberReader) {
+            MappedLineNumberReader br = (MappedLineNumberReader) context.br;
+            if (!br.lineStartsWith(DATUM)) {
+                throw new RuntimeException("Expected " + DATUM + " at "
+                        + context.readLine());
+            }
+            br.skipLine();
+            while (br.peek() != -1 && !(br.peek() == '$' && isDataEnd(br))) {
+                br.skipLine();
+            }
+            context.readLine();
+        } else {
+            context.readLine();
+            if (context.line == null || !context.line.startsWith(DATUM)) {
+                throw new RuntimeException("Expected " + DATUM + " at "
+                        + context.line);
+            }
+            while (context.readLine() != null && !isDataEnd(context.line)) {
+                // skip
+            }
+        }
+    }
+
+    private static boolean isDataEnd(MappedLineNumberReader br)
+            throws IOException {
+        if (br.lineStartsWith(DTYPE)) {
+            return true;
+        }
+        for (String start : RECORD_STARTS) {
+            if (br.lineStartsWith(start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isDataEnd(String line) {
+        if (line.startsWith(DTYPE)) {
+            return true;
+        }
+        for (String start : RECORD_STARTS) {
+            if (line.startsWith(start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* one accumulator per context, reused for every datum it reads */
+    TextAccumulator getAccumulator(RDFContext context) {
+        if (context.text == null) {
+            context.text = new TextAccumulator(datumLimit, datumOverflow,
+                    spillDirectory);
+        }
+        return context.text;
+    }
+
+    /* really horrible, but we don't know the database schema */
+    boolean isReactant(String dtype) {
+        if (dtype.toLowerCase().indexOf("substrate structure") != -1) {
+            return true;
+        }
+        if (dtype.toLowerCase().indexOf("product structure") != -1) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * read start of file.
+     * 
+     * @param br
+     * @throws IOException
+     * @throws RuntimeException
+     */
+    protected void readFileHeader(LineNumberReader br) throws IOException,
+            RuntimeException {
+
+        /**
+         * this could be all sorts of stuff... ------RIREG format-----------
+         * $RDFILE 1 $DATM 12/11/2002 16:25:3 $RIREG 1 ... $RIREG 2 ...
+         * ------------------- --
+         */
+        String line = br.readLine();
+        if (line == null) {
+            throw new RuntimeException("Empty RDF file");
+        }
+        if (!line.startsWith(RDFILE)) {
+            throw new IOException("non-RDF: RDF file must start with '"
+                    + RDFILE + "'");
+        }
+        line = br.readLine();
+        if (line == null) {
+            throw new RuntimeException("Corrupt RDF file");
+        }
+        if (!line.startsWith("$DATM ")) {
+            throw new RuntimeException("non-RDF " + line);
+        }
+    }
+
+    /*--
+     void output(Writer writer, CMLList list)
+     throws RuntimeException, IOException {
+
+     }
+     --*/
+    /**
+     * outputs CML as an RDF if possible. NYI
+     * 
+     * @param writer
+     *            to output it to
+     * @throws RuntimeException
+     * @throws IOException
+     * @return string
+     */
+    public String output(Writer writer) throws RuntimeException, IOException {
+        return null;
+    }
+
+    /**
+     * NYI
+     * 
+     * @param writer
+     *            DOCUMENT ME!
+     * @return DOCUMENT ME!
+     * @throws RuntimeException
+     *             DOCUMENT ME!
+     * @throws IOException
+     *             DOCUMENT ME!
+     */
+    public String writeData(Writer writer) throws RuntimeException, IOException {
+        return null;
+    }
+
+    /**
+     * main.
+     * 
+     * @param args
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            logger
+                    .info("Usage: org.xmlcml.legacy.reaction.RDFConverter [options]");
+            logger.info("        -IN inputFile (RDF)");
+            logger.info("        -OUT outputFile (CML)");
+            logger.info("        -ID id");
+            logger.info("        -THREADS n (parse records in parallel)");
+            logger.info("        -SMILES (write reaction SMILES lines, not CML)");
+            logger.info("        -BINARY (write the binary reaction format, not CML)");
+            logger.info("        -QUARANTINE dir (skip corrupt records, copying them to dir)");
+            System.exit(0);
+        }
+        int i = 0;
+        String infile = S_EMPTY;
+        String outfile = S_EMPTY;
+        String id = S_EMPTY;
+        int threads = 1;
+        boolean smiles = false;
+        boolean binary = false;
+        String quarantineDir = S_EMPTY;
+        while (i < args.length) {
+            if (1 == 2) {
+                ;
+            } else if (args[i].equalsIgnoreCase("-ID")) {
+                id = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-IN")) {
+                infile = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-OUT")) {
+                outfile = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-THREADS")) {
+                threads = Integer.parseInt(args[++i]);
+                i++;
+            } else if (args[i].equalsIgnoreCase("-SMILES")) {
+                smiles = true;
+                i++;
+            } else if (args[i].equalsIgnoreCase("-BINARY")) {
+                binary = true;
+                i++;
+            } else if (args[i].equalsIgnoreCase("-QUARANTINE")) {
+                quarantineDir = args[++i];
+                i++;
+            } else {
+                logger.severe("Unknown arg: " + args[i]);
+                i++;
+            }
+        }
+        RDFConverter converter = new RDFConverter(id);
+        Quarantine quarantine = null;
+        try {
+            if (!quarantineDir.equals(S_EMPTY)) {
+                quarantine = new Quarantine(new File(quarantineDir));
+                converter.setSkipCorrupt(true);
+                converter.setCorruptRecordListener(new RDFQuarantine(
+                        quarantine, new File(infile)));
+            }
+            if (!infile.equals(S_EMPTY) && !outfile.equals(S_EMPTY)) {
+                // write each record as it is read; no document is built
+                FileOutputStream fos = new FileOutputStream(outfile);
+                try {
+                    Writer smilesWriter = null;
+                    BinaryReactionWriter binaryWriter = null;
+                    StreamingCMLWriter cmlWriter = null;
+                    RecordHandler handler;
+                    if (smiles) {
+                        smilesWriter = new BufferedWriter(new OutputStreamWriter(
+                                fos, "UTF-8"));
+                        handler = new ReactionSmilesWriter(smilesWriter);
+                    } else if (binary) {
+                        binaryWriter = new BinaryReactionWriter(fos);
+                        handler = binaryWriter;
+                    } else {
+                        cmlWriter = new StreamingCMLWriter(fos, new CMLCml());
+                        handler = cmlWriter;
+                    }
+                    if (threads != 1) {
+                        new RDFParallelReader(converter, threads).read(
+                                new File(infile), handler);
+                    } else {
+                        converter.read(new File(infile), handler);
+                    }
+                    if (smilesWriter != null) {
+                        smilesWriter.flush();
+                    } else if (binaryWriter != null) {
+                        binaryWriter.finish();
+                    } else {
+                        cmlWriter.endDocument();
+                    }
+                } finally {
+                    fos.close();
+                }
+            } else if (!infile.equals(S_EMPTY) && threads != 1) {
+                new RDFParallelReader(converter, threads).read(new File(infile));
+            } else if (!infile.equals(S_EMPTY)) {
+                converter.read(new File(infile));
+            }
+
+        } catch (IOException ioe) {
+            logger.info("IOEXception: " + ioe);
+        } catch (RuntimeException cmle) {
+            logger.log(Level.SEVERE, "CMLEXception: " + cmle, cmle);
+        } finally {
+            if (quarantine != null) {
+                try {
+                    quarantine.close();
+                } catch (IOException ioe) {
+                    logger.info("IOEXception: " + ioe);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+import org.xmlcml.cml.base.CMLConstants;
+
+/**
+ * a span of an RDfile that could not be parsed and was skipped.
+ *
+ * The span runs from the first line of the bad record (normally its $RFMT
+ * or $MFMT line) to the line before the next record start, or to the end
+ * of the file. Byte offsets are only known when the file is read through a
+ * MappedLineNumberReader, as RDFConverter.read(File) does while a listener
+ * is set; otherwise they are -1.
+ */
+public class RDFCorruptRecord implements CMLConstants {
+
+    private String identifier;
+    private int record;
+    private int lineNumber;
+    private int endLineNumber;
+    private long offset;
+    private long endOffset;
+    private RuntimeException cause;
+
+    RDFCorruptRecord(String identifier, int record, int lineNumber,
+            int endLineNumber, long offset, long endOffset,
+            RuntimeException cause) {
+        this.identifier = identifier;
+        this.record = record;
+        this.lineNumber = lineNumber;
+        this.endLineNumber = endLineNumber;
+        this.offset = offset;
+        this.endOffset = endOffset;
+        this.cause = cause;
+    }
+
+    /**
+     * @return first line of the span
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return serial number of the record in the file, from 0
+     */
+    public int getRecord() {
+        return record;
+    }
+
+    /**
+     * @return line number of the first line of the span
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return line number of the last line of the span
+     */
+    public int getEndLineNumber() {
+        return endLineNumber;
+    }
+
+    /**
+     * @return byte offset of the start of the span, or -1 if not known
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return byte offset just past the span, or -1 if not known
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * @return the exception that stopped the parse
+     */
+    public RuntimeException getCause() {
+        return cause;
+    }
+
+    /**
+     * @return lines, offset and message
+     */
+    public String toString() {
+        return "Skipped corrupt RDF record at lines " + lineNumber + "-"
+                + endLineNumber + " (offset: " + offset + "): "
+                + cause.getMessage();
+    }
+}
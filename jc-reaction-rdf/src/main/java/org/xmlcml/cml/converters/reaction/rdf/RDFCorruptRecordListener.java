@@ -0,0 +1,16 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+/**
+ * told of every record skipped by an RDFConverter in skip-corrupt mode.
+ *
+ * With an RDFParallelReader it is called on the worker threads, so a
+ * listener must then be thread-safe.
+ */
+public interface RDFCorruptRecordListener {
+
+    /**
+     * @param record
+     *            the span skipped
+     */
+    void corrupt(RDFCorruptRecord record);
+}
@@ -0,0 +1,443 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.logging.Logger;
+
+import org.xmlcml.cml.converters.reaction.core.MappedLineNumberReader;
+
+/**
+ * byte-offset index of the records in an RDfile.
+ *
+ * One pass over the (memory-mapped) file records, for every $RFMT, $MFMT or
+ * registry record, the byte offset and line number at which it starts and
+ * its registry ids. Only record-start lines are turned into Strings; all
+ * other lines are skipped on the mapped bytes. Offsets, line numbers and
+ * registry numbers are held in primitive arrays so an index of millions of
+ * records stays small.
+ *
+ * A record may have an internal id ($RIREG or $MIREG) and an external one
+ * ($REREG or $MEREG), either of which may be any token, such as a CAS
+ * number. {@link #getRegistryId(int)} is the internal id if present,
+ * otherwise the external one. The registry number is the first of the two
+ * that is an integer; it is {@link #NO_REGISTRY} if neither is. Records are
+ * found by either id, or by number, through hash tables built on the first
+ * lookup.
+ *
+ * The index can be written to a sidecar file (the RDfile name with
+ * {@link #SUFFIX} appended) and is reused by {@link #open(File)} while the
+ * length and modification time of the RDfile are unchanged. A sidecar that
+ * is stale, truncated or not an index at all is rebuilt; a new sidecar is
+ * written to a temporary file and renamed, so a reader never sees one half
+ * written.
+ */
+public class RDFIndex {
+
+    private static Logger logger = Logger.getLogger(RDFIndex.class.getName());
+
+    /** appended to the RDfile name to give the sidecar file */
+    public static final String SUFFIX = ".idx";
+
+    /** registry number of a record without a (numeric) registry id */
+    public static final long NO_REGISTRY = Long.MIN_VALUE;
+
+    static final int MAGIC = 0x52444649; // "RDFI"
+
+    static final int VERSION = 2;
+
+    private long fileLength;
+
+    private long lastModified;
+
+    private int size;
+
+    private long[] offsets;
+
+    private int[] lineNumbers;
+
+    private long[] registryNumbers;
+
+    /* null where the record has no such id */
+    private String[] internalIds;
+
+    private String[] externalIds;
+
+    /* first record with each id or number; built on the first lookup */
+    private Map<String, Integer> idLookup;
+
+    private Map<Long, Integer> numberLookup;
+
+    private RDFIndex(long fileLength, long lastModified, int capacity) {
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.offsets = new long[capacity];
+        this.lineNumbers = new int[capacity];
+        this.registryNumbers = new long[capacity];
+        this.internalIds = new String[capacity];
+        this.externalIds = new String[capacity];
+    }
+
+    /**
+     * index an RDfile in one pass.
+     *
+     * @param file
+     * @return index
+     * @throws IOException
+     * @throws RuntimeException if the file is not an RDfile
+     */
+    public static RDFIndex build(File file) throws IOException {
+        RDFIndex index = new RDFIndex(file.length(), file.lastModified(), 1024);
+        MappedLineNumberReader br = new MappedLineNumberReader(file);
+        try {
+            new RDFConverter().readFileHeader(br);
+            while (true) {
+                int c = br.peek();
+                if (c == -1) {
+                    break;
+                }
+                if (c == '$' && isRecordStart(br)) {
+                    long offset = br.getPosition();
+                    int lineNumber = br.getLineNumber();
+                    String[] ids = registryIds(br.readLine());
+                    index.add(offset, lineNumber, ids[0], ids[1]);
+                } else {
+                    br.skipLine();
+                }
+            }
+        } finally {
+            br.close();
+        }
+        return index;
+    }
+
+    /**
+     * index for an RDfile, read from its sidecar file if that is up to date
+     * and readable, otherwise built and written to the sidecar file.
+     *
+     * @param file
+     * @return index
+     * @throws IOException
+     */
+    public static RDFIndex open(File file) throws IOException {
+        File sidecar = getSidecar(file);
+        if (sidecar.exists()) {
+            try {
+                RDFIndex index = read(sidecar);
+                if (index.isCurrent(file)) {
+                    return index;
+                }
+                logger.info("Rebuilding stale index " + sidecar);
+            } catch (IOException ioe) {
+                logger.warning("Rebuilding unreadable index " + sidecar
+                        + ": " + ioe);
+            }
+        }
+        RDFIndex index = build(file);
+        try {
+            index.write(sidecar);
+        } catch (IOException ioe) {
+            logger.warning("Cannot write index " + sidecar + ": " + ioe);
+        }
+        return index;
+    }
+
+    /**
+     * @param file RDfile
+     * @return sidecar file for its index
+     */
+    public static File getSidecar(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * read a sidecar file.
+     *
+     * @param sidecar
+     * @return index
+     * @throws IOException if it is not an index file or is truncated
+     */
+    public static RDFIndex read(File sidecar) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(sidecar)));
+        try {
+            if (dis.readInt() != MAGIC) {
+                throw new IOException("Not an RDF index: " + sidecar);
+            }
+            int version = dis.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported RDF index version "
+                        + version + ": " + sidecar);
+            }
+            long fileLength = dis.readLong();
+            long lastModified = dis.readLong();
+            int size = dis.readInt();
+            // header is 28 bytes, each record at least 16
+            if (size < 0 || (sidecar.length() - 28) / 16 < size) {
+                throw new IOException("Truncated RDF index (" + size
+                        + " records): " + sidecar);
+            }
+            RDFIndex index = new RDFIndex(fileLength, lastModified, Math.max(size, 1));
+            for (int i = 0; i < size; i++) {
+                index.offsets[i] = dis.readLong();
+            }
+            for (int i = 0; i < size; i++) {
+                index.lineNumbers[i] = dis.readInt();
+            }
+            for (int i = 0; i < size; i++) {
+                index.internalIds[i] = readId(dis);
+                index.externalIds[i] = readId(dis);
+                index.registryNumbers[i] = registryNumber(index.internalIds[i],
+                        index.externalIds[i]);
+            }
+            index.size = size;
+            return index;
+        } finally {
+            dis.close();
+        }
+    }
+
+    /**
+     * write the index to a sidecar file. It is written to a temporary file
+     * in the same directory which then replaces the sidecar.
+     *
+     * @param sidecar
+     * @throws IOException
+     */
+    public void write(File sidecar) throws IOException {
+        File temp = File.createTempFile(sidecar.getName(), ".tmp", sidecar
+                .getAbsoluteFile().getParentFile());
+        try {
+            writeData(temp);
+            if (!temp.renameTo(sidecar)) {
+                // some platforms will not rename over an existing file
+                sidecar.delete();
+                if (!temp.renameTo(sidecar)) {
+                    throw new IOException("Cannot rename " + temp + " to "
+                            + sidecar);
+                }
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    private void writeData(File temp) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(fileLength);
+            dos.writeLong(lastModified);
+            dos.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                dos.writeLong(offsets[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                dos.writeInt(lineNumbers[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                dos.writeUTF((internalIds[i] == null) ? "" : internalIds[i]);
+                dos.writeUTF((externalIds[i] == null) ? "" : externalIds[i]);
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    /* an empty string stands for no id; ids are tokens, so never empty */
+    private static String readId(DataInputStream dis) throws IOException {
+        String id = dis.readUTF();
+        return (id.length() == 0) ? null : id;
+    }
+
+    /**
+     * @param file RDfile
+     * @return true if the file has not changed since it was indexed
+     */
+    public boolean isCurrent(File file) {
+        return file.length() == fileLength && file.lastModified() == lastModified;
+    }
+
+    /**
+     * @return number of records
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param record serial number from 0
+     * @return byte offset of the record's first line
+     */
+    public long getOffset(int record) {
+        checkRecord(record);
+        return offsets[record];
+    }
+
+    /**
+     * @param record serial number from 0
+     * @return number of lines before the record
+     */
+    public int getLineNumber(int record) {
+        checkRecord(record);
+        return lineNumbers[record];
+    }
+
+    /**
+     * @param record serial number from 0
+     * @return registry number or NO_REGISTRY
+     */
+    public long getRegistryNumber(int record) {
+        checkRecord(record);
+        return registryNumbers[record];
+    }
+
+    /**
+     * @param record serial number from 0
+     * @return internal registry id if present, else external, else null
+     */
+    public String getRegistryId(int record) {
+        checkRecord(record);
+        return (internalIds[record] != null) ? internalIds[record]
+                : externalIds[record];
+    }
+
+    /**
+     * find a record by registry number.
+     *
+     * @param registryNumber
+     * @return serial number of the first record with it, or -1
+     */
+    public synchronized int indexOfRegistryNumber(long registryNumber) {
+        if (numberLookup == null) {
+            numberLookup = new HashMap<Long, Integer>();
+            for (int i = size - 1; i >= 0; i--) {
+                if (registryNumbers[i] != NO_REGISTRY) {
+                    numberLookup.put(registryNumbers[i], i);
+                }
+            }
+        }
+        Integer record = numberLookup.get(registryNumber);
+        return (record == null) ? -1 : record;
+    }
+
+    /**
+     * find a record by its internal or external registry id.
+     *
+     * @param registryId
+     * @return serial number of the first record with it, or -1
+     */
+    public synchronized int indexOfRegistryId(String registryId) {
+        if (idLookup == null) {
+            idLookup = new HashMap<String, Integer>();
+            // backwards, so that the first record with an id is kept
+            for (int i = size - 1; i >= 0; i--) {
+                if (externalIds[i] != null) {
+                    idLookup.put(externalIds[i], i);
+                }
+                if (internalIds[i] != null) {
+                    idLookup.put(internalIds[i], i);
+                }
+            }
+        }
+        Integer record = idLookup.get(registryId);
+        return (record == null) ? -1 : record;
+    }
+
+    private void checkRecord(int record) {
+        if (record < 0 || record >= size) {
+            throw new IndexOutOfBoundsException("Record " + record
+                    + " not in index of " + size);
+        }
+    }
+
+    private void add(long offset, int lineNumber, String internalId,
+            String externalId) {
+        if (size == offsets.length) {
+            int capacity = 2 * size;
+            long[] newOffsets = new long[capacity];
+            System.arraycopy(offsets, 0, newOffsets, 0, size);
+            offsets = newOffsets;
+            int[] newLineNumbers = new int[capacity];
+            System.arraycopy(lineNumbers, 0, newLineNumbers, 0, size);
+            lineNumbers = newLineNumbers;
+            long[] newRegistryNumbers = new long[capacity];
+            System.arraycopy(registryNumbers, 0, newRegistryNumbers, 0, size);
+            registryNumbers = newRegistryNumbers;
+            String[] newInternalIds = new String[capacity];
+            System.arraycopy(internalIds, 0, newInternalIds, 0, size);
+            internalIds = newInternalIds;
+            String[] newExternalIds = new String[capacity];
+            System.arraycopy(externalIds, 0, newExternalIds, 0, size);
+            externalIds = newExternalIds;
+        }
+        offsets[size] = offset;
+        lineNumbers[size] = lineNumber;
+        internalIds[size] = internalId;
+        externalIds[size] = externalId;
+        registryNumbers[size] = registryNumber(internalId, externalId);
+        size++;
+    }
+
+    static boolean isRecordStart(MappedLineNumberReader br)
+            throws IOException {
+        for (String start : RDFConverter.RECORD_STARTS) {
+            if (br.lineStartsWith(start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* internal and external ids of a record-start line; null if absent */
+    static String[] registryIds(String line) {
+        String[] ids = new String[2];
+        StringTokenizer st = new StringTokenizer(line);
+        while (st.hasMoreTokens()) {
+            String tok = st.nextToken();
+            if (!st.hasMoreTokens()) {
+                break;
+            }
+            if (tok.equals(RDFConverter.RIREG) || tok.equals(RDFConverter.MIREG)) {
+                ids[0] = st.nextToken();
+            } else if (tok.equals(RDFConverter.REREG)
+                    || tok.equals(RDFConverter.MEREG)) {
+                ids[1] = st.nextToken();
+            }
+        }
+        return ids;
+    }
+
+    /* first numeric id of a record-start line, else NO_REGISTRY */
+    static long registryNumber(String line) {
+        String[] ids = registryIds(line);
+        return registryNumber(ids[0], ids[1]);
+    }
+
+    private static long registryNumber(String internalId, String externalId) {
+        long number = parseRegistryNumber(internalId);
+        return (number != NO_REGISTRY) ? number
+                : parseRegistryNumber(externalId);
+    }
+
+    private static long parseRegistryNumber(String id) {
+        if (id != null) {
+            try {
+                return Long.parseLong(id);
+            } catch (NumberFormatException nfe) {
+                // a CAS number or other non-numeric id
+            }
+        }
+        return NO_REGISTRY;
+    }
+}
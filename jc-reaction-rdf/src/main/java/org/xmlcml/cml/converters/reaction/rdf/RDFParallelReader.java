@@ -0,0 +1,297 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import nu.xom.Document;
+
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.converters.reaction.core.ConversionMetrics;
+import org.xmlcml.cml.converters.reaction.core.MappedLineNumberReader;
+import org.xmlcml.cml.converters.reaction.core.RecordHandler;
+import org.xmlcml.cml.element.CMLCml;
+
+/**
+ * parses the records of an RDfile on several threads.
+ *
+ * The file is split at record boundaries taken from an {@link RDFIndex}
+ * into chunks of consecutive records. The first window of the file is
+ * mapped once per read and each chunk is parsed over its own duplicate of
+ * that mapping (chunks beyond the window map their own) by a single shared
+ * RDFConverter, which keeps no parse state
+ * of its own; its settings (data type and record filters, datum limits)
+ * apply to every chunk. Parsed chunks are passed to the RecordHandler
+ * on the calling thread, either in file order or, if ordered is false, as
+ * soon as each chunk is finished.
+ *
+ * At most a few chunks per worker are in flight at once, so memory use
+ * depends on the chunk size and thread count rather than on the file size.
+ * An exception in any chunk stops the read and is rethrown to the caller,
+ * unless the converter skips corrupt records. One reader may run several
+ * reads at once; setOrdered and setChunkRecords apply to reads started
+ * afterwards.
+ */
+public class RDFParallelReader {
+
+    /** records parsed by one task */
+    public static final int DEFAULT_CHUNK_RECORDS = 64;
+
+    /** chunks in flight per worker */
+    private static final int QUEUE_FACTOR = 4;
+
+    private RDFConverter converter;
+    private int threadCount;
+    private volatile int chunkRecords = DEFAULT_CHUNK_RECORDS;
+    private volatile boolean ordered = true;
+
+    /**
+     * @param threadCount number of workers; values less than 1 use one
+     *            worker per available processor
+     */
+    public RDFParallelReader(int threadCount) {
+        this(new RDFConverter(), threadCount);
+    }
+
+    /**
+     * @param converter configured converter, shared by all workers
+     * @param threadCount number of workers; values less than 1 use one
+     *            worker per available processor
+     */
+    public RDFParallelReader(RDFConverter converter, int threadCount) {
+        this.converter = converter;
+        this.threadCount = (threadCount < 1) ?
+                Runtime.getRuntime().availableProcessors() : threadCount;
+    }
+
+    /**
+     * @return number of workers
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param chunkRecords records per task (at least 1)
+     */
+    public void setChunkRecords(int chunkRecords) {
+        this.chunkRecords = Math.max(1, chunkRecords);
+    }
+
+    /**
+     * @return records per task
+     */
+    public int getChunkRecords() {
+        return chunkRecords;
+    }
+
+    /**
+     * @param ordered if true (the default) records are handled in file order;
+     *            if false in the order their chunks finish
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * @return true if records are handled in file order
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * read a whole RDfile into a document, in file order.
+     *
+     * @param file
+     * @return document with a cml root holding every record
+     * @throws IOException
+     * @throws RuntimeException
+     */
+    public Document read(File file) throws RuntimeException, IOException {
+        final CMLCml cml = new CMLCml();
+        read(file, RDFIndex.open(file), new RecordHandler() {
+            public void handle(CMLElement record) {
+                cml.appendChild(record);
+            }
+        }, true);
+        return new Document(cml);
+    }
+
+    /**
+     * read an RDfile, indexing it (or reusing its sidecar index) first.
+     *
+     * @param file
+     * @param handler called on this thread for every record
+     * @return number of records handled
+     * @throws IOException
+     * @throws RuntimeException
+     */
+    public int read(File file, RecordHandler handler)
+            throws RuntimeException, IOException {
+        return read(file, RDFIndex.open(file), handler);
+    }
+
+    /**
+     * read an indexed RDfile.
+     *
+     * @param file
+     * @param index of file
+     * @param handler called on this thread for every record
+     * @return number of records handled, less than index.size() if records
+     *         are filtered out or skipped as corrupt
+     * @throws IOException
+     * @throws RuntimeException
+     */
+    public int read(File file, RDFIndex index, RecordHandler handler)
+            throws RuntimeException, IOException {
+        return read(file, index, handler, ordered);
+    }
+
+    private int read(File file, RDFIndex index, RecordHandler handler,
+            boolean ordered) throws RuntimeException, IOException {
+        ConversionMetrics.count(converter.getMetrics(),
+                ConversionMetrics.Counter.BYTES, file.length());
+        int chunkRecords = this.chunkRecords;
+        int records = index.size();
+        int chunks = (records + chunkRecords - 1) / chunkRecords;
+        int maxInFlight = threadCount * QUEUE_FACTOR;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CompletionService<Chunk> completion = new ExecutorCompletionService<Chunk>(executor);
+        Map<Integer, Chunk> waiting = new HashMap<Integer, Chunk>();
+        int submitted = 0;
+        int delivered = 0;
+        int handled = 0;
+        MappedLineNumberReader mapped = new MappedLineNumberReader(file);
+        try {
+            while (delivered < chunks) {
+                while (submitted < chunks && submitted - delivered < maxInFlight) {
+                    int from = submitted * chunkRecords;
+                    int to = Math.min(records, from + chunkRecords);
+                    completion.submit(new Chunk(converter, mapped, index, submitted, from, to));
+                    submitted++;
+                }
+                Chunk chunk = take(completion);
+                if (ordered) {
+                    waiting.put(chunk.number, chunk);
+                    while ((chunk = waiting.remove(delivered)) != null) {
+                        handled += chunk.handle(handler);
+                        delivered++;
+                    }
+                } else {
+                    handled += chunk.handle(handler);
+                    delivered++;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+            mapped.close();
+        }
+        return handled;
+    }
+
+    /* tasks still running must be done with the mapping before it is closed */
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Chunk take(CompletionService<Chunk> completion)
+            throws IOException {
+        try {
+            return completion.take().get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted reading RDF");
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Cannot read RDF", cause);
+        }
+    }
+
+    /** a run of consecutive records, parsed by one task */
+    private static class Chunk implements Callable<Chunk> {
+
+        private RDFConverter converter;
+        private MappedLineNumberReader mapped;
+        private RDFIndex index;
+        private int number;
+        private int from;
+        private int to;
+        private List<CMLElement> records;
+
+        Chunk(RDFConverter converter, MappedLineNumberReader mapped,
+                RDFIndex index, int number, int from, int to) {
+            this.converter = converter;
+            this.mapped = mapped;
+            this.index = index;
+            this.number = number;
+            this.from = from;
+            this.to = to;
+        }
+
+        public Chunk call() throws IOException {
+            records = new ArrayList<CMLElement>(to - from);
+            MappedLineNumberReader br = mapped.duplicate();
+            try {
+                // records are contiguous, so after the first seek each
+                // record ends where the next one starts. A corrupt record
+                // may be read past its end, so stop at the next chunk's
+                // first record rather than after to - from records.
+                long end = (to < index.size()) ? index.getOffset(to)
+                        : Long.MAX_VALUE;
+                RDFContext context = converter.seek(br, index, from);
+                while (context.line != null && context.lineOffset < end) {
+                    CMLElement record = converter.readRecoveringRecord(context);
+                    if (record != null) {
+                        records.add(record);
+                    }
+                }
+            } finally {
+                br.close();
+            }
+            return this;
+        }
+
+        int handle(RecordHandler handler) throws IOException {
+            int count = records.size();
+            long start = ConversionMetrics.start(converter.getMetrics());
+            for (CMLElement record : records) {
+                handler.handle(record);
+            }
+            ConversionMetrics.stop(converter.getMetrics(),
+                    ConversionMetrics.Stage.SERIALIZE, start);
+            records = null;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.xmlcml.cml.converters.reaction.core.Quarantine;
+
+/**
+ * copies each corrupt record of an RDfile into a {@link Quarantine}.
+ *
+ * Set on an RDFConverter that skips corrupt records; each skipped span is
+ * copied from the file byte for byte, with its record number, line and
+ * exception in the quarantine manifest. The copy needs the byte offsets of
+ * the span, which RDFConverter.read(File) gives by mapping the file while a
+ * listener is set. A record that cannot be copied is logged and the read
+ * carries on.
+ */
+public class RDFQuarantine implements RDFCorruptRecordListener {
+
+    private static Logger logger = Logger.getLogger(RDFQuarantine.class
+            .getName());
+
+    private Quarantine quarantine;
+    private File file;
+
+    /**
+     * @param quarantine
+     * @param file
+     *            the RDfile being read
+     */
+    public RDFQuarantine(Quarantine quarantine, File file) {
+        this.quarantine = quarantine;
+        this.file = file;
+    }
+
+    /**
+     * @param record
+     */
+    public void corrupt(RDFCorruptRecord record) {
+        try {
+            quarantine.add(file, record.getRecord(), record.getLineNumber(),
+                    record.getOffset(), record.getEndOffset(), record
+                            .getCause());
+        } catch (IOException ioe) {
+            logger.warning("Cannot quarantine " + record + ": " + ioe);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * the unparsed fields of one RDF record, as seen by an RDFRecordFilter.
+ * 
+ * Holds the identifier line ($RFMT, $MFMT or a registry line) and the
+ * $DTYPE/$DATUM pairs of the record. Multi-line text data are joined with
+ * newlines; a datum that is an embedded structure is given as its first
+ * token ($MFMT or $RXN) and its lines are not kept.
+ */
+public class RDFRawRecord {
+
+    private String identifier;
+    private List<String> dataTypes = new ArrayList<String>();
+    private List<String> data = new ArrayList<String>();
+
+    /**
+     * @param identifier first line of the record
+     */
+    public RDFRawRecord(String identifier) {
+        this.identifier = identifier;
+    }
+
+    /**
+     * @param dataType from $DTYPE
+     * @param datum from $DATUM
+     */
+    public void addDatum(String dataType, String datum) {
+        dataTypes.add(dataType);
+        data.add(datum);
+    }
+
+    /**
+     * @return first line of the record, such as "$RFMT $RIREG 7439"
+     */
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return registry number from the identifier or RDFIndex.NO_REGISTRY
+     */
+    public long getRegistryNumber() {
+        return RDFIndex.registryNumber(identifier);
+    }
+
+    /**
+     * @return $DTYPE names in file order
+     */
+    public List<String> getDataTypes() {
+        return dataTypes;
+    }
+
+    /**
+     * @param dataType exact $DTYPE name
+     * @return first datum with that name, or null
+     */
+    public String getDatum(String dataType) {
+        int idx = dataTypes.indexOf(dataType);
+        return (idx == -1) ? null : data.get(idx);
+    }
+
+    /**
+     * @param pattern $DTYPE name with '*' and '?' wildcards, as in
+     *            DataTypeFilter
+     * @return first datum whose name matches, or null
+     */
+    public String findDatum(String pattern) {
+        Pattern p = DataTypeFilter.compile(pattern);
+        for (int i = 0; i < dataTypes.size(); i++) {
+            if (p.matcher(dataTypes.get(i)).matches()) {
+                return data.get(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+/**
+ * decides from its raw fields whether an RDF record is converted.
+ * 
+ * Set with {@link RDFConverter#setRecordFilter(RDFRecordFilter)}. The
+ * filter sees the record before any CML is built for it; a rejected record
+ * costs only a scan of its lines.
+ */
+public interface RDFRecordFilter {
+
+    /**
+     * @param record identifier line and text data of the record
+     * @return true if the record is to be converted
+     */
+    boolean accept(RDFRawRecord record);
+}
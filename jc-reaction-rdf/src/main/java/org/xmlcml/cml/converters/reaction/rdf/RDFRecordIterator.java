@@ -0,0 +1,68 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.xmlcml.cml.base.CMLElement;
+
+/**
+ * pulls records from an RDfile one at a time.
+ * 
+ * Created by {@link RDFConverter#iterator(LineNumberReader)}, which has
+ * already consumed the file header. Each record is parsed only when it is
+ * asked for and nothing is retained once it has been returned.
+ * 
+ * IOExceptions are rethrown as RuntimeExceptions as Iterator cannot throw
+ * checked exceptions.
+ */
+public class RDFRecordIterator implements Iterator<CMLElement> {
+
+    private RDFConverter converter;
+    private RDFContext context;
+    private CMLElement next;
+    private boolean finished;
+
+    RDFRecordIterator(RDFConverter converter, RDFContext context) {
+        this.converter = converter;
+        this.context = context;
+    }
+
+    /**
+     * @return true if another record is available
+     */
+    public boolean hasNext() {
+        if (next == null && !finished) {
+            try {
+                next = converter.readNextRecord(context);
+            } catch (IOException ioe) {
+                throw new RuntimeException("Cannot read RDF record at line: "
+                        + context.br.getLineNumber(), ioe);
+            }
+            if (next == null) {
+                finished = true;
+            }
+        }
+        return next != null;
+    }
+
+    /**
+     * @return the next record (CMLReaction or CMLMolecule)
+     */
+    public CMLElement next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("No more RDF records");
+        }
+        CMLElement record = next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * not supported.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+}
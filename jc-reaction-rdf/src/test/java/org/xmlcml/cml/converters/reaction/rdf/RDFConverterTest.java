@@ -0,0 +1,340 @@
+package org.xmlcml.cml.converters.reaction.rdf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import nu.xom.Document;
+import nu.xom.Element;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.converters.reaction.core.MappedLineNumberReader;
+import org.xmlcml.cml.converters.reaction.core.RecordHandler;
+
+public class RDFConverterTest {
+
+	static final String RECORDS = "$RDFILE 1\n"
+			+ "$DATM 1/1/1 1:1\n"
+			+ "$RIREG 1\n"
+			+ "$DTYPE A\n"
+			+ "$DATUM x\n"
+			+ "$RIREG 2\n"
+			+ "$DTYPE B\n"
+			+ "$DATUM y\n"
+			+ "$RIREG 3\n"
+			+ "$DTYPE C\n"
+			+ "$DATUM z\n"
+			+ "$RIREG 4\n"
+			+ "$DTYPE D\n"
+			+ "$DATUM w\n";
+
+	static File write(String s) throws IOException {
+		File file = File.createTempFile("rdf", ".rdf");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		writer.write(s);
+		writer.close();
+		return file;
+	}
+
+	@Test
+	public void testIndex() throws IOException {
+		File file = write(RECORDS);
+		File sidecar = RDFIndex.getSidecar(file);
+		sidecar.deleteOnExit();
+		RDFIndex index = RDFIndex.open(file);
+		Assert.assertTrue(sidecar.exists());
+		Assert.assertEquals(4, index.size());
+		Assert.assertEquals(RECORDS.indexOf("$RIREG 3"), index.getOffset(2));
+		Assert.assertEquals(8, index.getLineNumber(2));
+		Assert.assertEquals(4, index.getRegistryNumber(3));
+		Assert.assertEquals(1, index.indexOfRegistryNumber(2));
+
+		RDFIndex reopened = RDFIndex.open(file);
+		Assert.assertEquals(4, reopened.size());
+		for (int i = 0; i < 4; i++) {
+			Assert.assertEquals(index.getOffset(i), reopened.getOffset(i));
+			Assert.assertEquals(index.getRegistryNumber(i), reopened
+					.getRegistryNumber(i));
+		}
+	}
+
+	@Test
+	public void testIndexRegistryIds() throws IOException {
+		File file = write("$RDFILE 1\n$DATM 1/1/1 1:1\n"
+				+ "$RFMT $RIREG 50-00-0 $REREG 7\n$DTYPE A\n$DATUM x\n"
+				+ "$RFMT $REREG 8\n$DTYPE A\n$DATUM y\n"
+				+ "$RFMT $RIREG 9 $REREG 64-17-5\n$DTYPE A\n$DATUM z\n"
+				+ "$RFMT\n$DTYPE A\n$DATUM w\n");
+		RDFIndex.getSidecar(file).deleteOnExit();
+		RDFIndex.open(file);
+		RDFIndex index = RDFIndex.open(file);
+		Assert.assertEquals(4, index.size());
+		Assert.assertEquals("50-00-0", index.getRegistryId(0));
+		Assert.assertEquals(7, index.getRegistryNumber(0));
+		Assert.assertEquals("8", index.getRegistryId(1));
+		Assert.assertEquals(9, index.getRegistryNumber(2));
+		Assert.assertNull(index.getRegistryId(3));
+		Assert.assertEquals(RDFIndex.NO_REGISTRY, index.getRegistryNumber(3));
+		Assert.assertEquals(0, index.indexOfRegistryId("50-00-0"));
+		Assert.assertEquals(0, index.indexOfRegistryId("7"));
+		Assert.assertEquals(2, index.indexOfRegistryId("64-17-5"));
+		Assert.assertEquals(-1, index.indexOfRegistryId("71-43-2"));
+		Assert.assertEquals(0, index.indexOfRegistryNumber(7));
+		Assert.assertEquals(1, index.indexOfRegistryNumber(8));
+		Assert.assertEquals(-1, index.indexOfRegistryNumber(64));
+	}
+
+	@Test
+	public void testIndexRebuiltFromBadSidecar() throws IOException {
+		File file = write(RECORDS);
+		File sidecar = RDFIndex.getSidecar(file);
+		sidecar.deleteOnExit();
+		RDFIndex.open(file);
+		long length = sidecar.length();
+
+		// truncated
+		FileOutputStream fos = new FileOutputStream(sidecar, true);
+		fos.getChannel().truncate(length - 10);
+		fos.close();
+		Assert.assertEquals(4, RDFIndex.open(file).size());
+		Assert.assertEquals(length, sidecar.length());
+
+		// not an index at all
+		FileWriter writer = new FileWriter(sidecar);
+		writer.write("garbage");
+		writer.close();
+		Assert.assertEquals(4, RDFIndex.open(file).size());
+		Assert.assertEquals(4, RDFIndex.read(sidecar).size());
+	}
+
+	@Test
+	public void testParallelMatchesSequential() throws IOException {
+		StringBuilder sb = new StringBuilder(RECORDS);
+		for (int i = 5; i <= 50; i++) {
+			sb.append("$RIREG " + i + "\n$DTYPE T\n$DATUM " + i + "\n");
+		}
+		File file = write(sb.toString());
+		RDFIndex.getSidecar(file).deleteOnExit();
+		Document document = new RDFConverter().read(file);
+		Assert.assertEquals(50, document.getRootElement().getChildCount());
+		String sequential = document.toXML();
+		RDFParallelReader reader = new RDFParallelReader(4);
+		reader.setChunkRecords(3);
+		reader.setOrdered(false);
+		Assert.assertEquals(sequential, reader.read(file).toXML());
+		Assert.assertFalse(reader.isOrdered());
+	}
+
+	static List<String> ids(RDFConverter converter, LineNumberReader br)
+			throws IOException {
+		List<String> ids = new ArrayList<String>();
+		Element cml = converter.read(br).getRootElement();
+		for (int i = 0; i < cml.getChildCount(); i++) {
+			ids.add(((Element) cml.getChild(i)).getAttributeValue("id"));
+		}
+		return ids;
+	}
+
+	@Test
+	public void testSkipCorrupt() throws IOException {
+		String records = RECORDS.replace("$DTYPE B\n", "garbage\n$DTYPE B\n")
+				.replace("$RIREG 3", "junk\n$RIREG 3");
+		final List<RDFCorruptRecord> corrupt = new ArrayList<RDFCorruptRecord>();
+		RDFConverter converter = new RDFConverter();
+		converter.setSkipCorrupt(true);
+		converter.setCorruptRecordListener(new RDFCorruptRecordListener() {
+			public void corrupt(RDFCorruptRecord record) {
+				corrupt.add(record);
+			}
+		});
+		Assert.assertEquals(Arrays.asList("r1", "r3", "r4"), ids(converter,
+				new LineNumberReader(new StringReader(records))));
+		Assert.assertEquals(1, corrupt.size());
+		Assert.assertEquals(1, corrupt.get(0).getRecord());
+		Assert.assertEquals(6, corrupt.get(0).getLineNumber());
+		Assert.assertEquals(10, corrupt.get(0).getEndLineNumber());
+		Assert.assertEquals(-1, corrupt.get(0).getOffset());
+
+		corrupt.clear();
+		MappedLineNumberReader br = new MappedLineNumberReader(write(records));
+		try {
+			Assert.assertEquals(Arrays.asList("r1", "r3", "r4"), ids(converter, br));
+		} finally {
+			br.close();
+		}
+		Assert.assertEquals(records.indexOf("$RIREG 2"), corrupt.get(0).getOffset());
+		Assert.assertEquals(records.indexOf("$RIREG 3"), corrupt.get(0)
+				.getEndOffset());
+
+		converter.setSkipCorrupt(false);
+		try {
+			ids(converter, new LineNumberReader(new StringReader(records)));
+			Assert.fail("corrupt record not thrown");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testParallelCorruptOverrun() throws IOException {
+		// the molfile in record 2 claims more atoms than it has, so its
+		// parse runs on into record 3
+		String records = RECORDS.replace("$DATUM y\n", "$DATUM $MFMT\n\n  test\n\n"
+				+ "  9  0  0  0  0  0  0  0  0  0999 V2000\n");
+		File file = write(records);
+		RDFIndex.getSidecar(file).deleteOnExit();
+		final List<RDFCorruptRecord> corrupt = new ArrayList<RDFCorruptRecord>();
+		RDFConverter converter = new RDFConverter();
+		converter.setSkipCorrupt(true);
+		converter.setCorruptRecordListener(new RDFCorruptRecordListener() {
+			public void corrupt(RDFCorruptRecord record) {
+				corrupt.add(record);
+			}
+		});
+		List<String> sequential = ids(converter, new LineNumberReader(
+				new StringReader(records)));
+		Assert.assertEquals(1, corrupt.size());
+		RDFParallelReader reader = new RDFParallelReader(converter, 2);
+		reader.setChunkRecords(3);
+		final List<String> parallel = new ArrayList<String>();
+		int handled = reader.read(file, new RecordHandler() {
+			public void handle(CMLElement record) {
+				parallel.add(record.getAttributeValue("id"));
+			}
+		});
+		Assert.assertEquals(sequential, parallel);
+		Assert.assertEquals(sequential.size(), handled);
+	}
+
+	@Test
+	public void testIterator() throws IOException {
+		Element cml = new RDFConverter().read(
+				new LineNumberReader(new StringReader(RECORDS))).getRootElement();
+		Assert.assertEquals(4, cml.getChildCount());
+		Iterator<CMLElement> iterator = new RDFConverter()
+				.iterator(new LineNumberReader(new StringReader(RECORDS)));
+		for (int i = 0; i < cml.getChildCount(); i++) {
+			Assert.assertTrue(iterator.hasNext());
+			Assert.assertTrue(iterator.hasNext());
+			CMLElement record = iterator.next();
+			Assert.assertNull(record.getParent());
+			Assert.assertEquals(cml.getChild(i).toXML(), record.toXML());
+		}
+		Assert.assertFalse(iterator.hasNext());
+		try {
+			iterator.next();
+			Assert.fail("next() past the last record");
+		} catch (NoSuchElementException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testDataTypeFilter() throws IOException {
+		DataTypeFilter filter = new DataTypeFilter().include("RXN:*").exclude(
+				"*:SOLVENT");
+		Assert.assertTrue(filter.accept("rxn:yield"));
+		Assert.assertFalse(filter.accept("RXN:SOLVENT"));
+		Assert.assertFalse(filter.accept("MOL:YIELD"));
+		Assert.assertTrue(new DataTypeFilter().include("ROOT:REF(?)").accept(
+				"ROOT:REF(1)"));
+
+		String records = RECORDS + "$DTYPE RXN:YIELD\n$DATUM 95\n"
+				+ "$DTYPE RXN:SOLVENT\n$DATUM water\n";
+		RDFConverter converter = new RDFConverter();
+		converter.setDataTypeFilter(filter);
+		Element cml = converter.read(
+				new LineNumberReader(new StringReader(records))).getRootElement();
+		Assert.assertEquals(4, cml.getChildCount());
+		for (int i = 0; i < 3; i++) {
+			Assert.assertEquals(0, ((Element) cml.getChild(i)).getChildCount());
+		}
+		String last = cml.getChild(3).toXML();
+		Assert.assertTrue(last, last.indexOf("RXN:YIELD") != -1);
+		Assert.assertEquals(-1, last.indexOf("water"));
+		Assert.assertEquals(-1, last.indexOf("\"D\""));
+	}
+
+	@Test
+	public void testRecordFilter() throws IOException {
+		final List<String> seen = new ArrayList<String>();
+		RDFConverter converter = new RDFConverter();
+		converter.setRecordFilter(new RDFRecordFilter() {
+			public boolean accept(RDFRawRecord record) {
+				seen.add(record.getDataTypes().get(0));
+				return record.getRegistryNumber() % 2 == 0
+						|| "z".equals(record.getDatum("C"));
+			}
+		});
+		List<String> expected = Arrays.asList("r2", "r3", "r4");
+		Assert.assertEquals(expected, ids(converter, new LineNumberReader(
+				new StringReader(RECORDS))));
+		Assert.assertEquals(Arrays.asList("A", "B", "C", "D"), seen);
+		// records longer than the limit are replayed from a spill file
+		File spill = File.createTempFile("spill", "");
+		spill.delete();
+		spill.mkdir();
+		converter.setDatumLimit(4);
+		converter.setSpillDirectory(spill);
+		Assert.assertEquals(expected, ids(converter, new LineNumberReader(
+				new StringReader(RECORDS))));
+		Assert.assertEquals(0, spill.list().length);
+		spill.delete();
+		MappedLineNumberReader br = new MappedLineNumberReader(write(RECORDS));
+		try {
+			Assert.assertEquals(expected, ids(converter, br));
+		} finally {
+			br.close();
+		}
+	}
+
+	@Test
+	public void testSharedConverter() throws Exception {
+		final RDFConverter converter = new RDFConverter();
+		final String[] inputs = new String[8];
+		final String[] expected = new String[inputs.length];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = RECORDS.replace("$RIREG ", "$RIREG " + i).replace(
+					"$DATUM ", "$DATUM " + i);
+			expected[i] = converter.read(
+					new LineNumberReader(new StringReader(inputs[i])))
+					.getRootElement().toXML();
+		}
+		Assert.assertFalse(expected[0].equals(expected[1]));
+		ExecutorService executor = Executors.newFixedThreadPool(inputs.length);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 10 * inputs.length; i++) {
+				final String input = inputs[i % inputs.length];
+				results.add(executor.submit(new Callable<String>() {
+					public String call() throws IOException {
+						return converter.read(
+								new LineNumberReader(new StringReader(input)))
+								.getRootElement().toXML();
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				Assert.assertEquals(expected[i % inputs.length], results.get(i)
+						.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+/**
+ * receives the atom-map report of every reaction that has problems, so
+ * that a bulk conversion can log or collect them and carry on.
+ *
+ * The converters call it on the thread that parsed the reaction; a
+ * listener shared by several threads must be thread-safe.
+ */
+public interface AtomMapListener {
+
+    /**
+     * @param report
+     *            not clean
+     */
+    void report(AtomMapReport report);
+}
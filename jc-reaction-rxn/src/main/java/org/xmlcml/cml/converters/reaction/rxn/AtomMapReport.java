@@ -0,0 +1,154 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xmlcml.cml.base.CMLConstants;
+
+/**
+ * the atom-atom mapping problems found in one reaction.
+ *
+ * Every mapped atom is checked when the atom map is built, and every
+ * problem is listed rather than only the first. Reactions whose map is
+ * consistent give an empty report and cost no allocation.
+ */
+public class AtomMapReport implements CMLConstants {
+
+    /** what to do with the maps of a reaction that has problems */
+    public enum Policy {
+        /** throw on the first duplicate or reactant number without a product */
+        FAIL,
+        /** link only numbers used once on each side; remove the other maps */
+        DROP,
+        /** as DROP, then number the linked pairs 1, 2, ... in reactant order */
+        RENUMBER
+    }
+
+    /** kinds of problem */
+    public enum Kind {
+        /** number used by more than one atom on the same side */
+        DUPLICATE,
+        /** number used on one side only */
+        ORPHAN,
+        /** atom other than hydrogen without a number in a mapped reaction */
+        UNMAPPED
+    }
+
+    /** one problem with one atom */
+    public static class Problem {
+
+        private Kind kind;
+        private boolean product;
+        private String atomId;
+        private int map;
+
+        Problem(Kind kind, boolean product, String atomId, int map) {
+            this.kind = kind;
+            this.product = product;
+            this.atomId = atomId;
+            this.map = map;
+        }
+
+        /**
+         * @return kind
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return true if the atom is in a product
+         */
+        public boolean isProduct() {
+            return product;
+        }
+
+        /**
+         * @return id of the atom
+         */
+        public String getAtomId() {
+            return atomId;
+        }
+
+        /**
+         * @return mapping number, 0 for UNMAPPED
+         */
+        public int getMap() {
+            return map;
+        }
+
+        /**
+         * @return kind, side, atom id and number separated by tabs
+         */
+        public String toString() {
+            return kind + S_TAB + (product ? "product" : "reactant") + S_TAB
+                    + atomId + S_TAB + map;
+        }
+    }
+
+    private String reactionId;
+    private List<Problem> problems;
+
+    AtomMapReport(String reactionId) {
+        this.reactionId = reactionId;
+    }
+
+    void add(Kind kind, boolean product, String atomId, int map) {
+        if (problems == null) {
+            problems = new ArrayList<Problem>();
+        }
+        problems.add(new Problem(kind, product, atomId, map));
+    }
+
+    /**
+     * @return id of the reaction
+     */
+    public String getReactionId() {
+        return reactionId;
+    }
+
+    /**
+     * @return true if no problem was found
+     */
+    public boolean isClean() {
+        return problems == null;
+    }
+
+    /**
+     * @return problems in the order found
+     */
+    public List<Problem> getProblems() {
+        if (problems == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * @param kind
+     * @return number of problems of this kind
+     */
+    public int count(Kind kind) {
+        int count = 0;
+        if (problems != null) {
+            for (Problem problem : problems) {
+                if (problem.kind == kind) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return one line per problem, each starting with the reaction id
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Problem problem : getProblems()) {
+            sb.append(reactionId).append(S_TAB).append(problem).append(S_NL);
+        }
+        return sb.toString();
+    }
+}
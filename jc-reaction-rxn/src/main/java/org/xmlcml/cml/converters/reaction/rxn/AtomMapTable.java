@@ -0,0 +1,224 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLLink;
+import org.xmlcml.cml.element.CMLMap;
+import org.xmlcml.cml.element.CMLScalar;
+
+/**
+ * the mapped atoms of one reaction, recorded by MolfileReader as it reads
+ * the atom blocks.
+ *
+ * Each side keeps its atoms, their atom-map scalars and their atom-atom
+ * mapping numbers in parallel arrays, in the order the atoms were read.
+ * Atoms other than hydrogen are kept even if unmapped (number 0) so that
+ * they can be reported. The numbers come from a three-column field, so
+ * {@link #createMap(String, AtomMapReport.Policy, AtomMapReport)} resolves
+ * them through tables indexed by the number itself: one pass over each
+ * side fills them and finds every duplicate and orphan, and no String or
+ * boxed key is made for any atom.
+ */
+final class AtomMapTable {
+
+    private Side reactants = new Side();
+    private Side products = new Side();
+
+    /**
+     * @param atom
+     * @param scalar holding the number; null if unmapped
+     * @param map 0 if unmapped
+     * @param product
+     */
+    void add(CMLAtom atom, CMLScalar scalar, int map, boolean product) {
+        (product ? products : reactants).add(atom, scalar, map);
+    }
+
+    /**
+     * link each mapped reactant atom to the product atom with the same
+     * number, checking every number on both sides.
+     *
+     * @param linkTitle
+     * @param policy
+     *            FAIL throws as soon as a product number is used twice or a
+     *            reactant number has no product atom free to link to; the
+     *            other policies never throw
+     * @param report
+     *            receives every problem; may be null
+     * @return map from product to reactant, or null if no product atom is
+     *         mapped
+     * @throws RuntimeException
+     *             with policy FAIL
+     */
+    CMLMap createMap(String linkTitle, AtomMapReport.Policy policy,
+            AtomMapReport report) throws RuntimeException {
+        boolean fail = (policy == AtomMapReport.Policy.FAIL);
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (Side side : new Side[] { reactants, products }) {
+            for (int i = 0; i < side.size; i++) {
+                if (side.maps[i] != 0) {
+                    min = Math.min(min, side.maps[i]);
+                    max = Math.max(max, side.maps[i]);
+                }
+            }
+        }
+        if (min > max) {
+            // nothing mapped; unmapped atoms are not problems
+            return null;
+        }
+        // index + 1 of the atom with each number; 0 if none, -1 if several
+        int[] productAt = new int[max - min + 1];
+        int[] reactantAt = new int[max - min + 1];
+        boolean productMapped = false;
+        for (int i = 0; i < products.size; i++) {
+            int map = products.maps[i];
+            if (map == 0) {
+                continue;
+            }
+            productMapped = true;
+            int slot = map - min;
+            if (productAt[slot] == 0) {
+                productAt[slot] = i + 1;
+            } else {
+                if (fail) {
+                    throw new RuntimeException("Duplicate ISIS RXN atom map: "
+                            + map);
+                }
+                duplicate(products, productAt, slot, i, true, report);
+            }
+        }
+        for (int i = 0; i < reactants.size; i++) {
+            int map = reactants.maps[i];
+            if (map == 0) {
+                continue;
+            }
+            int slot = map - min;
+            if (fail && productMapped
+                    && (productAt[slot] == 0 || reactantAt[slot] != 0)) {
+                // a number already linked has no free product atom
+                throw new RuntimeException("No target for " + map
+                        + " in RXN atom map");
+            }
+            if (reactantAt[slot] == 0) {
+                reactantAt[slot] = i + 1;
+            } else {
+                duplicate(reactants, reactantAt, slot, i, false, report);
+            }
+        }
+        if (report != null) {
+            orphans(reactants, productAt, min, false, report);
+            orphans(products, reactantAt, min, true, report);
+            unmapped(reactants, false, report);
+            unmapped(products, true, report);
+        }
+        if (!productMapped) {
+            // every reactant number is an orphan
+            if (!fail) {
+                drop(reactants, productAt, reactantAt, min);
+            }
+            return null;
+        }
+
+        CMLMap cmlMap = new CMLMap();
+        cmlMap.setTitle("from product to reactant");
+        int renumbered = 0;
+        for (int i = 0; i < reactants.size; i++) {
+            int map = reactants.maps[i];
+            if (map == 0) {
+                continue;
+            }
+            int slot = map - min;
+            int target = productAt[slot];
+            if (target <= 0 || reactantAt[slot] <= 0) {
+                continue;
+            }
+            CMLLink link = new CMLLink();
+            link.setFrom(products.atoms[target - 1].getId());
+            link.setTo(reactants.atoms[i].getId());
+            cmlMap.addLink(link);
+            link.setTitle(linkTitle);
+            if (policy == AtomMapReport.Policy.RENUMBER) {
+                renumbered++;
+                reactants.scalars[i].setValue(renumbered);
+                products.scalars[target - 1].setValue(renumbered);
+            }
+        }
+        if (!fail) {
+            drop(reactants, productAt, reactantAt, min);
+            drop(products, reactantAt, productAt, min);
+        }
+        return cmlMap;
+    }
+
+    /* the number at slot is used more than once on this side */
+    private static void duplicate(Side side, int[] at, int slot, int i,
+            boolean product, AtomMapReport report) {
+        if (report != null) {
+            if (at[slot] > 0) {
+                int first = at[slot] - 1;
+                report.add(AtomMapReport.Kind.DUPLICATE, product,
+                        side.atoms[first].getId(), side.maps[first]);
+            }
+            report.add(AtomMapReport.Kind.DUPLICATE, product, side.atoms[i]
+                    .getId(), side.maps[i]);
+        }
+        at[slot] = -1;
+    }
+
+    private static void orphans(Side side, int[] otherAt, int min,
+            boolean product, AtomMapReport report) {
+        for (int i = 0; i < side.size; i++) {
+            int map = side.maps[i];
+            if (map != 0 && otherAt[map - min] == 0) {
+                report.add(AtomMapReport.Kind.ORPHAN, product, side.atoms[i]
+                        .getId(), map);
+            }
+        }
+    }
+
+    private static void unmapped(Side side, boolean product,
+            AtomMapReport report) {
+        for (int i = 0; i < side.size; i++) {
+            if (side.maps[i] == 0) {
+                report.add(AtomMapReport.Kind.UNMAPPED, product, side.atoms[i]
+                        .getId(), 0);
+            }
+        }
+    }
+
+    /* remove the scalars of numbers not linked */
+    private static void drop(Side side, int[] otherAt, int[] at, int min) {
+        for (int i = 0; i < side.size; i++) {
+            int map = side.maps[i];
+            if (map != 0 && (otherAt[map - min] <= 0 || at[map - min] <= 0)) {
+                side.scalars[i].detach();
+            }
+        }
+    }
+
+    private static class Side {
+
+        CMLAtom[] atoms = new CMLAtom[16];
+        CMLScalar[] scalars = new CMLScalar[16];
+        int[] maps = new int[16];
+        int size;
+
+        void add(CMLAtom atom, CMLScalar scalar, int map) {
+            if (size == maps.length) {
+                CMLAtom[] newAtoms = new CMLAtom[2 * size];
+                System.arraycopy(atoms, 0, newAtoms, 0, size);
+                atoms = newAtoms;
+                CMLScalar[] newScalars = new CMLScalar[2 * size];
+                System.arraycopy(scalars, 0, newScalars, 0, size);
+                scalars = newScalars;
+                int[] newMaps = new int[2 * size];
+                System.arraycopy(maps, 0, newMaps, 0, size);
+                maps = newMaps;
+            }
+            atoms[size] = atom;
+            scalars[size] = scalar;
+            maps[size] = map;
+            size++;
+        }
+    }
+}
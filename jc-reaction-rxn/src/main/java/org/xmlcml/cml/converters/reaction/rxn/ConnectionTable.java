@@ -0,0 +1,505 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLBond;
+import org.xmlcml.cml.element.CMLMolecule;
+
+/**
+ * the atoms and bonds of one molecule as plain arrays, and their SMILES.
+ *
+ * Only what a line-oriented export needs is kept: element, formal charge,
+ * atom-atom mapping number and MDL bond type. A table is read either
+ * straight from a V2000 molfile block, without creating any CML, or from a
+ * CMLMolecule already parsed.
+ *
+ * SMILES are written from the connection table as it stands. There is no
+ * aromaticity perception, canonical ordering, stereochemistry or isotope
+ * handling: atoms joined by an MDL aromatic bond (type 4) are written in
+ * lower case, query bonds (types 5-8) as '~', and implicit hydrogen counts
+ * of bracket atoms come from the lowest standard valence of the element
+ * that fits its bonds.
+ */
+final class ConnectionTable implements CMLConstants {
+
+    /** MDL aromatic bond type */
+    static final int AROMATIC = 4;
+
+    private static final String ORGANIC = " B C N O P S F Cl Br I ";
+    private static final String AROMATIC_ELEMENTS = " B C N O P S Se As Te ";
+    private static final String QUERY_ATOMS = " R R# A Q L LP * ";
+
+    int atomCount;
+    String[] symbols;
+    int[] charges;
+    int[] maps;
+    int bondCount;
+    int[] bondAtoms1;
+    int[] bondAtoms2;
+    int[] bondTypes;
+
+    ConnectionTable(int atomCount, int bondCount) {
+        this.atomCount = atomCount;
+        this.bondCount = bondCount;
+        symbols = new String[atomCount];
+        charges = new int[atomCount];
+        maps = new int[atomCount];
+        bondAtoms1 = new int[bondCount];
+        bondAtoms2 = new int[bondCount];
+        bondTypes = new int[bondCount];
+    }
+
+    /**
+     * read one molfile block.
+     *
+     * @param br positioned at the first (name) line of the header
+     * @return table
+     * @throws IOException
+     * @throws RuntimeException on a truncated or corrupt block
+     */
+    static ConnectionTable read(LineNumberReader br) throws IOException,
+            RuntimeException {
+        Reader reader = new Reader();
+        MolfileReader.parse(br, reader);
+        return reader.table;
+    }
+
+    /* fills a table from the lines of a block */
+    private static class Reader implements MolfileReader.Handler {
+
+        ConnectionTable table;
+
+        public void counts(String name, int atomCount, int bondCount) {
+            table = new ConnectionTable(atomCount, bondCount);
+        }
+
+        public void atom(int i, CharSequence line) {
+            table.symbols[i] = V2000Columns.elementSymbol(line);
+            table.charges[i] = V2000Columns.formalCharge(line);
+            table.maps[i] = V2000Columns.atomMap(line);
+        }
+
+        public void bond(int i, CharSequence line) {
+            int a1 = V2000Columns.parseInt(line, V2000Columns.BOND_ATOM1,
+                    V2000Columns.BOND_ATOM1 + V2000Columns.WIDTH);
+            int a2 = V2000Columns.parseInt(line, V2000Columns.BOND_ATOM2,
+                    V2000Columns.BOND_ATOM2 + V2000Columns.WIDTH);
+            if (a1 < 1 || a1 > table.atomCount || a2 < 1
+                    || a2 > table.atomCount) {
+                throw new RuntimeException("Bond atom out of range: " + line);
+            }
+            table.bondAtoms1[i] = a1 - 1;
+            table.bondAtoms2[i] = a2 - 1;
+            table.bondTypes[i] = V2000Columns.parseInt(line,
+                    V2000Columns.BOND_TYPE, V2000Columns.BOND_TYPE
+                            + V2000Columns.WIDTH);
+        }
+
+        public void resetCharges() {
+            for (int i = 0; i < table.atomCount; i++) {
+                table.charges[i] = 0;
+            }
+        }
+
+        public void charge(int i, int charge) {
+            table.charges[i] = charge;
+        }
+    }
+
+    /**
+     * table of a parsed molecule. Mapping numbers are read from the
+     * {@link MolfileReader#ATOM_MAP} scalars that MolfileReader adds.
+     *
+     * @param molecule
+     * @return table
+     */
+    static ConnectionTable fromMolecule(CMLMolecule molecule) {
+        List<CMLAtom> atoms = molecule.getAtoms();
+        List<CMLBond> bonds = molecule.getBonds();
+        ConnectionTable table = new ConnectionTable(atoms.size(), bonds.size());
+        Map<String, Integer> index = new HashMap<String, Integer>();
+        for (int i = 0; i < table.atomCount; i++) {
+            CMLAtom atom = atoms.get(i);
+            index.put(atom.getId(), i);
+            table.symbols[i] = atom.getElementType();
+            if (atom.getAttribute("formalCharge") != null) {
+                table.charges[i] = atom.getFormalCharge();
+            }
+            CMLElement scalar = atom.getFirstCMLChild("scalar");
+            if (scalar != null) {
+                table.maps[i] = Integer.parseInt(scalar.getXMLContent().trim());
+            }
+        }
+        for (int i = 0; i < table.bondCount; i++) {
+            CMLBond bond = bonds.get(i);
+            String[] refs = bond.getAtomRefs2();
+            Integer a1 = index.get(refs[0]);
+            Integer a2 = index.get(refs[1]);
+            if (a1 == null || a2 == null) {
+                throw new RuntimeException("Bond to unknown atom: " + refs[0]
+                        + S_SPACE + refs[1]);
+            }
+            table.bondAtoms1[i] = a1;
+            table.bondAtoms2[i] = a2;
+            table.bondTypes[i] = bondType(bond.getOrder());
+        }
+        return table;
+    }
+
+    /* MDL bond type of a CML order; unknown orders are query bonds */
+    private static int bondType(String order) {
+        if (CMLBond.SINGLE.equals(order) || CMLBond.SINGLE_S.equals(order)) {
+            return 1;
+        } else if (CMLBond.DOUBLE.equals(order)
+                || CMLBond.DOUBLE_D.equals(order)) {
+            return 2;
+        } else if (CMLBond.TRIPLE.equals(order)
+                || CMLBond.TRIPLE_T.equals(order)) {
+            return 3;
+        } else if (CMLBond.AROMATIC.equals(order)) {
+            return AROMATIC;
+        }
+        return 0;
+    }
+
+    /**
+     * append the SMILES of the molecule, with components separated by '.'
+     * and mapped atoms written as [C:n].
+     *
+     * @param sb
+     * @throws RuntimeException if more than 99 rings are open at once
+     */
+    void appendSmiles(StringBuilder sb) {
+        new Smiles(sb).write();
+    }
+
+    /*
+     * depth-first SMILES writer. A first pass finds the spanning tree and
+     * marks the remaining bonds as ring closures; the second writes atoms in
+     * the same order, opening each ring closure at the earlier atom. Both
+     * passes keep their own stack of atoms, so a long chain cannot overflow
+     * the thread's stack.
+     */
+    private class Smiles {
+
+        private StringBuilder sb;
+        private int[] adjacencyStart = new int[atomCount + 1];
+        private int[] adjacency = new int[2 * bondCount];
+        private int[] order = new int[atomCount];
+        private int[] parentBond = new int[atomCount];
+        private boolean[] ringBond = new boolean[bondCount];
+        private int[] ringDigit = new int[bondCount];
+        private boolean[] digitInUse = new boolean[100];
+        private boolean[] aromatic = new boolean[atomCount];
+        private int[] valence = new int[atomCount];
+        private int[] stack = new int[atomCount];
+        // next adjacency entry of each atom on the stack
+        private int[] cursor = new int[atomCount];
+        // last bond to a child of each atom on the stack; no brackets
+        private int[] lastChild = new int[atomCount];
+        private int visited;
+
+        Smiles(StringBuilder sb) {
+            this.sb = sb;
+            for (int b = 0; b < bondCount; b++) {
+                adjacencyStart[bondAtoms1[b] + 1]++;
+                adjacencyStart[bondAtoms2[b] + 1]++;
+            }
+            for (int i = 0; i < atomCount; i++) {
+                adjacencyStart[i + 1] += adjacencyStart[i];
+            }
+            int[] next = new int[atomCount];
+            System.arraycopy(adjacencyStart, 0, next, 0, atomCount);
+            for (int b = 0; b < bondCount; b++) {
+                adjacency[next[bondAtoms1[b]]++] = b;
+                adjacency[next[bondAtoms2[b]]++] = b;
+                // valence in half bonds, so that aromatic bonds count 1.5
+                int half = (bondTypes[b] == AROMATIC) ? 3
+                        : (bondTypes[b] >= 1 && bondTypes[b] <= 3) ? 2 * bondTypes[b]
+                                : 2;
+                valence[bondAtoms1[b]] += half;
+                valence[bondAtoms2[b]] += half;
+            }
+            for (int b = 0; b < bondCount; b++) {
+                if (bondTypes[b] == AROMATIC) {
+                    markAromatic(bondAtoms1[b]);
+                    markAromatic(bondAtoms2[b]);
+                }
+            }
+            for (int i = 0; i < atomCount; i++) {
+                order[i] = -1;
+            }
+        }
+
+        void write() {
+            boolean first = true;
+            for (int i = 0; i < atomCount; i++) {
+                if (order[i] == -1) {
+                    parentBond[i] = -1;
+                    span(i);
+                    if (!first) {
+                        sb.append(S_PERIOD);
+                    }
+                    writeAtom(i);
+                    first = false;
+                }
+            }
+        }
+
+        private void markAromatic(int atom) {
+            if (symbols[atom] != null
+                    && AROMATIC_ELEMENTS.indexOf(S_SPACE + symbols[atom]
+                            + S_SPACE) != -1) {
+                aromatic[atom] = true;
+            }
+        }
+
+        /* first pass */
+        private void span(int root) {
+            int top = 0;
+            stack[top++] = enterSpan(root);
+            while (top > 0) {
+                int atom = stack[top - 1];
+                if (cursor[atom] == adjacencyStart[atom + 1]) {
+                    top--;
+                    continue;
+                }
+                int b = adjacency[cursor[atom]++];
+                if (b == parentBond[atom]) {
+                    continue;
+                }
+                int other = other(b, atom);
+                if (order[other] == -1) {
+                    parentBond[other] = b;
+                    stack[top++] = enterSpan(other);
+                } else if (order[other] < order[atom]) {
+                    ringBond[b] = true;
+                }
+            }
+        }
+
+        private int enterSpan(int atom) {
+            order[atom] = visited++;
+            cursor[atom] = adjacencyStart[atom];
+            return atom;
+        }
+
+        /* second pass */
+        private void writeAtom(int root) {
+            int top = 0;
+            stack[top++] = enterWrite(root);
+            while (top > 0) {
+                int atom = stack[top - 1];
+                int b = -1;
+                while (cursor[atom] < adjacencyStart[atom + 1]) {
+                    int k = adjacency[cursor[atom]++];
+                    if (k != parentBond[atom]
+                            && parentBond[other(k, atom)] == k) {
+                        b = k;
+                        break;
+                    }
+                }
+                if (b == -1) {
+                    // subtree done; close its branch unless it was the last
+                    top--;
+                    if (top > 0
+                            && parentBond[atom] != lastChild[stack[top - 1]]) {
+                        sb.append(S_RBRAK);
+                    }
+                    continue;
+                }
+                if (b != lastChild[atom]) {
+                    sb.append(S_LBRAK);
+                }
+                appendBond(b);
+                stack[top++] = enterWrite(other(b, atom));
+            }
+        }
+
+        /* write the atom and its ring closures */
+        private int enterWrite(int atom) {
+            appendAtom(atom);
+            for (int k = adjacencyStart[atom]; k < adjacencyStart[atom + 1]; k++) {
+                int b = adjacency[k];
+                if (!ringBond[b]) {
+                    continue;
+                }
+                if (ringDigit[b] == 0) {
+                    ringDigit[b] = openDigit();
+                    appendBond(b);
+                    appendDigit(ringDigit[b]);
+                } else {
+                    appendDigit(ringDigit[b]);
+                    digitInUse[ringDigit[b]] = false;
+                }
+            }
+            lastChild[atom] = -1;
+            for (int k = adjacencyStart[atom]; k < adjacencyStart[atom + 1]; k++) {
+                int b = adjacency[k];
+                if (b != parentBond[atom] && parentBond[other(b, atom)] == b) {
+                    lastChild[atom] = b;
+                }
+            }
+            cursor[atom] = adjacencyStart[atom];
+            return atom;
+        }
+
+        private int other(int bond, int atom) {
+            return (bondAtoms1[bond] == atom) ? bondAtoms2[bond]
+                    : bondAtoms1[bond];
+        }
+
+        private int openDigit() {
+            for (int d = 1; d < digitInUse.length; d++) {
+                if (!digitInUse[d]) {
+                    digitInUse[d] = true;
+                    return d;
+                }
+            }
+            throw new RuntimeException("More than 99 open rings");
+        }
+
+        private void appendDigit(int digit) {
+            if (digit > 9) {
+                sb.append('%');
+            }
+            sb.append(digit);
+        }
+
+        private void appendBond(int bond) {
+            boolean bothAromatic = aromatic[bondAtoms1[bond]]
+                    && aromatic[bondAtoms2[bond]];
+            switch (bondTypes[bond]) {
+            case 1:
+                if (bothAromatic) {
+                    sb.append('-');
+                }
+                break;
+            case 2:
+                sb.append('=');
+                break;
+            case 3:
+                sb.append('#');
+                break;
+            case AROMATIC:
+                if (!bothAromatic) {
+                    sb.append(':');
+                }
+                break;
+            default:
+                sb.append('~');
+            }
+        }
+
+        private void appendAtom(int atom) {
+            String symbol = symbols[atom];
+            int charge = charges[atom];
+            int map = maps[atom];
+            if (symbol == null || QUERY_ATOMS.indexOf(S_SPACE + symbol + S_SPACE) != -1) {
+                symbol = "*";
+            } else if (aromatic[atom]) {
+                symbol = symbol.toLowerCase();
+            }
+            boolean organic = ORGANIC.indexOf(S_SPACE + symbols[atom] + S_SPACE) != -1;
+            if (organic && charge == 0 && map == 0) {
+                sb.append(symbol);
+                return;
+            }
+            sb.append('[');
+            if ("D".equals(symbol)) {
+                sb.append("2H");
+            } else if ("T".equals(symbol)) {
+                sb.append("3H");
+            } else {
+                sb.append(symbol);
+            }
+            int hydrogens = organic ? implicitHydrogens(atom) : 0;
+            if (hydrogens > 0) {
+                sb.append('H');
+                if (hydrogens > 1) {
+                    sb.append(hydrogens);
+                }
+            }
+            if (charge != 0) {
+                sb.append((charge > 0) ? '+' : '-');
+                if (Math.abs(charge) > 1) {
+                    sb.append(Math.abs(charge));
+                }
+            }
+            if (map != 0) {
+                sb.append(':').append(map);
+            }
+            sb.append(']');
+        }
+
+        /*
+         * hydrogens needed to reach the lowest standard valence of the
+         * element that is not below its bond order sum. A charge shifts the
+         * element to its isoelectronic neighbour, so N+ is treated as C and
+         * O- as F.
+         */
+        private int implicitHydrogens(int atom) {
+            String symbol = symbols[atom];
+            int electrons;
+            boolean period2;
+            if ("B".equals(symbol)) {
+                electrons = 3;
+                period2 = true;
+            } else if ("C".equals(symbol)) {
+                electrons = 4;
+                period2 = true;
+            } else if ("N".equals(symbol)) {
+                electrons = 5;
+                period2 = true;
+            } else if ("O".equals(symbol)) {
+                electrons = 6;
+                period2 = true;
+            } else if ("P".equals(symbol)) {
+                electrons = 5;
+                period2 = false;
+            } else if ("S".equals(symbol)) {
+                electrons = 6;
+                period2 = false;
+            } else {
+                // halogens
+                electrons = 7;
+                period2 = true;
+            }
+            electrons -= charges[atom];
+            int[] standard;
+            switch (electrons) {
+            case 3:
+                standard = new int[] { 3 };
+                break;
+            case 4:
+                standard = new int[] { 4 };
+                break;
+            case 5:
+                standard = period2 ? new int[] { 3 } : new int[] { 3, 5 };
+                break;
+            case 6:
+                standard = period2 ? new int[] { 2 } : new int[] { 2, 4, 6 };
+                break;
+            case 7:
+                standard = new int[] { 1 };
+                break;
+            default:
+                return 0;
+            }
+            int bonded = (valence[atom] + 1) / 2;
+            for (int i = 0; i < standard.length; i++) {
+                if (standard[i] >= bonded) {
+                    return standard[i] - bonded;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.cml.converters.reaction.core.MappedLineNumberReader;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLBond;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLScalar;
+
+/**
+ * reads a V2000 molfile block (header, counts line, atom block, bond block
+ * and properties up to "M  END") into a CMLMolecule.
+ * 
+ * This is the block embedded after $MOL in an rxnfile and after $MFMT in
+ * an RDfile. Atoms are held in an array sized from the counts line, so
+ * bonds are resolved by index and the whole block parses in linear time.
+ * 
+ * The atom-atom mapping number (mmm column) of a mapped atom is stored as
+ * a child CMLScalar with title {@link #ATOM_MAP}. When the block is part
+ * of a reaction the number is also recorded, with the atom, in the
+ * reaction's AtomMapTable, from which the converters build the atom map.
+ * 
+ * Atom, bond and property lines are only parsed, never kept, so with a
+ * MappedLineNumberReader they are read as views onto the mapped file and
+ * no String is built for them. The parse itself is shared through a
+ * {@link Handler} with ConnectionTable, which reads blocks for
+ * RXN2SMILESConverter without building CML.
+ * 
+ * The reader holds no state and may be shared between threads.
+ */
+public class MolfileReader implements CMLConstants {
+
+    /** */
+    public final static String M_END = "M  END";
+
+    /** */
+    public final static String M_CHG = "M  CHG";
+
+    /** */
+    public final static String V2000 = "V2000";
+
+    /** title of the scalar holding the atom-atom mapping number */
+    public final static String ATOM_MAP = "atomMap";
+
+    /**
+     * read one molfile block.
+     * 
+     * @param br positioned at the first (name) line of the header
+     * @param molId id for the molecule, also used to prefix atom and bond
+     *            ids so that they are unique within a reaction; may be null
+     * @return molecule
+     * @throws IOException
+     * @throws RuntimeException on a truncated or corrupt block
+     */
+    public CMLMolecule read(LineNumberReader br, String molId)
+            throws IOException, RuntimeException {
+        return read(br, molId, null, false);
+    }
+
+    /**
+     * read one molfile block of a reaction.
+     * 
+     * @param br
+     * @param molId
+     * @param atomMaps receives the mapped atoms; may be null
+     * @param product true if the block is a product
+     * @return molecule
+     * @throws IOException
+     * @throws RuntimeException
+     */
+    CMLMolecule read(LineNumberReader br, String molId,
+            final AtomMapTable atomMaps, final boolean product)
+            throws IOException, RuntimeException {
+        final CMLMolecule mol = new CMLMolecule();
+        final String prefix = (molId != null && !molId.equals(S_EMPTY)) ? molId
+                + S_UNDER : S_EMPTY;
+        if (prefix.length() > 0) {
+            mol.setId(molId);
+        }
+        parse(br, new Handler() {
+            CMLAtom[] atoms;
+
+            public void counts(String name, int atomCount, int bondCount) {
+                if (name.trim().length() > 0) {
+                    mol.setTitle(name.trim());
+                }
+                atoms = new CMLAtom[atomCount];
+            }
+
+            public void atom(int i, CharSequence line) {
+                CMLAtom atom = new CMLAtom();
+                atom.setId(prefix + "a" + (i + 1));
+                V2000Columns.readAtom(line, atom);
+                int map = V2000Columns.atomMap(line);
+                if (map != 0) {
+                    CMLScalar scalar = new CMLScalar();
+                    scalar.setTitle(ATOM_MAP);
+                    scalar.setValue(map);
+                    atom.appendChild(scalar);
+                    if (atomMaps != null) {
+                        atomMaps.add(atom, scalar, map, product);
+                    }
+                } else if (atomMaps != null && isHeavy(line)) {
+                    atomMaps.add(atom, null, 0, product);
+                }
+                atoms[i] = atom;
+                mol.addAtom(atom);
+            }
+
+            public void bond(int i, CharSequence line) {
+                CMLBond bond = V2000Columns.readBond(line, atoms);
+                bond.setId(prefix + "b" + (i + 1));
+                mol.addBond(bond);
+            }
+
+            public void resetCharges() {
+                for (int i = 0; i < atoms.length; i++) {
+                    if (atoms[i].getAttribute("formalCharge") != null) {
+                        atoms[i].setFormalCharge(0);
+                    }
+                }
+            }
+
+            public void charge(int i, int charge) {
+                atoms[i].setFormalCharge(charge);
+            }
+        });
+        return mol;
+    }
+
+    /**
+     * receives the lines of a molfile block as MolfileReader parses them,
+     * so that a caller can build its own structure without CML.
+     * 
+     * Atom and bond lines are views which are only valid during the call.
+     * NumberFormatExceptions thrown from atom() and bond() are reported as
+     * bad lines.
+     */
+    interface Handler {
+
+        /**
+         * @param name first header line
+         * @param atomCount
+         * @param bondCount
+         */
+        void counts(String name, int atomCount, int bondCount);
+
+        /**
+         * @param i index of the atom from 0
+         * @param line
+         */
+        void atom(int i, CharSequence line);
+
+        /**
+         * @param i index of the bond from 0
+         * @param line
+         */
+        void bond(int i, CharSequence line);
+
+        /** called before the first M  CHG line, which supersedes the atom block */
+        void resetCharges();
+
+        /**
+         * @param i index of the atom from 0, checked against the counts
+         * @param charge
+         */
+        void charge(int i, int charge);
+    }
+
+    /**
+     * parse one molfile block.
+     * 
+     * @param br positioned at the first (name) line of the header
+     * @param handler
+     * @throws IOException
+     * @throws RuntimeException on a truncated or corrupt block
+     */
+    static void parse(LineNumberReader br, Handler handler) throws IOException,
+            RuntimeException {
+        String name = readLine(br, "molfile name line");
+        skipLine(br, "molfile program line");
+        skipLine(br, "molfile comment line");
+        CharSequence counts = readLineView(br, "molfile counts line");
+        if (counts.length() < 6) {
+            throw new RuntimeException("Corrupt molfile counts line: " + counts
+                    + " (line: " + br.getLineNumber() + S_RBRAK);
+        }
+        if (counts.toString().indexOf("V3000") != -1) {
+            throw new RuntimeException("V3000 molfiles not supported (line: "
+                    + br.getLineNumber() + S_RBRAK);
+        }
+        int nAtoms;
+        int nBonds;
+        try {
+            nAtoms = V2000Columns.parseInt(counts, V2000Columns.COUNTS_ATOMS,
+                    V2000Columns.COUNTS_ATOMS + V2000Columns.WIDTH);
+            nBonds = V2000Columns.parseInt(counts, V2000Columns.COUNTS_BONDS,
+                    V2000Columns.COUNTS_BONDS + V2000Columns.WIDTH);
+        } catch (NumberFormatException nfe) {
+            throw new RuntimeException("Bad integers for counts in line: " + counts);
+        }
+        handler.counts(name, nAtoms, nBonds);
+
+        for (int i = 0; i < nAtoms; i++) {
+            CharSequence line = readLineView(br, "molfile atom block");
+            try {
+                handler.atom(i, line);
+            } catch (NumberFormatException nfe) {
+                throw new RuntimeException("Bad atom line: " + line + " (line: "
+                        + br.getLineNumber() + S_RBRAK);
+            }
+        }
+        for (int i = 0; i < nBonds; i++) {
+            CharSequence line = readLineView(br, "molfile bond block");
+            try {
+                handler.bond(i, line);
+            } catch (NumberFormatException nfe) {
+                throw new RuntimeException("Bad bond line: " + line + " (line: "
+                        + br.getLineNumber() + S_RBRAK);
+            }
+        }
+        readProperties(br, nAtoms, handler);
+    }
+
+    /* properties block; only charges are used, other lines are skipped */
+    private static void readProperties(LineNumberReader br, int nAtoms,
+            Handler handler) throws IOException {
+        boolean chargesReset = false;
+        while (true) {
+            CharSequence line = readLineView(br, M_END);
+            if (startsWith(line, M_END)) {
+                break;
+            }
+            if (startsWith(line, M_CHG)) {
+                // M  CHG supersedes every charge in the atom block
+                if (!chargesReset) {
+                    handler.resetCharges();
+                    chargesReset = true;
+                }
+                readCharges(line, nAtoms, handler);
+            } else if (startsWith(line, "A  ")) {
+                // atom alias: text is on the following line
+                skipLine(br, "alias text");
+            }
+        }
+    }
+
+    /* M  CHGnn8 aaa vvv ... */
+    private static void readCharges(CharSequence line, int nAtoms,
+            Handler handler) {
+        try {
+            int n = V2000Columns.parseInt(line, 6, 9);
+            for (int i = 0; i < n; i++) {
+                int start = 9 + 8 * i;
+                int atomNumber = V2000Columns.parseInt(line, start + 1, start + 4);
+                int charge = V2000Columns.parseInt(line, start + 5, start + 8);
+                if (atomNumber < 1 || atomNumber > nAtoms) {
+                    throw new RuntimeException("Charge on unknown atom: " + line);
+                }
+                handler.charge(atomNumber - 1, charge);
+            }
+        } catch (NumberFormatException nfe) {
+            throw new RuntimeException("Bad " + M_CHG + " line: " + line);
+        }
+    }
+
+    private static String readLine(LineNumberReader br, String expected)
+            throws IOException {
+        String line = br.readLine();
+        if (line == null) {
+            throw new RuntimeException("Unexpected EOF reading " + expected
+                    + " (line: " + br.getLineNumber() + S_RBRAK);
+        }
+        return line;
+    }
+
+    /* the line is only parsed, so a mapped reader need not copy it */
+    private static CharSequence readLineView(LineNumberReader br, String expected)
+            throws IOException {
+        CharSequence line = MappedLineNumberReader.readLineView(br);
+        if (line == null) {
+            throw new RuntimeException("Unexpected EOF reading " + expected
+                    + " (line: " + br.getLineNumber() + S_RBRAK);
+        }
+        return line;
+    }
+
+    private static void skipLine(LineNumberReader br, String expected)
+            throws IOException {
+        if (!MappedLineNumberReader.skipLine(br)) {
+            throw new RuntimeException("Unexpected EOF reading " + expected
+                    + " (line: " + br.getLineNumber() + S_RBRAK);
+        }
+    }
+
+    /* anything but hydrogen and its isotopes */
+    private static boolean isHeavy(CharSequence line) {
+        String symbol = V2000Columns.elementSymbol(line);
+        return symbol != null && !symbol.equals("H") && !symbol.equals("D")
+                && !symbol.equals("T");
+    }
+
+    private static boolean startsWith(CharSequence line, String prefix) {
+        int length = prefix.length();
+        if (line.length() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (line.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
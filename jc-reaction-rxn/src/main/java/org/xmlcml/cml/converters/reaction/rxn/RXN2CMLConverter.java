@@ -1,599 +1,873 @@
-package org.xmlcml.cml.converters.reaction.rxn;
-
-
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.LineNumberReader;
-import java.io.Writer;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.logging.Logger;
-
-import nu.xom.Document;
-
-import org.xmlcml.cml.base.CMLConstants;
-import org.xmlcml.cml.base.CMLSerializer;
-import org.xmlcml.cml.converters.AbstractConverter;
-import org.xmlcml.cml.converters.MimeType;
-import org.xmlcml.cml.converters.cml.CMLCommon;
-import org.xmlcml.cml.element.CMLAtom;
-import org.xmlcml.cml.element.CMLLink;
-import org.xmlcml.cml.element.CMLList;
-import org.xmlcml.cml.element.CMLMap;
-import org.xmlcml.cml.element.CMLMolecule;
-import org.xmlcml.cml.element.CMLProduct;
-import org.xmlcml.cml.element.CMLProductList;
-import org.xmlcml.cml.element.CMLReactant;
-import org.xmlcml.cml.element.CMLReactantList;
-import org.xmlcml.cml.element.CMLReaction;
-import org.xmlcml.cml.element.CMLReaction.Component;
-import org.xmlcml.cml.element.CMLScalar;
-import org.xmlcml.cml.tools.ReactionTool;
-
-/**
- * converts RXN format to CMLReact
- * 
- * @author Administrator
- */
-public class RXN2CMLConverter extends AbstractConverter implements CMLConstants {
-
-    final static Logger logger = Logger.getLogger(RXN2CMLConverter.class.getName());
-
-    /**
-     */
-    public final static String RXN = "$RXN";
-
-    /** */
-    public final static String FROM_MDL_MAPPING = "from MDL-RXN mapping";
-	public static final String REG_MESSAGE = "RXN to CML conversion";
-
-    String id;
-    int nProducts;
-    int nReactants;
-    CMLReaction reaction;
-    CMLReactantList reactantList;
-    CMLProductList productList;
-    String line = null;
-    String inDir = "";
-    String outDir = "";
-    String inSuffix = ".rxn";
-    String outSuffix = ".cml";
-    Document doc;
-
-	private ReactionTool reactionTool;
-
-    /**
-     * Constructor for the RXNConverter object
-     */
-    public RXN2CMLConverter() {
-        this("");
-    }
-
-    /**
-     * Constructor for the RXNConverter object
-     * 
-     * @param reactionId
-     */
-    public RXN2CMLConverter(String reactionId) {
-        id = reactionId;
-    }
-
-    /**
-     * Current version
-     * 
-     * @return version
-     */
-    public String getVersion() {
-
-        return "V2000";
-    }
-
-    /**
-     * Sets the inDir attribute of the RXNConverter object
-     * 
-     * @param inDir
-     *            The new inDir value
-     */
-    public void setInDir(String inDir) {
-        this.inDir = inDir;
-    }
-
-    /**
-     * Gets the inDir attribute of the RXNConverter object
-     * 
-     * @return The inDir value
-     */
-    public String getInDir() {
-        return this.inDir;
-    }
-
-    /**
-     * Sets the outDir attribute of the RXNConverter object
-     * 
-     * @param outDir
-     *            The new outDir value
-     */
-    public void setOutDir(String outDir) {
-        this.outDir = outDir;
-    }
-
-    /**
-     * Gets the outDir attribute of the RXNConverter object
-     * 
-     * @return The outDir value
-     */
-    public String getOutDir() {
-        return this.outDir;
-    }
-
-    /**
-     * does the conversion
-     * 
-     * @exception IOException
-     * @exception RuntimeException
-     */
-    public void process() throws IOException {
-        if (!inDir.equals("") && !outDir.equals("")) {
-            String userDir = System.getProperties().getProperty("user.dir");
-            // File inDirF = new File(userDir, inDir);
-            File inDirF = new File(inDir);
-            logger.info("userDir" + userDir);
-            logger.info("inDirF" + inDirF);
-            File[] files = inDirF.listFiles();
-            for (int i = 0; i < files.length; i++) {
-                String fName = files[i].getPath();
-                if (fName.endsWith(inSuffix)) {
-                    logger.info("Reading" + fName);
-                    int idx = fName.lastIndexOf(S_PERIOD);
-                    String fileroot = fName.substring(0, idx);
-                    idx = fileroot.lastIndexOf(File.separator);
-                    String id = fileroot.substring(idx + 1);
-                    String outfile = fileroot + outSuffix;
-                    LineNumberReader lnr = new LineNumberReader(new FileReader(
-                            files[i]));
-                    RXN2CMLConverter rxn = new RXN2CMLConverter(id);
-                    doc = (Document) rxn.read(lnr);
-                    logger.info("Writing To" + outfile);
-                    FileOutputStream fos = new FileOutputStream(outfile);
-                    CMLSerializer serializer = new CMLSerializer(fos);
-                    serializer.write(doc);
-                    fos.close();
-                }
-            }
-        }
-    }
-
-    /**
-     * read into document
-     * 
-     * @param br
-     * @return document
-     * @exception RuntimeException
-     * @exception IOException
-     */
-    public Document read(LineNumberReader br) throws RuntimeException, IOException {
-        // doc = new Document();
-        return read(doc, br);
-    }
-
-    /**
-     * read into document
-     * 
-     * @param doc
-     * @param br
-     * @return document
-     * @exception RuntimeException
-     * @exception IOException
-     */
-    public Document read(Document doc, LineNumberReader br)
-            throws RuntimeException, IOException {
-        this.doc = doc;
-
-        // int count = 0;
-        reaction = new CMLReaction();
-        reactionTool = ReactionTool.getOrCreateTool(reaction);
-        doc.appendChild(reaction);
-        reaction.setId(id);
-        nProducts = 0;
-        nReactants = 0;
-
-        // read the header. If EOF, will exit immediately after
-        readFileHeader(br);
-
-        // end of input
-        if (nReactants == 0 && nProducts == 0) {
-            throw new RuntimeException("RXN: no reactants and no products");
-        }
-
-        reactantList = new CMLReactantList();
-        reaction.addReactantList(reactantList);
-        productList = new CMLProductList();
-        reaction.addProductList(productList);
-
-        for (int i = 0; i < nReactants; i++) {
-            CMLMolecule mol = readMolecule(br);
-            String molId = (id.equals("")) ? "r" + (i + 1) : id + ".r"
-                    + (i + 1);
-            mol.setId(molId);
-            // MoleculeTool moleculeTool = MoleculeToolImpl.getTool(mol);
-            // CMLMolecule[] mols = MoleculeTool.partitionIntoMolecules();
-            // for (int j = 0; j < mols.length; j++) {
-            CMLReactant reactant = new CMLReactant();
-            // mols[j] = (CMLMolecule) transferOwnerDocument(doc, mols[j]);
-            // mol = (CMLMolecule)
-            // AbstractCMLDocumentImpl.transferOwnerDocument(doc, mol);
-            // reactant.addChild(mols[j]);
-            if (mol == null) {
-                throw new RuntimeException("Null molecule");
-            } else {
-                reactant.addMolecule(mol);
-            }
-            reactantList.addReactant(reactant);
-            // }
-        }
-
-        for (int i = 0; i < nProducts; i++) {
-            CMLMolecule mol = readMolecule(br);
-            String molId = (id.equals("")) ? "p" + (i + 1) : id + ".p"
-                    + (i + 1);
-            mol.setId(molId);
-            // CMLMolecule[] mols = MoleculeTool.partitionIntoMolecules();
-            // for (int j = 0; j < mols.length; j++) {
-            CMLProduct product = new CMLProduct();
-            // mols[j] = (CMLMolecule) transferOwnerDocument(doc, mols[j]);
-            // mol = (CMLMolecule)
-            // AbstractCMLDocumentImpl.transferOwnerDocument(doc, mol);
-            product.addMolecule(mol);
-            productList.addProduct(product);
-            // }
-        }
-
-        mapAtoms();
-
-        return doc;
-    }
-
-    void mapAtoms() throws RuntimeException {
-        List reactantAtoms = reactionTool.getAtoms(Component.REACTANTLIST);
-        List productAtoms = reactionTool.getAtoms(Component.PRODUCTLIST);
-        // hash the target atomMapIds
-        Map<String, CMLAtom> productMap = new HashMap<String, CMLAtom>();
-        for (int i = 0; i < productAtoms.size(); i++) {
-            CMLScalar scalar = (CMLScalar) ((CMLAtom) productAtoms.get(i))
-                    .getFirstCMLChild("scalar");
-            if (scalar != null) {
-                String atomNumber = scalar.getXMLContent();
-                if (productMap.containsKey(atomNumber)) {
-                    throw new RuntimeException("Duplicate ISIS RXN atom map: "
-                            + atomNumber);
-                }
-                productMap.put(atomNumber, (CMLAtom) productAtoms.get(i));
-            }
-        }
-        CMLMap cmlMap = null;
-        if (productMap.size() > 0) {
-            cmlMap = new CMLMap();
-            reaction.appendChild(cmlMap);
-            cmlMap.setTitle("from product to reactant");
-        }
-        if (cmlMap != null) {
-            for (int i = 0; i < reactantAtoms.size(); i++) {
-                CMLScalar scalar = (CMLScalar) ((CMLAtom) reactantAtoms.get(i))
-                        .getFirstCMLChild("scalar");
-                if (scalar != null) {
-                    String atomNumber = scalar.getXMLContent();
-                    CMLAtom targetAtom = productMap.get(atomNumber);
-                    if (targetAtom == null) {
-                        throw new RuntimeException("No target for " + atomNumber
-                                + " in RXN atom map");
-                    }
-                    CMLLink link = new CMLLink();
-                    link.setFrom(targetAtom.getId());
-                    link.setTo(((CMLAtom) reactantAtoms.get(i)).getId());
-                    cmlMap.addLink(link);
-                    link.setTitle(FROM_MDL_MAPPING);
-                    productMap.remove(atomNumber);
-                }
-            }
-        }
-    }
-
-    /**
-     * read the reaction
-     * 
-     * @param doc
-     * @param br
-     * @return reaction
-     * @exception RuntimeException
-     * @exception IOException
-     */
-    public CMLReaction readReaction(Document doc, LineNumberReader br)
-            throws RuntimeException, IOException {
-        doc = (Document) read(doc, br);
-        return (CMLReaction) doc.getRootElement();
-    }
-
-    /**
-     * read the reaction
-     * 
-     * @param br
-     * @return reaction
-     * @exception RuntimeException
-     * @exception IOException
-     */
-    public CMLReaction readReaction(LineNumberReader br) throws RuntimeException,
-            IOException {
-        doc = (Document) read(br);
-        return (CMLReaction) doc.getRootElement();
-    }
-
-    /**
-     * read the molecule
-     * 
-     * @param br
-     * @return molecule
-     * @exception IOException
-     * @exception RuntimeException
-     */
-    CMLMolecule readMolecule(LineNumberReader br) throws IOException,
-            RuntimeException {
-        String line = br.readLine();
-        if (line == null || !line.startsWith("$MOL")) {
-            throw new RuntimeException("RXN: expected $MOL record");
-        }
-
-        CMLMolecule mol = null;
-        // mol = new MDLConverter().readMolecule(doc, br); // FIXME
-        // the molecule is anchored to the document - remove it
-        // Node molParent = mol.getParent();
-        // if (molParent != null) {
-        // molParent.removeChild(mol);
-        // }
-        return mol;
-    }
-
-    /**
-     * read start of file
-     * 
-     * @param br
-     * @exception RuntimeException
-     * @throws IOException
-     */
-    protected void readFileHeader(LineNumberReader br) throws IOException,
-            RuntimeException {
-
-        /*
-         * -- ---------single RXN----- $RXN ISIS 121020020906 1 1 $MOL -ISIS-
-         * 12100209062D 18 18 0 0 0 0 0 0 0 0999 V2000 -3.4458 0.0542 0.0000 O 0
-         * 0 0 0 0 0 0 0 0 1 0 0 -2.9583 2.4750 0.0000 C 0 0 0 0 0 0 0 0 0 2 0 0
-         * ... -0.8000 0.3208 0.0000 H 0 0 0 0 0 0 0 0 0 0 0 0 1 4 1 0 0 0 0 ...
-         * 9 18 1 0 0 0 0 M END $MOL -ISIS- 12100209062D 17 17 0 0 0 0 0 0 0
-         * 0999 V2000 8.8958 2.1625 0.0000 O 0 0 0 0 0 0 0 0 0 0 0 0 ... 10.9958
-         * 0.8208 0.0000 H 0 0 0 0 0 0 0 0 0 0 0 0 9 1 1 0 0 0 0 ... 2 17 1 0 0
-         * 0 0 M END------------------------ --
-         */
-        String line;
-        line = br.readLine();
-
-        if (line == null) {
-            throw new RuntimeException("Empty RXN file");
-        }
-
-        if (!line.startsWith(RXN)) {
-            throw new IOException("non-RXN: RXN file must start with '$RXN':"
-                    + line + S_COLON);
-        }
-
-        line = br.readLine();
-
-        if (line == null || !line.trim().equals("")) {
-            throw new RuntimeException("Corrupt RXN file - expected blank line 2");
-        }
-
-        line = br.readLine();
-
-        if (line == null) {
-            throw new RuntimeException("Unexpected EOF RXN file 3");
-        }
-
-        // comment
-        line = br.readLine();
-
-        if (line == null) {
-            throw new RuntimeException("Unexpected EOF RXN file 4");
-        }
-
-        line = br.readLine();
-
-        if (line == null) {
-            throw new RuntimeException("Unexpected EOF RXN file 5");
-        }
-
-        if (line.length() < 6) {
-            throw new RuntimeException("Corrupt RXN file 5");
-        }
-
-        try {
-            nReactants = Integer.parseInt(line.substring(0, 3).trim());
-            nProducts = Integer.parseInt(line.substring(3, 6).trim());
-        } catch (NumberFormatException nfe) {
-            throw new RuntimeException("Bad integers for counts in line: " + line);
-        }
-    }
-
-    /**
-     * outputs CML as an RXN if possible. NYI
-     * 
-     * @param writer
-     *            to output it to
-     * @return string
-     * @exception RuntimeException
-     * @exception IOException
-     */
-    public String output(Writer writer) throws RuntimeException, IOException {
-
-        /*
-         * -- StringWriter w = new StringWriter();
-         * PMRDOMUtil.outputEventStream(outputCML, w, PMRDOMUtil.PRETTY, 0); if
-         * (mdlMol != null) mdlMol.output(writer); writeData(writer); --
-         */
-        // return writer.toString();
-        return null;
-    }
-
-    /**
-     * write data NYI
-     * 
-     * @param writer
-     * @return string
-     * @throws RuntimeException
-     * @throws IOException
-     */
-    public String writeData(Writer writer) throws RuntimeException, IOException {
-        /*
-         * -- List childNodes =
-         * outputCML.getElementsByTagName(AbstractBase.ELEMENT_NAMES[AbstractBase.LIST]);
-         * if (childNodes != null) { for (int i = 0; i < childNodes.getLength();
-         * i++) { output(writer, (CMLList)childNodes.get(i)); } } --
-         */
-        // return writer.toString();
-        return null;
-    }
-
-    /**
-     * NYI
-     * 
-     * @param writer
-     * @param list
-     * @exception RuntimeException
-     * @exception IOException
-     */
-    void output(Writer writer, CMLList list) throws RuntimeException, IOException {
-        /*
-         * -- / do not output non-RXN stuff if
-         * (!(list.getAttribute(AbstractBase.CONVENTION).equals(MDLMOL)))
-         * return; if
-         * (!(list.getAttribute(AbstractBase.TITLE).equals(DATA_HEADER)))
-         * return; NodeList childNodes = list.getChildNodes(); for (int i = 0; i <
-         * childNodes.getLength(); i++) { Node child = childNodes.item(i); if
-         * (!(child instanceof CMLScalar)) return; CMLScalar scalar =
-         * (CMLScalar)child; String value = scalar.getString(); if (i == 0) { if
-         * (value.length() < 1 || !(value.substring(0, 1).equals(">"))) return; }
-         * writer.write(value + S_NEWLINE); } --
-         */
-    }
-
-    /**
-     * parse into document
-     * 
-     * @param infile
-     * @return document
-     * @exception IOException
-     * @exception RuntimeException
-     */
-    public static Document parse(File infile) throws IOException, RuntimeException {
-        return (Document) new RXN2CMLConverter().read(new LineNumberReader(
-                new FileReader(infile)));
-    }
-
-    /**
-     * The main program for the RXNConverter class
-     * 
-     * @param args
-     *            The command line arguments
-     */
-    public static void main(String[] args) {
-        if (args.length == 0) {
-            logger
-                    .info("Usage: org.xmlcml.legacy.reaction.RXNConverter [options]");
-            logger.info("        -IN inputFile (RXN assumed)");
-            logger.info("        -INDIR inputFiles (RXN assumed)");
-            logger.info("        -OUT outputFile (CML)");
-            logger.info("        -OUTDIR inputFiles (CML assumed)");
-            logger.info("        -ID reactionID");
-            System.exit(0);
-        }
-        int i = 0;
-        boolean jump = false;
-        String infile = "";
-        String indir = "";
-        String outdir = "";
-        String outfile = "";
-        String reactionId = "";
-        while (i < args.length) {
-            if (1 == 2) {
-                ;
-            } else if (args[i].equalsIgnoreCase("-ID")) {
-                reactionId = args[++i];
-                i++;
-            } else if (args[i].equalsIgnoreCase("-IN")) {
-                infile = args[++i];
-                i++;
-            } else if (args[i].equalsIgnoreCase("-INDIR")) {
-                indir = args[++i];
-                i++;
-            } else if (args[i].equalsIgnoreCase("-OUT")) {
-                outfile = args[++i];
-                i++;
-            } else if (args[i].equalsIgnoreCase("-OUTDIR")) {
-                outdir = args[++i];
-                i++;
-            } else {
-                logger.severe("Unknown arg: " + args[i]);
-                i++;
-            }
-        }
-        Document doc = null;
-        try {
-            if (!indir.equals("") && !outdir.equals("")) {
-                RXN2CMLConverter rxn = new RXN2CMLConverter();
-                rxn.setInDir(indir);
-                rxn.setOutDir(outdir);
-                rxn.process();
-                jump = true;
-            } else if (!infile.equals("")) {
-                LineNumberReader lnr = new LineNumberReader(new FileReader(
-                        infile));
-                RXN2CMLConverter rxn = new RXN2CMLConverter(reactionId);
-                doc = (Document) rxn.read(lnr);
-            }
-
-            if (!jump) {
-                if (!reactionId.equals("")) {
-                    CMLReaction reaction = (CMLReaction) doc.getRootElement();
-                    reaction.setId(reactionId);
-                }
-                if (!outfile.equals("")) {
-                    CMLSerializer serializer = new CMLSerializer(
-                            new FileOutputStream(outfile));
-                    serializer.write(doc);
-                } else {
-                    ;
-                    // PMRDOMUtil.debug(doc);
-                }
-            }
-        } catch (IOException ioe) {
-            logger.info("IOEXception: " + ioe);
-        } catch (RuntimeException cmle) {
-            logger.info("CMLEXception: " + cmle);
-            cmle.printStackTrace();
-        }
-    }
-    
-	public MimeType getInputType() {
-		return RXNModule.RXN_TYPE;
-	}
-	
-	public MimeType getOutputType() {
-		return CMLCommon.CML_TYPE;
-	}
-	
-	public String getDescription() {
-		return REG_MESSAGE;
-	}
-
-
-}
+package org.xmlcml.cml.converters.reaction.rxn;
+
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import nu.xom.Document;
+
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.cml.base.CMLSerializer;
+import org.xmlcml.cml.converters.reaction.core.BatchProcessor;
+import org.xmlcml.cml.converters.reaction.core.ConversionCache;
+import org.xmlcml.cml.converters.reaction.core.ConversionException;
+import org.xmlcml.cml.converters.reaction.core.ConversionMetrics;
+import org.xmlcml.cml.converters.reaction.core.ReactionConverter;
+import org.xmlcml.cml.converters.reaction.core.MappedLineNumberReader;
+import org.xmlcml.cml.converters.reaction.core.Quarantine;
+import org.xmlcml.cml.converters.MimeType;
+import org.xmlcml.cml.converters.cml.CMLCommon;
+import org.xmlcml.cml.element.CMLList;
+import org.xmlcml.cml.element.CMLMap;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLProduct;
+import org.xmlcml.cml.element.CMLProductList;
+import org.xmlcml.cml.element.CMLReactant;
+import org.xmlcml.cml.element.CMLReactantList;
+import org.xmlcml.cml.element.CMLReaction;
+
+/**
+ * converts RXN format to CMLReact
+ * 
+ * @author Administrator
+ */
+public class RXN2CMLConverter extends ReactionConverter implements CMLConstants {
+
+    final static Logger logger = Logger.getLogger(RXN2CMLConverter.class.getName());
+
+    /**
+     */
+    public final static String RXN = "$RXN";
+
+    /** */
+    public final static String FROM_MDL_MAPPING = "from MDL-RXN mapping";
+
+    /** charset of read(InputStream) and of cache key digests */
+    public final static String ENCODING = "UTF-8";
+
+	public static final String REG_MESSAGE = "RXN to CML conversion";
+
+    String id;
+    String inDir = "";
+    String outDir = "";
+    String inSuffix = ".rxn";
+    String outSuffix = ".cml";
+    int threadCount = 0;
+    ConversionCache cache;
+    AtomMapReport.Policy atomMapPolicy = AtomMapReport.Policy.FAIL;
+    AtomMapListener atomMapListener;
+    Quarantine quarantine;
+    private MolfileReader molfileReader = new MolfileReader();
+
+    /**
+     * Constructor for the RXNConverter object
+     */
+    public RXN2CMLConverter() {
+        this("");
+    }
+
+    /**
+     * Constructor for the RXNConverter object
+     * 
+     * @param reactionId
+     */
+    public RXN2CMLConverter(String reactionId) {
+        id = reactionId;
+    }
+
+    /**
+     * Current version
+     * 
+     * @return version
+     */
+    public String getVersion() {
+
+        return "V2000";
+    }
+
+    /**
+     * Sets the inDir attribute of the RXNConverter object
+     * 
+     * @param inDir
+     *            The new inDir value
+     */
+    public void setInDir(String inDir) {
+        this.inDir = inDir;
+    }
+
+    /**
+     * Gets the inDir attribute of the RXNConverter object
+     * 
+     * @return The inDir value
+     */
+    public String getInDir() {
+        return this.inDir;
+    }
+
+    /**
+     * Sets the outDir attribute of the RXNConverter object
+     * 
+     * @param outDir
+     *            The new outDir value
+     */
+    public void setOutDir(String outDir) {
+        this.outDir = outDir;
+    }
+
+    /**
+     * Gets the outDir attribute of the RXNConverter object
+     * 
+     * @return The outDir value
+     */
+    public String getOutDir() {
+        return this.outDir;
+    }
+
+    /**
+     * Sets the number of worker threads used by process()
+     * 
+     * @param threadCount
+     *            workers; 0 (the default) uses one per available processor
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Gets the number of worker threads used by process()
+     * 
+     * @return The threadCount value
+     */
+    public int getThreadCount() {
+        return this.threadCount;
+    }
+
+    /**
+     * Sets what is done with a reaction whose atom map has duplicate or
+     * unmatched numbers.
+     * 
+     * @param atomMapPolicy
+     *            default FAIL, throw on the first duplicate or reactant
+     *            number without a product
+     */
+    public void setAtomMapPolicy(AtomMapReport.Policy atomMapPolicy) {
+        this.atomMapPolicy = atomMapPolicy;
+    }
+
+    /**
+     * Gets what is done with a reaction whose atom map has problems
+     * 
+     * @return The atomMapPolicy value
+     */
+    public AtomMapReport.Policy getAtomMapPolicy() {
+        return atomMapPolicy;
+    }
+
+    /**
+     * Sets a listener for the atom-map problems of each reaction. With
+     * policy FAIL it only hears of the problems that do not throw.
+     * 
+     * @param atomMapListener
+     *            null (the default) for none
+     */
+    public void setAtomMapListener(AtomMapListener atomMapListener) {
+        this.atomMapListener = atomMapListener;
+    }
+
+    /**
+     * Gets the listener for atom-map problems
+     * 
+     * @return The atomMapListener value
+     */
+    public AtomMapListener getAtomMapListener() {
+        return atomMapListener;
+    }
+
+    /**
+     * Sets where process() copies the files that fail
+     * 
+     * @param quarantine
+     *            null (the default) only logs failures
+     */
+    public void setQuarantine(Quarantine quarantine) {
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Gets where process() copies the files that fail
+     * 
+     * @return The quarantine value
+     */
+    public Quarantine getQuarantine() {
+        return quarantine;
+    }
+
+    /**
+     * does the conversion of every file in inDir, in parallel.
+     * 
+     * A file that fails is logged and skipped; the rest of the batch carries
+     * on.
+     * 
+     * @exception IOException
+     * @exception RuntimeException
+     */
+    public void process() throws IOException {
+        if (!inDir.equals("") && !outDir.equals("")) {
+            String userDir = System.getProperties().getProperty("user.dir");
+            // File inDirF = new File(userDir, inDir);
+            File inDirF = new File(inDir);
+            logger.info("userDir" + userDir);
+            logger.info("inDirF" + inDirF);
+            File[] files = inDirF.listFiles();
+            if (files == null) {
+                throw new IOException("Cannot list directory: " + inDirF);
+            }
+            List<File> inFiles = new ArrayList<File>();
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].getPath().endsWith(inSuffix)) {
+                    inFiles.add(files[i]);
+                }
+            }
+            BatchProcessor batch = new BatchProcessor(threadCount);
+            batch.setQuarantine(quarantine);
+            try {
+                batch.process(inFiles, new BatchProcessor.Job() {
+                    public void convert(File file) throws Exception {
+                        convertFile(file);
+                    }
+                });
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted converting " + inDirF);
+            }
+        }
+    }
+
+    /**
+     * converts one file, writing the result alongside it. Safe to call from
+     * several threads as parsing keeps no state in the converter.
+     * 
+     * @param file
+     * @exception IOException
+     * @exception RuntimeException
+     */
+    void convertFile(File file) throws IOException, RuntimeException {
+        String fName = file.getPath();
+        logger.fine("Reading" + fName);
+        int idx = fName.lastIndexOf(S_PERIOD);
+        String fileroot = fName.substring(0, idx);
+        idx = fileroot.lastIndexOf(File.separator);
+        String id = fileroot.substring(idx + 1);
+        String outfile = fileroot + outSuffix;
+        Document doc;
+        LineNumberReader lnr = MappedLineNumberReader.open(file);
+        try {
+            doc = readDocument(lnr, id);
+        } finally {
+            lnr.close();
+        }
+        ConversionMetrics.count(metrics, ConversionMetrics.Counter.BYTES,
+                file.length());
+        logger.fine("Writing To" + outfile);
+        long start = ConversionMetrics.start(metrics);
+        FileOutputStream fos = new FileOutputStream(outfile);
+        try {
+            CMLSerializer serializer = new CMLSerializer(fos);
+            serializer.write(doc);
+        } finally {
+            fos.close();
+        }
+        ConversionMetrics.stop(metrics, ConversionMetrics.Stage.SERIALIZE,
+                start);
+    }
+
+    /**
+     * Sets a cache for the whole-input reads: read(InputStream),
+     * read(LineNumberReader), read(Document, LineNumberReader) and the files
+     * of process(). It may be shared by converters and threads; entries are
+     * keyed on the input, the reaction id and the atom map policy. With a
+     * cache set these reads consume their input to the end. The readReaction
+     * methods, which read one reaction out of a larger input, never use it.
+     * 
+     * @param cache
+     *            null (the default) for no cache
+     */
+    public void setCache(ConversionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Gets the cache used by the whole-input reads
+     * 
+     * @return The cache value
+     */
+    public ConversionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * read into document, decoding the input as {@link #ENCODING}. The
+     * input is not closed. A cached document is returned as a new copy, so
+     * it may be changed freely.
+     * 
+     * @param is
+     * @return document
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    public Document read(InputStream is) throws RuntimeException, IOException {
+        return read(new LineNumberReader(new InputStreamReader(is, ENCODING)));
+    }
+
+    /**
+     * read into document
+     * 
+     * @param br
+     * @return document
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    public Document read(LineNumberReader br) throws RuntimeException, IOException {
+        return read(null, br);
+    }
+
+    /**
+     * read into document
+     * 
+     * @param doc
+     * @param br
+     * @return document
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    public Document read(Document doc, LineNumberReader br)
+            throws RuntimeException, IOException {
+        if (doc == null) {
+            return readDocument(br, id);
+        }
+        doc.appendChild(readDocument(br, id).getRootElement().copy());
+        return doc;
+    }
+
+    /*
+     * the reaction as the root of a new document, through the cache if one
+     * is set. The key covers the whole input, so with a cache br is read to
+     * its end. A hit counts as a record. A reaction whose atom map has
+     * problems is not cached, so the listener hears of them on every read.
+     */
+    private Document readDocument(LineNumberReader br, String id)
+            throws RuntimeException, IOException {
+        if (cache == null) {
+            return new Document(countReaction(br, new RXNContext(id)));
+        }
+        int lineNumber = br.getLineNumber();
+        StringBuilder sb = new StringBuilder();
+        for (String line = br.readLine(); line != null; line = br.readLine()) {
+            sb.append(line).append(S_NL);
+        }
+        String input = sb.toString();
+        byte[] bytes = input.getBytes(ENCODING);
+        // every option that changes the document
+        String key = ConversionCache.key(getClass().getName() + S_SPACE + id
+                + S_SPACE + atomMapPolicy, bytes);
+        Document doc = cache.get(key);
+        if (doc != null) {
+            ConversionMetrics.count(metrics,
+                    ConversionMetrics.Counter.RECORDS, 1);
+            return doc;
+        }
+        LineNumberReader copy = new LineNumberReader(new StringReader(input));
+        copy.setLineNumber(lineNumber);
+        RXNContext context = new RXNContext(id);
+        doc = new Document(countReaction(copy, context));
+        if (context.atomMapReport.isClean()) {
+            cache.put(key, doc, bytes.length);
+        }
+        return doc;
+    }
+
+    /*
+     * parseReaction, counting it as a record or an error. A failure is
+     * rethrown as a ConversionException with the line the parse stopped at.
+     */
+    private CMLReaction countReaction(LineNumberReader br, RXNContext context)
+            throws RuntimeException, IOException {
+        try {
+            CMLReaction reaction = parseReaction(br, context);
+            ConversionMetrics.count(metrics,
+                    ConversionMetrics.Counter.RECORDS, 1);
+            return reaction;
+        } catch (RuntimeException e) {
+            ConversionMetrics.count(metrics, ConversionMetrics.Counter.ERRORS,
+                    1);
+            throw new ConversionException(e, br.getLineNumber());
+        }
+    }
+
+    /**
+     * parse the reaction without attaching it to any document. All parse
+     * state is held in a context local to this call, so a converter may be
+     * used by several threads at once.
+     * 
+     * @param br
+     * @param id of the reaction
+     * @return reaction
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    CMLReaction parseReaction(LineNumberReader br, String id)
+            throws RuntimeException, IOException {
+        return parseReaction(br, new RXNContext(id));
+    }
+
+    /* parseReaction into a context made by the caller */
+    private CMLReaction parseReaction(LineNumberReader br, RXNContext context)
+            throws RuntimeException, IOException {
+        String id = context.id;
+        CMLReaction reaction = context.reaction;
+
+        // read the header. If EOF, will exit immediately after
+        long start = ConversionMetrics.start(metrics);
+        readFileHeader(br, context);
+        ConversionMetrics.stop(metrics, ConversionMetrics.Stage.HEADER, start);
+
+        // end of input
+        if (context.nReactants == 0 && context.nProducts == 0) {
+            throw new RuntimeException("RXN: no reactants and no products");
+        }
+
+        CMLReactantList reactantList = new CMLReactantList();
+        reaction.addReactantList(reactantList);
+        CMLProductList productList = new CMLProductList();
+        reaction.addProductList(productList);
+
+        for (int i = 0; i < context.nReactants; i++) {
+            String molId = (id.equals("")) ? "r" + (i + 1) : id + ".r"
+                    + (i + 1);
+            CMLMolecule mol = readMolecule(br, molId, context, false);
+            // MoleculeTool moleculeTool = MoleculeToolImpl.getTool(mol);
+            // CMLMolecule[] mols = MoleculeTool.partitionIntoMolecules();
+            // for (int j = 0; j < mols.length; j++) {
+            CMLReactant reactant = new CMLReactant();
+            // mols[j] = (CMLMolecule) transferOwnerDocument(doc, mols[j]);
+            // mol = (CMLMolecule)
+            // AbstractCMLDocumentImpl.transferOwnerDocument(doc, mol);
+            // reactant.addChild(mols[j]);
+            if (mol == null) {
+                throw new RuntimeException("Null molecule");
+            } else {
+                reactant.addMolecule(mol);
+            }
+            reactantList.addReactant(reactant);
+            // }
+        }
+
+        for (int i = 0; i < context.nProducts; i++) {
+            String molId = (id.equals("")) ? "p" + (i + 1) : id + ".p"
+                    + (i + 1);
+            CMLMolecule mol = readMolecule(br, molId, context, true);
+            // CMLMolecule[] mols = MoleculeTool.partitionIntoMolecules();
+            // for (int j = 0; j < mols.length; j++) {
+            CMLProduct product = new CMLProduct();
+            // mols[j] = (CMLMolecule) transferOwnerDocument(doc, mols[j]);
+            // mol = (CMLMolecule)
+            // AbstractCMLDocumentImpl.transferOwnerDocument(doc, mol);
+            product.addMolecule(mol);
+            productList.addProduct(product);
+            // }
+        }
+
+        mapAtoms(context);
+
+        return reaction;
+    }
+
+    void mapAtoms(RXNContext context) throws RuntimeException {
+        long start = ConversionMetrics.start(metrics);
+        AtomMapReport report = new AtomMapReport(context.id);
+        CMLMap cmlMap = context.atomMaps.createMap(FROM_MDL_MAPPING,
+                atomMapPolicy, report);
+        if (cmlMap != null) {
+            context.reaction.appendChild(cmlMap);
+        }
+        if (atomMapListener != null && !report.isClean()) {
+            atomMapListener.report(report);
+        }
+        context.atomMapReport = report;
+        ConversionMetrics.stop(metrics, ConversionMetrics.Stage.ATOM_MAP,
+                start);
+    }
+
+    /**
+     * read the reaction
+     * 
+     * @param doc
+     * @param br
+     * @return reaction
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    public CMLReaction readReaction(Document doc, LineNumberReader br)
+            throws RuntimeException, IOException {
+        doc = (Document) read(doc, br);
+        return (CMLReaction) doc.getRootElement();
+    }
+
+    /**
+     * read the reaction. The reaction is not attached to a document so it
+     * can be appended to a container such as an RDF record.
+     * 
+     * @param br
+     * @return reaction
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    public CMLReaction readReaction(LineNumberReader br) throws RuntimeException,
+            IOException {
+        return parseReaction(br, id);
+    }
+
+    /**
+     * read the reaction, giving it an id other than the converter's own.
+     * 
+     * @param br
+     * @param reactionId
+     * @return reaction, not attached to any document
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    public CMLReaction readReaction(LineNumberReader br, String reactionId)
+            throws RuntimeException, IOException {
+        return parseReaction(br, reactionId);
+    }
+
+    /**
+     * read the molecule
+     * 
+     * @param br
+     * @param molId
+     * @param context receives the mapped atoms
+     * @param product
+     * @return molecule
+     * @exception IOException
+     * @exception RuntimeException
+     */
+    CMLMolecule readMolecule(LineNumberReader br, String molId,
+            RXNContext context, boolean product) throws IOException,
+            RuntimeException {
+        String line = br.readLine();
+        if (line == null || !line.startsWith("$MOL")) {
+            throw new RuntimeException("RXN: expected $MOL record");
+        }
+        long start = ConversionMetrics.start(metrics);
+        CMLMolecule mol = molfileReader.read(br, molId, context.atomMaps,
+                product);
+        if (metrics != null) {
+            ConversionMetrics.stop(metrics,
+                    ConversionMetrics.Stage.MOLECULE, start);
+            ConversionMetrics.count(metrics, ConversionMetrics.Counter.ATOMS,
+                    mol.getAtomCount());
+        }
+        return mol;
+    }
+
+    /**
+     * read start of file
+     * 
+     * @param br
+     * @param context receives the reactant and product counts
+     * @exception RuntimeException
+     * @throws IOException
+     */
+    protected void readFileHeader(LineNumberReader br, RXNContext context)
+            throws IOException, RuntimeException {
+        int[] counts = readCounts(br);
+        context.nReactants = counts[0];
+        context.nProducts = counts[1];
+    }
+
+    /**
+     * read the rxnfile header up to its counts line. Shared with
+     * RXN2SMILESConverter, which has no context.
+     * 
+     * @param br positioned at the $RXN line
+     * @return reactant and product counts
+     * @exception RuntimeException
+     * @throws IOException if the input is not an rxnfile
+     */
+    static int[] readCounts(LineNumberReader br) throws IOException,
+            RuntimeException {
+
+        /*
+         * -- ---------single RXN----- $RXN ISIS 121020020906 1 1 $MOL -ISIS-
+         * 12100209062D 18 18 0 0 0 0 0 0 0 0999 V2000 -3.4458 0.0542 0.0000 O 0
+         * 0 0 0 0 0 0 0 0 1 0 0 -2.9583 2.4750 0.0000 C 0 0 0 0 0 0 0 0 0 2 0 0
+         * ... -0.8000 0.3208 0.0000 H 0 0 0 0 0 0 0 0 0 0 0 0 1 4 1 0 0 0 0 ...
+         * 9 18 1 0 0 0 0 M END $MOL -ISIS- 12100209062D 17 17 0 0 0 0 0 0 0
+         * 0999 V2000 8.8958 2.1625 0.0000 O 0 0 0 0 0 0 0 0 0 0 0 0 ... 10.9958
+         * 0.8208 0.0000 H 0 0 0 0 0 0 0 0 0 0 0 0 9 1 1 0 0 0 0 ... 2 17 1 0 0
+         * 0 0 M END------------------------ --
+         */
+        String line;
+        line = br.readLine();
+
+        if (line == null) {
+            throw new RuntimeException("Empty RXN file");
+        }
+
+        if (!line.startsWith(RXN)) {
+            throw new IOException("non-RXN: RXN file must start with '$RXN':"
+                    + line + S_COLON);
+        }
+
+        // reaction name; often blank but ISIS and others write one here
+        if (!MappedLineNumberReader.skipLine(br)) {
+            throw new RuntimeException("Unexpected EOF RXN file 2");
+        }
+
+        if (!MappedLineNumberReader.skipLine(br)) {
+            throw new RuntimeException("Unexpected EOF RXN file 3");
+        }
+
+        // comment
+        if (!MappedLineNumberReader.skipLine(br)) {
+            throw new RuntimeException("Unexpected EOF RXN file 4");
+        }
+
+        line = br.readLine();
+
+        if (line == null) {
+            throw new RuntimeException("Unexpected EOF RXN file 5");
+        }
+
+        if (line.length() < 6) {
+            throw new RuntimeException("Corrupt RXN file 5");
+        }
+
+        int[] counts = new int[2];
+        try {
+            counts[0] = V2000Columns.parseInt(line, 0, 3);
+            counts[1] = V2000Columns.parseInt(line, 3, 6);
+        } catch (NumberFormatException nfe) {
+            throw new RuntimeException("Bad integers for counts in line: " + line);
+        }
+        return counts;
+    }
+
+    /**
+     * outputs CML as an RXN if possible. NYI
+     * 
+     * @param writer
+     *            to output it to
+     * @return string
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    public String output(Writer writer) throws RuntimeException, IOException {
+
+        /*
+         * -- StringWriter w = new StringWriter();
+         * PMRDOMUtil.outputEventStream(outputCML, w, PMRDOMUtil.PRETTY, 0); if
+         * (mdlMol != null) mdlMol.output(writer); writeData(writer); --
+         */
+        // return writer.toString();
+        return null;
+    }
+
+    /**
+     * write data NYI
+     * 
+     * @param writer
+     * @return string
+     * @throws RuntimeException
+     * @throws IOException
+     */
+    public String writeData(Writer writer) throws RuntimeException, IOException {
+        /*
+         * -- List childNodes =
+         * outputCML.getElementsByTagName(AbstractBase.ELEMENT_NAMES[AbstractBase.LIST]);
+         * if (childNodes != null) { for (int i = 0; i < childNodes.getLength();
+         * i++) { output(writer, (CMLList)childNodes.get(i)); } } --
+         */
+        // return writer.toString();
+        return null;
+    }
+
+    /**
+     * NYI
+     * 
+     * @param writer
+     * @param list
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    void output(Writer writer, CMLList list) throws RuntimeException, IOException {
+        /*
+         * -- / do not output non-RXN stuff if
+         * (!(list.getAttribute(AbstractBase.CONVENTION).equals(MDLMOL)))
+         * return; if
+         * (!(list.getAttribute(AbstractBase.TITLE).equals(DATA_HEADER)))
+         * return; NodeList childNodes = list.getChildNodes(); for (int i = 0; i <
+         * childNodes.getLength(); i++) { Node child = childNodes.item(i); if
+         * (!(child instanceof CMLScalar)) return; CMLScalar scalar =
+         * (CMLScalar)child; String value = scalar.getString(); if (i == 0) { if
+         * (value.length() < 1 || !(value.substring(0, 1).equals(">"))) return; }
+         * writer.write(value + S_NEWLINE); } --
+         */
+    }
+
+    /**
+     * parse into document, with a new converter and so without a cache
+     * 
+     * @param infile
+     * @return document
+     * @exception IOException
+     * @exception RuntimeException
+     */
+    public static Document parse(File infile) throws IOException, RuntimeException {
+        LineNumberReader lnr = MappedLineNumberReader.open(infile);
+        try {
+            return (Document) new RXN2CMLConverter().read(lnr);
+        } finally {
+            lnr.close();
+        }
+    }
+
+    /**
+     * The main program for the RXNConverter class
+     * 
+     * @param args
+     *            The command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            logger
+                    .info("Usage: org.xmlcml.legacy.reaction.RXNConverter [options]");
+            logger.info("        -IN inputFile (RXN assumed)");
+            logger.info("        -INDIR inputFiles (RXN assumed)");
+            logger.info("        -OUT outputFile (CML)");
+            logger.info("        -OUTDIR inputFiles (CML assumed)");
+            logger.info("        -ID reactionID");
+            logger.info("        -THREADS workers for -INDIR (default: all processors)");
+            logger.info("        -QUARANTINE dir (copy inputs that fail to dir)");
+            System.exit(0);
+        }
+        int i = 0;
+        boolean jump = false;
+        String infile = "";
+        String indir = "";
+        String outdir = "";
+        String outfile = "";
+        String reactionId = "";
+        int threadCount = 0;
+        String quarantineDir = "";
+        while (i < args.length) {
+            if (1 == 2) {
+                ;
+            } else if (args[i].equalsIgnoreCase("-ID")) {
+                reactionId = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-IN")) {
+                infile = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-INDIR")) {
+                indir = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-OUT")) {
+                outfile = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-OUTDIR")) {
+                outdir = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-THREADS")) {
+                threadCount = Integer.parseInt(args[++i]);
+                i++;
+            } else if (args[i].equalsIgnoreCase("-QUARANTINE")) {
+                quarantineDir = args[++i];
+                i++;
+            } else {
+                logger.severe("Unknown arg: " + args[i]);
+                i++;
+            }
+        }
+        Document doc = null;
+        Quarantine quarantine = null;
+        try {
+            if (!quarantineDir.equals("")) {
+                quarantine = new Quarantine(new File(quarantineDir));
+            }
+            if (!indir.equals("") && !outdir.equals("")) {
+                RXN2CMLConverter rxn = new RXN2CMLConverter();
+                rxn.setInDir(indir);
+                rxn.setOutDir(outdir);
+                rxn.setThreadCount(threadCount);
+                rxn.setQuarantine(quarantine);
+                rxn.process();
+                jump = true;
+            } else if (!infile.equals("")) {
+                LineNumberReader lnr = MappedLineNumberReader.open(new File(
+                        infile));
+                RXN2CMLConverter rxn = new RXN2CMLConverter(reactionId);
+                doc = (Document) rxn.read(lnr);
+            }
+
+            if (!jump) {
+                if (!reactionId.equals("")) {
+                    CMLReaction reaction = (CMLReaction) doc.getRootElement();
+                    reaction.setId(reactionId);
+                }
+                if (!outfile.equals("")) {
+                    CMLSerializer serializer = new CMLSerializer(
+                            new FileOutputStream(outfile));
+                    serializer.write(doc);
+                } else {
+                    ;
+                    // PMRDOMUtil.debug(doc);
+                }
+            }
+        } catch (IOException ioe) {
+            logger.info("IOEXception: " + ioe);
+        } catch (RuntimeException cmle) {
+            logger.log(Level.SEVERE, "CMLEXception: " + cmle, cmle);
+            if (quarantine != null && !infile.equals("")) {
+                try {
+                    quarantine.add(new File(infile), cmle);
+                } catch (IOException ioe) {
+                    logger.info("IOEXception: " + ioe);
+                }
+            }
+        } finally {
+            if (quarantine != null) {
+                try {
+                    quarantine.close();
+                } catch (IOException ioe) {
+                    logger.info("IOEXception: " + ioe);
+                }
+            }
+        }
+    }
+    
+	public MimeType getInputType() {
+		return RXNModule.RXN_TYPE;
+	}
+	
+	public MimeType getOutputType() {
+		return CMLCommon.CML_TYPE;
+	}
+	
+	public String getDescription() {
+		return REG_MESSAGE;
+	}
+
+
+}
@@ -0,0 +1,282 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.cml.converters.MimeType;
+import org.xmlcml.cml.converters.reaction.core.ConversionMetrics;
+import org.xmlcml.cml.converters.reaction.core.ReactionConverter;
+import org.xmlcml.cml.converters.reaction.core.MappedLineNumberReader;
+
+/**
+ * converts RXN format to reaction SMILES, one line per reaction.
+ *
+ * Each line is "reactants&gt;&gt;products", a tab and the reaction id.
+ * Molecules are separated by '.' and the atom-atom mapping is kept as SMILES
+ * map numbers ([CH3:1]), so a line carries the species and the map that
+ * the CML of RXN2CMLConverter does at a small fraction of the size.
+ *
+ * The rxnfile is read straight into connection tables; no CML is built.
+ * See ConnectionTable for what the SMILES do and do not record.
+ */
+public class RXN2SMILESConverter extends ReactionConverter implements
+        CMLConstants {
+
+    final static Logger logger = Logger.getLogger(RXN2SMILESConverter.class
+            .getName());
+
+    /** separates the reactants and products of a reaction SMILES */
+    public final static String ARROW = ">>";
+
+    public static final String REG_MESSAGE = "RXN to reaction SMILES conversion";
+
+    String id;
+
+    /**
+     * Constructor for the RXN2SMILESConverter object
+     */
+    public RXN2SMILESConverter() {
+        this("");
+    }
+
+    /**
+     * Constructor for the RXN2SMILESConverter object
+     *
+     * @param reactionId
+     *            written after the SMILES
+     */
+    public RXN2SMILESConverter(String reactionId) {
+        id = reactionId;
+    }
+
+    /**
+     * read one reaction.
+     *
+     * @param br
+     * @return line, without a line separator
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    public String read(LineNumberReader br) throws RuntimeException,
+            IOException {
+        return read(br, id);
+    }
+
+    /**
+     * read one reaction, giving it an id other than the converter's own.
+     *
+     * @param br
+     * @param reactionId
+     * @return line, without a line separator
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    public String read(LineNumberReader br, String reactionId)
+            throws RuntimeException, IOException {
+        StringBuilder sb = new StringBuilder();
+        appendReaction(br, sb);
+        sb.append(S_TAB).append(reactionId);
+        return sb.toString();
+    }
+
+    /**
+     * append the reaction SMILES of an rxnfile.
+     *
+     * @param br
+     *            positioned at the $RXN line
+     * @param sb
+     * @exception RuntimeException
+     * @exception IOException
+     */
+    public void appendReaction(LineNumberReader br, StringBuilder sb)
+            throws RuntimeException, IOException {
+        try {
+            appendSmiles(br, sb);
+            ConversionMetrics.count(metrics,
+                    ConversionMetrics.Counter.RECORDS, 1);
+        } catch (RuntimeException e) {
+            ConversionMetrics.count(metrics, ConversionMetrics.Counter.ERRORS,
+                    1);
+            throw e;
+        }
+    }
+
+    private void appendSmiles(LineNumberReader br, StringBuilder sb)
+            throws RuntimeException, IOException {
+        long start = ConversionMetrics.start(metrics);
+        int[] counts = readFileHeader(br);
+        start = ConversionMetrics.stop(metrics,
+                ConversionMetrics.Stage.HEADER, start);
+        for (int i = 0; i < counts[0] + counts[1]; i++) {
+            if (i == counts[0]) {
+                sb.append(ARROW);
+            } else if (i > 0) {
+                sb.append(S_PERIOD);
+            }
+            String line = br.readLine();
+            if (line == null || !line.startsWith("$MOL")) {
+                throw new RuntimeException("RXN: expected $MOL record (line: "
+                        + br.getLineNumber() + S_RBRAK);
+            }
+            ConnectionTable table = ConnectionTable.read(br);
+            start = ConversionMetrics.stop(metrics,
+                    ConversionMetrics.Stage.MOLECULE, start);
+            ConversionMetrics.count(metrics, ConversionMetrics.Counter.ATOMS,
+                    table.atomCount);
+            table.appendSmiles(sb);
+            start = ConversionMetrics.stop(metrics,
+                    ConversionMetrics.Stage.SERIALIZE, start);
+        }
+        if (counts[1] == 0) {
+            sb.append(ARROW);
+        }
+    }
+
+    /* reactant and product counts from the rxnfile header */
+    private int[] readFileHeader(LineNumberReader br) throws IOException,
+            RuntimeException {
+        int[] counts = RXN2CMLConverter.readCounts(br);
+        if (counts[0] == 0 && counts[1] == 0) {
+            throw new RuntimeException("RXN: no reactants and no products");
+        }
+        return counts;
+    }
+
+    /**
+     * write one line for each .rxn file in a directory, ids taken from the
+     * file names. A file that cannot be read or parsed is logged and
+     * skipped; only a failure to write stops the conversion.
+     *
+     * @param inDir
+     * @param writer
+     * @return number of lines written
+     * @exception IOException
+     */
+    public int convertDirectory(File inDir, Writer writer) throws IOException {
+        File[] files = inDir.listFiles();
+        if (files == null) {
+            throw new IOException("Cannot list directory: " + inDir);
+        }
+        Arrays.sort(files);
+        int count = 0;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(".rxn")) {
+                continue;
+            }
+            String line;
+            try {
+                line = readFile(file, name.substring(0, name.length() - 4));
+            } catch (IOException e) {
+                logger.warning("Skipped " + file + ": " + e);
+                continue;
+            } catch (RuntimeException e) {
+                logger.warning("Skipped " + file + ": " + e);
+                continue;
+            }
+            writer.write(line);
+            writer.write(S_NL);
+            count++;
+        }
+        return count;
+    }
+
+    private String readFile(File file, String reactionId) throws IOException,
+            RuntimeException {
+        LineNumberReader lnr = MappedLineNumberReader.open(file);
+        try {
+            return read(lnr, reactionId);
+        } finally {
+            lnr.close();
+        }
+    }
+
+    /**
+     * The main program for the RXN2SMILESConverter class
+     *
+     * @param args
+     *            The command line arguments
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            logger.info("Usage: org.xmlcml.cml.converters.reaction.rxn.RXN2SMILESConverter [options]");
+            logger.info("        -IN inputFile (RXN assumed)");
+            logger.info("        -INDIR inputFiles (RXN assumed)");
+            logger.info("        -OUT outputFile (reaction SMILES)");
+            logger.info("        -ID reactionID");
+            System.exit(0);
+        }
+        int i = 0;
+        String infile = "";
+        String indir = "";
+        String outfile = "";
+        String reactionId = "";
+        while (i < args.length) {
+            if (args[i].equalsIgnoreCase("-ID")) {
+                reactionId = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-IN")) {
+                infile = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-INDIR")) {
+                indir = args[++i];
+                i++;
+            } else if (args[i].equalsIgnoreCase("-OUT")) {
+                outfile = args[++i];
+                i++;
+            } else {
+                logger.severe("Unknown arg: " + args[i]);
+                i++;
+            }
+        }
+        try {
+            Writer writer = new OutputStreamWriter(outfile.equals("") ? System.out
+                    : new FileOutputStream(outfile), "UTF-8");
+            try {
+                RXN2SMILESConverter rxn = new RXN2SMILESConverter(reactionId);
+                if (!indir.equals("")) {
+                    rxn.convertDirectory(new File(indir), writer);
+                } else if (!infile.equals("")) {
+                    LineNumberReader lnr = MappedLineNumberReader
+                            .open(new File(infile));
+                    try {
+                        writer.write(rxn.read(lnr));
+                        writer.write(S_NL);
+                    } finally {
+                        lnr.close();
+                    }
+                }
+            } finally {
+                if (outfile.equals("")) {
+                    writer.flush();
+                } else {
+                    writer.close();
+                }
+            }
+        } catch (IOException ioe) {
+            logger.info("IOEXception: " + ioe);
+        } catch (RuntimeException cmle) {
+            logger.log(Level.SEVERE, "CMLEXception: " + cmle, cmle);
+        }
+    }
+
+    public MimeType getInputType() {
+        return RXNModule.RXN_TYPE;
+    }
+
+    public MimeType getOutputType() {
+        return RXNModule.RSMI_TYPE;
+    }
+
+    public String getDescription() {
+        return REG_MESSAGE;
+    }
+}
@@ -0,0 +1,29 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import org.xmlcml.cml.element.CMLReaction;
+
+/**
+ * state of a single rxnfile parse.
+ *
+ * A new context is created for every reaction read, and is only seen by
+ * the thread reading it, so one RXN2CMLConverter (or RXNConverter) can be
+ * shared by any number of threads.
+ */
+class RXNContext {
+
+    String id;
+    int nReactants;
+    int nProducts;
+    CMLReaction reaction;
+    AtomMapTable atomMaps = new AtomMapTable();
+    AtomMapReport atomMapReport;
+
+    /**
+     * @param id of the reaction; molecule ids are derived from it
+     */
+    RXNContext(String id) {
+        this.id = id;
+        reaction = new CMLReaction();
+        reaction.setId(id);
+    }
+}
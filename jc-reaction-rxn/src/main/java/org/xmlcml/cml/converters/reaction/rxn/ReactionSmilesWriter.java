@@ -0,0 +1,122 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import nu.xom.Node;
+
+import org.xmlcml.cml.base.CMLConstants;
+import org.xmlcml.cml.base.CMLElement;
+import org.xmlcml.cml.converters.reaction.core.RecordHandler;
+import org.xmlcml.cml.element.CMLMolecule;
+import org.xmlcml.cml.element.CMLProduct;
+import org.xmlcml.cml.element.CMLProductList;
+import org.xmlcml.cml.element.CMLReactant;
+import org.xmlcml.cml.element.CMLReactantList;
+import org.xmlcml.cml.element.CMLReaction;
+
+/**
+ * writes parsed records as reaction SMILES lines, in the format of
+ * RXN2SMILESConverter, instead of serializing them as CML.
+ *
+ * Use it as the handler of a streaming read, for example
+ *
+ * <pre>
+ * rdfConverter.read(file, new ReactionSmilesWriter(writer));
+ * </pre>
+ *
+ * A reaction is written from the molecules of its reactant and product
+ * lists or, if it has none (an RDF record whose structure is an embedded
+ * $RXN datum), from its first child reaction. A molecule record is written
+ * as a plain SMILES. Only the structures are used, so a DataTypeFilter
+ * that excludes every text field saves parsing them.
+ */
+public class ReactionSmilesWriter implements RecordHandler, CMLConstants {
+
+    private Writer writer;
+    private StringBuilder line = new StringBuilder();
+    private int count;
+
+    /**
+     * @param writer
+     *            receives one line per record; not closed
+     */
+    public ReactionSmilesWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * write a line for the record.
+     *
+     * @param record
+     *            reaction or molecule
+     * @throws IOException
+     */
+    public void handle(CMLElement record) throws IOException {
+        line.setLength(0);
+        if (record instanceof CMLReaction) {
+            appendReaction((CMLReaction) record);
+        } else if (record instanceof CMLMolecule) {
+            ConnectionTable.fromMolecule((CMLMolecule) record).appendSmiles(line);
+        } else {
+            return;
+        }
+        line.append(S_TAB);
+        if (record.getId() != null) {
+            line.append(record.getId());
+        }
+        line.append(S_NL);
+        writer.write(line.toString());
+        count++;
+    }
+
+    /**
+     * @return lines written so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    private void appendReaction(CMLReaction reaction) {
+        List<CMLMolecule> reactants = new ArrayList<CMLMolecule>();
+        List<CMLMolecule> products = new ArrayList<CMLMolecule>();
+        for (CMLReactantList reactantList : reaction.getReactantListElements()) {
+            for (CMLReactant reactant : reactantList.getReactantElements()) {
+                reactants.add(reactant.getMolecule());
+            }
+        }
+        for (CMLProductList productList : reaction.getProductListElements()) {
+            for (CMLProduct product : productList.getProductElements()) {
+                products.add(product.getMolecule());
+            }
+        }
+        if (reactants.isEmpty() && products.isEmpty()) {
+            for (int i = 0; i < reaction.getChildCount(); i++) {
+                Node child = reaction.getChild(i);
+                if (child instanceof CMLReaction) {
+                    appendReaction((CMLReaction) child);
+                    return;
+                }
+            }
+        }
+        appendMolecules(reactants);
+        line.append(RXN2SMILESConverter.ARROW);
+        appendMolecules(products);
+    }
+
+    private void appendMolecules(List<CMLMolecule> molecules) {
+        boolean first = true;
+        for (CMLMolecule molecule : molecules) {
+            if (molecule == null) {
+                continue;
+            }
+            if (!first) {
+                line.append(S_PERIOD);
+            }
+            ConnectionTable.fromMolecule(molecule).appendSmiles(line);
+            first = false;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import java.util.Arrays;
+
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLBond;
+
+/**
+ * column-oriented tokenizer for MDL V2000 counts, atom and bond lines.
+ * 
+ * Fields are read straight from the characters of the line without
+ * substring(), trim() or Integer.parseInt(), so parsing a field creates no
+ * temporary objects. Any CharSequence will do: a String from readLine() or
+ * a CharBuffer window over a reused char[] line buffer.
+ * Element symbols are returned as shared constants.
+ * 
+ * Column positions are those of the CTfile Formats document (0-based,
+ * end exclusive). Fields beyond the end of a short line read as blank,
+ * and blank numeric fields read as zero.
+ */
+public final class V2000Columns {
+
+    /** counts line: aaabbblllfffcccsssxxxrrrpppiiimmmvvvvvv */
+    public static final int COUNTS_ATOMS = 0;
+    /** */
+    public static final int COUNTS_BONDS = 3;
+
+    /** atom line: xxxxx.xxxxyyyyy.yyyyzzzzz.zzzz aaaddcccssshhhbbbvvvHHHrrriiimmmnnneee */
+    public static final int ATOM_X = 0;
+    /** */
+    public static final int ATOM_Y = 10;
+    /** */
+    public static final int ATOM_Z = 20;
+    /** */
+    public static final int ATOM_SYMBOL = 31;
+    /** */
+    public static final int ATOM_MASS_DIFF = 34;
+    /** */
+    public static final int ATOM_CHARGE = 36;
+    /** */
+    public static final int ATOM_MAP = 60;
+
+    /** bond line: 111222tttsssxxxrrrccc */
+    public static final int BOND_ATOM1 = 0;
+    /** */
+    public static final int BOND_ATOM2 = 3;
+    /** */
+    public static final int BOND_TYPE = 6;
+    /** */
+    public static final int BOND_STEREO = 9;
+
+    /** width of all integer fields except the mass difference */
+    public static final int WIDTH = 3;
+    /** width of coordinate fields */
+    public static final int COORD_WIDTH = 10;
+
+    private static final String[] SYMBOLS = {
+        "H", "He", "Li", "Be", "B", "C", "N", "O", "F", "Ne", "Na", "Mg", "Al",
+        "Si", "P", "S", "Cl", "Ar", "K", "Ca", "Sc", "Ti", "V", "Cr", "Mn",
+        "Fe", "Co", "Ni", "Cu", "Zn", "Ga", "Ge", "As", "Se", "Br", "Kr", "Rb",
+        "Sr", "Y", "Zr", "Nb", "Mo", "Tc", "Ru", "Rh", "Pd", "Ag", "Cd", "In",
+        "Sn", "Sb", "Te", "I", "Xe", "Cs", "Ba", "La", "Ce", "Pr", "Nd", "Pm",
+        "Sm", "Eu", "Gd", "Tb", "Dy", "Ho", "Er", "Tm", "Yb", "Lu", "Hf", "Ta",
+        "W", "Re", "Os", "Ir", "Pt", "Au", "Hg", "Tl", "Pb", "Bi", "Po", "At",
+        "Rn", "Fr", "Ra", "Ac", "Th", "Pa", "U", "Np", "Pu", "Am", "Cm", "Bk",
+        "Cf", "Es", "Fm", "Md", "No", "Lr", "Rf", "Db", "Sg", "Bh", "Hs", "Mt",
+        "Ds", "Rg", "Cn", "D", "T", "R", "R#", "A", "Q", "L", "LP", "*",
+    };
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+        1e13, 1e14, 1e15, 1e16, 1e17, 1e18,
+    };
+
+    /** packed symbol characters, sorted, for allocation-free lookup */
+    private static final int[] SYMBOL_KEYS;
+    private static final String[] SYMBOL_VALUES;
+
+    static {
+        int n = SYMBOLS.length;
+        long[] packed = new long[n];
+        for (int i = 0; i < n; i++) {
+            packed[i] = ((long) pack(SYMBOLS[i], 0, SYMBOLS[i].length()) << 32) | i;
+        }
+        Arrays.sort(packed);
+        SYMBOL_KEYS = new int[n];
+        SYMBOL_VALUES = new String[n];
+        for (int i = 0; i < n; i++) {
+            SYMBOL_KEYS[i] = (int) (packed[i] >>> 32);
+            SYMBOL_VALUES[i] = SYMBOLS[(int) packed[i]];
+        }
+    }
+
+    private V2000Columns() {
+    }
+
+    /**
+     * parse a right-justified integer field. Leading and trailing blanks
+     * are skipped; a blank field is 0.
+     * 
+     * @param line
+     * @param start first column
+     * @param end column after the field
+     * @return value
+     * @throws NumberFormatException if the field is not an integer
+     */
+    public static int parseInt(CharSequence line, int start, int end) {
+        end = Math.min(end, line.length());
+        while (start < end && line.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end) {
+            return 0;
+        }
+        boolean negative = false;
+        char c = line.charAt(start);
+        if (c == '-' || c == '+') {
+            negative = (c == '-');
+            start++;
+            if (start == end) {
+                throw new NumberFormatException("Sign without digits");
+            }
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Bad integer character '"
+                        + line.charAt(i) + "' in column " + (i + 1));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+
+    /**
+     * parse a fixed-point field such as "  -10.9750". A blank field is 0.0.
+     * 
+     * @param line
+     * @param start first column
+     * @param end column after the field
+     * @return value
+     * @throws NumberFormatException if the field is not a decimal number
+     */
+    public static double parseFixed(CharSequence line, int start, int end) {
+        end = Math.min(end, line.length());
+        while (start < end && line.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end) {
+            return 0.0;
+        }
+        boolean negative = false;
+        char c = line.charAt(start);
+        if (c == '-' || c == '+') {
+            negative = (c == '-');
+            start++;
+        }
+        long mantissa = 0;
+        int scale = -1;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            c = line.charAt(i);
+            if (c == '.' && scale == -1) {
+                scale = 0;
+            } else if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                throw new NumberFormatException("Bad decimal character '"
+                        + c + "' in column " + (i + 1));
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("No digits in decimal field");
+        }
+        double value = mantissa;
+        if (scale > 0) {
+            value /= (scale < POWERS_OF_TEN.length) ? POWERS_OF_TEN[scale]
+                    : Math.pow(10.0, scale);
+        }
+        return negative ? -value : value;
+    }
+
+
+    /**
+     * the element symbol of an atom line (columns 32-34) as a shared
+     * constant. Symbols not in the table (unusual query atoms, aliases) are
+     * returned as new Strings.
+     * 
+     * @param line
+     * @return symbol or null if blank
+     */
+    public static String elementSymbol(CharSequence line) {
+        int start = ATOM_SYMBOL;
+        int end = Math.min(ATOM_SYMBOL + WIDTH, line.length());
+        while (end > start && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start >= end) {
+            return null;
+        }
+        int idx = Arrays.binarySearch(SYMBOL_KEYS, pack(line, start, end));
+        return (idx >= 0) ? SYMBOL_VALUES[idx]
+                : line.subSequence(start, end).toString();
+    }
+
+    /**
+     * formal charge from the ccc column of an atom line. Code 4 (doublet
+     * radical) and blank give 0.
+     * 
+     * @param line
+     * @return charge
+     */
+    public static int formalCharge(CharSequence line) {
+        int code = parseInt(line, ATOM_CHARGE, ATOM_CHARGE + WIDTH);
+        return (code >= 1 && code <= 7 && code != 4) ? 4 - code : 0;
+    }
+
+    /**
+     * atom-atom mapping number (mmm column) of an atom line.
+     * 
+     * @param line
+     * @return map number, 0 if unmapped
+     */
+    public static int atomMap(CharSequence line) {
+        return parseInt(line, ATOM_MAP, ATOM_MAP + WIDTH);
+    }
+
+    /**
+     * populate an atom from an atom line. Coordinates go to x2/y2 when z is
+     * zero (the usual 2D molfile) and to x3/y3/z3 otherwise.
+     * 
+     * @param line
+     * @param atom
+     */
+    public static void readAtom(CharSequence line, CMLAtom atom) {
+        double x = parseFixed(line, ATOM_X, ATOM_X + COORD_WIDTH);
+        double y = parseFixed(line, ATOM_Y, ATOM_Y + COORD_WIDTH);
+        double z = parseFixed(line, ATOM_Z, ATOM_Z + COORD_WIDTH);
+        if (z == 0.0) {
+            atom.setX2(x);
+            atom.setY2(y);
+        } else {
+            atom.setX3(x);
+            atom.setY3(y);
+            atom.setZ3(z);
+        }
+        String symbol = elementSymbol(line);
+        if (symbol != null) {
+            atom.setElementType(symbol);
+        }
+        int charge = formalCharge(line);
+        if (charge != 0) {
+            atom.setFormalCharge(charge);
+        }
+    }
+
+    /**
+     * create a bond from a bond line.
+     * 
+     * @param line
+     * @param atoms atoms of the molecule indexed from 0 in file order
+     * @return bond
+     * @throws RuntimeException if an atom number is out of range
+     */
+    public static CMLBond readBond(CharSequence line, CMLAtom[] atoms) {
+        int a1 = parseInt(line, BOND_ATOM1, BOND_ATOM1 + WIDTH);
+        int a2 = parseInt(line, BOND_ATOM2, BOND_ATOM2 + WIDTH);
+        if (a1 < 1 || a1 > atoms.length || a2 < 1 || a2 > atoms.length) {
+            throw new RuntimeException("Bond atom out of range: " + line);
+        }
+        CMLBond bond = new CMLBond(atoms[a1 - 1], atoms[a2 - 1]);
+        String order = bondOrder(parseInt(line, BOND_TYPE, BOND_TYPE + WIDTH));
+        if (order != null) {
+            bond.setOrder(order);
+        }
+        return bond;
+    }
+
+    /**
+     * CML bond order for an MDL bond type; query types give null.
+     * 
+     * @param type
+     * @return order
+     */
+    public static String bondOrder(int type) {
+        switch (type) {
+        case 1:
+            return CMLBond.SINGLE;
+        case 2:
+            return CMLBond.DOUBLE;
+        case 3:
+            return CMLBond.TRIPLE;
+        case 4:
+            return CMLBond.AROMATIC;
+        default:
+            return null;
+        }
+    }
+
+    /* up to three 8-bit characters packed into an int */
+    private static int pack(CharSequence s, int start, int end) {
+        int key = 0;
+        for (int i = start; i < end && i < start + WIDTH; i++) {
+            key = (key << 8) | (s.charAt(i) & 0xff);
+        }
+        return key;
+    }
+}
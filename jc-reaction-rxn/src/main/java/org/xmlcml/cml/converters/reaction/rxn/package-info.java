@@ -1,5 +1,5 @@
-/** 
-<h2>Converts RXN files to CML.</h2>
-Currently missing 
-*/
+/** 
+<h2>Converts RXN files to CML.</h2>
+Currently missing 
+*/
 package org.xmlcml.cml.converters.reaction.rxn;
\ No newline at end of file
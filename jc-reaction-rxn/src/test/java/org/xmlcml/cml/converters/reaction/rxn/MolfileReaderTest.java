@@ -0,0 +1,50 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.element.CMLMolecule;
+
+public class MolfileReaderTest {
+
+	static final String PENTOCEPH = "org/xmlcml/cml/converters/reaction/rxn/pentoceph.rxn";
+
+	private LineNumberReader open() {
+		return new LineNumberReader(new InputStreamReader(
+				MolfileReaderTest.class.getClassLoader().getResourceAsStream(PENTOCEPH)));
+	}
+
+	@Test
+	public void testReadMolfileBlock() throws IOException {
+		LineNumberReader br = open();
+		try {
+			// $RXN header (5 lines) and $MOL
+			for (int i = 0; i < 6; i++) {
+				br.readLine();
+			}
+			CMLMolecule mol = new MolfileReader().read(br, "r1");
+			Assert.assertEquals("r1", mol.getId());
+			Assert.assertEquals(11, mol.getAtoms().size());
+			Assert.assertEquals(12, mol.getBonds().size());
+			Assert.assertEquals("r1_a1", mol.getAtoms().get(0).getId());
+			Assert.assertEquals("S", mol.getAtoms().get(6).getElementType());
+			Assert.assertEquals("$MOL", br.readLine());
+		} finally {
+			br.close();
+		}
+	}
+
+	@Test
+	public void testReadReaction() throws IOException {
+		LineNumberReader br = open();
+		try {
+			RXN2CMLConverter converter = new RXN2CMLConverter("pc");
+			Assert.assertNotNull(converter.readReaction(br));
+		} finally {
+			br.close();
+		}
+	}
+}
@@ -1,23 +1,204 @@
-package org.xmlcml.cml.converters.reaction.rxn;
-
-import java.io.IOException;
-
-
-import org.junit.Ignore;
-import org.junit.Test;
-import org.xmlcml.cml.converters.testutils.JumboConvertersRegressionSuite;
-
-public class RXN2CMLConverterTest {
-
-	@Test
-	public void testDummy() {
-		int a = 1;
-	}
-	
-   @Test
-   @Ignore
-   public void testConvertToXMLElement() throws IOException {
-       JumboConvertersRegressionSuite.run("cdx/cdx", "cdx", "cdx.xml",
-                            new RXN2CMLConverter());
-   }
-}
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import nu.xom.Element;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.xmlcml.cml.converters.reaction.core.ConversionCache;
+import org.xmlcml.cml.converters.reaction.core.ConversionMetrics;
+import org.xmlcml.cml.converters.testutils.JumboConvertersRegressionSuite;
+import org.xmlcml.cml.element.CMLAtom;
+import org.xmlcml.cml.element.CMLScalar;
+
+public class RXN2CMLConverterTest {
+
+	@Test
+	public void testDummy() {
+		int a = 1;
+	}
+
+	static String atom(String symbol, int map) {
+		return RXN2SMILESConverterTest.atom(symbol, 0, map);
+	}
+
+	@Test
+	public void testAtomMap() throws IOException {
+		String reactant = RXN2SMILESConverterTest.mol(3, 2, atom("C", 2)
+				+ atom("O", 0) + atom("Cl", 1)
+				+ RXN2SMILESConverterTest.bond(1, 2, 1)
+				+ RXN2SMILESConverterTest.bond(1, 3, 1));
+		String product = RXN2SMILESConverterTest.mol(2, 1, atom("Cl", 1)
+				+ atom("C", 2) + RXN2SMILESConverterTest.bond(1, 2, 1));
+		Element reaction = new RXN2CMLConverter().readReaction(
+				RXN2SMILESConverterTest.rxn(1, 1, reactant + product));
+		Element map = (Element) reaction.getChild(reaction.getChildCount() - 1);
+		Assert.assertEquals("map", map.getLocalName());
+		Assert.assertEquals(2, map.getChildCount());
+		Element link = (Element) map.getChild(0);
+		Assert.assertEquals("p1_a2", link.getAttributeValue("from"));
+		Assert.assertEquals("r1_a1", link.getAttributeValue("to"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testDuplicateAtomMap() throws IOException {
+		String reactant = RXN2SMILESConverterTest.mol(1, 0, atom("C", 1));
+		String product = RXN2SMILESConverterTest.mol(2, 0, atom("C", 1)
+				+ atom("O", 1));
+		new RXN2CMLConverter().readReaction(RXN2SMILESConverterTest.rxn(1,
+				1, reactant + product));
+	}
+
+	@Test
+	public void testAtomMapPolicy() throws IOException {
+		String reactant = RXN2SMILESConverterTest.mol(3, 0, atom("C", 5)
+				+ atom("O", 7) + atom("N", 0));
+		String product = RXN2SMILESConverterTest.mol(2, 0, atom("C", 5)
+				+ atom("O", 9));
+		final List<AtomMapReport> reports = new ArrayList<AtomMapReport>();
+		RXN2CMLConverter converter = new RXN2CMLConverter();
+		converter.setAtomMapPolicy(AtomMapReport.Policy.RENUMBER);
+		converter.setAtomMapListener(new AtomMapListener() {
+			public void report(AtomMapReport report) {
+				reports.add(report);
+			}
+		});
+		Element reaction = converter.readReaction(RXN2SMILESConverterTest
+				.rxn(1, 1, reactant + product));
+		Element map = (Element) reaction.getChild(reaction.getChildCount() - 1);
+		Assert.assertEquals(1, map.getChildCount());
+		Assert.assertEquals(1, reports.size());
+		AtomMapReport report = reports.get(0);
+		Assert.assertEquals(2, report.count(AtomMapReport.Kind.ORPHAN));
+		Assert.assertEquals(1, report.count(AtomMapReport.Kind.UNMAPPED));
+		Assert.assertEquals(0, report.count(AtomMapReport.Kind.DUPLICATE));
+	}
+
+	static CMLScalar mapped(AtomMapTable table, String id, int map,
+			boolean product) {
+		CMLAtom atom = new CMLAtom();
+		atom.setId(id);
+		CMLScalar scalar = new CMLScalar();
+		atom.appendChild(scalar);
+		table.add(atom, scalar, map, product);
+		return scalar;
+	}
+
+	@Test
+	public void testReactantOnlyAtomMaps() {
+		AtomMapTable table = new AtomMapTable();
+		CMLScalar c = mapped(table, "r1_a1", 1, false);
+		CMLScalar o = mapped(table, "r1_a2", 2, false);
+		AtomMapReport report = new AtomMapReport("rxn");
+		Assert.assertNull(table.createMap("t", AtomMapReport.Policy.DROP,
+				report));
+		Assert.assertEquals(2, report.count(AtomMapReport.Kind.ORPHAN));
+		Assert.assertNull(c.getParent());
+		Assert.assertNull(o.getParent());
+
+		table = new AtomMapTable();
+		c = mapped(table, "r1_a1", 1, false);
+		Assert.assertNull(table.createMap("t", AtomMapReport.Policy.FAIL,
+				null));
+		Assert.assertNotNull(c.getParent());
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		String reactant = RXN2SMILESConverterTest.mol(1, 0, atom("C", 1));
+		String clean = "$RXN\n\n  test\n\n  1  1\n" + reactant
+				+ RXN2SMILESConverterTest.mol(1, 0, atom("C", 1));
+		String duplicate = "$RXN\n\n  test\n\n  1  1\n" + reactant
+				+ RXN2SMILESConverterTest.mol(2, 0, atom("C", 1) + atom("O", 1));
+		ConversionCache cache = new ConversionCache(10, 1000000);
+		ConversionMetrics metrics = new ConversionMetrics();
+		final List<AtomMapReport> reports = new ArrayList<AtomMapReport>();
+		RXN2CMLConverter converter = new RXN2CMLConverter();
+		converter.setCache(cache);
+		converter.setMetrics(metrics);
+		converter.setAtomMapListener(new AtomMapListener() {
+			public void report(AtomMapReport report) {
+				reports.add(report);
+			}
+		});
+		String expected = converter.read(
+				new ByteArrayInputStream(clean.getBytes("UTF-8"))).toXML();
+		Assert.assertEquals(expected, converter.read(
+				new LineNumberReader(new StringReader(clean))).toXML());
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(2, metrics.get(ConversionMetrics.Counter.RECORDS));
+
+		// atom map problems are not cached, so they are reported every time
+		converter.setAtomMapPolicy(AtomMapReport.Policy.DROP);
+		for (int i = 0; i < 2; i++) {
+			converter.read(new LineNumberReader(new StringReader(duplicate)));
+		}
+		Assert.assertEquals(2, reports.size());
+		Assert.assertEquals(1, cache.size());
+
+		// the policy is part of the key
+		converter.read(new LineNumberReader(new StringReader(clean)));
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(2, cache.size());
+	}
+	
+	/* an RXN file with one carbon in each of its molecules */
+	static LineNumberReader reaction(int reactants, int products) {
+		StringBuilder sb = new StringBuilder("$RXN\n\n  test\n\n  " + reactants
+				+ "  " + products + "\n");
+		for (int i = 0; i < reactants + products; i++) {
+			sb.append("$MOL\n\n  test\n\n  1  0  0  0  0  0  0  0  0  0999 V2000\n"
+					+ "    0.0000    0.0000    0.0000 C   0  0  0  0  0  0"
+					+ "  0  0  0  0  0  0\nM  END\n");
+		}
+		return new LineNumberReader(new StringReader(sb.toString()));
+	}
+
+	@Test
+	public void testSharedConverter() throws Exception {
+		final RXN2CMLConverter converter = new RXN2CMLConverter();
+		final String[] expected = new String[6];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = converter.readReaction(reaction(i % 3 + 1, i / 3 + 1))
+					.toXML();
+		}
+		Assert.assertFalse(expected[0].equals(expected[1]));
+		ExecutorService executor = Executors.newFixedThreadPool(expected.length);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 10 * expected.length; i++) {
+				final int n = i % expected.length;
+				results.add(executor.submit(new Callable<String>() {
+					public String call() throws IOException {
+						return converter.readReaction(reaction(n % 3 + 1, n / 3 + 1))
+								.toXML();
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				Assert.assertEquals(expected[i % expected.length], results.get(i)
+						.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+   @Test
+   @Ignore
+   public void testConvertToXMLElement() throws IOException {
+       JumboConvertersRegressionSuite.run("cdx/cdx", "cdx", "cdx.xml",
+                            new RXN2CMLConverter());
+   }
+}
@@ -0,0 +1,141 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xmlcml.cml.converters.reaction.core.ConversionMetrics;
+
+public class RXN2SMILESConverterTest {
+
+	static final String PENTOCEPH = "org/xmlcml/cml/converters/reaction/rxn/pentoceph.rxn";
+
+	static String atom(String symbol, int charge, int map) {
+		return "    0.0000    0.0000    0.0000 " + (symbol + "   ").substring(0, 3)
+				+ " 0" + pad(charge == 0 ? 0 : 4 - charge)
+				+ "  0  0  0  0  0  0  0" + pad(map) + "  0  0\n";
+	}
+
+	static String bond(int a1, int a2, int type) {
+		return pad(a1) + pad(a2) + pad(type) + "  0  0  0  0\n";
+	}
+
+	static String pad(int i) {
+		String s = "   " + i;
+		return s.substring(s.length() - 3);
+	}
+
+	static String mol(int atoms, int bonds, String block) {
+		return "$MOL\n\n  test\n\n" + pad(atoms) + pad(bonds)
+				+ "  0  0  0  0  0  0  0  0999 V2000\n" + block + "M  END\n";
+	}
+
+	static LineNumberReader rxn(int reactants, int products, String mols) {
+		return new LineNumberReader(new StringReader("$RXN\n\n  test\n\n"
+				+ pad(reactants) + pad(products) + "\n" + mols));
+	}
+
+	@Test
+	public void testPentoceph() throws IOException {
+		LineNumberReader lnr = new LineNumberReader(new InputStreamReader(
+				getClass().getClassLoader().getResourceAsStream(PENTOCEPH)));
+		Assert.assertEquals("C1C2S(C(CN2C1=O)(C)C)=O>>C1C2N(C1=O)C=C(CS2)C\tpc",
+				new RXN2SMILESConverter("pc").read(lnr));
+	}
+
+	@Test
+	public void testMappedAndCharged() throws IOException {
+		String methanol = mol(2, 1, atom("C", 0, 1) + atom("O", 0, 2) + bond(1, 2, 1));
+		String sodium = mol(1, 0, atom("Na", 1, 0));
+		String methoxide = mol(2, 1, atom("C", 0, 1) + atom("O", -1, 2) + bond(1, 2, 1));
+		Assert.assertEquals("[CH3:1][OH:2].[Na+]>>[CH3:1][O-:2]\t",
+				new RXN2SMILESConverter().read(rxn(2, 1, methanol + sodium + methoxide)));
+	}
+
+	@Test
+	public void testMetrics() throws IOException {
+		String methanol = mol(2, 1, atom("C", 0, 1) + atom("O", 0, 2) + bond(1, 2, 1));
+		ConversionMetrics metrics = new ConversionMetrics();
+		RXN2SMILESConverter converter = new RXN2SMILESConverter();
+		converter.setMetrics(metrics);
+		converter.read(rxn(1, 1, methanol + methanol));
+		try {
+			converter.read(rxn(1, 1, methanol));
+			Assert.fail("missing product");
+		} catch (RuntimeException e) {
+			// expected
+		}
+		Assert.assertEquals(1, metrics.get(ConversionMetrics.Counter.RECORDS));
+		Assert.assertEquals(1, metrics.get(ConversionMetrics.Counter.ERRORS));
+		Assert.assertEquals(6, metrics.get(ConversionMetrics.Counter.ATOMS));
+		Assert.assertEquals(2, metrics.getCalls(ConversionMetrics.Stage.HEADER));
+	}
+
+	@Test
+	public void testDirectorySkipsBadFiles() throws IOException {
+		File directory = File.createTempFile("smiles", "");
+		directory.delete();
+		directory.mkdirs();
+		String[] names = { "a.rxn", "b.rxn", "c.rxn" };
+		String[] contents = {
+				"$RXN\n\n  test\n\n  1  0\n" + mol(1, 0, atom("C", 0, 0)),
+				// not an rxnfile: IOException from the header
+				"$MDL\n",
+				// truncated: RuntimeException from the molfile block
+				"$RXN\n\n  test\n\n  1  0\n$MOL\n" };
+		try {
+			for (int i = 0; i < names.length; i++) {
+				FileWriter writer = new FileWriter(new File(directory, names[i]));
+				writer.write(contents[i]);
+				writer.close();
+			}
+			StringWriter out = new StringWriter();
+			Assert.assertEquals(1,
+					new RXN2SMILESConverter().convertDirectory(directory, out));
+			Assert.assertEquals("C>>\ta\n", out.toString());
+		} finally {
+			for (String name : names) {
+				new File(directory, name).delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testAromaticAndComponents() throws IOException {
+		StringBuilder block = new StringBuilder();
+		for (int i = 0; i < 6; i++) {
+			block.append(atom("C", 0, 0));
+		}
+		block.append(atom("N", 1, 3)).append(atom("Cl", -1, 0));
+		for (int i = 1; i <= 6; i++) {
+			block.append(bond(i, i % 6 + 1, ConnectionTable.AROMATIC));
+		}
+		block.append(bond(1, 7, 1));
+		Assert.assertEquals(">>c1(ccccc1)[NH3+:3].[Cl-]\t",
+				new RXN2SMILESConverter().read(rxn(0, 1, mol(8, 7, block.toString()))));
+	}
+
+	@Test
+	public void testLongChain() {
+		int n = 100000;
+		ConnectionTable table = new ConnectionTable(n, n - 1);
+		for (int i = 0; i < n; i++) {
+			table.symbols[i] = "C";
+		}
+		for (int i = 0; i < n - 1; i++) {
+			table.bondAtoms1[i] = i;
+			table.bondAtoms2[i] = i + 1;
+			table.bondTypes[i] = 1;
+		}
+		StringBuilder sb = new StringBuilder();
+		table.appendSmiles(sb);
+		Assert.assertEquals(n, sb.length());
+	}
+}
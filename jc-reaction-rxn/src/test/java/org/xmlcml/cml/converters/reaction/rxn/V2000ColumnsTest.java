@@ -0,0 +1,47 @@
+package org.xmlcml.cml.converters.reaction.rxn;
+
+import java.nio.CharBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class V2000ColumnsTest {
+
+	static final String ATOM_LINE =
+		"    1.2875  -10.9750    0.0000 Cl  0  0  3  0  0  0  0  0  0 12  0  0";
+
+	@Test
+	public void testParseInt() {
+		Assert.assertEquals(11, V2000Columns.parseInt(" 11 12  0", 0, 3));
+		Assert.assertEquals(12, V2000Columns.parseInt(" 11 12  0", 3, 6));
+		Assert.assertEquals(0, V2000Columns.parseInt("  1", 3, 6));
+		Assert.assertEquals(-3, V2000Columns.parseInt(" -3", 0, 3));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testParseIntBad() {
+		V2000Columns.parseInt(" x1", 0, 3);
+	}
+
+	@Test
+	public void testParseFixed() {
+		Assert.assertEquals(1.2875, V2000Columns.parseFixed(ATOM_LINE, 0, 10), 1.0e-10);
+		Assert.assertEquals(-10.975, V2000Columns.parseFixed(ATOM_LINE, 10, 20), 1.0e-10);
+		Assert.assertEquals(0.0, V2000Columns.parseFixed(ATOM_LINE, 20, 30), 1.0e-10);
+	}
+
+	@Test
+	public void testAtomFields() {
+		Assert.assertSame("Cl", V2000Columns.elementSymbol(ATOM_LINE));
+		Assert.assertEquals(12, V2000Columns.atomMap(ATOM_LINE));
+		Assert.assertEquals(0, V2000Columns.formalCharge(ATOM_LINE));
+	}
+
+	@Test
+	public void testCharBufferWindow() {
+		char[] buf = ("xxxx" + ATOM_LINE).toCharArray();
+		CharBuffer window = CharBuffer.wrap(buf, 4, ATOM_LINE.length()).slice();
+		Assert.assertEquals(12, V2000Columns.atomMap(window));
+		Assert.assertEquals(-10.975, V2000Columns.parseFixed(window, 10, 20), 1.0e-10);
+	}
+}